@@ -0,0 +1,341 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// One shard of a partitioned graph, served over a loopback socket. The graph is split with
+// FiretruckSimulator.GraphPartition.bisect and this process keeps only its own share of the
+// cells (a contiguous range of cell numbers, i.e. one region of the map) in a
+// LocalCellService; the coordinator (HeadlessRouter --engine partitioned --shards ...)
+// holds the boundary overlay and asks the shards for in-cell distances and paths.
+// Every shard and the coordinator partition the same graph with the same cell size
+// independently; the handshake compares partition fingerprints (which cover the cells
+// and the edges and weights they were cut from) so a mismatch fails
+// at connect time instead of returning wrong routes.
+//
+// Protocol (DataInput/DataOutput, big-endian), one request at a time per connection:
+//   server hello:  MAGIC, partition fingerprint (long), node count, cells (int array)
+//   CLIQUE cell                     -> double array (entries x exits, row-major)
+//   FROM   node, targets            -> double array
+//   TO     node, sources            -> double array
+//   PATHS  from, to                 -> path count, then one int array per path
+// Arrays are a length followed by the values. Every reply starts with a status byte:
+// 0 for OK, 1 for a rejected request followed by the message (writeUTF).
+//
+// Usage: java CellServer --graph road.fgr | road.gr [road.co] | nodes.csv edges.csv
+//                        --cell-size N --shards P --shard i [--port 9100 + i]
+public class CellServer {
+
+    static final int MAGIC = 0x46434531; // "FCE1"
+    static final byte CLIQUE = 1, FROM = 2, TO = 3, PATHS = 4;
+    private static final byte OK = 0, REJECTED = 1;
+
+    private final FiretruckSimulator.LocalCellService service;
+    private final long fingerprint;
+    private final int nodeCount;
+    private final ServerSocket server;
+
+    CellServer(FiretruckSimulator.GraphView graph, FiretruckSimulator.GraphPartition partition, int[] cells, int port) throws IOException {
+        this.service = new FiretruckSimulator.LocalCellService(graph, partition, cells);
+        this.fingerprint = partition.fingerprint();
+        this.nodeCount = partition.nodeCount();
+        this.server = new ServerSocket();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> graphArgs = null;
+        int cellSize = -1, shards = 1, shard = 0, port = -1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--graph":
+                    graphArgs = new ArrayList<>();
+                    graphArgs.add(args[++i]);
+                    if (i + 1 < args.length && (args[i + 1].endsWith(".co") || (args[i].endsWith(".csv") && args[i + 1].endsWith(".csv")))) {
+                        graphArgs.add(args[++i]);
+                    }
+                    break;
+                case "--cell-size": cellSize = Integer.parseInt(args[++i]); break;
+                case "--shards": shards = Integer.parseInt(args[++i]); break;
+                case "--shard": shard = Integer.parseInt(args[++i]); break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                default: usage("Unknown option " + args[i]);
+            }
+        }
+        if (graphArgs == null) usage("--graph is required");
+        if (cellSize < 1) usage("--cell-size must be at least 1");
+        if (shards < 1 || shard < 0 || shard >= shards) usage("--shard must be in 0 .. shards - 1");
+
+        long loadStart = System.nanoTime();
+        FiretruckSimulator.GraphView graph = HeadlessRouter.loadGraph(graphArgs);
+        FiretruckSimulator.GraphPartition partition = FiretruckSimulator.GraphPartition.bisect(graph, cellSize);
+        int[] cells = shardCells(partition.cellCount(), shards, shard);
+        CellServer cellServer = new CellServer(graph, partition, cells, (port < 0) ? 9100 + shard : port);
+        System.err.printf("Shard %d of %d: cells %d .. %d of %s; listening on %s, ready in %.0f ms%n",
+                shard, shards, cells.length > 0 ? cells[0] : 0, cells.length > 0 ? cells[cells.length - 1] : -1, partition,
+                cellServer.server.getLocalSocketAddress(), (System.nanoTime() - loadStart) / 1e6);
+        cellServer.serve();
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: java CellServer --graph road.fgr|road.gr [road.co]|nodes.csv edges.csv"
+                + " --cell-size N --shards P --shard i [--port 9100 + i]");
+        System.exit(2);
+    }
+
+    // Cells of shard i out of P: a contiguous, near-equal slice of the cell numbers
+    static int[] shardCells(int cellCount, int shards, int shard) {
+        int from = (int) ((long) cellCount * shard / shards), to = (int) ((long) cellCount * (shard + 1) / shards);
+        int[] cells = new int[to - from];
+        for (int i = 0; i < cells.length; i++) cells[i] = from + i;
+        return cells;
+    }
+
+    // Accepts until the process is stopped; one daemon thread per connection
+    void serve() throws IOException {
+        while (true) {
+            Socket socket = server.accept();
+            socket.setTcpNoDelay(true);
+            Thread thread = new Thread(() -> handle(socket), "cell-connection");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            out.writeInt(MAGIC);
+            out.writeLong(fingerprint);
+            out.writeInt(nodeCount);
+            writeInts(out, service.cells());
+            out.flush();
+            while (true) {
+                int op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException closed) {
+                    return;
+                }
+                try {
+                    switch (op) {
+                        case CLIQUE: {
+                            double[] clique = service.clique(in.readInt());
+                            out.writeByte(OK);
+                            writeDoubles(out, clique);
+                            break;
+                        }
+                        case FROM:
+                        case TO: {
+                            int node = in.readInt();
+                            int[] others = readInts(in);
+                            double[] dist = (op == FROM) ? service.distancesFrom(checked(node), others) : service.distancesTo(checked(node), others);
+                            out.writeByte(OK);
+                            writeDoubles(out, dist);
+                            break;
+                        }
+                        case PATHS: {
+                            int[] from = readInts(in), to = readInts(in);
+                            for (int u : from) checked(u);
+                            for (int v : to) checked(v);
+                            int[][] paths = service.paths(from, to);
+                            out.writeByte(OK);
+                            out.writeInt(paths.length);
+                            for (int[] path : paths) writeInts(out, path);
+                            break;
+                        }
+                        default:
+                            throw new IOException("Unknown request " + op); // The stream can no longer be trusted
+                    }
+                } catch (IllegalArgumentException e) {
+                    out.writeByte(REJECTED);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Connection closed: " + e.getMessage());
+        }
+    }
+
+    private int checked(int node) {
+        if (node < 0 || node >= nodeCount) throw new IllegalArgumentException("Unknown node " + node);
+        return node;
+    }
+
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) out.writeInt(value);
+    }
+
+    static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values) out.writeDouble(value);
+    }
+
+    static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) values[i] = in.readInt();
+        return values;
+    }
+
+    static double[] readDoubles(DataInputStream in) throws IOException {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++) values[i] = in.readDouble();
+        return values;
+    }
+
+    // --- Inner Class: Client ---
+    // CellService backed by one CellServer. Connections are opened on demand and pooled, so
+    // concurrent queries each get their own; a connection that fails is dropped, and the
+    // failure surfaces as UncheckedIOException (a rejected request as IllegalArgumentException).
+    static final class Client implements FiretruckSimulator.CellService {
+        private final String host;
+        private final int port;
+        private final long fingerprint;
+        private final int nodeCount;
+        private final int[] cells;
+        private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+
+        // Connects once to read the shard's cells and checks it partitioned the same graph the same way
+        Client(String host, int port, FiretruckSimulator.GraphPartition partition) throws IOException {
+            this.host = host;
+            this.port = port;
+            this.fingerprint = partition.fingerprint();
+            this.nodeCount = partition.nodeCount();
+            Connection first = connect();
+            this.cells = first.cells;
+            idle.add(first);
+        }
+
+        // "host:port"
+        static Client connect(String address, FiretruckSimulator.GraphPartition partition) throws IOException {
+            int colon = address.lastIndexOf(':');
+            if (colon < 0) throw new IllegalArgumentException("Shard address '" + address + "' is not host:port");
+            return new Client(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)), partition);
+        }
+
+        @Override
+        public int[] cells() { return cells.clone(); }
+
+        @Override
+        public double[] clique(int cell) {
+            return call(c -> {
+                c.out.writeByte(CLIQUE);
+                c.out.writeInt(cell);
+                return c.reply() ? readDoubles(c.in) : null;
+            });
+        }
+
+        @Override
+        public double[] distancesFrom(int node, int[] targets) { return distances(FROM, node, targets); }
+
+        @Override
+        public double[] distancesTo(int node, int[] sources) { return distances(TO, node, sources); }
+
+        private double[] distances(byte op, int node, int[] others) {
+            return call(c -> {
+                c.out.writeByte(op);
+                c.out.writeInt(node);
+                writeInts(c.out, others);
+                return c.reply() ? readDoubles(c.in) : null;
+            });
+        }
+
+        @Override
+        public int[][] paths(int[] from, int[] to) {
+            return call(c -> {
+                c.out.writeByte(PATHS);
+                writeInts(c.out, from);
+                writeInts(c.out, to);
+                if (!c.reply()) return null;
+                int[][] paths = new int[c.in.readInt()][];
+                for (int i = 0; i < paths.length; i++) paths[i] = readInts(c.in);
+                return paths;
+            });
+        }
+
+        @Override
+        public String toString() { return host + ":" + port + " (" + cells.length + " cells)"; }
+
+        private interface Exchange<T> {
+            T run(Connection connection) throws IOException;
+        }
+
+        private <T> T call(Exchange<T> exchange) {
+            Connection connection = idle.poll();
+            try {
+                if (connection == null) connection = connect();
+                T result = exchange.run(connection);
+                idle.add(connection);
+                if (result == null) throw new IllegalArgumentException(connection.rejection);
+                return result;
+            } catch (IOException e) {
+                if (connection != null) connection.close();
+                throw new UncheckedIOException("Shard " + host + ":" + port + " failed", e);
+            }
+        }
+
+        private Connection connect() throws IOException {
+            Socket socket = new Socket(host, port);
+            try {
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                if (connection.in.readInt() != MAGIC) throw new IOException("Not a cell server");
+                long theirs = connection.in.readLong();
+                int theirNodes = connection.in.readInt();
+                if (theirs != fingerprint || theirNodes != nodeCount) {
+                    throw new IOException(String.format("Partition mismatch: shard has %,d nodes (fingerprint %08x), expected %,d (%08x)",
+                            theirNodes, theirs, nodeCount, fingerprint));
+                }
+                connection.cells = readInts(connection.in);
+                return connection;
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        private static final class Connection {
+            final Socket socket;
+            final DataInputStream in;
+            final DataOutputStream out;
+            int[] cells;
+            String rejection;
+
+            Connection(Socket socket) throws IOException {
+                this.socket = socket;
+                this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            }
+
+            // Sends the request and reads the status; false (message in rejection) if it was rejected
+            boolean reply() throws IOException {
+                out.flush();
+                if (in.readByte() == OK) return true;
+                rejection = in.readUTF();
+                return false;
+            }
+
+            void close() {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // Already broken
+                }
+            }
+        }
+    }
+}
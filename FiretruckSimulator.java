@@ -1,27 +1,75 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.swing.*;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 
-// Main application class
-public class FiretruckSimulator extends JFrame {
+// Main application class. Owns its JFrame rather than extending it: the routing core is
+// nested in this class, and loading it must not drag in AWT on headless servers.
+public class FiretruckSimulator {
 
+    private final JFrame frame;
     private Graph graph;
+    private CsrGraph csrGraph; // Read-only snapshot of graph used for route queries
+    private SpatialIndex spatialIndex; // Node positions of csrGraph, for viewport culling
+    private LiveRouteTrees liveTrees; // Follows edge closures and weight edits made after csrGraph
+    private Map<String, RoutingEngine> routingEngines; // Selectable engines, in display order
+    private TimedRoutingEngine trafficEngine; // Time-dependent A* over the sample traffic profiles
+    private AlternativeRoutes alternativeRoutes; // Detours offered next to a single-segment route
+    private Executor segmentExecutor; // Runs route segments concurrently; null means serial
     private DrawingPanel drawingPanel;
     private JComboBox<String> startNodeComboBox;
     private JComboBox<String> endNodeComboBox;
     private JComboBox<String> intermediateNodeComboBox; // To select nodes to add
+    private JComboBox<String> engineComboBox; // Search mode used for each route segment
+    private JComboBox<String> departureComboBox; // Static weights, or a departure time for traffic-aware routing
+    private JComboBox<String> alternativesComboBox; // No alternatives, or how to find them
     private JButton addStopButton;
     private JButton removeStopButton;
     private JButton clearStopsButton;
     private JList<String> intermediateStopsList;
     private DefaultListModel<String> intermediateStopsModel;
     private JButton findPathButton;
+    private JProgressBar routeProgressBar; // Visible while a route job is running
+    private JCheckBox optimizeOrderCheckBox; // Reorder intermediate stops for the shortest total route
+    private JCheckBox showMetricsCheckBox; // Append the route's search work (RouteMetrics) to the result
+    private JCheckBox showCoverageCheckBox; // Colour nodes by response time from the nearest station
     private JButton resetButton;
     private JTextArea resultArea;
 
@@ -30,6 +78,9 @@ public class FiretruckSimulator extends JFrame {
     private List<Node> selectedIntermediateNodes = new ArrayList<>(); // Store actual Node objects
     private List<Node> shortestPath = null;
     private double shortestPathDistance = -1;
+    private List<List<Node>> alternativePaths = new ArrayList<>(); // Drawn in ALTERNATIVE_COLORS order
+    private RouteWorker activeRouteWorker = null; // Route job in flight, if any
+    private int routeGeneration = 0; // Bumped whenever a pending route result becomes stale
 
     // --- Constants for Drawing ---
     private static final int NODE_DIAMETER = 30;
@@ -44,48 +95,85 @@ public class FiretruckSimulator extends JFrame {
     private static final Color WEIGHT_COLOR = Color.BLACK;
     private static final Stroke EDGE_STROKE = new BasicStroke(1.5f);
     private static final Stroke PATH_STROKE = new BasicStroke(4f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    // Alternative routes, dashed under the route in PATH_COLOR; one colour per alternative shown
+    private static final Color[] ALTERNATIVE_COLORS = {new Color(60, 120, 220), new Color(150, 80, 200), new Color(30, 160, 150)};
+    private static final String[] ALTERNATIVE_COLOR_NAMES = {"blue", "purple", "teal"};
+    private static final Stroke ALTERNATIVE_STROKE = new BasicStroke(3f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND,
+            10f, new float[] {10f, 6f}, 0f);
     private static final Font WEIGHT_FONT = new Font("SansSerif", Font.PLAIN, 10);
     private static final Font NODE_FONT = new Font("Arial", Font.BOLD, 11);
+    // Coverage overlay: upper limits of the response-time bands (sample weights read as minutes)
+    // and their node colours; the last colour is for nodes beyond the last band
+    private static final double[] COVERAGE_BANDS = {15, 30, 45};
+    private static final Color[] COVERAGE_COLORS = {new Color(120, 200, 120), new Color(240, 220, 90),
+            new Color(245, 160, 70), new Color(215, 110, 110)};
     private static final int FIRETRUCK_WIDTH = 20;
     private static final int FIRETRUCK_HEIGHT = 10;
 
+    // Time budget for the heuristic stop-order search (stop sets too large for the exact solver)
+    private static final long STOP_ORDER_TIME_BUDGET_MS = 200;
+    // Departure choices; the first routes on static weights, the rest are clock times (minutes after midnight)
+    private static final String STATIC_DEPARTURE = "Static weights";
+    private static final String[] DEPARTURE_TIMES = {STATIC_DEPARTURE, "03:00", "08:00", "12:00", "17:30"};
+    // Alternative-route choices and the largest share of the route's length an alternative may repeat
+    private static final String NO_ALTERNATIVES = "No alternatives";
+    private static final String K_SHORTEST_ALTERNATIVES = "K-shortest (Yen)";
+    private static final String PENALTY_ALTERNATIVES = "Penalty method";
+    private static final double MAX_ALTERNATIVE_OVERLAP = 0.6;
+    // Results cached per routing engine; engines may break ties between equal-length paths differently
+    private static final int ROUTE_CACHE_SIZE = 1024;
+    // Sources whose shortest-path trees are kept repaired once the graph is edited
+    private static final int LIVE_ROUTE_TREES = 16;
+
     // Constructor
     public FiretruckSimulator() {
-        super("Firetruck Multi-Stop Simulator (Dijkstra) - by Sushmitha Bandaru");
-        this.graph = createSampleGraph();
+        this.frame = new JFrame("Firetruck Multi-Stop Simulator (Dijkstra) - by Sushmitha Bandaru");
+        this.graph = SampleGraph.create();
+        this.csrGraph = CsrGraph.of(graph);
+        this.spatialIndex = SpatialIndex.build(csrGraph);
+        this.liveTrees = new LiveRouteTrees(graph, csrGraph, LIVE_ROUTE_TREES);
+        this.routingEngines = createRoutingEngines();
+        TimeDependentGraph traffic = SampleGraph.traffic(csrGraph);
+        this.trafficEngine = TimeDependentSearch.engine(traffic, traffic.euclideanLowerBound());
+        this.alternativeRoutes = new AlternativeRoutes(csrGraph);
+        this.segmentExecutor = SegmentExecutors.fromName(System.getProperty("firetruck.segmentExecutor", "forkjoin"));
 
         initComponents();
         layoutComponents();
         attachListeners();
 
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         // Increased size slightly for more controls
-        setSize(1200, 900);
-        setLocationRelativeTo(null);
-    }
-
-    // --- Graph Creation (Using the complex one from previous step) ---
-    private Graph createSampleGraph() {
-        Graph g = new Graph();
-        // Nodes
-        g.addNode("FS1", 80, 100); g.addNode("J1", 200, 80); g.addNode("J2", 150, 250);
-        g.addNode("Hosp", 300, 280); g.addNode("Mall", 450, 150); g.addNode("J3", 350, 50);
-        g.addNode("Schl", 600, 80); g.addNode("Park", 550, 300); g.addNode("J4", 400, 400);
-        g.addNode("FS2", 100, 500); g.addNode("J5", 280, 520); g.addNode("Res1", 450, 550);
-        g.addNode("Res2", 650, 450); g.addNode("Fac", 800, 500); g.addNode("J6", 750, 300);
-        g.addNode("Airp", 900, 150); g.addNode("J7", 700, 100);
-        // Edges
-        g.addEdge("FS1", "J1", 12); g.addEdge("FS1", "J2", 18); g.addEdge("J1", "J3", 15);
-        g.addEdge("J1", "Mall", 25); g.addEdge("J2", "Hosp", 10); g.addEdge("J2", "J4", 20);
-        g.addEdge("J2", "FS2", 28); g.addEdge("Hosp", "Mall", 16); g.addEdge("Hosp", "J4", 12);
-        g.addEdge("Mall", "J3", 10); g.addEdge("Mall", "Schl", 22); g.addEdge("Mall", "Park", 18);
-        g.addEdge("J3", "Schl", 25); g.addEdge("Schl", "J7", 8); g.addEdge("Schl", "Park", 15);
-        g.addEdge("Park", "J4", 14); g.addEdge("Park", "J6", 20); g.addEdge("Park", "Res2", 18);
-        g.addEdge("J4", "J5", 15); g.addEdge("J4", "Res1", 10); g.addEdge("FS2", "J5", 18);
-        g.addEdge("J5", "Res1", 16); g.addEdge("Res1", "Res2", 24); g.addEdge("Res1", "Fac", 35);
-        g.addEdge("Res2", "Fac", 15); g.addEdge("Res2", "J6", 10); g.addEdge("Fac", "J6", 12);
-        g.addEdge("J6", "Airp", 28); g.addEdge("J6", "J7", 20); g.addEdge("J7", "Airp", 18);
-        return g;
+        frame.setSize(1200, 900);
+        frame.setLocationRelativeTo(null);
+    }
+
+    public void setVisible(boolean visible) { frame.setVisible(visible); }
+
+    // --- Routing Engines ---
+    private Map<String, RoutingEngine> createRoutingEngines() {
+        Map<String, RoutingEngine> engines = new LinkedHashMap<>();
+        Heuristic euclidean = Heuristic.euclidean(csrGraph);
+        engines.put("A* (Euclidean)", cached((start, end) -> AStar.findShortestPath(csrGraph, start, end, euclidean)));
+        engines.put("Bidirectional Dijkstra", cached(new BidirectionalDijkstra(csrGraph)));
+        engines.put("Contraction Hierarchies", cached(ContractionHierarchy.build(csrGraph)));
+        // A miss runs one full search from the source, so later segments from it are free
+        engines.put("Dijkstra (CSR)", CachingRoutingEngine.withSourceTrees((start, end) -> CsrDijkstra.findShortestPath(csrGraph, start, end),
+                graph, new PathCache(ROUTE_CACHE_SIZE, PathCache.Eviction.TINY_LFU), csrGraph, liveTrees));
+        // Searches the Graph itself, so it needs no snapshot
+        engines.put("Dijkstra (Classic)", new CachingRoutingEngine((start, end) -> Dijkstra.findShortestPath(graph, start, end),
+                graph, new PathCache(ROUTE_CACHE_SIZE, PathCache.Eviction.TINY_LFU)));
+        return engines;
+    }
+
+    // For engines that search csrGraph; after an edit they answer from liveTrees
+    private RoutingEngine cached(RoutingEngine engine) {
+        return new CachingRoutingEngine(engine, graph, new PathCache(ROUTE_CACHE_SIZE, PathCache.Eviction.TINY_LFU), csrGraph, liveTrees);
+    }
+
+    // csrGraph while it matches graph, otherwise null (callers then search without it)
+    private CsrGraph currentSnapshot() {
+        return (csrGraph.version() == graph.getVersion()) ? csrGraph : null;
     }
 
     // --- GUI Initialization ---
@@ -94,6 +182,9 @@ public class FiretruckSimulator extends JFrame {
         startNodeComboBox = new JComboBox<>();
         endNodeComboBox = new JComboBox<>();
         intermediateNodeComboBox = new JComboBox<>(); // For selecting stops to add
+        engineComboBox = new JComboBox<>(routingEngines.keySet().toArray(new String[0]));
+        departureComboBox = new JComboBox<>(DEPARTURE_TIMES);
+        alternativesComboBox = new JComboBox<>(new String[] {NO_ALTERNATIVES, K_SHORTEST_ALTERNATIVES, PENALTY_ALTERNATIVES});
 
         intermediateStopsModel = new DefaultListModel<>();
         intermediateStopsList = new JList<>(intermediateStopsModel);
@@ -106,6 +197,13 @@ public class FiretruckSimulator extends JFrame {
         clearStopsButton = new JButton("Clear All Stops");
 
         findPathButton = new JButton("Find Multi-Stop Route"); // Updated text
+        optimizeOrderCheckBox = new JCheckBox("Optimize stop order");
+        showMetricsCheckBox = new JCheckBox("Show search metrics");
+        showMetricsCheckBox.setEnabled(RouteMetrics.ENABLED);
+        showCoverageCheckBox = new JCheckBox("Show station coverage");
+        routeProgressBar = new JProgressBar(0, 100);
+        routeProgressBar.setStringPainted(true);
+        routeProgressBar.setVisible(false);
         resetButton = new JButton("Reset All");
         resultArea = new JTextArea(5, 80); // Increased rows slightly
         resultArea.setEditable(false);
@@ -138,7 +236,7 @@ public class FiretruckSimulator extends JFrame {
 
     // --- GUI Layout ---
     private void layoutComponents() {
-        setLayout(new BorderLayout(10, 10)); // Main layout gaps
+        frame.setLayout(new BorderLayout(10, 10)); // Main layout gaps
 
         // --- Top Control Panel ---
         JPanel topControlPanel = new JPanel();
@@ -161,12 +259,33 @@ public class FiretruckSimulator extends JFrame {
         topControlPanel.add(endNodeComboBox, gbc);
         gbc.gridwidth = 1; gbc.fill = GridBagConstraints.NONE;
 
+        // Search Engine
+        gbc.gridx = 0; gbc.gridy = 2;
+        topControlPanel.add(new JLabel("Engine:"), gbc);
+        gbc.gridx = 1; gbc.gridwidth = 2; gbc.fill = GridBagConstraints.HORIZONTAL;
+        topControlPanel.add(engineComboBox, gbc);
+        gbc.gridwidth = 1; gbc.fill = GridBagConstraints.NONE;
+
+        // Departure Time
+        gbc.gridx = 0; gbc.gridy = 3;
+        topControlPanel.add(new JLabel("Depart:"), gbc);
+        gbc.gridx = 1; gbc.gridwidth = 2; gbc.fill = GridBagConstraints.HORIZONTAL;
+        topControlPanel.add(departureComboBox, gbc);
+        gbc.gridwidth = 1; gbc.fill = GridBagConstraints.NONE;
+
+        // Alternative Routes
+        gbc.gridx = 0; gbc.gridy = 4;
+        topControlPanel.add(new JLabel("Alternatives:"), gbc);
+        gbc.gridx = 1; gbc.gridwidth = 2; gbc.fill = GridBagConstraints.HORIZONTAL;
+        topControlPanel.add(alternativesComboBox, gbc);
+        gbc.gridwidth = 1; gbc.fill = GridBagConstraints.NONE;
+
         // Intermediate Stops Label
         gbc.gridx = 3; gbc.gridy = 0; gbc.anchor = GridBagConstraints.CENTER;
         topControlPanel.add(new JLabel("Intermediate Stops (in order):"), gbc);
 
         // Intermediate Stops List
-        gbc.gridx = 3; gbc.gridy = 1; gbc.gridheight = 3; gbc.fill = GridBagConstraints.VERTICAL;
+        gbc.gridx = 3; gbc.gridy = 1; gbc.gridheight = 4; gbc.fill = GridBagConstraints.VERTICAL;
         topControlPanel.add(new JScrollPane(intermediateStopsList), gbc);
         gbc.gridheight = 1; gbc.fill = GridBagConstraints.NONE; // Reset height/fill
 
@@ -185,7 +304,11 @@ public class FiretruckSimulator extends JFrame {
         // --- Bottom Control Panel (Find/Reset Buttons) ---
         JPanel bottomButtonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 5));
         bottomButtonPanel.add(findPathButton);
+        bottomButtonPanel.add(optimizeOrderCheckBox);
+        bottomButtonPanel.add(showMetricsCheckBox);
+        bottomButtonPanel.add(showCoverageCheckBox);
         bottomButtonPanel.add(resetButton);
+        bottomButtonPanel.add(routeProgressBar);
 
         // --- Result Panel ---
         JPanel resultPanel = new JPanel(new BorderLayout());
@@ -197,9 +320,9 @@ public class FiretruckSimulator extends JFrame {
 
 
         // --- Main Layout ---
-        add(topControlPanel, BorderLayout.NORTH);
-        add(drawingPanel, BorderLayout.CENTER);
-        add(resultPanel, BorderLayout.SOUTH);
+        frame.add(topControlPanel, BorderLayout.NORTH);
+        frame.add(drawingPanel, BorderLayout.CENTER);
+        frame.add(resultPanel, BorderLayout.SOUTH);
 
         // Adjust column weights for resizing behavior (optional but nice)
         gbc.weightx = 1.0; // Allow combo boxes to expand horizontally if needed
@@ -215,6 +338,7 @@ public class FiretruckSimulator extends JFrame {
         addStopButton.addActionListener(e -> addIntermediateStop());
         removeStopButton.addActionListener(e -> removeIntermediateStop());
         clearStopsButton.addActionListener(e -> clearIntermediateStops());
+        showCoverageCheckBox.addActionListener(e -> drawingPanel.showCoverage(showCoverageCheckBox.isSelected()));
 
         // Enable/Disable "Remove" button based on list selection
         intermediateStopsList.addListSelectionListener(e -> {
@@ -223,8 +347,15 @@ public class FiretruckSimulator extends JFrame {
             }
         });
 
+        // Any change to what would be routed cancels a route that is still being computed
+        engineComboBox.addActionListener(e -> cancelPendingRoute());
+        departureComboBox.addActionListener(e -> cancelPendingRoute());
+        alternativesComboBox.addActionListener(e -> cancelPendingRoute());
+        optimizeOrderCheckBox.addActionListener(e -> cancelPendingRoute());
+
         // Update selected node highlights when combo boxes change
          ActionListener mainComboBoxListener = e -> {
+            cancelPendingRoute();
             updateSelectedNodesFromUI();
             drawingPanel.repaint(); // Redraw to show new highlights immediately
         };
@@ -246,17 +377,19 @@ public class FiretruckSimulator extends JFrame {
             //     JOptionPane.showMessageDialog(this,"Cannot add Start or End node as an intermediate stop.", "Info", JOptionPane.INFORMATION_MESSAGE);
             //     return;
             // }
+            cancelPendingRoute();
             intermediateStopsModel.addElement(stopId);
             updateSelectedNodesFromUI(); // Update internal list and repaint
             drawingPanel.repaint();
         } else if (stopId != null && intermediateStopsModel.contains(stopId)) {
-             JOptionPane.showMessageDialog(this,"Stop '" + stopId + "' is already in the list.", "Info", JOptionPane.INFORMATION_MESSAGE);
+             JOptionPane.showMessageDialog(frame,"Stop '" + stopId + "' is already in the list.", "Info", JOptionPane.INFORMATION_MESSAGE);
         }
     }
 
     private void removeIntermediateStop() {
         int selectedIndex = intermediateStopsList.getSelectedIndex();
         if (selectedIndex != -1) {
+            cancelPendingRoute();
             intermediateStopsModel.remove(selectedIndex);
             updateSelectedNodesFromUI(); // Update internal list and repaint
             drawingPanel.repaint();
@@ -265,6 +398,7 @@ public class FiretruckSimulator extends JFrame {
 
     private void clearIntermediateStops() {
         if (!intermediateStopsModel.isEmpty()) {
+            cancelPendingRoute();
             intermediateStopsModel.clear();
             updateSelectedNodesFromUI(); // Update internal list and repaint
             drawingPanel.repaint();
@@ -273,8 +407,11 @@ public class FiretruckSimulator extends JFrame {
 
 
     // --- Core Path Finding Logic (Multi-Stop) ---
+    // Validates the selection on the EDT, then hands the search to a RouteWorker so the
+    // window stays responsive. Results are applied in displayRoute once published.
     private void findAndDisplayMultiStopPath() {
         updateSelectedNodesFromUI(); // Ensure current selections are reflected
+        cancelPendingRoute(); // A new request supersedes any route still being computed
 
         if (selectedStartNode == null || selectedEndNode == null) {
             resultArea.setText("Please select valid Start and End nodes.");
@@ -305,71 +442,209 @@ public class FiretruckSimulator extends JFrame {
              return;
         }
 
-        // Calculate path segment by segment
-        List<Node> fullPath = new LinkedList<>();
-        double totalDistance = 0.0;
-        boolean possible = true;
+        RoutingEngine engine = routingEngines.get((String) engineComboBox.getSelectedItem());
+        String departure = (String) departureComboBox.getSelectedItem();
+        activeRouteWorker = new RouteWorker(routeGeneration, selectedStartNode, new ArrayList<>(selectedIntermediateNodes),
+                selectedEndNode, engine, optimizeOrderCheckBox.isSelected(),
+                STATIC_DEPARTURE.equals(departure) ? Double.NaN : parseClock(departure), (String) alternativesComboBox.getSelectedItem());
+        activeRouteWorker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) routeProgressBar.setValue((Integer) e.getNewValue());
+        });
+        resultArea.setText("Computing route...");
+        routeProgressBar.setValue(0);
+        routeProgressBar.setVisible(true);
+        activeRouteWorker.execute();
+    }
 
-        for (int i = 0; i < waypoints.size() - 1; i++) {
-            Node segmentStart = waypoints.get(i);
-            Node segmentEnd = waypoints.get(i + 1);
+    // Cancels the route job in flight (if any) and marks its result as stale
+    private void cancelPendingRoute() {
+        routeGeneration++;
+        if (activeRouteWorker != null && !activeRouteWorker.isDone()) {
+            activeRouteWorker.cancel(true);
+            resultArea.setText("Route request cancelled (selection changed).");
+        }
+        activeRouteWorker = null;
+        routeProgressBar.setVisible(false);
+    }
 
-            // If segment start and end are the same, skip Dijkstra call
-            if (segmentStart.equals(segmentEnd)) {
-                // Add the node once if it's the very first segment and path is empty
-                if (fullPath.isEmpty()) {
-                    fullPath.add(segmentStart);
-                }
-                continue; // Distance is 0 for this segment
-            }
+    private void displayRoute(RouteJobResult job) {
+        MultiStopResult route = job.route;
 
-            DijkstraResult segmentResult = Dijkstra.findShortestPath(graph, segmentStart, segmentEnd);
+        // Display final results if the whole path was possible
+        if (route.isPossible()) {
+            shortestPath = route.getPath();
+            shortestPathDistance = route.getDistance();
 
-            if (!segmentResult.hasPath()) {
-                resultArea.setText("Cannot find path from '" + segmentStart.getId() + "' to '" + segmentEnd.getId() + "'.\nFull multi-stop route is impossible.");
-                clearPathResults(); // Clear previous results
-                possible = false;
-                break; // Stop processing further segments
+            StringBuilder pathStr = new StringBuilder(route.describe(job.waypoints));
+            if (job.stopOrderSummary != null) pathStr.append(job.stopOrderSummary);
+            if (!Double.isNaN(job.departure)) {
+                pathStr.append(String.format("%nDeparts %s, arrives %s in traffic (edge weights are free-flow minutes)",
+                        formatClock(job.departure), formatClock(job.departure + route.getDistance())));
             }
+            appendAlternatives(pathStr, job);
+            if (showMetricsCheckBox.isSelected()) pathStr.append(System.lineSeparator()).append(job.searchWork.describeRoute());
+            resultArea.setText(pathStr.toString());
+        } else {
+            resultArea.setText(route.describe(job.waypoints));
+            clearPathResults();
+        }
+    }
 
-            // Add segment path nodes
-            List<Node> segmentPathNodes = segmentResult.getPath();
-            if (!segmentPathNodes.isEmpty()) {
-                if (fullPath.isEmpty()) {
-                    fullPath.addAll(segmentPathNodes); // Add all nodes for the first segment
-                } else {
-                    // Add all nodes *except the first one* (which is the end of the previous segment)
-                    fullPath.addAll(segmentPathNodes.subList(1, segmentPathNodes.size()));
+    // Keeps the alternatives to draw and lists them under the route, each with its colour
+    private void appendAlternatives(StringBuilder pathStr, RouteJobResult job) {
+        alternativePaths = new ArrayList<>();
+        if (NO_ALTERNATIVES.equals(job.alternativeMode)) return;
+        if (job.alternatives == null) {
+            pathStr.append(String.format("%nAlternatives are only offered for routes without intermediate stops on static weights."));
+            return;
+        }
+        for (AlternativeRoutes.Route alternative : job.alternatives.getAlternatives()) {
+            List<Node> path = alternative.getPath();
+            if (path.equals(shortestPath) || alternativePaths.size() == ALTERNATIVE_COLORS.length) continue; // Same route, tie broken differently
+            pathStr.append(String.format("%nAlternative %d (%s, dashed): %s | %.1f units (+%.1f), shares %.0f%% of the route",
+                    alternativePaths.size() + 1, ALTERNATIVE_COLOR_NAMES[alternativePaths.size()],
+                    path.stream().map(Node::getId).collect(Collectors.joining(" -> ")),
+                    alternative.getDistance(), alternative.getDistance() - shortestPathDistance, 100 * alternative.getOverlap()));
+            alternativePaths.add(path);
+        }
+        if (alternativePaths.isEmpty()) {
+            pathStr.append(String.format("%nNo alternative route shares at most %.0f%% of this one.", 100 * MAX_ALTERNATIVE_OVERLAP));
+        }
+    }
+
+    // --- Inner Class: Route Job Result ---
+    private static final class RouteJobResult {
+        final MultiStopResult route;
+        final List<Node> waypoints; // Waypoints actually routed (after any reordering)
+        final String stopOrderSummary; // null unless the stop order was optimized
+        final RouteMetrics.Snapshot searchWork; // Metrics recorded on behalf of the job
+        final double departure; // Minutes after midnight, NaN for a static-weight route
+        final String alternativeMode; // Selected alternatives choice
+        final AlternativeRoutes.Result alternatives; // null unless requested and the route is one static segment
+
+        RouteJobResult(MultiStopResult route, List<Node> waypoints, String stopOrderSummary, RouteMetrics.Snapshot searchWork, double departure,
+                       String alternativeMode, AlternativeRoutes.Result alternatives) {
+            this.route = route;
+            this.waypoints = waypoints;
+            this.stopOrderSummary = stopOrderSummary;
+            this.searchWork = searchWork;
+            this.departure = departure;
+            this.alternativeMode = alternativeMode;
+            this.alternatives = alternatives;
+        }
+    }
+
+    // --- Inner Class: Route Worker ---
+    // Computes one multi-stop route off the EDT from a snapshot of the selection. Progress
+    // is reported per finished segment. The result is only applied (and the panel only
+    // repainted) if no newer request or selection change has superseded this job.
+    class RouteWorker extends SwingWorker<RouteJobResult, Void> implements RouteProgress {
+        private final int generation;
+        private final Node start, end;
+        private final List<Node> intermediateStops;
+        private final RoutingEngine engine;
+        private final boolean optimizeOrder;
+        private final double departure; // NaN: static weights with the selected engine
+        private final String alternativeMode;
+
+        RouteWorker(int generation, Node start, List<Node> intermediateStops, Node end, RoutingEngine engine,
+                    boolean optimizeOrder, double departure, String alternativeMode) {
+            this.generation = generation;
+            this.start = start;
+            this.intermediateStops = intermediateStops;
+            this.end = end;
+            this.engine = engine;
+            this.optimizeOrder = optimizeOrder;
+            this.departure = departure;
+            this.alternativeMode = alternativeMode;
+        }
+
+        // Every search the job runs, here or on a segment thread, is tallied in job alone, so
+        // the summary holds this job's work even while a superseded job is still finishing
+        private final RouteMetrics.Job job = new RouteMetrics.Job();
+
+        @Override
+        protected RouteJobResult doInBackground() {
+            return job.call(this::computeRoute);
+        }
+
+        private RouteJobResult computeRoute() {
+            // Optionally reorder the intermediate stops (start and end stay fixed)
+            List<Node> stops = intermediateStops;
+            String stopOrderSummary = null;
+            if (optimizeOrder && intermediateStops.size() > 1) {
+                List<Node> matrixStops = new ArrayList<>(intermediateStops);
+                matrixStops.add(start);
+                matrixStops.add(end);
+                CsrGraph snapshot = currentSnapshot();
+                DistanceMatrix matrix = ManyToMany.compute((snapshot != null) ? snapshot : CsrGraph.of(graph), matrixStops, false);
+                StopOrderOptimizer.Result optimized = StopOrderOptimizer.optimize(matrix, start, intermediateStops, end, STOP_ORDER_TIME_BUDGET_MS);
+                double enteredDistance = StopOrderOptimizer.routeDistance(matrix, start, intermediateStops, end);
+                stops = optimized.getOrder();
+
+                stopOrderSummary = String.format("%nOptimized stop order (%s): %s", optimized.isExact() ? "exact" : "heuristic",
+                        stops.stream().map(Node::getId).collect(Collectors.joining(" -> ")));
+                if (Double.isFinite(enteredDistance) && Double.isFinite(optimized.getDistance())) {
+                    stopOrderSummary += String.format("%nSaved %.1f units vs entered order (%.1f units)",
+                            enteredDistance - optimized.getDistance(), enteredDistance);
                 }
             }
-            totalDistance += segmentResult.getDistance();
+
+            List<Node> waypoints = new ArrayList<>();
+            waypoints.add(start);
+            waypoints.addAll(stops);
+            waypoints.add(end);
+            waypoints = removeConsecutiveDuplicates(waypoints);
+
+            // Calculate path segment by segment (concurrently when an executor is configured). With a
+            // departure time each segment starts when the previous one arrives, so they run in order.
+            MultiStopResult route = Double.isNaN(departure)
+                    ? new MultiStopRouter(engine, job.wrap(segmentExecutor), currentSnapshot()).route(waypoints, this)
+                    : MultiStopRouter.routeDepartingAt(trafficEngine, waypoints, departure, this);
+
+            // Alternatives (the primary plus one per colour) for a single static segment only
+            AlternativeRoutes.Result alternatives = null;
+            if (!NO_ALTERNATIVES.equals(alternativeMode) && route.isPossible() && waypoints.size() == 2 && Double.isNaN(departure)) {
+                int k = ALTERNATIVE_COLORS.length + 1;
+                alternatives = K_SHORTEST_ALTERNATIVES.equals(alternativeMode)
+                        ? alternativeRoutes.kShortest(start, end, k, MAX_ALTERNATIVE_OVERLAP)
+                        : alternativeRoutes.penalized(start, end, k, MAX_ALTERNATIVE_OVERLAP);
+            }
+            return new RouteJobResult(route, waypoints, stopOrderSummary, job.snapshot(), departure,
+                    alternativeMode, alternatives);
         }
 
-        // Display final results if the whole path was possible
-        if (possible) {
-            shortestPath = fullPath;
-            shortestPathDistance = totalDistance;
+        @Override
+        public void segmentDone(int done, int total) {
+            setProgress(total == 0 ? 100 : done * 100 / total);
+        }
 
-            StringBuilder pathStr = new StringBuilder("Full Route: ");
-            if(shortestPath.isEmpty() && waypoints.size() >= 1) { // Handle case Start=Stop1=...=End
-                pathStr.append(waypoints.get(0).getId());
-            } else {
-                for (int i = 0; i < shortestPath.size(); i++) {
-                    pathStr.append(shortestPath.get(i).getId());
-                    if (i < shortestPath.size() - 1) {
-                        pathStr.append(" -> ");
-                    }
-                }
+        @Override
+        protected void done() {
+            if (isCancelled() || generation != routeGeneration) return; // Superseded: drop the stale result
+            activeRouteWorker = null;
+            routeProgressBar.setVisible(false);
+            try {
+                displayRoute(get());
+            } catch (InterruptedException | ExecutionException e) {
+                Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+                resultArea.setText("Route computation failed: " + cause);
+                clearPathResults();
             }
-            pathStr.append(String.format("%nTotal Distance: %.1f units", shortestPathDistance));
-            resultArea.setText(pathStr.toString());
-        } else {
-            // Error message already set, ensure visualization is cleared
-             clearPathResults();
+            // Redraw the panel to show the full path, highlights, and truck
+            drawingPanel.repaint();
         }
+    }
 
-        // Redraw the panel to show the full path, highlights, and truck
-        drawingPanel.repaint();
+    // "HH:MM" <-> minutes after midnight; later days wrap round the clock
+    private static double parseClock(String clock) {
+        String[] parts = clock.split(":");
+        return Integer.parseInt(parts[0]) * 60 + Integer.parseInt(parts[1]);
+    }
+
+    private static String formatClock(double minutes) {
+        long rounded = Math.round(minutes);
+        return String.format("%02d:%02d", (rounded / 60) % 24, rounded % 60);
     }
 
      // Helper to remove consecutive duplicates from the waypoint list
@@ -386,6 +661,7 @@ public class FiretruckSimulator extends JFrame {
     }
 
     private void resetVisualization() {
+        cancelPendingRoute();
         // Reset selections in combo boxes and list
         if (startNodeComboBox.getItemCount() > 0) startNodeComboBox.setSelectedIndex(0);
         if (endNodeComboBox.getItemCount() > 1) endNodeComboBox.setSelectedIndex(1);
@@ -404,6 +680,7 @@ public class FiretruckSimulator extends JFrame {
     private void clearPathResults() {
         shortestPath = null;
         shortestPathDistance = -1;
+        alternativePaths = new ArrayList<>();
     }
 
     // Updates the internal selected Node objects based on all UI selections
@@ -430,93 +707,171 @@ public class FiretruckSimulator extends JFrame {
 
 
     // --- Inner Class: Drawing Panel ---
+    // Paints the cached static graph layer (GraphLayer) and draws only the per-selection
+    // overlays on top: the route, highlighted nodes and the truck. The wheel zooms around
+    // the cursor, dragging pans and a double-click restores the initial view.
     class DrawingPanel extends JPanel {
-        @Override
-        protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            Graphics2D g2d = (Graphics2D) g;
-            setupAntialiasing(g2d);
-
-            if (graph == null) return;
-
-            drawEdgesAndWeights(g2d);
-            drawShortestPath(g2d);
-            drawNodes(g2d);
-            drawFiretruck(g2d);
-        }
-
-        private void setupAntialiasing(Graphics2D g2d) {
-             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-             g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        }
+        private static final double ZOOM_STEP = 1.25, MIN_SCALE = 0.001, MAX_SCALE = 20;
+        private final GraphLayer graphLayer = new GraphLayer(csrGraph, spatialIndex);
+        private double scale = 1.0; // Screen pixels per world unit
+        private double viewX, viewY; // World coordinates shown at the panel's top-left corner
+        private int[] coverageColors; // Per node, computed off the EDT the first time the overlay is shown
+        private CoverageWorker coverageWorker; // Non-null while that computation runs
+        private boolean coverageShown;
 
-        private void drawEdgesAndWeights(Graphics2D g2d) {
-             g2d.setStroke(EDGE_STROKE);
-             g2d.setFont(WEIGHT_FONT);
-             FontMetrics fm = g2d.getFontMetrics();
+        DrawingPanel() {
+            MouseAdapter navigation = new MouseAdapter() {
+                private Point dragFrom;
 
-             Set<String> drawnEdges = new HashSet<>(); // Avoid drawing A->B and B->A separately
+                @Override
+                public void mousePressed(MouseEvent e) { dragFrom = e.getPoint(); }
 
-             for (Node node : graph.getNodes().values()) {
-                 for (Map.Entry<Node, Double> entry : node.getAdjacencies().entrySet()) {
-                     Node neighbor = entry.getKey();
-                     String edgeId1 = node.getId() + "-" + neighbor.getId();
-                     String edgeId2 = neighbor.getId() + "-" + node.getId();
+                @Override
+                public void mouseDragged(MouseEvent e) {
+                    if (dragFrom == null) return;
+                    viewX -= (e.getX() - dragFrom.x) / scale;
+                    viewY -= (e.getY() - dragFrom.y) / scale;
+                    dragFrom = e.getPoint();
+                    repaint();
+                }
 
-                     // Only draw if this edge pair hasn't been drawn
-                     if (!drawnEdges.contains(edgeId1) && !drawnEdges.contains(edgeId2)) {
-                         double weight = entry.getValue();
-                         int x1 = node.getX(); int y1 = node.getY();
-                         int x2 = neighbor.getX(); int y2 = neighbor.getY();
+                @Override
+                public void mouseWheelMoved(MouseWheelEvent e) {
+                    zoomAt(e.getX(), e.getY(), Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()));
+                }
 
-                         // Draw Edge Line
-                         g2d.setColor(EDGE_COLOR);
-                         g2d.drawLine(x1, y1, x2, y2);
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    if (e.getClickCount() == 2) resetView();
+                }
+            };
+            addMouseListener(navigation);
+            addMouseMotionListener(navigation);
+            addMouseWheelListener(navigation);
+        }
 
-                         // Draw Edge Weight
-                         drawWeightText(g2d, fm, weight, x1, y1, x2, y2);
+        // Keeps the world point under (screenX, screenY) in place
+        void zoomAt(int screenX, int screenY, double factor) {
+            double newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+            viewX += screenX / scale - screenX / newScale;
+            viewY += screenY / scale - screenY / newScale;
+            scale = newScale;
+            repaint();
+        }
 
-                         drawnEdges.add(edgeId1); // Mark as drawn
-                     }
-                 }
-             }
+        void resetView() {
+            scale = 1.0;
+            viewX = viewY = 0;
+            repaint();
         }
 
-        private void drawWeightText(Graphics2D g2d, FontMetrics fm, double weight, int x1, int y1, int x2, int y2) {
-            int midX = (x1 + x2) / 2;
-            int midY = (y1 + y2) / 2;
-            String weightStr = String.format("%.0f", weight);
-            int textWidth = fm.stringWidth(weightStr);
-            int textHeight = fm.getAscent();
+        // Nodes coloured by the response-time band of their nearest station (SampleGraph.STATIONS).
+        // The first time, the colours are computed by a CoverageWorker and applied when it is done.
+        void showCoverage(boolean show) {
+            coverageShown = show;
+            if (show && coverageColors == null) {
+                if (coverageWorker == null) {
+                    coverageWorker = new CoverageWorker();
+                    coverageWorker.execute();
+                }
+                return;
+            }
+            graphLayer.setNodeColors(show ? coverageColors : null);
+            repaint();
+        }
 
-            // Calculate angle for offset (more robust placement)
-            double angle = Math.atan2(y2 - y1, x2 - x1);
-            int offsetX = (int) (Math.sin(angle) * 8); // Perpendicular offset
-            int offsetY = (int) (-Math.cos(angle) * 8);
+        // Runs the isochrone search and maps every node to its band colour off the EDT
+        private final class CoverageWorker extends SwingWorker<int[], Void> {
+            @Override
+            protected int[] doInBackground() {
+                List<Node> stations = new ArrayList<>();
+                for (String id : SampleGraph.STATIONS) {
+                    if (csrGraph.indexOf(id) >= 0) stations.add(csrGraph.node(csrGraph.indexOf(id)));
+                }
+                Coverage coverage = Isochrones.compute(csrGraph, stations, COVERAGE_BANDS[COVERAGE_BANDS.length - 1]);
+                int[] colors = new int[csrGraph.nodeCount()];
+                for (int u = 0; u < colors.length; u++) colors[u] = COVERAGE_COLORS[coverage.band(u, COVERAGE_BANDS)].getRGB();
+                return colors;
+            }
 
-             // Adjust offset if text goes "under" the line based on angle
-            if (angle > 0 && angle < Math.PI) { // Primarily downward slope
-                 // No change needed typically
-            } else { // Primarily upward slope
-                 offsetY -= textHeight/2; // Shift slightly more
+            @Override
+            protected void done() {
+                coverageWorker = null;
+                try {
+                    coverageColors = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+                    resultArea.setText("Coverage computation failed: " + cause);
+                    showCoverageCheckBox.setSelected(false);
+                    coverageShown = false;
+                    return;
+                }
+                showCoverage(coverageShown); // The box may have been cleared meanwhile
             }
+        }
 
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Graphics2D g2d = (Graphics2D) g;
 
-            int textX = midX + offsetX;
-            int textY = midY + offsetY + textHeight / 2; // Center vertically better
+            if (graph == null) return;
 
+            // Static layer is only re-rendered when the view or panel size changed
+            g2d.drawImage(graphLayer.render(g2d, getWidth(), getHeight(), scale, viewX, viewY, getBackground()),
+                    0, 0, getWidth(), getHeight(), null);
 
-            // Background for readability
-            g2d.setColor(getBackground()); // Use panel background color
-            g2d.fillRect(textX - textWidth / 2 - 2, textY - textHeight, textWidth + 4, textHeight + 2);
+            Graphics2D world = (Graphics2D) g2d.create();
+            try {
+                setupAntialiasing(world);
+                world.scale(scale, scale);
+                world.translate(-viewX, -viewY);
+                drawShortestPath(world);
+                drawHighlightedNodes(world);
+                drawFiretruck(world);
+            } finally {
+                world.dispose();
+            }
+            if (coverageShown && coverageColors != null) drawCoverageLegend(g2d);
+        }
 
-            // Weight Text
+        // Band swatches in the bottom-left corner, in screen coordinates
+        private void drawCoverageLegend(Graphics2D g2d) {
+            g2d.setFont(WEIGHT_FONT);
+            FontMetrics fm = g2d.getFontMetrics();
+            int rowHeight = fm.getHeight() + 2;
+            int x = 10, y = getHeight() - 10 - rowHeight * (COVERAGE_COLORS.length + 1);
             g2d.setColor(WEIGHT_COLOR);
-            g2d.drawString(weightStr, textX - textWidth / 2, textY - 1); // Draw centered
+            g2d.drawString("Nearest station (" + String.join(", ", SampleGraph.STATIONS) + ")", x, y + fm.getAscent());
+            for (int i = 0; i < COVERAGE_COLORS.length; i++) {
+                int rowY = y + rowHeight * (i + 1);
+                g2d.setColor(COVERAGE_COLORS[i]);
+                g2d.fillRect(x, rowY, rowHeight - 2, rowHeight - 2);
+                g2d.setColor(WEIGHT_COLOR);
+                g2d.drawRect(x, rowY, rowHeight - 2, rowHeight - 2);
+                String label = (i < COVERAGE_BANDS.length) ? String.format("<= %.0f", COVERAGE_BANDS[i])
+                        : String.format("> %.0f", COVERAGE_BANDS[COVERAGE_BANDS.length - 1]);
+                g2d.drawString(label, x + rowHeight + 4, rowY + fm.getAscent());
+            }
         }
 
+        private void setupAntialiasing(Graphics2D g2d) {
+             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+             g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        }
 
         private void drawShortestPath(Graphics2D g2d) {
+            // Alternatives first (the first one on top), so the route itself stays visible where they share roads
+            g2d.setStroke(ALTERNATIVE_STROKE);
+            for (int a = alternativePaths.size() - 1; a >= 0; a--) {
+                List<Node> alternative = alternativePaths.get(a);
+                g2d.setColor(ALTERNATIVE_COLORS[a]);
+                for (int i = 0; i < alternative.size() - 1; i++) {
+                    Node u = alternative.get(i);
+                    Node v = alternative.get(i + 1);
+                    g2d.drawLine(u.getX(), u.getY(), v.getX(), v.getY());
+                }
+            }
             if (shortestPath != null && shortestPath.size() > 1 && Double.isFinite(shortestPathDistance)) {
                 g2d.setColor(PATH_COLOR);
                 g2d.setStroke(PATH_STROKE);
@@ -528,21 +883,25 @@ public class FiretruckSimulator extends JFrame {
             }
         }
 
-        private void drawNodes(Graphics2D g2d) {
+        // Selected nodes in their highlight colours, plus the route's nodes so they stay on
+        // top of the route line as they are in the static layer
+        private void drawHighlightedNodes(Graphics2D g2d) {
              g2d.setFont(NODE_FONT);
              FontMetrics nodeFm = g2d.getFontMetrics();
+             boolean labels = graphLayer.detail() == GraphLayer.Detail.FULL;
 
              // Convert list of intermediate nodes to a Set for quick lookup
              Set<Node> intermediateSet = new HashSet<>(selectedIntermediateNodes);
+             Set<Node> overlayNodes = new LinkedHashSet<>();
+             if (shortestPath != null && Double.isFinite(shortestPathDistance)) overlayNodes.addAll(shortestPath);
+             alternativePaths.forEach(overlayNodes::addAll);
+             overlayNodes.addAll(selectedIntermediateNodes);
+             if (selectedStartNode != null) overlayNodes.add(selectedStartNode);
+             if (selectedEndNode != null) overlayNodes.add(selectedEndNode);
 
-             for (Node node : graph.getNodes().values()) {
-                 int nodeCenterX = node.getX();
-                 int nodeCenterY = node.getY();
-                 int nodeDrawX = nodeCenterX - NODE_DIAMETER / 2;
-                 int nodeDrawY = nodeCenterY - NODE_DIAMETER / 2;
-
+             for (Node node : overlayNodes) {
                  // Determine node color: Check Intermediate first, then Start/End
-                 Color currentNodeColor = NODE_COLOR; // Default
+                 Color currentNodeColor = graphLayer.nodeColor(csrGraph.indexOf(node)); // Default, as in the static layer
                  if (intermediateSet.contains(node)) {
                      currentNodeColor = INTERMEDIATE_NODE_COLOR;
                  }
@@ -552,20 +911,7 @@ public class FiretruckSimulator extends JFrame {
                  } else if (node.equals(selectedEndNode)) {
                      currentNodeColor = END_NODE_COLOR;
                  }
-
-
-                 // Draw node circle
-                 g2d.setColor(currentNodeColor);
-                 g2d.fillOval(nodeDrawX, nodeDrawY, NODE_DIAMETER, NODE_DIAMETER);
-                 g2d.setColor(Color.BLACK); // Border
-                 g2d.drawOval(nodeDrawX, nodeDrawY, NODE_DIAMETER, NODE_DIAMETER);
-
-                 // Draw Node ID centered
-                 String nodeId = node.getId();
-                 int textWidth = nodeFm.stringWidth(nodeId);
-                 int textHeight = nodeFm.getAscent();
-                 g2d.setColor(Color.BLACK); // Text color
-                 g2d.drawString(nodeId, nodeCenterX - textWidth / 2, nodeCenterY + textHeight / 2 - 2);
+                 GraphLayer.drawNode(g2d, nodeFm, node.getX(), node.getY(), labels ? node.getId() : null, currentNodeColor);
              }
         }
 
@@ -586,16 +932,338 @@ public class FiretruckSimulator extends JFrame {
              }
          }
 
+        // The whole map at scale 1 up to a sensible window size; anything larger is
+        // reached by zooming and panning instead of growing the panel
         @Override
         public Dimension getPreferredSize() {
-            // Calculate bounds based on graph nodes
-            int maxX = PADDING * 2, maxY = PADDING * 2;
-            if (graph != null && !graph.getNodes().isEmpty()) {
-                maxX = graph.getNodes().values().stream().mapToInt(Node::getX).max().orElse(maxX - PADDING) + PADDING;
-                maxY = graph.getNodes().values().stream().mapToInt(Node::getY).max().orElse(maxY - PADDING) + PADDING;
+            Rectangle bounds = graphLayer.worldBounds();
+            return new Dimension(Math.max(800, Math.min(bounds.x + bounds.width + PADDING, 1200)),
+                    Math.max(600, Math.min(bounds.y + bounds.height + PADDING, 800)));
+        }
+    }
+
+    // --- Inner Class: Graph Layer ---
+    // Renders the static part of the map (edges, weight labels, nodes in their default
+    // colour) for one view into an offscreen image and keeps it until the view, panel size
+    // or background changes. Only elements near the visible area are touched: nodes come
+    // from a range query, edges from a range widened by the longest edge, so an edge that
+    // crosses the view with both ends outside it is still found. Detail drops as the map
+    // is zoomed out (see Detail). At the lowest level the whole map may be in view, so
+    // edges and node dots are written straight into the image's pixels, and edges that
+    // land on the same screen pixels are drawn once.
+    static final class GraphLayer {
+        // Labels and weights need readable node circles and few of them; circles need a
+        // few pixels each and stop paying off once tens of thousands are in view
+        enum Detail {
+            FULL, PLAIN, DOTS;
+
+            static Detail of(double scale, int visibleNodes) {
+                double diameter = NODE_DIAMETER * scale;
+                if (diameter >= 12 && visibleNodes <= 2_000) return FULL;
+                return (diameter >= 3 && visibleNodes <= 20_000) ? PLAIN : DOTS;
+            }
+        }
+
+        private static final int LABEL_MARGIN = 40; // World units a label may reach beyond its node or edge
+        private static final int MAX_PIXEL = (1 << 15) - 1; // Device pixels are clamped to +-MAX_PIXEL
+        private final GraphView graph;
+        private final SpatialIndex index;
+        private final double maxEdgeLength;
+        private final Rectangle bounds;
+
+        private int[] nodeColors; // RGB per node, null for NODE_COLOR everywhere
+        private BufferedImage image;
+        private double imageScale, imageViewX, imageViewY, imageDeviceScale;
+        private Color imageBackground;
+        private boolean stale; // Node colours changed since the last render
+        private Detail detail = Detail.FULL; // Of the last render
+
+        GraphLayer(GraphView graph, SpatialIndex index) {
+            this.graph = graph;
+            this.index = index;
+            double longest = 0;
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+            for (int u = 0; u < graph.nodeCount(); u++) {
+                minX = Math.min(minX, graph.x(u));
+                minY = Math.min(minY, graph.y(u));
+                maxX = Math.max(maxX, graph.x(u));
+                maxY = Math.max(maxY, graph.y(u));
+                for (int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++) {
+                    int v = graph.target(e);
+                    longest = Math.max(longest, Math.hypot(graph.x(v) - graph.x(u), graph.y(v) - graph.y(u)));
+                }
+            }
+            this.maxEdgeLength = longest;
+            this.bounds = (graph.nodeCount() == 0) ? new Rectangle() : new Rectangle(minX, minY, maxX - minX, maxY - minY);
+        }
+
+        Rectangle worldBounds() { return new Rectangle(bounds); }
+        Detail detail() { return detail; }
+
+        void setNodeColors(int[] rgb) {
+            nodeColors = rgb;
+            stale = true;
+        }
+
+        Color nodeColor(int node) {
+            return (nodeColors == null || node < 0) ? NODE_COLOR : new Color(nodeColors[node]);
+        }
+
+        // The layer for the given view, at the device resolution of the target graphics
+        BufferedImage render(Graphics2D target, int width, int height, double scale, double viewX, double viewY, Color background) {
+            double deviceScale = target.getTransform().getScaleX();
+            int pixelWidth = Math.max(1, (int) Math.ceil(width * deviceScale));
+            int pixelHeight = Math.max(1, (int) Math.ceil(height * deviceScale));
+            if (!stale && image != null && image.getWidth() == pixelWidth && image.getHeight() == pixelHeight && imageScale == scale
+                    && imageViewX == viewX && imageViewY == viewY && imageDeviceScale == deviceScale && background.equals(imageBackground)) {
+                return image;
+            }
+
+            if (image == null || image.getWidth() != pixelWidth || image.getHeight() != pixelHeight) {
+                image = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_RGB); // INT_RGB: DOTS writes its pixels
+            }
+            // Visible world rectangle
+            int minX = (int) Math.floor(viewX), minY = (int) Math.floor(viewY);
+            int maxX = (int) Math.ceil(viewX + width / scale), maxY = (int) Math.ceil(viewY + height / scale);
+            detail = Detail.of(scale, index.countInRange(minX, minY, maxX, maxY));
+            if (detail == Detail.DOTS) {
+                int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                Arrays.fill(pixels, background.getRGB());
+                rasterize(pixels, pixelWidth, pixelHeight, viewX, viewY, scale * deviceScale, minX, minY, maxX, maxY);
+            } else {
+                Graphics2D g = image.createGraphics();
+                try {
+                    g.setColor(background);
+                    g.fillRect(0, 0, pixelWidth, pixelHeight);
+                    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                    g.scale(deviceScale * scale, deviceScale * scale);
+                    g.translate(-viewX, -viewY);
+                    drawEdges(g, detail == Detail.FULL, background, scale * deviceScale, minX, minY, maxX, maxY);
+                    drawNodes(g, detail == Detail.FULL, viewX, viewY, scale * deviceScale, minX, minY, maxX, maxY);
+                } finally {
+                    g.dispose();
+                }
+            }
+            imageScale = scale;
+            imageViewX = viewX;
+            imageViewY = viewY;
+            imageDeviceScale = deviceScale;
+            imageBackground = background;
+            stale = false;
+            return image;
+        }
+
+        // Each undirected pair once: u -> v is skipped when u > v and v -> u exists
+        private void drawEdges(Graphics2D g, boolean weights, Color background, double pixelsPerUnit, int minX, int minY, int maxX, int maxY) {
+            g.setStroke(weights ? EDGE_STROKE : new BasicStroke((float) (1.0 / pixelsPerUnit))); // One device pixel when zoomed out
+            g.setFont(WEIGHT_FONT);
+            FontMetrics fm = g.getFontMetrics();
+            int margin = weights ? LABEL_MARGIN : 0;
+            int reach = (int) Math.ceil(maxEdgeLength) + margin;
+            index.range(minX - reach, minY - reach, maxX + reach, maxY + reach, u -> {
+                int x1 = graph.x(u), y1 = graph.y(u);
+                for (int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++) {
+                    int v = graph.target(e);
+                    if (v == u || (u > v && hasEdge(v, u))) continue;
+                    int x2 = graph.x(v), y2 = graph.y(v);
+                    if (Math.max(x1, x2) < minX - margin || Math.min(x1, x2) > maxX + margin
+                            || Math.max(y1, y2) < minY - margin || Math.min(y1, y2) > maxY + margin) continue;
+
+                    // Draw Edge Line
+                    g.setColor(EDGE_COLOR);
+                    g.drawLine(x1, y1, x2, y2);
+
+                    // Draw Edge Weight
+                    if (weights) drawWeightText(g, fm, background, graph.weight(e), x1, y1, x2, y2);
+                }
+            });
+        }
+
+        // Lowest detail: one-pixel edges and 2x2 node dots written into the pixel array. An
+        // edge within a single pixel is covered by its node dots, and edges between the same
+        // two pixels are drawn once.
+        private void rasterize(int[] pixels, int width, int height, double viewX, double viewY, double pixelsPerUnit,
+                               int minX, int minY, int maxX, int maxY) {
+            int edgeRgb = EDGE_COLOR.getRGB(), nodeRgb = NODE_COLOR.getRGB();
+            int reach = (int) Math.ceil(maxEdgeLength);
+            LongHashSet drawn = new LongHashSet();
+            index.range(minX - reach, minY - reach, maxX + reach, maxY + reach, u -> {
+                int x1 = graph.x(u), y1 = graph.y(u);
+                int px1 = pixel(x1, viewX, pixelsPerUnit), py1 = pixel(y1, viewY, pixelsPerUnit);
+                for (int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++) {
+                    int v = graph.target(e);
+                    int px2 = pixel(graph.x(v), viewX, pixelsPerUnit), py2 = pixel(graph.y(v), viewY, pixelsPerUnit);
+                    if ((px1 == px2 && py1 == py2) || Math.max(px1, px2) < 0 || Math.min(px1, px2) >= width
+                            || Math.max(py1, py2) < 0 || Math.min(py1, py2) >= height) continue;
+                    long a = packPixel(px1, py1), b = packPixel(px2, py2);
+                    if (!drawn.add((Math.min(a, b) << 32) | Math.max(a, b))) continue;
+                    drawLine(pixels, width, height, px1, py1, px2, py2, edgeRgb);
+                }
+            });
+            int[] colors = nodeColors;
+            index.range(minX, minY, maxX, maxY, u -> {
+                int px = pixel(graph.x(u), viewX, pixelsPerUnit), py = pixel(graph.y(u), viewY, pixelsPerUnit);
+                int rgb = (colors == null) ? nodeRgb : colors[u];
+                for (int y = Math.max(py - 1, 0); y <= Math.min(py, height - 1); y++) {
+                    for (int x = Math.max(px - 1, 0); x <= Math.min(px, width - 1); x++) pixels[y * width + x] = rgb;
+                }
+            });
+        }
+
+        // Device pixel of a world coordinate, clamped so far-away points cannot overflow
+        private static int pixel(int world, double view, double pixelsPerUnit) {
+            return (int) Math.max(-MAX_PIXEL, Math.min(MAX_PIXEL, Math.floor((world - view) * pixelsPerUnit)));
+        }
+
+        // A clamped pixel as two offset, non-negative 16-bit halves: distinct pixels give
+        // distinct keys below 2^32, so two of them fit one long without colliding
+        private static long packPixel(int px, int py) {
+            return ((long) (px + MAX_PIXEL) << 16) | (py + MAX_PIXEL);
+        }
+
+        // Bresenham; pixels outside the image are skipped
+        private static void drawLine(int[] pixels, int width, int height, int x0, int y0, int x1, int y1, int rgb) {
+            int dx = Math.abs(x1 - x0), dy = -Math.abs(y1 - y0);
+            int sx = (x0 < x1) ? 1 : -1, sy = (y0 < y1) ? 1 : -1;
+            int error = dx + dy;
+            while (true) {
+                if (x0 >= 0 && x0 < width && y0 >= 0 && y0 < height) pixels[y0 * width + x0] = rgb;
+                if (x0 == x1 && y0 == y1) return;
+                int twice = 2 * error;
+                if (twice >= dy) { error += dy; x0 += sx; }
+                if (twice <= dx) { error += dx; y0 += sy; }
+            }
+        }
+
+        private boolean hasEdge(int from, int to) {
+            for (int e = graph.firstEdge(from), end = graph.endEdge(from); e < end; e++) {
+                if (graph.target(e) == to) return true;
+            }
+            return false;
+        }
+
+        // Nodes only differ by colour here, so the antialiased circle (most of the cost
+        // otherwise) is drawn once per colour into a sprite that is copied to every node's
+        // device pixel
+        private void drawNodes(Graphics2D g, boolean labels, double viewX, double viewY, double pixelsPerUnit,
+                               int minX, int minY, int maxX, int maxY) {
+            double half = NODE_DIAMETER / 2.0 + 1; // Radius plus the border stroke
+            int size = (int) Math.ceil(2 * half * pixelsPerUnit);
+            Map<Integer, BufferedImage> sprites = new HashMap<>();
+            int[] colors = nodeColors;
+
+            Graphics2D device = (Graphics2D) g.create();
+            device.setTransform(new AffineTransform());
+            g.setFont(NODE_FONT);
+            g.setColor(Color.BLACK); // Text color
+            FontMetrics nodeFm = g.getFontMetrics();
+            int reach = labels ? NODE_DIAMETER : NODE_DIAMETER / 2;
+            index.range(minX - reach, minY - reach, maxX + reach, maxY + reach, u -> {
+                int x = graph.x(u), y = graph.y(u);
+                BufferedImage sprite = sprites.computeIfAbsent((colors == null) ? NODE_COLOR.getRGB() : colors[u], rgb -> {
+                    BufferedImage circle = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+                    Graphics2D spriteGraphics = circle.createGraphics();
+                    spriteGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    spriteGraphics.scale(pixelsPerUnit, pixelsPerUnit);
+                    spriteGraphics.translate(half, half);
+                    drawNode(spriteGraphics, null, 0, 0, null, new Color(rgb));
+                    spriteGraphics.dispose();
+                    return circle;
+                });
+                device.drawImage(sprite, (int) Math.round((x - viewX - half) * pixelsPerUnit),
+                        (int) Math.round((y - viewY - half) * pixelsPerUnit), null);
+                if (labels) {
+                    String id = graph.node(u).getId();
+                    g.drawString(id, x - nodeFm.stringWidth(id) / 2, y + nodeFm.getAscent() / 2 - 2);
+                }
+            });
+            device.dispose();
+        }
+
+        // Node circle with a border and, when given, its centered id
+        static void drawNode(Graphics2D g2d, FontMetrics nodeFm, int nodeCenterX, int nodeCenterY, String label, Color color) {
+            int nodeDrawX = nodeCenterX - NODE_DIAMETER / 2;
+            int nodeDrawY = nodeCenterY - NODE_DIAMETER / 2;
+
+            // Draw node circle
+            g2d.setColor(color);
+            g2d.fillOval(nodeDrawX, nodeDrawY, NODE_DIAMETER, NODE_DIAMETER);
+            g2d.setColor(Color.BLACK); // Border
+            g2d.drawOval(nodeDrawX, nodeDrawY, NODE_DIAMETER, NODE_DIAMETER);
+
+            // Draw Node ID centered
+            if (label == null) return;
+            int textWidth = nodeFm.stringWidth(label);
+            int textHeight = nodeFm.getAscent();
+            g2d.setColor(Color.BLACK); // Text color
+            g2d.drawString(label, nodeCenterX - textWidth / 2, nodeCenterY + textHeight / 2 - 2);
+        }
+
+        private static void drawWeightText(Graphics2D g2d, FontMetrics fm, Color background, double weight, int x1, int y1, int x2, int y2) {
+            int midX = (x1 + x2) / 2;
+            int midY = (y1 + y2) / 2;
+            String weightStr = String.format("%.0f", weight);
+            int textWidth = fm.stringWidth(weightStr);
+            int textHeight = fm.getAscent();
+
+            // Calculate angle for offset (more robust placement)
+            double angle = Math.atan2(y2 - y1, x2 - x1);
+            int offsetX = (int) (Math.sin(angle) * 8); // Perpendicular offset
+            int offsetY = (int) (-Math.cos(angle) * 8);
+
+             // Adjust offset if text goes "under" the line based on angle
+            if (angle > 0 && angle < Math.PI) { // Primarily downward slope
+                 // No change needed typically
+            } else { // Primarily upward slope
+                 offsetY -= textHeight/2; // Shift slightly more
+            }
+
+
+            int textX = midX + offsetX;
+            int textY = midY + offsetY + textHeight / 2; // Center vertically better
+
+
+            // Background for readability
+            g2d.setColor(background); // Use panel background color
+            g2d.fillRect(textX - textWidth / 2 - 2, textY - textHeight, textWidth + 4, textHeight + 2);
+
+            // Weight Text
+            g2d.setColor(WEIGHT_COLOR);
+            g2d.drawString(weightStr, textX - textWidth / 2, textY - 1); // Draw centered
+        }
+
+        // Open-addressing set of longs for de-duplicating merged edges within one render
+        private static final class LongHashSet {
+            private long[] keys = new long[1024];
+            private boolean[] used = new boolean[1024];
+            private int size;
+
+            boolean add(long key) {
+                if (2 * (size + 1) > keys.length) grow();
+                int mask = keys.length - 1;
+                long hash = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL; // Keys of nearby pixels differ in few bits
+                int i = (int) (hash ^ (hash >>> 33)) & mask;
+                while (used[i]) {
+                    if (keys[i] == key) return false;
+                    i = (i + 1) & mask;
+                }
+                used[i] = true;
+                keys[i] = key;
+                size++;
+                return true;
+            }
+
+            private void grow() {
+                long[] oldKeys = keys;
+                boolean[] oldUsed = used;
+                keys = new long[oldKeys.length * 2];
+                used = new boolean[oldKeys.length * 2];
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldUsed[i]) add(oldKeys[i]);
+                }
             }
-            // Ensure minimum size
-            return new Dimension(Math.max(maxX, 800), Math.max(maxY, 600));
         }
     }
 
@@ -612,43 +1280,128 @@ public class FiretruckSimulator extends JFrame {
         @Override public int hashCode() { return Objects.hash(id); }
     }
 
-    // --- Inner Class: Graph (Unchanged) ---
+    // --- Inner Class: Graph ---
+    // Not synchronized: build it on one thread, then it (and its Nodes) can be shared
+    // read-only by any number of routing threads as long as nobody modifies it.
     static class Graph {
         private final Map<String, Node> nodes;
+        private volatile long version; // Bumped by every successful change; cached routes are keyed by it
         public Graph() { this.nodes = new HashMap<>(); }
-        public void addNode(String id, int x, int y) { if (!nodes.containsKey(id)) nodes.put(id, new Node(id, x, y)); else System.err.println("Warning: Node ID '" + id + "' exists."); }
+        public void addNode(String id, int x, int y) { if (!nodes.containsKey(id)) { nodes.put(id, new Node(id, x, y)); version++; } else System.err.println("Warning: Node ID '" + id + "' exists."); }
         public Node getNode(String id) { return nodes.get(id); }
         public Map<String, Node> getNodes() { return Collections.unmodifiableMap(nodes); }
+        public long getVersion() { return version; }
         public void addEdge(String id1, String id2, double weight) { addEdge(id1, id2, weight, true); }
         public void addEdge(String id1, String id2, double weight, boolean undirected) {
             Node n1 = nodes.get(id1), n2 = nodes.get(id2);
-            if (n1 != null && n2 != null && weight >= 0) { n1.addNeighbor(n2, weight); if (undirected) n2.addNeighbor(n1, weight); }
+            if (n1 != null && n2 != null && weight >= 0) { n1.addNeighbor(n2, weight); if (undirected) n2.addNeighbor(n1, weight); version++; }
             else if (weight < 0) System.err.println("Warning: Negative edge weight (" + id1 + "<->" + id2 + ").");
             else System.err.println("Warning: Add edge failed for " + id1 + ", " + id2 + ". Node(s) not found?");
         }
+
+        // --- Edge updates (traffic, closures) ---
+        // Only existing edges can be changed. A closed edge keeps its place with an infinite
+        // weight, so searches never use it; its open weight is remembered for reopenEdge.
+        // Listeners hear about every directed edge whose effective weight changed.
+        private final Map<Node, Map<Node, Double>> closedWeights = new HashMap<>();
+        private final List<EdgeUpdateListener> edgeUpdateListeners = new ArrayList<>();
+
+        public void addEdgeUpdateListener(EdgeUpdateListener listener) { edgeUpdateListeners.add(listener); }
+        public void removeEdgeUpdateListener(EdgeUpdateListener listener) { edgeUpdateListeners.remove(listener); }
+
+        public boolean setEdgeWeight(String id1, String id2, double weight) { return setEdgeWeight(id1, id2, weight, true); }
+        public boolean setEdgeWeight(String id1, String id2, double weight, boolean undirected) {
+            if (weight < 0 || Double.isNaN(weight)) { System.err.println("Warning: Invalid edge weight (" + id1 + "<->" + id2 + ")."); return false; }
+            boolean changed = updateDirected(id1, id2, weight, false);
+            if (undirected) changed |= updateDirected(id2, id1, weight, false);
+            return changed;
+        }
+
+        public boolean closeEdge(String id1, String id2) { return closeEdge(id1, id2, true); }
+        public boolean closeEdge(String id1, String id2, boolean undirected) {
+            boolean changed = updateDirected(id1, id2, Double.POSITIVE_INFINITY, true);
+            if (undirected) changed |= updateDirected(id2, id1, Double.POSITIVE_INFINITY, true);
+            return changed;
+        }
+
+        public boolean reopenEdge(String id1, String id2) { return reopenEdge(id1, id2, true); }
+        public boolean reopenEdge(String id1, String id2, boolean undirected) {
+            boolean changed = reopenDirected(id1, id2);
+            if (undirected) changed |= reopenDirected(id2, id1);
+            return changed;
+        }
+
+        public boolean isEdgeClosed(String id1, String id2) {
+            Node n1 = nodes.get(id1), n2 = nodes.get(id2);
+            return n1 != null && n2 != null && closedWeights.getOrDefault(n1, Collections.emptyMap()).containsKey(n2);
+        }
+
+        // close: weight is +inf and the current open weight must be remembered
+        private boolean updateDirected(String id1, String id2, double weight, boolean close) {
+            Node from = nodes.get(id1), to = nodes.get(id2);
+            if (from == null || to == null || !from.getAdjacencies().containsKey(to)) return false;
+            Map<Node, Double> closedFrom = closedWeights.get(from);
+            if (closedFrom != null && closedFrom.containsKey(to)) {
+                if (!close) closedFrom.put(to, weight); // Still closed; takes effect on reopen
+                return false;
+            }
+            if (close) closedWeights.computeIfAbsent(from, k -> new HashMap<>()).put(to, from.getAdjacencies().get(to));
+            return applyWeight(from, to, weight);
+        }
+
+        private boolean reopenDirected(String id1, String id2) {
+            Node from = nodes.get(id1), to = nodes.get(id2);
+            Map<Node, Double> closedFrom = (from == null) ? null : closedWeights.get(from);
+            if (closedFrom == null || !closedFrom.containsKey(to)) return false;
+            double weight = closedFrom.remove(to);
+            if (closedFrom.isEmpty()) closedWeights.remove(from);
+            return applyWeight(from, to, weight);
+        }
+
+        private boolean applyWeight(Node from, Node to, double weight) {
+            double old = from.getAdjacencies().get(to);
+            if (old == weight) return false;
+            from.addNeighbor(to, weight);
+            version++;
+            for (EdgeUpdateListener listener : edgeUpdateListeners) listener.edgeWeightChanged(from, to, old, weight);
+            return true;
+        }
+    }
+
+    // --- Interface: Edge Update Listener ---
+    // Called on the updating thread after a directed edge's weight changed (+inf when closed).
+    interface EdgeUpdateListener {
+        void edgeWeightChanged(Node from, Node to, double oldWeight, double newWeight);
     }
 
-    // --- Inner Class: Dijkstra's Algorithm (Unchanged) ---
+    // --- Inner Class: Dijkstra's Algorithm ---
+    // Stateless: all search state is local to the call, so concurrent queries are safe.
+    // Only nodes the search reaches get a distance entry (missing means infinity).
     static class Dijkstra {
+        private static final RouteMetrics.Search METRICS = RouteMetrics.search("dijkstra-classic");
+
         public static DijkstraResult findShortestPath(Graph graph, Node startNode, Node endNode) {
             Map<Node, Double> dist = new HashMap<>(); Map<Node, Node> pred = new HashMap<>();
             PriorityQueue<Map.Entry<Node, Double>> pq = new PriorityQueue<>(Comparator.comparingDouble(Map.Entry::getValue));
             Set<Node> visited = new HashSet<>();
-            graph.getNodes().values().forEach(node -> dist.put(node, Double.POSITIVE_INFINITY));
+            int relaxed = 0, pushes = 1, pops = 0, stale = 0; // Reported once per query when metrics are on
             dist.put(startNode, 0.0); pq.add(new AbstractMap.SimpleEntry<>(startNode, 0.0));
             while (!pq.isEmpty()) {
-                Node curr = pq.poll().getKey(); if (!visited.add(curr)) continue; if (curr.equals(endNode)) break;
+                Node curr = pq.poll().getKey(); pops++;
+                if (!visited.add(curr)) { stale++; continue; } // Outdated duplicate entry
+                if (curr.equals(endNode)) break;
                 for (Map.Entry<Node, Double> adj : curr.getAdjacencies().entrySet()) {
-                    Node neighbor = adj.getKey(); double edgeW = adj.getValue();
+                    Node neighbor = adj.getKey(); double edgeW = adj.getValue(); relaxed++;
                     if (visited.contains(neighbor)) continue;
                     double newDist = dist.get(curr) + edgeW;
-                    if (newDist < dist.get(neighbor)) {
+                    if (newDist < dist.getOrDefault(neighbor, Double.POSITIVE_INFINITY)) {
                         dist.put(neighbor, newDist); pred.put(neighbor, curr);
-                        pq.add(new AbstractMap.SimpleEntry<>(neighbor, newDist));
+                        pq.add(new AbstractMap.SimpleEntry<>(neighbor, newDist)); pushes++;
                     }
                 }
             }
-            LinkedList<Node> path = new LinkedList<>(); Node step = endNode; double finalDist = dist.get(endNode);
+            if (RouteMetrics.ENABLED) METRICS.record(visited.size(), relaxed, pushes, pops, stale);
+            LinkedList<Node> path = new LinkedList<>(); Node step = endNode; double finalDist = dist.getOrDefault(endNode, Double.POSITIVE_INFINITY);
             if (Double.isInfinite(finalDist) && !startNode.equals(endNode)) return new DijkstraResult(null, Double.POSITIVE_INFINITY);
             path.addFirst(step); while (pred.containsKey(step)) { step = pred.get(step); path.addFirst(step); }
             if (!path.isEmpty() && !path.getFirst().equals(startNode)) return new DijkstraResult(null, Double.POSITIVE_INFINITY); // Path reconstruction sanity check
@@ -659,15 +1412,5393 @@ public class FiretruckSimulator extends JFrame {
     // --- Inner Class: Dijkstra Result Holder (Added hasPath helper) ---
     static class DijkstraResult {
         private final List<Node> path; private final double distance;
-        public DijkstraResult(List<Node> path, double distance) {
+        private final int settledNodes; // Nodes popped from the queue, -1 if the engine does not report it
+        public DijkstraResult(List<Node> path, double distance) { this(path, distance, -1); }
+        public DijkstraResult(List<Node> path, double distance, int settledNodes) {
             this.path = (Double.isFinite(distance) || (path != null && !path.isEmpty())) ? path : null; // Ensure path is null if distance infinite
             this.distance = distance;
+            this.settledNodes = settledNodes;
         }
         public List<Node> getPath() { return path; }
         public double getDistance() { return distance; }
+        public int getSettledNodes() { return settledNodes; }
         public boolean hasPath() { return path != null && !path.isEmpty() && Double.isFinite(distance); }
     }
 
+    // --- Interface: Graph View ---
+    // Read-only adjacency in CSR form: nodes are dense indices [0, nodeCount()) and the
+    // out-edges of u are the edge ids [firstEdge(u), endEdge(u)). Implemented by the heap
+    // snapshot (CsrGraph) and the memory-mapped one (MappedGraph), so searches written
+    // against it run on either.
+    interface GraphView {
+        int nodeCount();
+        int edgeCount();
+        int firstEdge(int node);
+        int endEdge(int node); // Exclusive
+        int target(int edge);
+        double weight(int edge);
+        int x(int node);
+        int y(int node);
+        Node node(int index);
+        int indexOf(Node node); // -1 when the node is not part of the graph
+        int indexOf(String id);
+
+        // Walks a predecessor array back from target and returns the Node path
+        default List<Node> buildPath(int[] pred, int target) {
+            LinkedList<Node> path = new LinkedList<>();
+            for (int step = target; step != -1; step = pred[step]) {
+                path.addFirst(node(step));
+            }
+            return path;
+        }
+    }
+
+    // --- Inner Class: CSR Graph Snapshot ---
+    // Frozen, read-only copy of a Graph in compressed-sparse-row form. Nodes get dense
+    // int indices (sorted by id) and the out-edges of node u are stored in
+    // targets[offsets[u] .. offsets[u + 1]) with the matching entries in weights.
+    // Snapshots built by GraphLoader have no Graph behind them; their Node objects are
+    // only created when a caller asks for one (racing threads may create equal copies).
+    static final class CsrGraph implements GraphView {
+        private final Node[] nodes;
+        final int[] offsets;
+        final int[] targets;
+        final double[] weights;
+        final int[] xs;
+        final int[] ys;
+        final long version; // Graph version the snapshot was taken at
+        private final NodeIds ids;
+
+        private CsrGraph(Node[] nodes, int[] offsets, int[] targets, double[] weights,
+                         int[] xs, int[] ys, NodeIds ids, long version) {
+            this.nodes = nodes;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.weights = weights;
+            this.xs = xs;
+            this.ys = ys;
+            this.ids = ids;
+            this.version = version;
+        }
+
+        public static CsrGraph of(Graph graph) {
+            long version = graph.getVersion();
+            Node[] nodes = graph.getNodes().values().toArray(new Node[0]);
+            Arrays.sort(nodes, Comparator.comparing(Node::getId));
+            int n = nodes.length;
+
+            String[] idByIndex = new String[n];
+            Map<String, Integer> indexById = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                idByIndex[i] = nodes[i].getId();
+                indexById.put(nodes[i].getId(), i);
+            }
+
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                offsets[i + 1] = offsets[i] + nodes[i].getAdjacencies().size();
+            }
+
+            int[] targets = new int[offsets[n]];
+            double[] weights = new double[offsets[n]];
+            int[] xs = new int[n], ys = new int[n];
+            for (int i = 0; i < n; i++) {
+                xs[i] = nodes[i].getX();
+                ys[i] = nodes[i].getY();
+                int e = offsets[i];
+                for (Map.Entry<Node, Double> adj : nodes[i].getAdjacencies().entrySet()) {
+                    targets[e] = indexById.get(adj.getKey().getId());
+                    weights[e] = adj.getValue();
+                    e++;
+                }
+            }
+            return new CsrGraph(nodes, offsets, targets, weights, xs, ys, NodeIds.of(idByIndex, indexById), version);
+        }
+
+        // Builds a snapshot straight from an edge list (sources[i] -> targets[i] with weights[i],
+        // node indices in [0, ids.count())). Edges are bucketed by source with a counting sort;
+        // the input arrays are not kept.
+        static CsrGraph fromEdges(NodeIds ids, int[] xs, int[] ys, int edgeCount, int[] sources, int[] edgeTargets, double[] edgeWeights) {
+            int n = ids.count();
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < edgeCount; i++) offsets[sources[i] + 1]++;
+            for (int u = 0; u < n; u++) offsets[u + 1] += offsets[u];
+
+            int[] next = Arrays.copyOf(offsets, n);
+            int[] targets = new int[edgeCount];
+            double[] weights = new double[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                int slot = next[sources[i]]++;
+                targets[slot] = edgeTargets[i];
+                weights[slot] = edgeWeights[i];
+            }
+            return new CsrGraph(new Node[n], offsets, targets, weights, xs, ys, ids, 0L);
+        }
+
+        // Returns the reversed graph: every edge u -> v becomes v -> u with the same weight.
+        // Node indices are shared with this snapshot, so results map back directly.
+        public CsrGraph transpose() {
+            int n = nodeCount();
+            int[] revOffsets = new int[n + 1];
+            for (int v : targets) revOffsets[v + 1]++;
+            for (int i = 0; i < n; i++) revOffsets[i + 1] += revOffsets[i];
+
+            int[] next = Arrays.copyOf(revOffsets, n);
+            int[] revTargets = new int[targets.length];
+            double[] revWeights = new double[targets.length];
+            for (int u = 0; u < n; u++) {
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int slot = next[targets[e]]++;
+                    revTargets[slot] = u;
+                    revWeights[slot] = weights[e];
+                }
+            }
+            return new CsrGraph(nodes, revOffsets, revTargets, revWeights, xs, ys, ids, version);
+        }
+
+        public int nodeCount() { return nodes.length; }
+        public int edgeCount() { return targets.length; }
+        public long version() { return version; }
+        public int firstEdge(int node) { return offsets[node]; }
+        public int endEdge(int node) { return offsets[node + 1]; }
+        public int target(int edge) { return targets[edge]; }
+        public double weight(int edge) { return weights[edge]; }
+        public int x(int node) { return xs[node]; }
+        public int y(int node) { return ys[node]; }
+        String id(int index) { return ids.idOf(index); }
+
+        public Node node(int index) {
+            Node node = nodes[index];
+            if (node == null) nodes[index] = node = new Node(ids.idOf(index), xs[index], ys[index]);
+            return node;
+        }
+
+        // Returns the dense index of the node, or -1 if it is not part of this snapshot
+        public int indexOf(Node node) {
+            return (node != null) ? ids.indexOf(node.getId()) : -1;
+        }
+
+        public int indexOf(String id) { return ids.indexOf(id); }
+    }
+
+    // --- Interface: Node Ids ---
+    // Maps CSR node indices to node id strings and back.
+    interface NodeIds {
+        int count();
+        String idOf(int index);
+        int indexOf(String id); // -1 when unknown
+
+        static NodeIds of(String[] idByIndex, Map<String, Integer> indexById) {
+            return new NodeIds() {
+                public int count() { return idByIndex.length; }
+                public String idOf(int index) { return idByIndex[index]; }
+                public int indexOf(String id) {
+                    Integer index = indexById.get(id);
+                    return (index != null) ? index : -1;
+                }
+            };
+        }
+
+        // Ids "first", "first + 1", ... as in DIMACS files; nothing is stored per node
+        static NodeIds numbered(int count, int first) {
+            return new NodeIds() {
+                public int count() { return count; }
+                public String idOf(int index) { return Integer.toString(index + first); }
+                public int indexOf(String id) {
+                    try {
+                        long index = Long.parseLong(id) - first;
+                        return (index >= 0 && index < count) ? (int) index : -1;
+                    } catch (NumberFormatException e) {
+                        return -1;
+                    }
+                }
+            };
+        }
+    }
+
+    // --- Inner Class: Indexed Min-Heap ---
+    // 4-ary min-heap over int items [0, capacity) with decrease-key. pos[item] is the
+    // item's slot in the heap array, or -1 when it is not queued.
+    static final class IndexedMinHeap {
+        private static final int ARITY = 4;
+        private final int[] heap;
+        private final int[] pos;
+        private final double[] keys;
+        private int size;
+
+        IndexedMinHeap(int capacity) {
+            heap = new int[capacity];
+            pos = new int[capacity];
+            keys = new double[capacity];
+            Arrays.fill(pos, -1);
+        }
+
+        boolean isEmpty() { return size == 0; }
+        int size() { return size; }
+        boolean contains(int item) { return pos[item] >= 0; }
+        double key(int item) { return keys[item]; }
+        int peek() { return heap[0]; }
+        double peekKey() { return keys[heap[0]]; }
+
+        // Inserts the item, or lowers its key if it is already queued with a larger one
+        void insertOrDecrease(int item, double key) {
+            if (pos[item] < 0) {
+                keys[item] = key;
+                heap[size] = item;
+                pos[item] = size;
+                siftUp(size++);
+            } else if (key < keys[item]) {
+                keys[item] = key;
+                siftUp(pos[item]);
+            }
+        }
+
+        int poll() {
+            int top = heap[0];
+            pos[top] = -1;
+            if (--size > 0) {
+                heap[0] = heap[size];
+                pos[heap[0]] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        // Sets the item's key whether it grows or shrinks, inserting it if needed
+        void update(int item, double key) {
+            if (pos[item] < 0) {
+                insertOrDecrease(item, key);
+            } else {
+                keys[item] = key;
+                siftUp(pos[item]);
+                siftDown(pos[item]);
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) pos[heap[i]] = -1;
+            size = 0;
+        }
+
+        private void siftUp(int i) {
+            int item = heap[i];
+            double key = keys[item];
+            while (i > 0) {
+                int parent = (i - 1) / ARITY;
+                int parentItem = heap[parent];
+                if (keys[parentItem] <= key) break;
+                heap[i] = parentItem;
+                pos[parentItem] = i;
+                i = parent;
+            }
+            heap[i] = item;
+            pos[item] = i;
+        }
+
+        private void siftDown(int i) {
+            int item = heap[i];
+            double key = keys[item];
+            while (true) {
+                int first = i * ARITY + 1;
+                if (first >= size) break;
+                int best = first;
+                int last = Math.min(first + ARITY, size);
+                for (int c = first + 1; c < last; c++) {
+                    if (keys[heap[c]] < keys[heap[best]]) best = c;
+                }
+                if (keys[heap[best]] >= key) break;
+                heap[i] = heap[best];
+                pos[heap[i]] = i;
+                i = best;
+            }
+            heap[i] = item;
+            pos[item] = i;
+        }
+    }
+
+    // --- Inner Class: Query Context ---
+    // Reusable working state for one search: per-node distance, predecessor and stamp arrays
+    // plus an IndexedMinHeap, for a forward side and (allocated on first use) a backward side.
+    // Nothing is refilled between queries. An entry only counts while its stamp equals the
+    // context's current query, so starting a query is O(1) plus draining what the previous
+    // one left in the heaps, and a search costs only the nodes it touches. Contexts are
+    // borrowed from a small process-wide pool with acquire() and handed back by close(), so
+    // steady-state queries allocate no search state at all. A pool rather than a ThreadLocal
+    // also serves virtual threads (one per RouteServer request), and nested searches simply
+    // borrow a second context. Arrays must not be used after close().
+    static final class QueryContext implements AutoCloseable {
+        private static final AtomicReferenceArray<QueryContext> POOL =
+                new AtomicReferenceArray<>(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        private final int capacity;
+        final Side forward;
+        private Side backward;
+        private int current;
+
+        private QueryContext(int capacity) {
+            this.capacity = capacity;
+            this.forward = new Side(capacity);
+        }
+
+        // A context for graphs of up to nodeCount nodes, ready for a new query. A pooled context
+        // that is too small is dropped for a bigger one, so the pool settles at the largest graph.
+        static QueryContext acquire(int nodeCount) {
+            int slots = POOL.length(), first = (int) (Thread.currentThread().getId() % slots);
+            for (int i = 0; i < slots; i++) {
+                QueryContext context = POOL.getAndSet((first + i) % slots, null);
+                if (context != null && context.capacity >= nodeCount) {
+                    context.begin();
+                    return context;
+                }
+            }
+            QueryContext context = new QueryContext(nodeCount);
+            context.begin();
+            return context;
+        }
+
+        // The backward side for bidirectional searches, allocated the first time it is needed
+        Side backward() {
+            if (backward == null) backward = new Side(capacity);
+            return backward;
+        }
+
+        int capacity() { return capacity; }
+
+        // Starts a new query on the same context (for several searches in one borrow)
+        void begin() {
+            forward.heap.clear();
+            if (backward != null) backward.heap.clear();
+            if (++current == Integer.MAX_VALUE) { // Stamp wrapped: clear for real once
+                Arrays.fill(forward.stamp, 0);
+                if (backward != null) Arrays.fill(backward.stamp, 0);
+                current = 1;
+            }
+        }
+
+        // Back to the pool; dropped if every slot is taken
+        @Override
+        public void close() {
+            int slots = POOL.length(), first = (int) (Thread.currentThread().getId() % slots);
+            for (int i = 0; i < slots; i++) {
+                if (POOL.compareAndSet((first + i) % slots, null, this)) return;
+            }
+        }
+
+        // One search direction. pred holds whatever the search chooses (node or edge index), -1 at the root.
+        final class Side {
+            final double[] dist;
+            final int[] pred;
+            private final int[] stamp;
+            final IndexedMinHeap heap;
+
+            private Side(int capacity) {
+                dist = new double[capacity];
+                pred = new int[capacity];
+                stamp = new int[capacity];
+                heap = new IndexedMinHeap(capacity);
+            }
+
+            // Infinity for nodes this query has not labelled
+            double distance(int v) { return stamp[v] == current ? dist[v] : Double.POSITIVE_INFINITY; }
+
+            boolean isLabelled(int v) { return stamp[v] == current; }
+
+            // Forgets v for the rest of the query, so a search can restart one side from the
+            // nodes it touched without a new begin() clearing the other side too
+            void unlabel(int v) { stamp[v] = 0; }
+
+            void label(int v, double d, int predecessor) {
+                dist[v] = d;
+                pred[v] = predecessor;
+                stamp[v] = current;
+            }
+        }
+    }
+
+    // --- Inner Class: Dijkstra over a CSR snapshot ---
+    // Same contract as Dijkstra.findShortestPath, but all per-query state lives in
+    // primitive arrays indexed by node and the queue uses decrease-key instead of
+    // pushing a new entry for every improvement. Runs on heap or memory-mapped graphs.
+    // The arrays come from a pooled QueryContext, so only the result path is allocated.
+    static final class CsrDijkstra {
+        private static final RouteMetrics.Search METRICS = RouteMetrics.search("dijkstra");
+
+        public static DijkstraResult findShortestPath(GraphView csr, Node startNode, Node endNode) {
+            int source = csr.indexOf(startNode);
+            int target = csr.indexOf(endNode);
+            if (source < 0 || target < 0) return new DijkstraResult(null, Double.POSITIVE_INFINITY);
+
+            try (QueryContext context = QueryContext.acquire(csr.nodeCount())) {
+                QueryContext.Side q = context.forward;
+                IndexedMinHeap heap = q.heap;
+                int settled = 0, relaxed = 0, pushes = 1;
+                q.label(source, 0.0, -1);
+                heap.insertOrDecrease(source, 0.0);
+                while (!heap.isEmpty()) {
+                    int u = heap.poll();
+                    settled++;
+                    if (u == target) break;
+                    double du = q.dist[u];
+                    for (int e = csr.firstEdge(u), end = csr.endEdge(u); e < end; e++, relaxed++) {
+                        int v = csr.target(e);
+                        double newDist = du + csr.weight(e);
+                        // Settled nodes can never improve with non-negative weights, so no visited set is needed
+                        if (newDist < q.distance(v)) {
+                            q.label(v, newDist, u);
+                            heap.insertOrDecrease(v, newDist);
+                            pushes++;
+                        }
+                    }
+                }
+                if (RouteMetrics.ENABLED) METRICS.record(settled, relaxed, pushes, settled, 0);
+
+                if (!q.isLabelled(target)) return new DijkstraResult(null, Double.POSITIVE_INFINITY, settled);
+                return new DijkstraResult(csr.buildPath(q.pred, target), q.dist[target], settled);
+            }
+        }
+    }
+
+    // --- Interface: Routing Engine ---
+    // A point-to-point shortest path strategy. Implementations must be safe to call
+    // with any two nodes of the graph they were built for.
+    interface RoutingEngine {
+        DijkstraResult findShortestPath(Node startNode, Node endNode);
+    }
+
+    // --- Inner Class: Bidirectional Dijkstra ---
+    // Runs a forward search from the start over the graph and a backward search from
+    // the end over the transposed graph, always expanding the side with the smaller
+    // queue head. Stops once topForward + topBackward >= the best meeting distance.
+    // Works for directed graphs since the backward side uses the real reverse edges.
+    static final class BidirectionalDijkstra implements RoutingEngine {
+        private static final RouteMetrics.Search METRICS = RouteMetrics.search("bidirectional");
+        private final CsrGraph forward;
+        private final CsrGraph backward;
+
+        BidirectionalDijkstra(CsrGraph forward) {
+            this.forward = forward;
+            this.backward = forward.transpose();
+        }
+
+        @Override
+        public DijkstraResult findShortestPath(Node startNode, Node endNode) {
+            int source = forward.indexOf(startNode);
+            int target = forward.indexOf(endNode);
+            if (source < 0 || target < 0) return new DijkstraResult(null, Double.POSITIVE_INFINITY);
+            if (source == target) return new DijkstraResult(List.of(startNode), 0.0, 1);
+
+            try (QueryContext context = QueryContext.acquire(forward.nodeCount())) {
+                QueryContext.Side qF = context.forward, qB = context.backward(); // qB.pred points towards the target
+                qF.label(source, 0.0, -1);
+                qB.label(target, 0.0, -1);
+                qF.heap.insertOrDecrease(source, 0.0);
+                qB.heap.insertOrDecrease(target, 0.0);
+                double best = Double.POSITIVE_INFINITY;
+                int meeting = -1;
+                int settled = 0, relaxed = 0, pushes = 2;
+
+                while (true) {
+                    double topF = qF.heap.isEmpty() ? Double.POSITIVE_INFINITY : qF.heap.peekKey();
+                    double topB = qB.heap.isEmpty() ? Double.POSITIVE_INFINITY : qB.heap.peekKey();
+                    if (topF + topB >= best || (qF.heap.isEmpty() && qB.heap.isEmpty())) break;
+
+                    boolean expandForward = topF <= topB;
+                    CsrGraph g = expandForward ? forward : backward;
+                    QueryContext.Side q = expandForward ? qF : qB, other = expandForward ? qB : qF;
+
+                    int u = q.heap.poll();
+                    settled++;
+                    double du = q.dist[u];
+                    for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++, relaxed++) {
+                        int v = g.targets[e];
+                        double newDist = du + g.weights[e];
+                        double dv = q.distance(v);
+                        if (newDist < dv) {
+                            q.label(v, newDist, u);
+                            q.heap.insertOrDecrease(v, newDist);
+                            pushes++;
+                            dv = newDist;
+                        }
+                        // Any edge touching the other search's frontier is a candidate meeting point
+                        if (dv + other.distance(v) < best) {
+                            best = dv + other.distance(v);
+                            meeting = v;
+                        }
+                    }
+                }
+
+                if (RouteMetrics.ENABLED) METRICS.record(settled, relaxed, pushes, settled, 0);
+                if (meeting < 0) return new DijkstraResult(null, Double.POSITIVE_INFINITY, settled);
+                List<Node> path = forward.buildPath(qF.pred, meeting);
+                for (int step = qB.pred[meeting]; step != -1; step = qB.pred[step]) {
+                    path.add(forward.node(step));
+                }
+                return new DijkstraResult(path, best, settled);
+            }
+        }
+    }
+
+    // --- Inner Class: Growable int list ---
+    static final class IntList {
+        private int[] data;
+        private int size;
+
+        IntList() { this(16); }
+        IntList(int capacity) { data = new int[Math.max(capacity, 1)]; }
+
+        void add(int value) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = value;
+        }
+        int get(int index) { return data[index]; }
+        void set(int index, int value) { data[index] = value; }
+        int removeLast() { return data[--size]; }
+        int size() { return size; }
+        void clear() { size = 0; }
+        int[] toArray() { return Arrays.copyOf(data, size); }
+        int[] array() { return data; } // Backing array, valid up to size(); no copy
+    }
+
+    // --- Inner Class: Growable double list ---
+    static final class DoubleList {
+        private double[] data;
+        private int size;
+
+        DoubleList() { this(16); }
+        DoubleList(int capacity) { data = new double[Math.max(capacity, 1)]; }
+
+        void add(double value) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = value;
+        }
+        double get(int index) { return data[index]; }
+        void set(int index, double value) { data[index] = value; }
+        int size() { return size; }
+        void clear() { size = 0; }
+        double[] toArray() { return Arrays.copyOf(data, size); }
+        double[] array() { return data; } // Backing array, valid up to size(); no copy
+    }
+
+    // --- Inner Class: Contraction Hierarchy ---
+    // Preprocessed speed-up structure for a CsrGraph that rarely changes. Nodes are
+    // contracted one by one in order of importance; whenever removing a node would
+    // break a shortest path between two of its neighbours a shortcut edge is added.
+    // Queries then run a bidirectional Dijkstra that only ever moves to higher-ranked
+    // nodes, and shortcuts are unpacked back into the original edges afterwards.
+    static final class ContractionHierarchy implements RoutingEngine {
+        private static final RouteMetrics.Search METRICS = RouteMetrics.search("ch");
+        // Bounds on witness searches; a missed witness only costs an extra shortcut
+        private static final int WITNESS_SETTLE_LIMIT = 500;
+        private static final int SIMULATION_SETTLE_LIMIT = 50; // Cheaper searches when only estimating priorities
+        // Neighbours with more edge ids than this only get a cheap priority bump after a contraction;
+        // the exact value is recomputed lazily when they reach the head of the queue
+        private static final int EAGER_UPDATE_DEGREE = 8;
+
+        private final CsrGraph base;
+        private final int[] rank;
+        // All edges (original and shortcut); a shortcut u -> w via v points at its halves u -> v and v -> w
+        private final int[] edgeFrom, edgeTo, edgeChild1, edgeChild2;
+        private final double[] edgeWeight;
+        // Forward search: edges u -> v with rank[v] > rank[u], grouped by u
+        private final int[] upOffsets, upEdges;
+        // Backward search: edges u -> v with rank[u] > rank[v], grouped by v
+        private final int[] downOffsets, downEdges;
+        private final int shortcutCount;
+        private final long preprocessingNanos;
+
+        private ContractionHierarchy(CsrGraph base, int[] rank, IntList from, IntList to, DoubleList weight,
+                                     IntList child1, IntList child2, int shortcutCount, long preprocessingNanos) {
+            this.base = base;
+            this.rank = rank;
+            this.edgeFrom = from.toArray();
+            this.edgeTo = to.toArray();
+            this.edgeWeight = weight.toArray();
+            this.edgeChild1 = child1.toArray();
+            this.edgeChild2 = child2.toArray();
+            this.shortcutCount = shortcutCount;
+            this.preprocessingNanos = preprocessingNanos;
+
+            int n = base.nodeCount();
+            upOffsets = new int[n + 1];
+            downOffsets = new int[n + 1];
+            for (int e = 0; e < edgeFrom.length; e++) {
+                if (rank[edgeTo[e]] > rank[edgeFrom[e]]) upOffsets[edgeFrom[e] + 1]++;
+                else if (rank[edgeFrom[e]] > rank[edgeTo[e]]) downOffsets[edgeTo[e] + 1]++;
+            }
+            for (int i = 0; i < n; i++) {
+                upOffsets[i + 1] += upOffsets[i];
+                downOffsets[i + 1] += downOffsets[i];
+            }
+            upEdges = new int[upOffsets[n]];
+            downEdges = new int[downOffsets[n]];
+            int[] upNext = Arrays.copyOf(upOffsets, n), downNext = Arrays.copyOf(downOffsets, n);
+            for (int e = 0; e < edgeFrom.length; e++) {
+                if (rank[edgeTo[e]] > rank[edgeFrom[e]]) upEdges[upNext[edgeFrom[e]]++] = e;
+                else if (rank[edgeFrom[e]] > rank[edgeTo[e]]) downEdges[downNext[edgeTo[e]]++] = e;
+            }
+        }
+
+        public static ContractionHierarchy build(CsrGraph csr) {
+            long startTime = System.nanoTime();
+            Contractor contractor = new Contractor(csr);
+            contractor.contractAll();
+            return new ContractionHierarchy(csr, contractor.rank, contractor.from, contractor.to, contractor.weight,
+                    contractor.child1, contractor.child2, contractor.shortcuts, System.nanoTime() - startTime);
+        }
+
+        public int shortcutCount() { return shortcutCount; }
+        public int edgeCount() { return edgeFrom.length; } // Original edges without self-loops, plus shortcuts
+        public long preprocessingNanos() { return preprocessingNanos; }
+
+        @Override
+        public DijkstraResult findShortestPath(Node startNode, Node endNode) {
+            int source = base.indexOf(startNode);
+            int target = base.indexOf(endNode);
+            if (source < 0 || target < 0) return new DijkstraResult(null, Double.POSITIVE_INFINITY);
+            if (source == target) return new DijkstraResult(List.of(startNode), 0.0, 1);
+
+            try (QueryContext context = QueryContext.acquire(base.nodeCount())) {
+                QueryContext.Side qF = context.forward, qB = context.backward(); // pred holds edge ids here
+                qF.label(source, 0.0, -1);
+                qB.label(target, 0.0, -1);
+                qF.heap.insertOrDecrease(source, 0.0);
+                qB.heap.insertOrDecrease(target, 0.0);
+                double best = Double.POSITIVE_INFINITY;
+                int meeting = -1;
+                int settled = 0, relaxed = 0, pushes = 2;
+
+                boolean forwardTurn = true;
+                while (true) {
+                    // Each side may stop once its queue head can no longer beat the best meeting
+                    boolean forwardLive = !qF.heap.isEmpty() && qF.heap.peekKey() < best;
+                    boolean backwardLive = !qB.heap.isEmpty() && qB.heap.peekKey() < best;
+                    if (!forwardLive && !backwardLive) break;
+                    boolean forward = forwardLive && (forwardTurn || !backwardLive);
+                    forwardTurn = !forwardTurn;
+
+                    QueryContext.Side q = forward ? qF : qB;
+                    int[] offsets = forward ? upOffsets : downOffsets;
+                    int[] edges = forward ? upEdges : downEdges;
+
+                    int u = q.heap.poll();
+                    settled++;
+                    double du = q.dist[u];
+                    double other = (forward ? qB : qF).distance(u);
+                    if (du + other < best) {
+                        best = du + other;
+                        meeting = u;
+                    }
+                    for (int i = offsets[u]; i < offsets[u + 1]; i++, relaxed++) {
+                        int e = edges[i];
+                        int v = forward ? edgeTo[e] : edgeFrom[e];
+                        double newDist = du + edgeWeight[e];
+                        if (newDist < q.distance(v)) {
+                            q.label(v, newDist, e);
+                            q.heap.insertOrDecrease(v, newDist);
+                            pushes++;
+                        }
+                    }
+                }
+                if (RouteMetrics.ENABLED) METRICS.record(settled, relaxed, pushes, settled, 0);
+
+                if (meeting < 0) return new DijkstraResult(null, Double.POSITIVE_INFINITY, settled);
+                return new DijkstraResult(unpackPath(qF.pred, qB.pred, source, meeting), best, settled);
+            }
+        }
+
+        // Bucket-based many-to-many: one backward upward search per distinct target fills
+        // per-node buckets, then one forward upward search per distinct source scans the
+        // buckets of every node it settles. Paths (optional) come from point-to-point queries.
+        public DistanceMatrix distanceMatrix(List<Node> waypoints, boolean withPaths) {
+            List<Node> stops = DistanceMatrix.distinct(waypoints);
+            int k = stops.size();
+            double[][] distances = new double[k][k];
+            for (double[] row : distances) Arrays.fill(row, Double.POSITIVE_INFINITY);
+
+            int[] bucketHead = new int[base.nodeCount()];
+            Arrays.fill(bucketHead, -1);
+            IntList entryTarget = new IntList(), entryNext = new IntList();
+            DoubleList entryDist = new DoubleList();
+            try (QueryContext context = QueryContext.acquire(base.nodeCount())) {
+                for (int j = 0; j < k; j++) {
+                    int target = base.indexOf(stops.get(j));
+                    if (target < 0) continue;
+                    final int column = j;
+                    upwardSearch(context, target, false, (node, dist) -> {
+                        entryTarget.add(column);
+                        entryDist.add(dist);
+                        entryNext.add(bucketHead[node]);
+                        bucketHead[node] = entryTarget.size() - 1;
+                    });
+                }
+                for (int i = 0; i < k; i++) {
+                    int source = base.indexOf(stops.get(i));
+                    if (source < 0) continue;
+                    double[] row = distances[i];
+                    upwardSearch(context, source, true, (node, dist) -> {
+                        for (int entry = bucketHead[node]; entry != -1; entry = entryNext.get(entry)) {
+                            double total = dist + entryDist.get(entry);
+                            if (total < row[entryTarget.get(entry)]) row[entryTarget.get(entry)] = total;
+                        }
+                    });
+                }
+            }
+
+            List<Node>[][] paths = null;
+            if (withPaths) {
+                paths = DistanceMatrix.newPathTable(k);
+                for (int i = 0; i < k; i++) {
+                    for (int j = 0; j < k; j++) {
+                        if (Double.isFinite(distances[i][j])) paths[i][j] = findShortestPath(stops.get(i), stops.get(j)).getPath();
+                    }
+                }
+            }
+            return new DistanceMatrix(stops, distances, paths);
+        }
+
+        private interface SettledVisitor {
+            void settled(int node, double dist);
+        }
+
+        // Exhaustive search over the upward (forward) or downward (backward) edges from root
+        private void upwardSearch(QueryContext context, int root, boolean forward, SettledVisitor visitor) {
+            context.begin();
+            QueryContext.Side q = context.forward;
+            int[] offsets = forward ? upOffsets : downOffsets;
+            int[] edges = forward ? upEdges : downEdges;
+            q.label(root, 0.0, -1);
+            q.heap.insertOrDecrease(root, 0.0);
+            while (!q.heap.isEmpty()) {
+                int u = q.heap.poll();
+                double du = q.dist[u];
+                visitor.settled(u, du);
+                for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                    int e = edges[i];
+                    int v = forward ? edgeTo[e] : edgeFrom[e];
+                    double newDist = du + edgeWeight[e];
+                    if (newDist < q.distance(v)) {
+                        q.label(v, newDist, e);
+                        q.heap.insertOrDecrease(v, newDist);
+                    }
+                }
+            }
+        }
+
+        // Expands the up-path source -> meeting and down-path meeting -> target into original nodes
+        private List<Node> unpackPath(int[] predF, int[] predB, int source, int meeting) {
+            IntList hierarchyEdges = new IntList();
+            for (int v = meeting; v != source; v = edgeFrom[predF[v]]) hierarchyEdges.add(predF[v]);
+            int forwardCount = hierarchyEdges.size();
+            for (int i = 0; i < forwardCount / 2; i++) { // Reverse so the edges run from the source
+                int tmp = hierarchyEdges.get(i);
+                hierarchyEdges.set(i, hierarchyEdges.get(forwardCount - 1 - i));
+                hierarchyEdges.set(forwardCount - 1 - i, tmp);
+            }
+            for (int u = meeting; predB[u] != -1; u = edgeTo[predB[u]]) hierarchyEdges.add(predB[u]);
+
+            List<Node> path = new ArrayList<>();
+            path.add(base.node(source));
+            IntList stack = new IntList();
+            for (int i = 0; i < hierarchyEdges.size(); i++) {
+                stack.add(hierarchyEdges.get(i));
+                while (stack.size() > 0) {
+                    int e = stack.removeLast();
+                    if (edgeChild1[e] < 0) {
+                        path.add(base.node(edgeTo[e]));
+                    } else {
+                        stack.add(edgeChild2[e]); // Second half is unpacked after the first
+                        stack.add(edgeChild1[e]);
+                    }
+                }
+            }
+            return path;
+        }
+
+        // Mutable working graph used only while building the hierarchy
+        private static final class Contractor {
+            final int n;
+            final IntList from = new IntList(), to = new IntList(), child1 = new IntList(), child2 = new IntList();
+            final DoubleList weight = new DoubleList();
+            final IntList[] out, in; // Edge ids per node; edges to contracted nodes are dropped from live nodes
+            final boolean[] contracted;
+            final int[] deletedNeighbors;
+            final int[] level; // Upper bound on the hierarchy depth below each node
+            final int[] rank;
+            int shortcuts; // Edges added; lowering an existing edge does not count
+
+            // Witness search state, reset lazily per search
+            final double[] witnessDist;
+            final int[] witnessStamp;
+            final int[] targetStamp;
+            final IndexedMinHeap witnessHeap;
+            int witnessRun;
+
+            Contractor(CsrGraph csr) {
+                n = csr.nodeCount();
+                out = new IntList[n];
+                in = new IntList[n];
+                for (int i = 0; i < n; i++) {
+                    out[i] = new IntList(4);
+                    in[i] = new IntList(4);
+                }
+                for (int u = 0; u < n; u++) {
+                    for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                        int v = csr.targets[e];
+                        if (v != u) addEdge(u, v, csr.weights[e], -1, -1);
+                    }
+                }
+                contracted = new boolean[n];
+                deletedNeighbors = new int[n];
+                level = new int[n];
+                rank = new int[n];
+                witnessDist = new double[n];
+                witnessStamp = new int[n];
+                targetStamp = new int[n];
+                witnessHeap = new IndexedMinHeap(n);
+            }
+
+            void contractAll() {
+                IndexedMinHeap order = new IndexedMinHeap(n);
+                for (int v = 0; v < n; v++) order.insertOrDecrease(v, priority(v));
+                int nextRank = 0;
+                while (!order.isEmpty()) {
+                    int v = order.poll();
+                    // Lazy update: priorities go stale as neighbours are contracted
+                    double fresh = priority(v);
+                    if (!order.isEmpty() && fresh > order.peekKey()) {
+                        order.insertOrDecrease(v, fresh);
+                        continue;
+                    }
+                    contract(v, true, WITNESS_SETTLE_LIMIT);
+                    contracted[v] = true;
+                    rank[v] = nextRank++;
+                    for (int i = 0; i < out[v].size(); i++) detach(to.get(out[v].get(i)), v);
+                    for (int i = 0; i < in[v].size(); i++) detach(from.get(in[v].get(i)), v);
+                    for (int i = 0; i < out[v].size(); i++) touchNeighbor(order, to.get(out[v].get(i)), v);
+                    for (int i = 0; i < in[v].size(); i++) touchNeighbor(order, from.get(in[v].get(i)), v);
+                }
+            }
+
+            // Drops u's edges to and from the just contracted node v so later searches skip them
+            private void detach(int u, int v) {
+                if (contracted[u]) return;
+                IntList outEdges = out[u], inEdges = in[u];
+                for (int i = outEdges.size() - 1; i >= 0; i--) {
+                    if (to.get(outEdges.get(i)) == v) outEdges.set(i, outEdges.removeLast());
+                }
+                for (int i = inEdges.size() - 1; i >= 0; i--) {
+                    if (from.get(inEdges.get(i)) == v) inEdges.set(i, inEdges.removeLast());
+                }
+            }
+
+            private void touchNeighbor(IndexedMinHeap order, int u, int contractedNode) {
+                if (contracted[u] || !order.contains(u)) return;
+                deletedNeighbors[u]++;
+                level[u] = Math.max(level[u], level[contractedNode] + 1);
+                if (out[u].size() + in[u].size() <= EAGER_UPDATE_DEGREE) {
+                    order.update(u, priority(u));
+                } else {
+                    order.update(u, order.key(u) + 1); // Accounts for the extra deleted neighbour only
+                }
+            }
+
+            // Weighted edge difference plus contracted neighbours and depth, which spreads
+            // contraction evenly over the graph and keeps the hierarchy shallow
+            private double priority(int v) {
+                int degree = 0;
+                for (int i = 0; i < out[v].size(); i++) if (!contracted[to.get(out[v].get(i))]) degree++;
+                for (int i = 0; i < in[v].size(); i++) if (!contracted[from.get(in[v].get(i))]) degree++;
+                int edgeDifference = contract(v, false, SIMULATION_SETTLE_LIMIT) - degree;
+                return 2 * edgeDifference + deletedNeighbors[v] + level[v];
+            }
+
+            // Finds (and when apply is set, inserts) the shortcuts needed to remove v.
+            // Returns how many shortcuts that takes.
+            private int contract(int v, boolean apply, int settleLimit) {
+                int needed = 0;
+                IntList inEdges = in[v], outEdges = out[v];
+                for (int i = 0; i < inEdges.size(); i++) {
+                    int inEdge = inEdges.get(i);
+                    int u = from.get(inEdge);
+                    if (contracted[u]) continue;
+                    double inWeight = weight.get(inEdge);
+
+                    nextWitnessRun();
+                    double maxOut = -1;
+                    int targets = 0;
+                    for (int j = 0; j < outEdges.size(); j++) {
+                        int w = to.get(outEdges.get(j));
+                        if (contracted[w] || w == u) continue;
+                        maxOut = Math.max(maxOut, weight.get(outEdges.get(j)));
+                        if (targetStamp[w] != witnessRun) {
+                            targetStamp[w] = witnessRun;
+                            targets++;
+                        }
+                    }
+                    if (targets == 0) continue; // No live out-neighbour to connect
+                    witnessSearch(u, v, inWeight + maxOut, targets, settleLimit);
+
+                    for (int j = 0; j < outEdges.size(); j++) {
+                        int outEdge = outEdges.get(j);
+                        int w = to.get(outEdge);
+                        if (contracted[w] || w == u) continue;
+                        double viaV = inWeight + weight.get(outEdge);
+                        if (witnessDistance(w) <= viaV) continue;
+                        needed++;
+                        if (apply) addShortcut(u, w, viaV, inEdge, outEdge);
+                    }
+                }
+                return needed;
+            }
+
+            private void nextWitnessRun() {
+                witnessHeap.clear();
+                if (++witnessRun == Integer.MAX_VALUE) {
+                    Arrays.fill(witnessStamp, 0);
+                    Arrays.fill(targetStamp, 0);
+                    witnessRun = 1;
+                }
+            }
+
+            // Bounded Dijkstra from u that avoids v and contracted nodes. Stops early once
+            // all targets (marked in targetStamp for this run) are settled.
+            private void witnessSearch(int u, int v, double limit, int targets, int settleLimit) {
+                setWitness(u, 0.0);
+                witnessHeap.insertOrDecrease(u, 0.0);
+                int settled = 0;
+                while (!witnessHeap.isEmpty() && settled++ < settleLimit) {
+                    if (witnessHeap.peekKey() > limit) break;
+                    int x = witnessHeap.poll();
+                    if (targetStamp[x] == witnessRun && --targets == 0) break;
+                    double dx = witnessDist[x];
+                    for (int i = 0; i < out[x].size(); i++) {
+                        int e = out[x].get(i);
+                        int y = to.get(e);
+                        if (y == v || contracted[y]) continue;
+                        double d = dx + weight.get(e);
+                        if (d < witnessDistance(y)) {
+                            setWitness(y, d);
+                            witnessHeap.insertOrDecrease(y, d);
+                        }
+                    }
+                }
+            }
+
+            private double witnessDistance(int x) {
+                return witnessStamp[x] == witnessRun ? witnessDist[x] : Double.POSITIVE_INFINITY;
+            }
+
+            private void setWitness(int x, double d) {
+                witnessDist[x] = d;
+                witnessStamp[x] = witnessRun;
+            }
+
+            private void addShortcut(int u, int w, double viaV, int inEdge, int outEdge) {
+                // Reuse an existing u -> w edge instead of adding a parallel one
+                for (int i = 0; i < out[u].size(); i++) {
+                    int e = out[u].get(i);
+                    if (to.get(e) == w) {
+                        if (weight.get(e) > viaV) { // Not counted: the hierarchy gains no edge
+                            weight.set(e, viaV);
+                            child1.set(e, inEdge);
+                            child2.set(e, outEdge);
+                        }
+                        return;
+                    }
+                }
+                addEdge(u, w, viaV, inEdge, outEdge);
+                shortcuts++;
+            }
+
+            private void addEdge(int u, int v, double w, int firstHalf, int secondHalf) {
+                int e = from.size();
+                from.add(u);
+                to.add(v);
+                weight.add(w);
+                child1.add(firstHalf);
+                child2.add(secondHalf);
+                out[u].add(e);
+                in[v].add(e);
+            }
+        }
+    }
+
+    // --- Inner Class: Distance Matrix ---
+    // Shortest distances (and optionally paths) between every ordered pair of a set of
+    // distinct stops. Row = source, column = target; unreachable pairs are infinite.
+    static final class DistanceMatrix {
+        private final List<Node> stops;
+        private final double[][] distances;
+        private final List<Node>[][] paths; // null when paths were not requested
+        private final Map<Node, Integer> indexByNode = new HashMap<>();
+
+        DistanceMatrix(List<Node> stops, double[][] distances, List<Node>[][] paths) {
+            this.stops = Collections.unmodifiableList(stops);
+            this.distances = distances;
+            this.paths = paths;
+            for (int i = 0; i < stops.size(); i++) indexByNode.put(stops.get(i), i);
+        }
+
+        // Drops repeated stops while keeping the order of first appearance
+        static List<Node> distinct(List<Node> waypoints) {
+            return new ArrayList<>(new LinkedHashSet<>(waypoints));
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        static List<Node>[][] newPathTable(int k) {
+            return (List<Node>[][]) new List[k][k];
+        }
+
+        public List<Node> getStops() { return stops; }
+        public int size() { return stops.size(); }
+        public int indexOf(Node node) { return indexByNode.getOrDefault(node, -1); }
+        public double distance(int from, int to) { return distances[from][to]; }
+        public double distance(Node from, Node to) { return distances[indexOf(from)][indexOf(to)]; }
+        public boolean hasPaths() { return paths != null; }
+        public List<Node> path(int from, int to) { return (paths != null) ? paths[from][to] : null; }
+        public List<Node> path(Node from, Node to) { return path(indexOf(from), indexOf(to)); }
+    }
+
+    // --- Inner Class: Many-to-Many Search ---
+    // Builds a DistanceMatrix with one Dijkstra per distinct source over the CSR
+    // snapshot. Each search stops as soon as every distinct stop has been settled, so
+    // k stops cost k partial searches instead of k * k point-to-point queries. One pooled
+    // QueryContext serves all k searches, so nothing is refilled between them.
+    // ContractionHierarchy.distanceMatrix is the bucket-based alternative.
+    static final class ManyToMany {
+        public static DistanceMatrix compute(CsrGraph csr, List<Node> waypoints, boolean withPaths) {
+            List<Node> stops = DistanceMatrix.distinct(waypoints);
+            int k = stops.size();
+            int[] stopIndex = new int[k];
+            int remaining = 0;
+            for (int j = 0; j < k; j++) {
+                stopIndex[j] = csr.indexOf(stops.get(j));
+                if (stopIndex[j] >= 0) remaining++;
+            }
+
+            double[][] distances = new double[k][k];
+            List<Node>[][] paths = withPaths ? DistanceMatrix.newPathTable(k) : null;
+            int[] offsets = csr.offsets, targets = csr.targets;
+            double[] weights = csr.weights;
+
+            try (QueryContext context = QueryContext.acquire(csr.nodeCount())) {
+                QueryContext.Side q = context.forward, columns = context.backward(); // columns.pred: matrix column of a stop node
+                IndexedMinHeap heap = q.heap;
+                for (int i = 0; i < k; i++) {
+                    Arrays.fill(distances[i], Double.POSITIVE_INFINITY);
+                    int source = stopIndex[i];
+                    if (source < 0) continue;
+                    context.begin();
+                    for (int j = 0; j < k; j++) if (stopIndex[j] >= 0) columns.label(stopIndex[j], 0.0, j);
+
+                    int unsettled = remaining;
+                    q.label(source, 0.0, -1);
+                    heap.insertOrDecrease(source, 0.0);
+                    while (!heap.isEmpty()) {
+                        int u = heap.poll();
+                        if (columns.isLabelled(u)) {
+                            int j = columns.pred[u];
+                            distances[i][j] = q.dist[u];
+                            if (withPaths) paths[i][j] = csr.buildPath(q.pred, u);
+                            if (--unsettled == 0) break;
+                        }
+                        double du = q.dist[u];
+                        for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+                            int v = targets[e];
+                            double newDist = du + weights[e];
+                            if (newDist < q.distance(v)) {
+                                q.label(v, newDist, u);
+                                heap.insertOrDecrease(v, newDist);
+                            }
+                        }
+                    }
+                }
+            }
+            return new DistanceMatrix(stops, distances, paths);
+        }
+    }
+
+    // --- Inner Class: Stop Order Optimizer ---
+    // Reorders the intermediate stops of a route with fixed start and end to minimise
+    // the total distance (an open, possibly asymmetric TSP). Small stop sets are solved
+    // exactly with Held-Karp dynamic programming; larger ones start from a nearest
+    // neighbour tour and improve it with 2-opt and Or-opt moves until no move helps or
+    // the time budget runs out.
+    static final class StopOrderOptimizer {
+        static final int EXACT_LIMIT = 15; // Held-Karp needs 2^n * n table entries
+
+        static final class Result {
+            private final List<Node> order;
+            private final double distance;
+            private final boolean exact;
+
+            Result(List<Node> order, double distance, boolean exact) {
+                this.order = order;
+                this.distance = distance;
+                this.exact = exact;
+            }
+
+            public List<Node> getOrder() { return order; }
+            public double getDistance() { return distance; }
+            public boolean isExact() { return exact; }
+        }
+
+        // matrix must contain start, end and every stop
+        public static Result optimize(DistanceMatrix matrix, Node start, List<Node> stops, Node end, long timeBudgetMillis) {
+            List<Node> distinctStops = DistanceMatrix.distinct(stops);
+            int n = distinctStops.size();
+            double[][] d = new double[n + 2][n + 2]; // Index n = start, n + 1 = end
+            for (int i = 0; i < n + 2; i++) {
+                Node from = (i < n) ? distinctStops.get(i) : (i == n ? start : end);
+                for (int j = 0; j < n + 2; j++) {
+                    Node to = (j < n) ? distinctStops.get(j) : (j == n ? start : end);
+                    d[i][j] = matrix.distance(from, to);
+                }
+            }
+
+            int[] order;
+            boolean exact = n <= EXACT_LIMIT;
+            if (exact) {
+                order = heldKarp(d, n);
+            } else {
+                long deadline = System.nanoTime() + timeBudgetMillis * 1_000_000L;
+                order = nearestNeighbour(d, n);
+                boolean improved = true;
+                while (improved && System.nanoTime() < deadline) {
+                    improved = twoOpt(d, order, deadline) | orOpt(d, order, deadline);
+                }
+            }
+
+            List<Node> result = new ArrayList<>(n);
+            for (int index : order) result.add(distinctStops.get(index));
+            return new Result(result, cost(d, order), exact);
+        }
+
+        // Distance of start -> stops in the given order -> end
+        public static double routeDistance(DistanceMatrix matrix, Node start, List<Node> stops, Node end) {
+            double total = 0.0;
+            Node previous = start;
+            for (Node stop : stops) {
+                total += matrix.distance(previous, stop);
+                previous = stop;
+            }
+            return total + matrix.distance(previous, end);
+        }
+
+        private static double cost(double[][] d, int[] order) {
+            int n = order.length;
+            if (n == 0) return d[n][n + 1];
+            double total = d[n][order[0]];
+            for (int i = 0; i + 1 < n; i++) total += d[order[i]][order[i + 1]];
+            return total + d[order[n - 1]][n + 1];
+        }
+
+        private static int[] heldKarp(double[][] d, int n) {
+            if (n == 0) return new int[0];
+            int full = (1 << n) - 1;
+            double[][] best = new double[1 << n][n]; // best[mask][last]: cheapest path from start over mask ending at last
+            int[][] parent = new int[1 << n][n];
+            for (double[] row : best) Arrays.fill(row, Double.POSITIVE_INFINITY);
+            for (int[] row : parent) Arrays.fill(row, -1);
+            for (int j = 0; j < n; j++) best[1 << j][j] = d[n][j];
+            for (int mask = 1; mask <= full; mask++) {
+                for (int last = 0; last < n; last++) {
+                    double base = best[mask][last];
+                    if ((mask & (1 << last)) == 0 || base == Double.POSITIVE_INFINITY) continue;
+                    for (int next = 0; next < n; next++) {
+                        if ((mask & (1 << next)) != 0) continue;
+                        int nextMask = mask | (1 << next);
+                        double candidate = base + d[last][next];
+                        if (candidate < best[nextMask][next]) {
+                            best[nextMask][next] = candidate;
+                            parent[nextMask][next] = last;
+                        }
+                    }
+                }
+            }
+
+            int last = 0;
+            double bestTotal = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < n; j++) {
+                double total = best[full][j] + d[j][n + 1];
+                if (total < bestTotal) {
+                    bestTotal = total;
+                    last = j;
+                }
+            }
+            int[] order = new int[n];
+            for (int mask = full, i = n - 1; i >= 0; i--) { // Unreachable tours keep an arbitrary but complete order
+                order[i] = last;
+                int previous = parent[mask][last];
+                mask &= ~(1 << last);
+                last = (previous >= 0) ? previous : Integer.numberOfTrailingZeros(Math.max(mask, 1));
+            }
+            return order;
+        }
+
+        private static int[] nearestNeighbour(double[][] d, int n) {
+            int[] order = new int[n];
+            boolean[] used = new boolean[n];
+            int current = n; // Start
+            for (int i = 0; i < n; i++) {
+                int next = -1;
+                for (int j = 0; j < n; j++) {
+                    if (!used[j] && (next < 0 || d[current][j] < d[current][next])) next = j;
+                }
+                used[next] = true;
+                order[i] = next;
+                current = next;
+            }
+            return order;
+        }
+
+        // Reverses order[i..j] whenever that shortens the route. Costs are re-evaluated in
+        // full because the matrix may be asymmetric (directed roads).
+        private static boolean twoOpt(double[][] d, int[] order, long deadline) {
+            boolean improved = false;
+            double current = cost(d, order);
+            for (int i = 0; i < order.length - 1 && System.nanoTime() < deadline; i++) {
+                for (int j = i + 1; j < order.length; j++) {
+                    reverse(order, i, j);
+                    double candidate = cost(d, order);
+                    if (candidate < current) {
+                        current = candidate;
+                        improved = true;
+                    } else {
+                        reverse(order, i, j);
+                    }
+                }
+            }
+            return improved;
+        }
+
+        // Moves runs of 1-3 consecutive stops to another position when that shortens the route
+        private static boolean orOpt(double[][] d, int[] order, long deadline) {
+            boolean improved = false;
+            double current = cost(d, order);
+            int n = order.length;
+            int[] candidate = new int[n];
+            for (int length = 1; length <= 3; length++) {
+                for (int i = 0; i + length <= n && System.nanoTime() < deadline; i++) {
+                    for (int insertAt = 0; insertAt <= n - length; insertAt++) {
+                        if (insertAt == i) continue;
+                        moveSegment(order, candidate, i, length, insertAt);
+                        double candidateCost = cost(d, candidate);
+                        if (candidateCost < current) {
+                            System.arraycopy(candidate, 0, order, 0, n);
+                            current = candidateCost;
+                            improved = true;
+                        }
+                    }
+                }
+            }
+            return improved;
+        }
+
+        // Writes order with the run [from, from + length) removed and re-inserted so it starts at insertAt
+        private static void moveSegment(int[] order, int[] out, int from, int length, int insertAt) {
+            int n = order.length;
+            int[] rest = new int[n - length];
+            int r = 0;
+            for (int i = 0; i < n; i++) {
+                if (i < from || i >= from + length) rest[r++] = order[i];
+            }
+            System.arraycopy(rest, 0, out, 0, insertAt);
+            System.arraycopy(order, from, out, insertAt, length);
+            System.arraycopy(rest, insertAt, out, insertAt + length, rest.length - insertAt);
+        }
+
+        private static void reverse(int[] order, int i, int j) {
+            for (; i < j; i++, j--) {
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+        }
+    }
+
+    // --- Inner Class: Multi-Stop Route Result ---
+    static final class MultiStopResult {
+        private final List<Node> path; // Stitched path, empty when the route is impossible
+        private final double distance;
+        private final Node failedFrom, failedTo; // First unreachable segment, null when possible
+
+        MultiStopResult(List<Node> path, double distance, Node failedFrom, Node failedTo) {
+            this.path = path;
+            this.distance = distance;
+            this.failedFrom = failedFrom;
+            this.failedTo = failedTo;
+        }
+
+        static MultiStopResult impossible(Node from, Node to) {
+            return new MultiStopResult(new LinkedList<>(), Double.POSITIVE_INFINITY, from, to);
+        }
+
+        public List<Node> getPath() { return path; }
+        public double getDistance() { return distance; }
+        public boolean isPossible() { return failedFrom == null; }
+        public Node getFailedFrom() { return failedFrom; }
+        public Node getFailedTo() { return failedTo; }
+
+        // The text the simulator shows in its result area (also served by RouteServer)
+        public String describe(List<Node> waypoints) {
+            if (!isPossible()) {
+                return "Cannot find path from '" + failedFrom.getId() + "' to '" + failedTo.getId() + "'.\nFull multi-stop route is impossible.";
+            }
+            StringBuilder pathStr = new StringBuilder("Full Route: ");
+            if (path.isEmpty() && waypoints.size() >= 1) { // Handle case Start=Stop1=...=End
+                pathStr.append(waypoints.get(0).getId());
+            } else {
+                for (int i = 0; i < path.size(); i++) {
+                    pathStr.append(path.get(i).getId());
+                    if (i < path.size() - 1) {
+                        pathStr.append(" -> ");
+                    }
+                }
+            }
+            pathStr.append(String.format("%nTotal Distance: %.1f units", distance));
+            return pathStr.toString();
+        }
+    }
+
+    // --- Interface: Route Progress ---
+    // Progress and cancellation hook for long multi-stop routes; may be called from any thread.
+    interface RouteProgress {
+        RouteProgress NONE = new RouteProgress() {
+            public void segmentDone(int done, int total) { }
+            public boolean isCancelled() { return false; }
+        };
+
+        void segmentDone(int done, int total);
+        boolean isCancelled();
+    }
+
+    // --- Inner Class: Multi-Stop Router ---
+    // Routes consecutive waypoint pairs with a RoutingEngine and stitches the segment
+    // paths in order. With an executor every segment is submitted at once, so the route
+    // takes about as long as its slowest segment; as soon as any segment turns out to be
+    // unreachable the remaining ones are cancelled. The engine and graph are only read.
+    // Given a CSR snapshot, a waypoint that starts several segments (e.g. a station the
+    // truck returns to) gets one ShortestPathTree that answers all of them.
+    static final class MultiStopRouter {
+        private final RoutingEngine engine;
+        private final Executor executor; // null: route segments one after another on the caller
+        private final CsrGraph treeGraph; // null: never share searches between segments
+
+        MultiStopRouter(RoutingEngine engine) { this(engine, null); }
+
+        MultiStopRouter(RoutingEngine engine, Executor executor) { this(engine, executor, null); }
+
+        MultiStopRouter(RoutingEngine engine, Executor executor, CsrGraph treeGraph) {
+            this.engine = engine;
+            this.executor = executor;
+            this.treeGraph = treeGraph;
+        }
+
+        public MultiStopResult route(List<Node> waypoints) {
+            return route(waypoints, RouteProgress.NONE);
+        }
+
+        // Throws CancellationException once progress reports the job as cancelled
+        public MultiStopResult route(List<Node> waypoints, RouteProgress progress) {
+            int segments = Math.max(waypoints.size() - 1, 0);
+            RoutingEngine segmentEngine = segmentEngine(waypoints);
+            if (RouteMetrics.ENABLED) segmentEngine = RouteMetrics.timed(segmentEngine);
+            DijkstraResult[] results = (executor == null)
+                    ? routeSerially(waypoints, segmentEngine, progress) : routeConcurrently(waypoints, segmentEngine, progress);
+
+            List<Node> fullPath = new LinkedList<>();
+            double totalDistance = 0.0;
+            for (int i = 0; i < segments; i++) {
+                Node segmentStart = waypoints.get(i);
+                if (segmentStart.equals(waypoints.get(i + 1))) {
+                    // Distance is 0; add the node once if it's the very first segment
+                    if (fullPath.isEmpty()) fullPath.add(segmentStart);
+                    continue;
+                }
+                DijkstraResult segmentResult = results[i];
+                if (segmentResult == null || !segmentResult.hasPath()) {
+                    return MultiStopResult.impossible(segmentStart, waypoints.get(i + 1));
+                }
+                List<Node> segmentPathNodes = segmentResult.getPath();
+                if (fullPath.isEmpty()) {
+                    fullPath.addAll(segmentPathNodes); // Add all nodes for the first segment
+                } else {
+                    // Add all nodes *except the first one* (which is the end of the previous segment)
+                    fullPath.addAll(segmentPathNodes.subList(1, segmentPathNodes.size()));
+                }
+                totalDistance += segmentResult.getDistance();
+            }
+            return new MultiStopResult(fullPath, totalDistance, null, null);
+        }
+
+        // The router's engine, except that sources shared by two or more segments are
+        // answered from one lazily built tree. The map is complete before any segment runs.
+        private RoutingEngine segmentEngine(List<Node> waypoints) {
+            if (treeGraph == null) return engine;
+            Map<Node, Integer> segmentsPerSource = new HashMap<>();
+            for (int i = 0; i + 1 < waypoints.size(); i++) {
+                Node from = waypoints.get(i);
+                if (!from.equals(waypoints.get(i + 1)) && treeGraph.indexOf(from) >= 0) segmentsPerSource.merge(from, 1, Integer::sum);
+            }
+            Map<Node, SharedTree> shared = new HashMap<>();
+            segmentsPerSource.forEach((source, count) -> { if (count > 1) shared.put(source, new SharedTree(treeGraph, source)); });
+            if (shared.isEmpty()) return engine;
+            return (start, end) -> {
+                SharedTree tree = shared.get(start);
+                return (tree == null) ? engine.findShortestPath(start, end) : tree.get().resultFor(end);
+            };
+        }
+
+        // Built by whichever segment asks first; concurrent segments wait for it
+        private static final class SharedTree {
+            private final CsrGraph csr;
+            private final Node source;
+            private ShortestPathTree tree;
+
+            SharedTree(CsrGraph csr, Node source) {
+                this.csr = csr;
+                this.source = source;
+            }
+
+            synchronized ShortestPathTree get() {
+                if (tree == null) tree = ShortestPathTree.compute(csr, source);
+                return tree;
+            }
+        }
+
+        // Time-dependent route: segments run one after another, each departing when the previous
+        // one arrives (no dwell time at stops). The result's distance is the total travel time.
+        static MultiStopResult routeDepartingAt(TimedRoutingEngine engine, List<Node> waypoints, double departure, RouteProgress progress) {
+            double[] clock = {departure};
+            RoutingEngine carried = (start, end) -> {
+                DijkstraResult segment = engine.findShortestPath(start, end, clock[0]);
+                if (segment.hasPath()) clock[0] += segment.getDistance();
+                return segment;
+            };
+            return new MultiStopRouter(carried).route(waypoints, progress);
+        }
+
+        // Stops at the first unreachable segment; later entries stay null
+        private DijkstraResult[] routeSerially(List<Node> waypoints, RoutingEngine engine, RouteProgress progress) {
+            DijkstraResult[] results = new DijkstraResult[Math.max(waypoints.size() - 1, 0)];
+            for (int i = 0; i < results.length; i++) {
+                if (progress.isCancelled()) throw new CancellationException();
+                if (!waypoints.get(i).equals(waypoints.get(i + 1))) {
+                    results[i] = engine.findShortestPath(waypoints.get(i), waypoints.get(i + 1));
+                    if (!results[i].hasPath()) break;
+                }
+                progress.segmentDone(i + 1, results.length);
+            }
+            return results;
+        }
+
+        // Once segment i is known to be unreachable, every segment after it is cancelled
+        // (not-yet-started ones are then skipped by the executor). Earlier segments still
+        // finish so the reported failure is the first one along the route.
+        private DijkstraResult[] routeConcurrently(List<Node> waypoints, RoutingEngine engine, RouteProgress progress) {
+            int segments = Math.max(waypoints.size() - 1, 0);
+            AtomicInteger finished = new AtomicInteger();
+            // Filled while callbacks from finished segments may already be reading it
+            AtomicReferenceArray<CompletableFuture<DijkstraResult>> futures = new AtomicReferenceArray<>(segments);
+            AtomicInteger firstUnreachable = new AtomicInteger(Integer.MAX_VALUE);
+            for (int i = 0; i < segments; i++) {
+                Node from = waypoints.get(i), to = waypoints.get(i + 1);
+                if (from.equals(to)) {
+                    futures.set(i, CompletableFuture.completedFuture(null));
+                    progress.segmentDone(finished.incrementAndGet(), segments);
+                    continue;
+                }
+                final int segment = i;
+                CompletableFuture<DijkstraResult> future = CompletableFuture.supplyAsync(() -> {
+                    if (progress.isCancelled()) throw new CancellationException();
+                    return engine.findShortestPath(from, to);
+                }, executor);
+                futures.set(i, future);
+                future.thenAccept(result -> {
+                    progress.segmentDone(finished.incrementAndGet(), segments);
+                    if (!result.hasPath() && firstUnreachable.accumulateAndGet(segment, Math::min) == segment) {
+                        for (int j = segment + 1; j < segments; j++) {
+                            CompletableFuture<DijkstraResult> later = futures.get(j);
+                            if (later != null) later.cancel(false);
+                        }
+                    }
+                });
+                if (segment > firstUnreachable.get()) future.cancel(false); // Failure seen while still submitting
+            }
+
+            DijkstraResult[] results = new DijkstraResult[segments];
+            try {
+                for (int i = 0; i < segments && i <= firstUnreachable.get(); i++) {
+                    if (progress.isCancelled()) throw new CancellationException();
+                    try {
+                        results[i] = futures.get(i).get();
+                    } catch (CancellationException e) {
+                        // get() can return before the callback of an unreachable earlier segment has run,
+                        // so a later segment may be cancelled by that short-circuit while we wait on it
+                        if (i > firstUnreachable.get()) break;
+                        throw e;
+                    }
+                    if (results[i] != null && !results[i].hasPath()) break; // As in routeSerially
+                }
+            } catch (InterruptedException | CancellationException e) {
+                for (int i = 0; i < segments; i++) futures.get(i).cancel(false);
+                if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+                throw new CancellationException("Route cancelled");
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            }
+            return results;
+        }
+    }
+
+    // --- Inner Class: Batching Routing Engine ---
+    // Micro-batches concurrent queries that share a source. The first query from a source
+    // opens a batch and waits windowNanos for others to join; then a single Dijkstra runs
+    // from the source until every collected target is settled, and each caller gets its
+    // own result. Callers block until their batch is done, so this suits one thread
+    // (ideally a virtual thread) per request. The graph is only read.
+    static final class BatchingRoutingEngine implements RoutingEngine {
+        private static final RouteMetrics.Search METRICS = RouteMetrics.search("batch");
+        private final GraphView graph;
+        private final long windowNanos;
+        private final ConcurrentHashMap<Node, Batch> openBatches = new ConcurrentHashMap<>();
+        private final LongAdder queries = new LongAdder(), searches = new LongAdder();
+
+        BatchingRoutingEngine(GraphView graph, long windowNanos) {
+            this.graph = graph;
+            this.windowNanos = windowNanos;
+        }
+
+        public long queryCount() { return queries.sum(); }
+        public long searchCount() { return searches.sum(); }
+
+        @Override
+        public DijkstraResult findShortestPath(Node startNode, Node endNode) {
+            int source = graph.indexOf(startNode), target = graph.indexOf(endNode);
+            if (source < 0 || target < 0) return new DijkstraResult(null, Double.POSITIVE_INFINITY);
+            queries.increment();
+            while (true) {
+                Batch created = new Batch(source);
+                Batch batch = openBatches.putIfAbsent(startNode, created);
+                if (batch == null) batch = created;
+                CompletableFuture<DijkstraResult> result = batch.join(target);
+                if (result == null) continue; // Closed since we looked it up: start the next one
+                if (batch == created) run(startNode, created);
+                return result.join();
+            }
+        }
+
+        // Runs on the thread that opened the batch
+        private void run(Node startNode, Batch batch) {
+            try {
+                if (windowNanos > 0) LockSupport.parkNanos(windowNanos);
+            } finally {
+                openBatches.remove(startNode, batch);
+                batch.close();
+            }
+            try {
+                searches.increment();
+                search(batch);
+            } catch (RuntimeException | Error e) {
+                for (CompletableFuture<DijkstraResult> waiting : batch.results) waiting.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        // One-to-many Dijkstra: stops once every target of the batch is settled
+        private void search(Batch batch) {
+            try (QueryContext context = QueryContext.acquire(graph.nodeCount())) {
+                QueryContext.Side q = context.forward, wanted = context.backward(); // Only the labels of wanted count: the target set
+                int remaining = 0;
+                for (int i = 0; i < batch.targets.size(); i++) {
+                    int t = batch.targets.get(i);
+                    if (!wanted.isLabelled(t)) {
+                        wanted.label(t, 0.0, -1);
+                        remaining++;
+                    }
+                }
+
+                IndexedMinHeap heap = q.heap;
+                q.label(batch.source, 0.0, -1);
+                heap.insertOrDecrease(batch.source, 0.0);
+                int settled = 0, relaxed = 0, pushes = 1;
+                while (!heap.isEmpty() && remaining > 0) {
+                    int u = heap.poll();
+                    settled++;
+                    if (wanted.isLabelled(u)) remaining--;
+                    double du = q.dist[u];
+                    for (int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++, relaxed++) {
+                        int v = graph.target(e);
+                        double newDist = du + graph.weight(e);
+                        if (newDist < q.distance(v)) {
+                            q.label(v, newDist, u);
+                            heap.insertOrDecrease(v, newDist);
+                            pushes++;
+                        }
+                    }
+                }
+                if (RouteMetrics.ENABLED) METRICS.record(settled, relaxed, pushes, settled, 0);
+
+                for (int i = 0; i < batch.targets.size(); i++) {
+                    int t = batch.targets.get(i);
+                    batch.results.get(i).complete(q.isLabelled(t)
+                            ? new DijkstraResult(graph.buildPath(q.pred, t), q.dist[t])
+                            : new DijkstraResult(null, Double.POSITIVE_INFINITY));
+                }
+            }
+        }
+
+        static final class Batch {
+            final int source;
+            final IntList targets = new IntList(); // Parallel to results; fixed once closed
+            final List<CompletableFuture<DijkstraResult>> results = new ArrayList<>();
+            private boolean closed;
+
+            Batch(int source) { this.source = source; }
+
+            // Null once the batch no longer takes targets
+            synchronized CompletableFuture<DijkstraResult> join(int target) {
+                if (closed) return null;
+                CompletableFuture<DijkstraResult> result = new CompletableFuture<>();
+                targets.add(target);
+                results.add(result);
+                return result;
+            }
+
+            synchronized void close() { closed = true; }
+        }
+    }
+
+    // --- Inner Class: Segment Executors ---
+    // Executors for MultiStopRouter: "serial" (null), "forkjoin" (the common pool) or
+    // "virtual" (one virtual thread per segment on JDK 21+, the common pool otherwise).
+    static final class SegmentExecutors {
+        static Executor fromName(String name) {
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "serial": return null;
+                case "virtual": return virtualThreads();
+                case "forkjoin": return ForkJoinPool.commonPool();
+                default: throw new IllegalArgumentException("Unknown segment executor '" + name + "' (serial, forkjoin or virtual)");
+            }
+        }
+
+        static Executor virtualThreads() {
+            try {
+                // Looked up reflectively so the code still compiles and runs on JDKs without virtual threads
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return ForkJoinPool.commonPool();
+            }
+        }
+    }
+
+    // --- Inner Class: Shortest Path Tree ---
+    // Result of one full Dijkstra from a single source over a CSR snapshot (no early exit),
+    // kept as primitive dist/pred arrays. Any target is then answered in O(path length)
+    // without a new search, e.g. distances from a fire station to every node for coverage.
+    // Immutable once computed, so one tree can serve many threads.
+    static final class ShortestPathTree {
+        private static final RouteMetrics.Search METRICS = RouteMetrics.search("tree");
+        private final GraphView csr;
+        private final int source;
+        private final double[] dist;
+        private final int[] pred;
+        private final int reachable;
+
+        private ShortestPathTree(GraphView csr, int source, double[] dist, int[] pred, int reachable) {
+            this.csr = csr;
+            this.source = source;
+            this.dist = dist;
+            this.pred = pred;
+            this.reachable = reachable;
+        }
+
+        public static ShortestPathTree compute(GraphView csr, Node sourceNode) {
+            int source = csr.indexOf(sourceNode);
+            if (source < 0) throw new IllegalArgumentException("Node " + sourceNode + " is not in the graph");
+            int n = csr.nodeCount();
+            double[] dist = new double[n];
+            int[] pred = new int[n];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            Arrays.fill(pred, -1);
+            IndexedMinHeap heap = new IndexedMinHeap(n);
+            dist[source] = 0.0;
+            heap.insertOrDecrease(source, 0.0);
+            int settled = 0, relaxed = 0, pushes = 1;
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                settled++;
+                double du = dist[u];
+                for (int e = csr.firstEdge(u), end = csr.endEdge(u); e < end; e++, relaxed++) {
+                    int v = csr.target(e);
+                    double newDist = du + csr.weight(e);
+                    if (newDist < dist[v]) {
+                        dist[v] = newDist;
+                        pred[v] = u;
+                        heap.insertOrDecrease(v, newDist);
+                        pushes++;
+                    }
+                }
+            }
+            if (RouteMetrics.ENABLED) METRICS.record(settled, relaxed, pushes, settled, 0);
+            return new ShortestPathTree(csr, source, dist, pred, settled);
+        }
+
+        public Node getSource() { return csr.node(source); }
+        public GraphView getGraph() { return csr; }
+        public int reachableCount() { return reachable; } // Includes the source
+
+        // Infinity for unreachable nodes and nodes outside the snapshot
+        public double distanceTo(Node target) {
+            int t = csr.indexOf(target);
+            return (t < 0) ? Double.POSITIVE_INFINITY : dist[t];
+        }
+
+        public boolean hasPathTo(Node target) { return distanceTo(target) < Double.POSITIVE_INFINITY; }
+
+        // Source first, target last; null when the target is unreachable
+        public List<Node> pathTo(Node target) {
+            int t = csr.indexOf(target);
+            if (t < 0 || Double.isInfinite(dist[t])) return null;
+            return csr.buildPath(pred, t);
+        }
+
+        // Same shape as a point-to-point query: null path and infinite distance when unreachable
+        public DijkstraResult resultFor(Node target) {
+            List<Node> path = pathTo(target);
+            return new DijkstraResult(path, (path == null) ? Double.POSITIVE_INFINITY : dist[csr.indexOf(target)]);
+        }
+    }
+
+    // --- Inner Class: Alternative Routes ---
+    // Ready detours for when the primary route is blocked. Every query starts with one
+    // Dijkstra backwards from the end over the reversed graph, stopped once it has settled
+    // everything within MAX_STRETCH times the shortest distance. Those distances are exact
+    // remaining costs, so every later search in the query is an A* guided by them. A search
+    // also ends as soon as it pops a node whose backward-tree route to the end is still
+    // open (no removed node or edge on it), because that route is then an optimal finish.
+    //  - kShortest: Yen's k shortest loopless routes. Spur searches only start at nodes
+    //    from where a route left its parent, and are pruned at MAX_STRETCH, so most of them
+    //    settle a handful of nodes before meeting the tree instead of searching the city.
+    //  - penalized: searches again and again with the edges of earlier routes made
+    //    PENALTY_FACTOR times more expensive per use, which pushes each round onto other
+    //    roads. Its routes are usually more distinct than Yen's, which often differ from
+    //    the primary in a single block.
+    // Both return the primary plus up to k - 1 alternatives sharing at most maxOverlap of
+    // the primary's length. Per-query state only, so concurrent queries are safe.
+    static final class AlternativeRoutes {
+        private static final RouteMetrics.Search YEN_METRICS = RouteMetrics.search("yen");
+        private static final RouteMetrics.Search PENALTY_METRICS = RouteMetrics.search("penalty");
+        static final double MAX_STRETCH = 1.5; // Longest alternative, as a multiple of the primary's distance
+        static final double PENALTY_FACTOR = 1.4; // Weight multiplier per earlier route over an edge
+        static final int MAX_YEN_ROUTES = 64; // Routes Yen enumerates before giving up on the overlap cap
+        static final int PENALTY_ROUNDS_PER_ROUTE = 3;
+        private final GraphView graph, reverse;
+
+        AlternativeRoutes(CsrGraph graph) { this(graph, graph.transpose()); }
+
+        // reverse must be the transpose of graph (CsrGraph.transpose()), so node indices match
+        AlternativeRoutes(GraphView graph, GraphView reverse) {
+            if (graph.nodeCount() != reverse.nodeCount() || graph.edgeCount() != reverse.edgeCount()) {
+                throw new IllegalArgumentException("Reverse graph does not match the graph");
+            }
+            this.graph = graph;
+            this.reverse = reverse;
+        }
+
+        // One loopless route; edges[i] leads from nodes[i] to nodes[i + 1], always the lightest
+        // of any parallel edges. Equal when the nodes are.
+        static final class Route {
+            private final GraphView graph;
+            private final int[] nodes, edges;
+            private final double distance;
+            private final double overlap; // Share of the primary's distance this route drives too
+            private final int deviation; // Index of the node where it left the route it was derived from
+
+            Route(GraphView graph, int[] nodes, int[] edges, double distance, double overlap, int deviation) {
+                this.graph = graph;
+                this.nodes = nodes;
+                this.edges = edges;
+                this.distance = distance;
+                this.overlap = overlap;
+                this.deviation = deviation;
+            }
+
+            public List<Node> getPath() {
+                List<Node> path = new ArrayList<>(nodes.length);
+                for (int node : nodes) path.add(graph.node(node));
+                return path;
+            }
+            public double getDistance() { return distance; }
+            public double getOverlap() { return overlap; }
+
+            @Override
+            public boolean equals(Object o) { return o instanceof Route && Arrays.equals(nodes, ((Route) o).nodes); }
+
+            @Override
+            public int hashCode() { return Arrays.hashCode(nodes); }
+        }
+
+        static final class Result {
+            private final Node start, end;
+            private final List<Route> routes; // Primary first, then alternatives by distance
+
+            Result(Node start, Node end, List<Route> routes) {
+                this.start = start;
+                this.end = end;
+                this.routes = Collections.unmodifiableList(routes);
+            }
+
+            public List<Route> getRoutes() { return routes; }
+            public boolean hasPath() { return !routes.isEmpty(); }
+            public Route getPrimary() { return hasPath() ? routes.get(0) : null; }
+            public List<Route> getAlternatives() { return hasPath() ? routes.subList(1, routes.size()) : routes; }
+
+            public String describe() {
+                if (!hasPath()) return "No route from '" + start.getId() + "' to '" + end.getId() + "'.";
+                StringBuilder out = new StringBuilder();
+                for (int i = 0; i < routes.size(); i++) {
+                    Route r = routes.get(i);
+                    if (i == 0) {
+                        out.append(String.format("Primary (%.1f): ", r.distance));
+                    } else {
+                        out.append(String.format("Alternative %d (%.1f, +%.1f, %.0f%% shared): ", i, r.distance,
+                                r.distance - routes.get(0).distance, 100 * r.overlap));
+                    }
+                    for (int j = 0; j < r.nodes.length; j++) out.append(j > 0 ? " -> " : "").append(r.graph.node(r.nodes[j]).getId());
+                    out.append('\n');
+                }
+                if (routes.size() == 1) out.append("No alternative route within the overlap cap.\n");
+                return out.toString();
+            }
+        }
+
+        // The k shortest loopless routes (primary included) that share at most maxOverlap of the primary
+        public Result kShortest(Node startNode, Node endNode, int k, double maxOverlap) {
+            try (QueryContext context = QueryContext.acquire(graph.nodeCount())) {
+                return kShortest(new Query(context, startNode, endNode, k, maxOverlap), startNode, endNode, k, maxOverlap);
+            }
+        }
+
+        private Result kShortest(Query query, Node startNode, Node endNode, int k, double maxOverlap) {
+            List<Route> accepted = new ArrayList<>(k);
+            if (query.primary != null) {
+                Route primary = query.primary;
+                accepted.add(primary);
+                List<Route> found = new ArrayList<>(); // Every route enumerated so far, accepted or not
+                found.add(primary);
+                Set<Route> seen = new HashSet<>(found);
+                PriorityQueue<Route> candidates = new PriorityQueue<>(Comparator.comparingDouble(Route::getDistance));
+                double maxDistance = MAX_STRETCH * primary.distance;
+                int[] shared = new int[MAX_YEN_ROUTES]; // Leading nodes each found route has in common with last
+                IntList banned = new IntList(), edges = new IntList();
+                Route last = primary;
+                while (accepted.size() < k && found.size() < MAX_YEN_ROUTES) {
+                    for (int j = 0; j < found.size(); j++) shared[j] = commonPrefix(found.get(j).nodes, last.nodes);
+                    query.unblockAll();
+                    double rootCost = 0;
+                    for (int i = 0; i < last.edges.length; i++) {
+                        if (i > 0) {
+                            query.block(last.nodes[i - 1]);
+                            rootCost += graph.weight(last.edges[i - 1]);
+                        }
+                        if (i < last.deviation) continue; // Covered when last's parent was expanded
+                        // Leaving the root towards a node an earlier route with the same root went to next
+                        // would find that route again
+                        banned.clear();
+                        for (int j = 0; j < found.size(); j++) {
+                            if (shared[j] > i && found.get(j).nodes.length > i + 1) banned.add(found.get(j).nodes[i + 1]);
+                        }
+                        edges.clear();
+                        for (int j = 0; j < i; j++) edges.add(last.edges[j]);
+                        if (!query.search(last.nodes[i], banned, maxDistance - rootCost, edges)) continue;
+                        Route candidate = query.route(edges, i);
+                        if (seen.add(candidate)) candidates.add(candidate);
+                    }
+                    last = candidates.poll();
+                    if (last == null) break;
+                    found.add(last);
+                    if (last.overlap <= maxOverlap) accepted.add(last);
+                }
+            }
+            if (RouteMetrics.ENABLED) query.record(YEN_METRICS);
+            return new Result(startNode, endNode, accepted);
+        }
+
+        // The primary plus up to k - 1 penalty-method alternatives sharing at most maxOverlap of it
+        public Result penalized(Node startNode, Node endNode, int k, double maxOverlap) {
+            try (QueryContext context = QueryContext.acquire(graph.nodeCount())) {
+                return penalized(new Query(context, startNode, endNode, k, maxOverlap), startNode, endNode, k, maxOverlap);
+            }
+        }
+
+        private Result penalized(Query query, Node startNode, Node endNode, int k, double maxOverlap) {
+            List<Route> accepted = new ArrayList<>(k);
+            if (query.primary != null) {
+                Route primary = query.primary;
+                accepted.add(primary);
+                Set<Route> seen = new HashSet<>(accepted);
+                query.penalize(primary);
+                double maxDistance = MAX_STRETCH * primary.distance;
+                IntList none = new IntList(1), edges = new IntList();
+                for (int round = 0; accepted.size() < k && round < PENALTY_ROUNDS_PER_ROUTE * (k - 1); round++) {
+                    edges.clear();
+                    if (!query.search(query.start, none, Double.POSITIVE_INFINITY, edges)) break;
+                    Route route = query.route(edges, 0);
+                    query.penalize(route);
+                    if (route.distance <= maxDistance && route.overlap <= maxOverlap && seen.add(route)) accepted.add(route);
+                }
+                accepted.subList(1, accepted.size()).sort(Comparator.comparingDouble(Route::getDistance));
+            }
+            if (RouteMetrics.ENABLED) query.record(PENALTY_METRICS);
+            return new Result(startNode, endNode, accepted);
+        }
+
+        private static int commonPrefix(int[] a, int[] b) {
+            int i = 0;
+            while (i < a.length && i < b.length && a[i] == b[i]) i++;
+            return i;
+        }
+
+        // Search state of one query: the backward tree on the context's backward side and the
+        // forward searches on its forward side, which is reset after each search from the list
+        // of nodes it touched. The blocked and open stamps have no counterpart in QueryContext
+        // and stay per query.
+        private final class Query {
+            final int start, end;
+            final Route primary; // null when the end cannot be reached
+            final QueryContext.Side tree; // dist: remaining cost, exact when settled(u); pred: next node towards the end
+            double radius; // Every unsettled node is at least this far from the end
+            final QueryContext.Side forward; // pred: the edge a node was reached by
+            final int[] blocked; // == blockStamp: a root node the current spur search must avoid
+            final int[] open; // Memo of isOpen per search: 2 * searchStamp open, 2 * searchStamp + 1 not
+            int blockStamp = 1, searchStamp;
+            final IndexedMinHeap heap;
+            final IntList touched = new IntList(), walk = new IntList(), back = new IntList();
+            final int[] primaryEdges; // Sorted, for overlap
+            Map<Integer, Double> penalties; // Edge -> weight multiplier; null unless penalized
+            boolean[] penalizedFrom; // Nodes with a penalized out-edge, so most relaxations skip the map
+            int settledCount, relaxed, pushes;
+
+            Query(QueryContext context, Node startNode, Node endNode, int k, double maxOverlap) {
+                if (k < 1) throw new IllegalArgumentException("k must be at least 1");
+                if (!(maxOverlap >= 0 && maxOverlap <= 1)) throw new IllegalArgumentException("Invalid overlap cap " + maxOverlap);
+                start = graph.indexOf(startNode);
+                end = graph.indexOf(endNode);
+                if (start < 0) throw new IllegalArgumentException("Node " + startNode + " is not in the graph");
+                if (end < 0) throw new IllegalArgumentException("Node " + endNode + " is not in the graph");
+                int n = graph.nodeCount();
+                tree = context.backward();
+                forward = context.forward;
+                heap = forward.heap;
+                blocked = new int[n];
+                open = new int[n];
+                growTree();
+
+                if (!tree.isLabelled(start)) {
+                    primary = null;
+                    primaryEdges = new int[0];
+                } else {
+                    IntList edges = new IntList();
+                    for (int u = start; u != end; u = tree.pred[u]) edges.add(treeEdge(u));
+                    primaryEdges = edges.toArray();
+                    Arrays.sort(primaryEdges);
+                    primary = route(edges, 0);
+                }
+            }
+
+            // Backward Dijkstra from the end until start is settled and nothing within
+            // MAX_STRETCH of its distance is left
+            private void growTree() {
+                IndexedMinHeap queue = tree.heap;
+                tree.label(end, 0.0, -1);
+                queue.insertOrDecrease(end, 0.0);
+                pushes++;
+                double limit = Double.POSITIVE_INFINITY;
+                while (!queue.isEmpty() && queue.peekKey() <= limit) {
+                    int u = queue.poll();
+                    settledCount++;
+                    double du = tree.dist[u];
+                    if (u == start) limit = MAX_STRETCH * du;
+                    for (int e = reverse.firstEdge(u), last = reverse.endEdge(u); e < last; e++, relaxed++) {
+                        int v = reverse.target(e);
+                        double newDist = du + reverse.weight(e);
+                        if (newDist < tree.distance(v)) {
+                            tree.label(v, newDist, u);
+                            queue.insertOrDecrease(v, newDist);
+                            pushes++;
+                        }
+                    }
+                }
+                radius = queue.isEmpty() ? Double.POSITIVE_INFINITY : queue.peekKey();
+                queue.clear();
+            }
+
+            // Settled nodes are at most limit from the end and everything left queued at least
+            // radius > limit, so the labelled nodes nearer than radius are exactly the settled ones
+            boolean settled(int node) { return tree.distance(node) < radius; }
+
+            // Consistent lower bound on the remaining cost: any penalty only adds to it
+            double estimate(int node) { return settled(node) ? tree.dist[node] : radius; }
+
+            // The edge the backward tree took from u (the lightest one to its next node)
+            int treeEdge(int u) {
+                int next = tree.pred[u], best = -1;
+                for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                    if (graph.target(e) == next && (best < 0 || graph.weight(e) < graph.weight(best))) best = e;
+                }
+                return best;
+            }
+
+            double cost(int u, int edge) {
+                double weight = graph.weight(edge);
+                if (penalizedFrom == null || !penalizedFrom[u]) return weight;
+                return weight * penalties.getOrDefault(edge, 1.0);
+            }
+
+            void unblockAll() { blockStamp++; }
+            void block(int node) { blocked[node] = blockStamp; }
+
+            void penalize(Route route) {
+                if (penalties == null) {
+                    penalties = new HashMap<>();
+                    penalizedFrom = new boolean[graph.nodeCount()];
+                }
+                for (int i = 0; i < route.edges.length; i++) {
+                    penalties.merge(route.edges[i], PENALTY_FACTOR, (a, b) -> a * b);
+                    penalizedFrom[route.nodes[i]] = true;
+                }
+            }
+
+            // A* from source to the end that never enters a blocked node or goes from source
+            // straight to a banned node, pruned at limit. Appends the route's edges to edges; false if none.
+            boolean search(int source, IntList banned, double limit, IntList edges) {
+                searchStamp++;
+                forward.label(source, 0.0, -1);
+                touched.add(source);
+                heap.insertOrDecrease(source, estimate(source));
+                pushes++;
+                int via = -1; // Popped node whose backward-tree route finishes the result
+                while (!heap.isEmpty() && heap.peekKey() <= limit) {
+                    int u = heap.poll();
+                    settledCount++;
+                    if (settled(u) && isOpen(u, source, banned)) {
+                        via = u;
+                        break;
+                    }
+                    double du = forward.dist[u];
+                    for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++, relaxed++) {
+                        int v = graph.target(e);
+                        if (blocked[v] == blockStamp || (u == source && contains(banned, v))) continue;
+                        double newDist = du + cost(u, e);
+                        if (newDist < forward.distance(v)) {
+                            double key = newDist + estimate(v);
+                            if (key == Double.POSITIVE_INFINITY) continue; // Cannot reach the end
+                            if (!forward.isLabelled(v)) touched.add(v);
+                            forward.label(v, newDist, e);
+                            heap.insertOrDecrease(v, key);
+                            pushes++;
+                        }
+                    }
+                }
+                if (via >= 0) {
+                    back.clear();
+                    for (int u = via; u != source; u = sourceOf(forward.pred[u])) back.add(forward.pred[u]);
+                    for (int i = back.size() - 1; i >= 0; i--) edges.add(back.get(i));
+                    for (int u = via; u != end; u = tree.pred[u]) edges.add(treeEdge(u));
+                }
+
+                heap.clear();
+                int[] reset = touched.array();
+                for (int i = 0; i < touched.size(); i++) forward.unlabel(reset[i]);
+                touched.clear();
+                return via >= 0;
+            }
+
+            // The node an edge leaves: the last one whose edge range starts at or before it
+            private int sourceOf(int edge) {
+                int low = 0, high = graph.nodeCount() - 1;
+                while (low < high) {
+                    int mid = (low + high + 1) >>> 1;
+                    if (graph.firstEdge(mid) <= edge) low = mid; else high = mid - 1;
+                }
+                return low;
+            }
+
+            // Whether the backward-tree route from u still leads to the end: it must not pass
+            // a blocked node or source (that would close a loop), go from source to a banned
+            // node or use a penalized edge. Every node walked gets the same answer, so each
+            // is walked at most once per search.
+            private boolean isOpen(int u, int source, IntList banned) {
+                int yes = 2 * searchStamp, no = yes + 1;
+                boolean result = true;
+                walk.clear();
+                for (int x = u; x != end; x = tree.pred[x]) {
+                    if (x != u && (blocked[x] == blockStamp || x == source)) {
+                        result = false;
+                        break;
+                    }
+                    if (open[x] == yes || open[x] == no) {
+                        result = open[x] == yes;
+                        break;
+                    }
+                    walk.add(x);
+                    if ((x == source && contains(banned, tree.pred[x]))
+                            || (penalizedFrom != null && penalizedFrom[x] && penalties.containsKey(treeEdge(x)))) {
+                        result = false;
+                        break;
+                    }
+                }
+                int[] walked = walk.array();
+                for (int i = 0; i < walk.size(); i++) open[walked[i]] = result ? yes : no;
+                return result;
+            }
+
+            private boolean contains(IntList list, int value) {
+                for (int i = 0; i < list.size(); i++) {
+                    if (list.get(i) == value) return true;
+                }
+                return false;
+            }
+
+            Route route(IntList edges, int deviation) {
+                int[] edgeArray = edges.toArray();
+                int[] nodes = new int[edgeArray.length + 1];
+                nodes[0] = start;
+                double distance = 0, sharedDistance = 0;
+                for (int i = 0; i < edgeArray.length; i++) {
+                    nodes[i + 1] = graph.target(edgeArray[i]);
+                    distance += graph.weight(edgeArray[i]);
+                    if (Arrays.binarySearch(primaryEdges, edgeArray[i]) >= 0) sharedDistance += graph.weight(edgeArray[i]);
+                }
+                double primaryDistance = tree.dist[start];
+                double overlap = (primaryDistance > 0) ? sharedDistance / primaryDistance : 1.0;
+                return new Route(graph, nodes, edgeArray, distance, overlap, deviation);
+            }
+
+            void record(RouteMetrics.Search metrics) {
+                metrics.record(settledCount, relaxed, pushes, settledCount, 0);
+            }
+        }
+    }
+
+    // --- Inner Class: Station Dispatch ---
+    // "Which station reaches this incident first?" answered by one search instead of one
+    // Dijkstra per station. Arrival = readiness delay + travel time, and paths always run
+    // station -> incident, so one-way roads (addEdge(..., false)) are respected.
+    //  - fromStations seeds every station at its delay. For k = 1 this is plain multi-source
+    //    Dijkstra; for larger k each node settles up to k labels from distinct stations and
+    //    the search stops once the incident has k of them. Needs no reversed graph.
+    //  - fromIncident runs one Dijkstra backwards from the incident over the reversed graph
+    //    (CsrGraph.transpose(), or the graph itself when every road is two-way) until no
+    //    unsettled station can beat the k-th arrival. Only the incident's neighbourhood is
+    //    searched, so this is usually the faster one, by far for k > 1.
+    // Search state is borrowed from a QueryContext, whose backward side doubles as the
+    // station table (delay per station node), so a query costs what it touches, not O(nodes).
+    static final class StationDispatch {
+        private static final RouteMetrics.Search METRICS = RouteMetrics.search("dispatch");
+
+        // One station's offer for the incident
+        static final class Candidate {
+            private final Node station;
+            private final double delay, arrival;
+            private final List<Node> path; // Station first, incident last
+
+            Candidate(Node station, double delay, double arrival, List<Node> path) {
+                this.station = station;
+                this.delay = delay;
+                this.arrival = arrival;
+                this.path = path;
+            }
+
+            public Node getStation() { return station; }
+            public double getDelay() { return delay; }
+            public double getTravelTime() { return arrival - delay; }
+            public double getArrival() { return arrival; }
+            public List<Node> getPath() { return path; }
+        }
+
+        static final class Result {
+            private final Node incident;
+            private final List<Candidate> candidates; // Earliest arrival first, at most k
+
+            Result(Node incident, List<Candidate> candidates) {
+                this.incident = incident;
+                this.candidates = Collections.unmodifiableList(candidates);
+            }
+
+            public Node getIncident() { return incident; }
+            public List<Candidate> getCandidates() { return candidates; }
+            public boolean hasWinner() { return !candidates.isEmpty(); }
+            public Candidate getWinner() { return hasWinner() ? candidates.get(0) : null; }
+            public List<Node> getPath() { return hasWinner() ? getWinner().getPath() : null; }
+            public double getDistance() { return hasWinner() ? getWinner().getArrival() : Double.POSITIVE_INFINITY; }
+
+            public String describe() {
+                if (!hasWinner()) return "No station can reach '" + incident.getId() + "'.";
+                StringBuilder out = new StringBuilder();
+                for (int i = 0; i < candidates.size(); i++) {
+                    Candidate c = candidates.get(i);
+                    out.append(String.format("%d. %s arrives at %.1f (ready %.1f + travel %.1f): ", i + 1,
+                            c.station.getId(), c.arrival, c.delay, c.getTravelTime()));
+                    for (int j = 0; j < c.path.size(); j++) out.append(j > 0 ? " -> " : "").append(c.path.get(j).getId());
+                    out.append('\n');
+                }
+                return out.toString();
+            }
+        }
+
+        public static Result fromStations(GraphView graph, List<Node> stations, Node incident) {
+            return fromStations(graph, stations, null, incident, 1);
+        }
+
+        // delays may be null (all stations ready now); otherwise delays[i] belongs to stations.get(i)
+        public static Result fromStations(GraphView graph, List<Node> stations, double[] delays, Node incident, int k) {
+            int target = graph.indexOf(incident);
+            try (QueryContext context = QueryContext.acquire(graph.nodeCount())) {
+                QueryContext.Side delay = context.backward();
+                IntList seeds = markStations(delay, graph, stations, delays, incident, target, k);
+                if (k == 1) return nearestStation(graph, context.forward, delay, seeds, incident, target);
+
+                // Labels are (node, station, arrival, predecessor label); settled ones are chained per node,
+                // newest first, from heads.pred
+                IntList labelNode = new IntList(), labelStation = new IntList(), labelPred = new IntList(), nextSettled = new IntList();
+                DoubleList labelArrival = new DoubleList();
+                QueryContext.Side heads = context.forward;
+                LabelQueue queue = new LabelQueue(labelArrival);
+
+                for (int i = 0; i < seeds.size(); i++) {
+                    int s = seeds.get(i);
+                    queue.push(newLabel(labelNode, labelStation, labelPred, nextSettled, labelArrival, s, s, -1, delay.dist[s]));
+                }
+                int pushes = queue.size(), pops = 0, stale = 0, settled = 0, relaxed = 0;
+                List<Candidate> candidates = new ArrayList<>(k);
+                while (!queue.isEmpty()) {
+                    int label = queue.pop();
+                    pops++;
+                    int u = labelNode.get(label), station = labelStation.get(label);
+                    if (isClosed(heads, nextSettled, labelStation, u, station, k)) {
+                        stale++; // The node is full, or this station already reached it sooner
+                        continue;
+                    }
+                    double arrival = labelArrival.get(label);
+                    nextSettled.set(label, heads.isLabelled(u) ? heads.pred[u] : -1);
+                    heads.label(u, arrival, label);
+                    settled++;
+                    if (u == target) {
+                        LinkedList<Node> path = new LinkedList<>();
+                        for (int step = label; step != -1; step = labelPred.get(step)) path.addFirst(graph.node(labelNode.get(step)));
+                        candidates.add(new Candidate(graph.node(station), delay.dist[station], arrival, path));
+                        if (candidates.size() == k) break;
+                    }
+                    for (int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++, relaxed++) {
+                        int v = graph.target(e);
+                        double newArrival = arrival + graph.weight(e);
+                        if (isClosed(heads, nextSettled, labelStation, v, station, k)) continue;
+                        queue.push(newLabel(labelNode, labelStation, labelPred, nextSettled, labelArrival, v, station, label, newArrival));
+                        pushes++;
+                    }
+                }
+                if (RouteMetrics.ENABLED) METRICS.record(settled, relaxed, pushes, pops, stale);
+                return new Result(incident, candidates);
+            }
+        }
+
+        // One label per node, so the usual decrease-key search; the winning station is the root of the incident's path
+        private static Result nearestStation(GraphView graph, QueryContext.Side q, QueryContext.Side delay, IntList seeds,
+                                             Node incident, int target) {
+            IndexedMinHeap heap = q.heap;
+            for (int i = 0; i < seeds.size(); i++) {
+                int s = seeds.get(i);
+                q.label(s, delay.dist[s], -1);
+                heap.insertOrDecrease(s, delay.dist[s]);
+            }
+
+            int settled = 0, relaxed = 0, pushes = heap.size();
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                settled++;
+                if (u == target) break;
+                double du = q.dist[u];
+                for (int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++, relaxed++) {
+                    int v = graph.target(e);
+                    double newDist = du + graph.weight(e);
+                    if (newDist < q.distance(v)) {
+                        q.label(v, newDist, u);
+                        heap.insertOrDecrease(v, newDist);
+                        pushes++;
+                    }
+                }
+            }
+            if (RouteMetrics.ENABLED) METRICS.record(settled, relaxed, pushes, settled, 0);
+
+            List<Candidate> candidates = new ArrayList<>(1);
+            if (q.isLabelled(target)) {
+                int winner = target;
+                while (q.pred[winner] != -1) winner = q.pred[winner];
+                candidates.add(new Candidate(graph.node(winner), delay.dist[winner], q.dist[target], graph.buildPath(q.pred, target)));
+            }
+            return new Result(incident, candidates);
+        }
+
+        // reverse must be the transpose of the road graph with the same node indices
+        public static Result fromIncident(GraphView reverse, List<Node> stations, double[] delays, Node incident, int k) {
+            int source = reverse.indexOf(incident);
+            try (QueryContext context = QueryContext.acquire(reverse.nodeCount())) {
+                QueryContext.Side q = context.forward, delay = context.backward(); // q.pred is the successor towards the incident on the road graph
+                int remaining = markStations(delay, reverse, stations, delays, incident, source, k).size();
+                IndexedMinHeap heap = q.heap;
+                q.label(source, 0.0, -1);
+                heap.insertOrDecrease(source, 0.0);
+
+                List<Candidate> candidates = new ArrayList<>(k + 1);
+                int settled = 0, relaxed = 0, pushes = 1;
+                while (!heap.isEmpty()) {
+                    // Unsettled stations arrive no earlier than their travel time, which is at least the queue minimum
+                    if (candidates.size() == k && heap.peekKey() >= candidates.get(k - 1).arrival) break;
+                    int u = heap.poll();
+                    settled++;
+                    if (delay.isLabelled(u)) {
+                        LinkedList<Node> path = new LinkedList<>();
+                        for (int step = u; step != -1; step = q.pred[step]) path.addLast(reverse.node(step));
+                        insertByArrival(candidates, new Candidate(reverse.node(u), delay.dist[u], delay.dist[u] + q.dist[u], path), k);
+                        if (--remaining == 0) break;
+                    }
+                    double du = q.dist[u];
+                    for (int e = reverse.firstEdge(u), end = reverse.endEdge(u); e < end; e++, relaxed++) {
+                        int v = reverse.target(e);
+                        double newDist = du + reverse.weight(e);
+                        if (newDist < q.distance(v)) {
+                            q.label(v, newDist, u);
+                            heap.insertOrDecrease(v, newDist);
+                            pushes++;
+                        }
+                    }
+                }
+                if (RouteMetrics.ENABLED) METRICS.record(settled, relaxed, pushes, settled, 0);
+                return new Result(incident, candidates);
+            }
+        }
+
+        // Labels every station in delay with its readiness delay (a station listed twice keeps the
+        // smaller one) and returns the distinct station indices. Costs O(stations), not O(nodes).
+        private static IntList markStations(QueryContext.Side delay, GraphView graph, List<Node> stations, double[] delays,
+                                            Node incident, int incidentIndex, int k) {
+            if (incidentIndex < 0) throw new IllegalArgumentException("Incident " + incident + " is not in the graph");
+            if (k < 1) throw new IllegalArgumentException("k must be at least 1, got " + k);
+            if (delays != null && delays.length != stations.size()) {
+                throw new IllegalArgumentException(delays.length + " delays given for " + stations.size() + " stations");
+            }
+            IntList seeds = new IntList(stations.size());
+            for (int i = 0; i < stations.size(); i++) {
+                int index = graph.indexOf(stations.get(i));
+                if (index < 0) throw new IllegalArgumentException("Station " + stations.get(i) + " is not in the graph");
+                double d = (delays == null) ? 0.0 : delays[i];
+                if (!(d >= 0 && d < Double.POSITIVE_INFINITY)) {
+                    throw new IllegalArgumentException("Invalid readiness delay " + d + " for station " + stations.get(i));
+                }
+                if (!delay.isLabelled(index)) seeds.add(index);
+                if (d < delay.distance(index)) delay.label(index, d, -1);
+            }
+            return seeds;
+        }
+
+        // True when the node already has k settled labels, or one from this station
+        private static boolean isClosed(QueryContext.Side heads, IntList nextSettled, IntList labelStation, int node, int station, int k) {
+            if (!heads.isLabelled(node)) return false;
+            int count = 0;
+            for (int label = heads.pred[node]; label != -1; label = nextSettled.get(label)) {
+                if (labelStation.get(label) == station || ++count == k) return true;
+            }
+            return false;
+        }
+
+        private static int newLabel(IntList node, IntList station, IntList pred, IntList nextSettled, DoubleList arrival,
+                                    int u, int s, int predLabel, double at) {
+            node.add(u);
+            station.add(s);
+            pred.add(predLabel);
+            nextSettled.add(-1);
+            arrival.add(at);
+            return arrival.size() - 1;
+        }
+
+        // Keeps the list sorted by arrival (ties by station id) and at most k long
+        private static void insertByArrival(List<Candidate> candidates, Candidate candidate, int k) {
+            int i = candidates.size();
+            while (i > 0 && (candidates.get(i - 1).arrival > candidate.arrival || (candidates.get(i - 1).arrival == candidate.arrival
+                    && candidates.get(i - 1).station.getId().compareTo(candidate.station.getId()) > 0))) i--;
+            if (i < k) {
+                candidates.add(i, candidate);
+                if (candidates.size() > k) candidates.remove(k);
+            }
+        }
+
+        // Binary min-heap of label ids keyed by their arrival. Labels are never updated once
+        // queued; superseded ones are skipped when popped.
+        private static final class LabelQueue {
+            private final DoubleList keys;
+            private int[] heap = new int[64];
+            private int size;
+
+            LabelQueue(DoubleList keys) { this.keys = keys; }
+
+            boolean isEmpty() { return size == 0; }
+            int size() { return size; }
+
+            void push(int label) {
+                if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+                double key = keys.get(label);
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (keys.get(heap[parent]) <= key) break;
+                    heap[i] = heap[parent];
+                    i = parent;
+                }
+                heap[i] = label;
+            }
+
+            int pop() {
+                int top = heap[0];
+                int last = heap[--size];
+                double key = keys.get(last);
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && keys.get(heap[child + 1]) < keys.get(heap[child])) child++;
+                    if (keys.get(heap[child]) >= key) break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = last;
+                return top;
+            }
+        }
+    }
+
+    // --- Inner Class: Response Coverage ---
+    // Per-node label "which station gets here first, and how long does it take", up to a
+    // time bound. Labels are primitive arrays: the index into getStations() (-1 when no
+    // station reaches the node within the bound) and the time as a float.
+    static final class Coverage {
+        private final GraphView graph;
+        private final List<Node> stations;
+        private final double bound;
+        private final int[] station;
+        private final float[] time;
+
+        Coverage(GraphView graph, List<Node> stations, double bound, int[] station, float[] time) {
+            this.graph = graph;
+            this.stations = stations;
+            this.bound = bound;
+            this.station = station;
+            this.time = time;
+        }
+
+        public GraphView getGraph() { return graph; }
+        public List<Node> getStations() { return stations; }
+        public double getBound() { return bound; }
+        public int stationOf(int node) { return station[node]; }
+        public boolean isCovered(int node) { return station[node] >= 0; }
+        public double timeTo(int node) { return (station[node] < 0) ? Double.POSITIVE_INFINITY : time[node]; }
+        public Node nearestStation(int node) { return (station[node] < 0) ? null : stations.get(station[node]); }
+
+        // Index of the first band (ascending upper limits, e.g. 4, 8, 12 minutes) the node's
+        // time falls in, or bands.length when it is beyond the last one or not covered
+        public int band(int node, double[] bands) {
+            double t = timeTo(node);
+            for (int i = 0; i < bands.length; i++) {
+                if (t <= bands[i]) return i;
+            }
+            return bands.length;
+        }
+
+        // Nodes per band, with the uncovered ones in the last slot
+        public int[] countByBand(double[] bands) {
+            int[] counts = new int[bands.length + 1];
+            for (int u = 0; u < station.length; u++) counts[band(u, bands)]++;
+            return counts;
+        }
+    }
+
+    // --- Inner Class: Isochrones ---
+    // Everything reachable within a time bound of each station. Every station runs a
+    // truncated Dijkstra (stops at a cost limit instead of at a target) as its own task on
+    // a ForkJoinPool, and settled nodes are merged into one shared label per node:
+    // (float time << 32 | station) in an AtomicLongArray, lowered with compare-and-set, so
+    // the smallest time wins and ties go to the lower station index. A search stops
+    // expanding a node another station already reached sooner, since everything beyond
+    // that node is closer to the other station too. For that pruning to bite, neighbouring
+    // stations must grow at the same pace, so the sweep runs in rounds with a doubling
+    // limit. Between rounds a station keeps only its unsettled frontier; nodes it settled
+    // before are recognised by their labels. Workers share nothing but the label array
+    // and reuse their search arrays between stations, resetting only what they touched.
+    static final class Isochrones {
+        private static final RouteMetrics.Search METRICS = RouteMetrics.search("isochrone");
+        private static final long UNREACHED = Long.MAX_VALUE;
+
+        // The nodes within bound of one station
+        public static Coverage of(GraphView graph, Node station, double bound) {
+            return compute(graph, Collections.singletonList(station), bound, ForkJoinPool.commonPool());
+        }
+
+        public static Coverage compute(GraphView graph, List<Node> stations, double bound) {
+            return compute(graph, stations, bound, ForkJoinPool.commonPool());
+        }
+
+        public static Coverage compute(GraphView graph, List<Node> stations, double bound, ForkJoinPool pool) {
+            if (!(bound >= 0)) throw new IllegalArgumentException("Invalid time bound " + bound);
+            int[] sources = new int[stations.size()];
+            for (int i = 0; i < sources.length; i++) {
+                sources[i] = graph.indexOf(stations.get(i));
+                if (sources[i] < 0) throw new IllegalArgumentException("Station " + stations.get(i) + " is not in the graph");
+            }
+            int n = graph.nodeCount();
+            AtomicLongArray labels = new AtomicLongArray(n);
+            for (int u = 0; u < n; u++) labels.set(u, UNREACHED);
+
+            Queue<Scratch> idle = new ConcurrentLinkedQueue<>(); // At most one per worker thread
+            Frontier[] frontiers = new Frontier[sources.length];
+            for (int i = 0; i < sources.length; i++) {
+                frontiers[i] = new Frontier();
+                frontiers[i].add(sources[i], 0.0);
+            }
+            double limit = Math.min(bound, initialLimit(graph));
+            while (true) {
+                double roundLimit = limit;
+                List<Callable<Void>> sweeps = new ArrayList<>(sources.length);
+                for (int i = 0; i < sources.length; i++) {
+                    if (frontiers[i].isEmpty()) continue;
+                    int stationIndex = i;
+                    sweeps.add(() -> {
+                        Scratch scratch = idle.poll();
+                        if (scratch == null) scratch = new Scratch(n);
+                        sweep(graph, stationIndex, roundLimit, labels, scratch, frontiers[stationIndex]);
+                        idle.add(scratch);
+                        return null;
+                    });
+                }
+                if (sweeps.isEmpty()) break;
+                for (Future<Void> sweep : pool.invokeAll(sweeps)) { // invokeAll waits, so the frontiers are visible afterwards
+                    try {
+                        sweep.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException("Coverage sweep interrupted");
+                    } catch (ExecutionException e) {
+                        throw new CompletionException(e.getCause());
+                    }
+                }
+                if (limit >= bound) break;
+                limit = Math.min(bound, limit * 2);
+            }
+
+            int[] station = new int[n];
+            float[] time = new float[n];
+            for (int u = 0; u < n; u++) {
+                long label = labels.get(u);
+                station[u] = (label == UNREACHED) ? -1 : (int) label;
+                time[u] = (label == UNREACHED) ? Float.POSITIVE_INFINITY : Float.intBitsToFloat((int) (label >>> 32));
+            }
+            return new Coverage(graph, Collections.unmodifiableList(new ArrayList<>(stations)), bound, station, time);
+        }
+
+        // A few average edges: small enough that the first rounds stay local
+        private static double initialLimit(GraphView graph) {
+            int samples = Math.min(graph.edgeCount(), 1024);
+            double sum = 0;
+            for (int i = 0; i < samples; i++) {
+                double weight = graph.weight((int) ((long) i * graph.edgeCount() / samples));
+                if (Double.isFinite(weight)) sum += weight;
+            }
+            return (sum > 0) ? 4 * sum / samples : 1.0;
+        }
+
+        // Continues the station's search from its frontier up to limit and leaves the new
+        // frontier behind. A node this station settled in an earlier round may be queued
+        // again, but its label is then already at least as small, so it is not expanded.
+        private static void sweep(GraphView graph, int stationIndex, double limit, AtomicLongArray labels,
+                                  Scratch scratch, Frontier frontier) {
+            double[] dist = scratch.dist;
+            IndexedMinHeap heap = scratch.heap;
+            IntList touched = scratch.touched;
+            for (int i = 0; i < frontier.size(); i++) {
+                int u = frontier.nodes.get(i);
+                if (dist[u] == Double.POSITIVE_INFINITY) touched.add(u);
+                dist[u] = frontier.dist.get(i);
+                heap.insertOrDecrease(u, dist[u]);
+            }
+            frontier.clear();
+            int settled = 0, relaxed = 0, pushes = heap.size();
+            while (!heap.isEmpty() && heap.peekKey() <= limit) {
+                int u = heap.poll();
+                settled++;
+                double du = dist[u];
+                if (!claim(labels, u, ((long) Float.floatToIntBits((float) du) << 32) | stationIndex)) continue;
+                for (int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++, relaxed++) {
+                    int v = graph.target(e);
+                    double newDist = du + graph.weight(e);
+                    if (newDist < dist[v]) {
+                        if (dist[v] == Double.POSITIVE_INFINITY) touched.add(v);
+                        dist[v] = newDist;
+                        heap.insertOrDecrease(v, newDist);
+                        pushes++;
+                    }
+                }
+            }
+            if (RouteMetrics.ENABLED) METRICS.record(settled, relaxed, pushes, settled, 0);
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                frontier.add(u, dist[u]);
+            }
+
+            int[] reset = touched.array();
+            for (int i = 0; i < touched.size(); i++) dist[reset[i]] = Double.POSITIVE_INFINITY;
+            touched.clear();
+        }
+
+        // Lowers the node's label to ours unless another station's is already smaller;
+        // false means that station got there first
+        private static boolean claim(AtomicLongArray labels, int node, long label) {
+            long current = labels.get(node);
+            while (label < current) {
+                if (labels.compareAndSet(node, current, label)) return true;
+                current = labels.get(node);
+            }
+            return label == current;
+        }
+
+        // Queued but unsettled nodes of one station's search, kept between rounds
+        private static final class Frontier {
+            final IntList nodes = new IntList(4);
+            final DoubleList dist = new DoubleList(4);
+
+            void add(int node, double d) {
+                nodes.add(node);
+                dist.add(d);
+            }
+            int size() { return nodes.size(); }
+            boolean isEmpty() { return nodes.size() == 0; }
+            void clear() {
+                nodes.clear();
+                dist.clear();
+            }
+        }
+
+        // One worker's search arrays, reset between stations
+        private static final class Scratch {
+            final double[] dist;
+            final IndexedMinHeap heap;
+            final IntList touched = new IntList();
+
+            Scratch(int n) {
+                dist = new double[n];
+                Arrays.fill(dist, Double.POSITIVE_INFINITY);
+                heap = new IndexedMinHeap(n);
+            }
+        }
+    }
+
+    // --- Inner Class: Graph Partition ---
+    // Splits a graph into geographic cells of at most maxCellSize nodes by recursive
+    // coordinate bisection: each part is cut at the median of its wider extent (x or y)
+    // until it is small enough, so cells are balanced, compact, and numbered so that
+    // neighbouring numbers are neighbours on the map. Deterministic: processes that
+    // partition the same graph with the same cell size agree on every cell without
+    // talking, which fingerprint() lets them check (it covers the graph's edges and
+    // weights as well as the cells, so a shard on another snapshot of the roads does not
+    // pass). Boundary nodes carry the overlay:
+    // entries have an edge in from another cell, exits an edge out to one (a node can be
+    // both). Only cellOf and the grouped node list are per node; the rest is per cell.
+    static final class GraphPartition {
+        private final int maxCellSize;
+        private final int[] cellOf;
+        private final int[] cellStart, cellNodes; // Nodes of cell c: cellNodes[cellStart[c] .. cellStart[c + 1]), ascending
+        private final int[][] entries, exits; // Per cell, ascending
+        private final long cutEdges;
+        private final long graphChecksum; // CRC32 of the offsets, targets and weights that were partitioned
+
+        private GraphPartition(int maxCellSize, int[] cellOf, int[] cellStart, int[] cellNodes, int[][] entries, int[][] exits, long cutEdges,
+                               long graphChecksum) {
+            this.maxCellSize = maxCellSize;
+            this.cellOf = cellOf;
+            this.cellStart = cellStart;
+            this.cellNodes = cellNodes;
+            this.entries = entries;
+            this.exits = exits;
+            this.cutEdges = cutEdges;
+            this.graphChecksum = graphChecksum;
+        }
+
+        public static GraphPartition bisect(GraphView graph, int maxCellSize) {
+            if (maxCellSize < 1) throw new IllegalArgumentException("Cell size must be at least 1");
+            int n = graph.nodeCount();
+            int[] order = new int[n];
+            for (int u = 0; u < n; u++) order[u] = u;
+            IntList cellStart = new IntList();
+            long[] keys = new long[Math.max(n, 1)];
+            split(graph, order, 0, n, maxCellSize, keys, cellStart);
+            cellStart.add(n);
+
+            int cellCount = cellStart.size() - 1;
+            int[] starts = cellStart.toArray();
+            int[] cellOf = new int[n];
+            for (int c = 0; c < cellCount; c++) {
+                Arrays.sort(order, starts[c], starts[c + 1]);
+                for (int i = starts[c]; i < starts[c + 1]; i++) cellOf[order[i]] = c;
+            }
+
+            boolean[] isEntry = new boolean[n], isExit = new boolean[n];
+            long cut = 0;
+            Checksum structure = new Checksum();
+            for (int u = 0; u < n; u++) {
+                structure.putInt(graph.firstEdge(u));
+                for (int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++) {
+                    int v = graph.target(e);
+                    structure.putInt(v);
+                    structure.putLong(Double.doubleToLongBits(graph.weight(e)));
+                    if (cellOf[v] != cellOf[u]) {
+                        isExit[u] = true;
+                        isEntry[v] = true;
+                        cut++;
+                    }
+                }
+            }
+            int[][] entries = new int[cellCount][], exits = new int[cellCount][];
+            IntList in = new IntList(), out = new IntList();
+            for (int c = 0; c < cellCount; c++) {
+                in.clear();
+                out.clear();
+                for (int i = starts[c]; i < starts[c + 1]; i++) {
+                    if (isEntry[order[i]]) in.add(order[i]);
+                    if (isExit[order[i]]) out.add(order[i]);
+                }
+                entries[c] = in.toArray();
+                exits[c] = out.toArray();
+            }
+            structure.putInt((n > 0) ? graph.endEdge(n - 1) : 0);
+            return new GraphPartition(maxCellSize, cellOf, starts, order, entries, exits, cut, structure.value());
+        }
+
+        // Cuts order[from, to) at the median of its wider extent; cells are appended in map order
+        private static void split(GraphView graph, int[] order, int from, int to, int maxCellSize, long[] keys, IntList cellStart) {
+            if (to - from <= maxCellSize) {
+                if (to > from) cellStart.add(from);
+                return;
+            }
+            int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+            for (int i = from; i < to; i++) {
+                int u = order[i];
+                minX = Math.min(minX, graph.x(u));
+                maxX = Math.max(maxX, graph.x(u));
+                minY = Math.min(minY, graph.y(u));
+                maxY = Math.max(maxY, graph.y(u));
+            }
+            boolean byX = (long) maxX - minX >= (long) maxY - minY;
+            // (coordinate, node) packed into one long, so a primitive sort orders by coordinate and breaks ties by index
+            for (int i = from; i < to; i++) {
+                int u = order[i];
+                keys[i] = ((long) (byX ? graph.x(u) : graph.y(u)) << 32) | u;
+            }
+            Arrays.sort(keys, from, to);
+            for (int i = from; i < to; i++) order[i] = (int) keys[i];
+            int middle = from + (to - from) / 2;
+            split(graph, order, from, middle, maxCellSize, keys, cellStart);
+            split(graph, order, middle, to, maxCellSize, keys, cellStart);
+        }
+
+        public int maxCellSize() { return maxCellSize; }
+        public int nodeCount() { return cellOf.length; }
+        public int cellCount() { return cellStart.length - 1; }
+        public int cellOf(int node) { return cellOf[node]; }
+        public int cellSize(int cell) { return cellStart[cell + 1] - cellStart[cell]; }
+        public int[] nodesOf(int cell) { return Arrays.copyOfRange(cellNodes, cellStart[cell], cellStart[cell + 1]); }
+        public int[] entries(int cell) { return entries[cell]; } // Shared: do not modify
+        public int[] exits(int cell) { return exits[cell]; } // Shared: do not modify
+        public long cutEdgeCount() { return cutEdges; }
+
+        // CRC32 of the cell size, the graph's checksum and every node's cell; equal
+        // partitions of equal graphs give equal fingerprints
+        public long fingerprint() {
+            Checksum crc = new Checksum();
+            crc.putInt(maxCellSize);
+            crc.putInt(cellOf.length);
+            crc.putLong(graphChecksum);
+            for (int cell : cellOf) crc.putInt(cell);
+            return crc.value();
+        }
+
+        @Override
+        public String toString() {
+            long boundary = 0;
+            for (int c = 0; c < cellCount(); c++) boundary += entries[c].length + exits[c].length;
+            return String.format("%,d cells of at most %,d nodes, %,d cut edges, %.1f entries + exits per cell",
+                    cellCount(), maxCellSize, cutEdges, (cellCount() == 0) ? 0.0 : (double) boundary / cellCount());
+        }
+
+        // Running CRC32 over big-endian ints and longs, fed through a small buffer
+        private static final class Checksum {
+            private final CRC32 crc = new CRC32();
+            private final ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+            void putInt(int value) { ensure(4); buffer.putInt(value); }
+            void putLong(long value) { ensure(8); buffer.putLong(value); }
+
+            long value() {
+                crc.update(buffer.array(), 0, buffer.position());
+                buffer.clear();
+                return crc.getValue();
+            }
+
+            private void ensure(int bytes) {
+                if (buffer.remaining() < bytes) {
+                    crc.update(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+            }
+        }
+    }
+
+    // --- Interface: Cell Service ---
+    // Searches inside the cells of a GraphPartition that one service owns, in this process
+    // (LocalCellService) or another one (CellServer.Client). Nodes are indices of the
+    // partitioned graph and every search stays inside the node's cell; distances are
+    // infinite where the cell alone has no path.
+    interface CellService {
+        int[] cells(); // The cells this service answers for
+
+        // Distance inside the cell from each entry to each exit (GraphPartition order), row-major entries x exits
+        double[] clique(int cell);
+
+        // Distances inside node's cell from node to each target
+        double[] distancesFrom(int node, int[] targets);
+
+        // Distances inside node's cell from each source to node
+        double[] distancesTo(int node, int[] sources);
+
+        // Shortest path inside their cell from from[i] to to[i], both ends included; empty where there is none
+        int[][] paths(int[] from, int[] to);
+    }
+
+    // --- Inner Class: Local Cell Service ---
+    // A CellService over cells copied out of a graph: every owned cell becomes its own small
+    // CsrGraph (plus its transpose) holding only the edges inside the cell, so the source
+    // graph can be dropped (or stay memory-mapped and cold) afterwards. The cliques are
+    // computed once up front, one cell per task on the common pool.
+    static final class LocalCellService implements CellService {
+        private static final RouteMetrics.Search METRICS = RouteMetrics.search("cell");
+        private final GraphPartition partition;
+        private final int[] cells;
+        private final int[] slotOf; // Cell -> index into the arrays below, -1 if not owned
+        private final int[][] nodes; // Cell-local index -> graph index (ascending, as in the partition)
+        private final CsrGraph[] forward, backward;
+        private final double[][] cliques;
+
+        LocalCellService(GraphView graph, GraphPartition partition, int[] cells) {
+            if (graph.nodeCount() != partition.nodeCount()) throw new IllegalArgumentException("Partition is for a different graph");
+            this.partition = partition;
+            this.cells = cells.clone();
+            this.slotOf = new int[partition.cellCount()];
+            Arrays.fill(slotOf, -1);
+            this.nodes = new int[cells.length][];
+            this.forward = new CsrGraph[cells.length];
+            this.backward = new CsrGraph[cells.length];
+            this.cliques = new double[cells.length][];
+            for (int slot = 0; slot < cells.length; slot++) {
+                if (slotOf[cells[slot]] >= 0) throw new IllegalArgumentException("Cell " + cells[slot] + " listed twice");
+                slotOf[cells[slot]] = slot;
+                nodes[slot] = partition.nodesOf(cells[slot]);
+                forward[slot] = extract(graph, nodes[slot], cells[slot]);
+                backward[slot] = forward[slot].transpose();
+            }
+
+            List<Callable<Void>> tasks = new ArrayList<>(cells.length);
+            for (int slot = 0; slot < cells.length; slot++) {
+                int s = slot;
+                tasks.add(() -> {
+                    cliques[s] = computeClique(s);
+                    return null;
+                });
+            }
+            for (Future<Void> task : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Clique computation interrupted");
+                } catch (ExecutionException e) {
+                    throw new CompletionException(e.getCause());
+                }
+            }
+        }
+
+        // The cell's own edges as a CsrGraph over cell-local indices
+        private static CsrGraph extract(GraphView graph, int[] cellNodes, int cell) {
+            int size = cellNodes.length;
+            int[] xs = new int[size], ys = new int[size];
+            IntList sources = new IntList(), targets = new IntList();
+            DoubleList weights = new DoubleList();
+            for (int i = 0; i < size; i++) {
+                int u = cellNodes[i];
+                xs[i] = graph.x(u);
+                ys[i] = graph.y(u);
+                for (int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++) {
+                    int j = Arrays.binarySearch(cellNodes, graph.target(e));
+                    if (j < 0) continue; // Leaves the cell: part of the overlay
+                    sources.add(i);
+                    targets.add(j);
+                    weights.add(graph.weight(e));
+                }
+            }
+            return CsrGraph.fromEdges(NodeIds.numbered(size, 0), xs, ys, sources.size(), sources.array(), targets.array(), weights.array());
+        }
+
+        private double[] computeClique(int slot) {
+            int cell = cells[slot];
+            int[] in = localIndices(slot, partition.entries(cell)), out = localIndices(slot, partition.exits(cell));
+            double[] clique = new double[in.length * out.length];
+            try (QueryContext context = QueryContext.acquire(nodes[slot].length)) {
+                for (int i = 0; i < in.length; i++) {
+                    search(context, forward[slot], in[i], out);
+                    for (int j = 0; j < out.length; j++) clique[i * out.length + j] = context.forward.distance(out[j]);
+                }
+            }
+            return clique;
+        }
+
+        @Override
+        public int[] cells() { return cells.clone(); }
+
+        @Override
+        public double[] clique(int cell) { return cliques[slot(cell)].clone(); }
+
+        @Override
+        public double[] distancesFrom(int node, int[] targets) {
+            int slot = slot(partition.cellOf(node));
+            return distances(forward[slot], localIndex(slot, node), localIndices(slot, targets));
+        }
+
+        @Override
+        public double[] distancesTo(int node, int[] sources) {
+            int slot = slot(partition.cellOf(node));
+            return distances(backward[slot], localIndex(slot, node), localIndices(slot, sources));
+        }
+
+        private static double[] distances(CsrGraph g, int source, int[] targets) {
+            try (QueryContext context = QueryContext.acquire(g.nodeCount())) {
+                search(context, g, source, targets);
+                double[] result = new double[targets.length];
+                for (int i = 0; i < targets.length; i++) result[i] = context.forward.distance(targets[i]);
+                return result;
+            }
+        }
+
+        @Override
+        public int[][] paths(int[] from, int[] to) {
+            if (from.length != to.length) throw new IllegalArgumentException("from and to differ in length");
+            int[][] paths = new int[from.length][];
+            int[] target = new int[1];
+            for (int i = 0; i < from.length; i++) {
+                int slot = slot(partition.cellOf(from[i]));
+                if (partition.cellOf(to[i]) != cells[slot]) throw new IllegalArgumentException("Nodes " + from[i] + " and " + to[i] + " are in different cells");
+                target[0] = localIndex(slot, to[i]);
+                try (QueryContext context = QueryContext.acquire(nodes[slot].length)) {
+                    search(context, forward[slot], localIndex(slot, from[i]), target);
+                    QueryContext.Side q = context.forward;
+                    if (!q.isLabelled(target[0])) {
+                        paths[i] = new int[0];
+                        continue;
+                    }
+                    int length = 0;
+                    for (int step = target[0]; step != -1; step = q.pred[step]) length++;
+                    int[] path = new int[length];
+                    for (int step = target[0]; step != -1; step = q.pred[step]) path[--length] = nodes[slot][step];
+                    paths[i] = path;
+                }
+            }
+            return paths;
+        }
+
+        // Dijkstra inside one cell until every target is settled; the labels are left in context.forward
+        private static void search(QueryContext context, CsrGraph g, int source, int[] targets) {
+            context.begin();
+            QueryContext.Side q = context.forward, wanted = context.backward(); // wanted: the target set
+            int remaining = 0;
+            for (int t : targets) {
+                if (!wanted.isLabelled(t)) remaining++;
+                wanted.label(t, 0.0, -1);
+            }
+            IndexedMinHeap heap = q.heap;
+            q.label(source, 0.0, -1);
+            heap.insertOrDecrease(source, 0.0);
+            int settled = 0, relaxed = 0, pushes = 1;
+            while (!heap.isEmpty() && remaining > 0) {
+                int u = heap.poll();
+                settled++;
+                if (wanted.isLabelled(u)) remaining--;
+                double du = q.dist[u];
+                for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++, relaxed++) {
+                    int v = g.targets[e];
+                    double newDist = du + g.weights[e];
+                    if (newDist < q.distance(v)) {
+                        q.label(v, newDist, u);
+                        heap.insertOrDecrease(v, newDist);
+                        pushes++;
+                    }
+                }
+            }
+            if (RouteMetrics.ENABLED) METRICS.record(settled, relaxed, pushes, settled, 0);
+        }
+
+        private int slot(int cell) {
+            int slot = (cell >= 0 && cell < slotOf.length) ? slotOf[cell] : -1;
+            if (slot < 0) throw new IllegalArgumentException("Cell " + cell + " is not served here");
+            return slot;
+        }
+
+        private int localIndex(int slot, int node) {
+            int index = Arrays.binarySearch(nodes[slot], node);
+            if (index < 0) throw new IllegalArgumentException("Node " + node + " is not in cell " + cells[slot]);
+            return index;
+        }
+
+        private int[] localIndices(int slot, int[] graphNodes) {
+            int[] local = new int[graphNodes.length];
+            for (int i = 0; i < local.length; i++) local[i] = localIndex(slot, graphNodes[i]);
+            return local;
+        }
+    }
+
+    // --- Inner Class: Partitioned Router ---
+    // Routing engine of the coordinator for a partitioned graph (CRP-style, one overlay
+    // level). The overlay holds only boundary nodes: every cell contributes a clique of
+    // entry -> exit distances and every cut edge is kept as it is. A query asks the source
+    // cell's service for distances from the start to its exits, the target cell's service
+    // for distances from its entries to the end, and runs A* over the overlay between the
+    // two; no other cell is searched. The overlay path is then unpacked into real nodes
+    // with one paths() call per service involved. Services may live in other processes
+    // (CellServer.Client); the coordinator itself never reads an edge inside a cell.
+    static final class PartitionedRouter implements RoutingEngine {
+        private static final RouteMetrics.Search METRICS = RouteMetrics.search("partitioned");
+        private final GraphView graph;
+        private final GraphPartition partition;
+        private final CellService[] serviceOf; // Per cell
+        private final int[] boundary; // Overlay index -> graph index, ascending
+        private final CsrGraph overlay; // Clique and cut edges over overlay indices
+        private final double minCostPerUnit; // Over every overlay edge, for the A* estimate
+
+        PartitionedRouter(GraphView graph, GraphPartition partition, List<? extends CellService> services) {
+            this.graph = graph;
+            this.partition = partition;
+            this.serviceOf = new CellService[partition.cellCount()];
+            for (CellService service : services) {
+                for (int cell : service.cells()) {
+                    if (cell < 0 || cell >= serviceOf.length) throw new IllegalArgumentException("Unknown cell " + cell);
+                    if (serviceOf[cell] != null) throw new IllegalArgumentException("Cell " + cell + " is served twice");
+                    serviceOf[cell] = service;
+                }
+            }
+            for (int cell = 0; cell < serviceOf.length; cell++) {
+                if (serviceOf[cell] == null) throw new IllegalArgumentException("No service for cell " + cell);
+            }
+
+            IntList nodes = new IntList();
+            for (int cell = 0; cell < partition.cellCount(); cell++) {
+                for (int u : partition.entries(cell)) nodes.add(u);
+                for (int u : partition.exits(cell)) nodes.add(u);
+            }
+            int[] sorted = nodes.toArray();
+            Arrays.sort(sorted);
+            int count = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) sorted[count++] = sorted[i];
+            }
+            boundary = Arrays.copyOf(sorted, count);
+
+            IntList sources = new IntList(), targets = new IntList();
+            DoubleList weights = new DoubleList();
+            for (int cell = 0; cell < partition.cellCount(); cell++) {
+                int[] in = partition.entries(cell), out = partition.exits(cell);
+                double[] clique = serviceOf[cell].clique(cell);
+                if (clique.length != in.length * out.length) throw new IllegalStateException("Clique of cell " + cell + " has the wrong size");
+                for (int i = 0; i < in.length; i++) {
+                    for (int j = 0; j < out.length; j++) {
+                        double weight = clique[i * out.length + j];
+                        if (in[i] == out[j] || Double.isInfinite(weight)) continue;
+                        sources.add(overlayIndex(in[i]));
+                        targets.add(overlayIndex(out[j]));
+                        weights.add(weight);
+                    }
+                }
+                for (int u : out) {
+                    for (int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++) {
+                        int v = graph.target(e);
+                        if (partition.cellOf(v) == cell) continue;
+                        sources.add(overlayIndex(u));
+                        targets.add(overlayIndex(v));
+                        weights.add(graph.weight(e));
+                    }
+                }
+            }
+            int[] xs = new int[boundary.length], ys = new int[boundary.length];
+            for (int i = 0; i < boundary.length; i++) {
+                xs[i] = graph.x(boundary[i]);
+                ys[i] = graph.y(boundary[i]);
+            }
+            overlay = CsrGraph.fromEdges(NodeIds.numbered(boundary.length, 0), xs, ys, sources.size(), sources.array(), targets.array(), weights.array());
+            double minRatio = Double.POSITIVE_INFINITY;
+            for (int u = 0; u < overlay.nodeCount(); u++) {
+                for (int e = overlay.offsets[u]; e < overlay.offsets[u + 1]; e++) {
+                    double length = length(u, overlay.targets[e]);
+                    if (length > 0) minRatio = Math.min(minRatio, overlay.weights[e] / length);
+                }
+            }
+            this.minCostPerUnit = Double.isFinite(minRatio) ? minRatio * (1 - 1e-9) : 0.0;
+        }
+
+        public GraphPartition getPartition() { return partition; }
+        public int overlayNodeCount() { return overlay.nodeCount(); }
+        public int overlayEdgeCount() { return overlay.edgeCount(); }
+
+        @Override
+        public DijkstraResult findShortestPath(Node startNode, Node endNode) {
+            int source = graph.indexOf(startNode);
+            int target = graph.indexOf(endNode);
+            if (source < 0 || target < 0) return new DijkstraResult(null, Double.POSITIVE_INFINITY);
+            if (source == target) return new DijkstraResult(List.of(graph.node(source)), 0.0, 1);
+            int sourceCell = partition.cellOf(source), targetCell = partition.cellOf(target);
+            int[] exits = partition.exits(sourceCell), entries = partition.entries(targetCell);
+
+            // Inside the source cell: to its exits, and straight to the end if it is in the same cell
+            int[] from = exits;
+            if (sourceCell == targetCell) {
+                from = Arrays.copyOf(exits, exits.length + 1);
+                from[exits.length] = target;
+            }
+            double[] fromStart = serviceOf[sourceCell].distancesFrom(source, from);
+            double[] toEnd = serviceOf[targetCell].distancesTo(target, entries);
+            double best = (sourceCell == targetCell) ? fromStart[exits.length] : Double.POSITIVE_INFINITY;
+
+            // Legs to unpack: start -> first exit, each clique edge, last entry -> end (or start -> end
+            // inside one cell). Cut edges are real edges and need no service.
+            IntList legFrom = new IntList(), legTo = new IntList();
+            int settled = 0, relaxed = 0, pushes = 0, exitEntry = -1;
+            try (QueryContext context = QueryContext.acquire(overlay.nodeCount())) {
+                // Finishing cost per overlay node (entries of the target cell only) as the backward labels.
+                // The estimate's scale is also capped by every finish, so it stays a lower bound on the last leg.
+                QueryContext.Side q = context.forward, finish = context.backward();
+                double scale = minCostPerUnit;
+                int targetX = graph.x(target), targetY = graph.y(target);
+                for (int i = 0; i < entries.length; i++) {
+                    int y = overlayIndex(entries[i]);
+                    finish.label(y, toEnd[i], -1);
+                    double length = Math.hypot(overlay.xs[y] - targetX, overlay.ys[y] - targetY);
+                    if (length > 0) scale = Math.min(scale, toEnd[i] / length);
+                }
+
+                IndexedMinHeap heap = q.heap;
+                for (int i = 0; i < exits.length; i++) {
+                    int x = overlayIndex(exits[i]);
+                    if (fromStart[i] < q.distance(x)) {
+                        q.label(x, fromStart[i], -1);
+                        heap.insertOrDecrease(x, fromStart[i] + scale * Math.hypot(overlay.xs[x] - targetX, overlay.ys[x] - targetY));
+                    }
+                }
+                pushes = heap.size();
+                while (!heap.isEmpty() && heap.peekKey() < best) {
+                    int u = heap.poll();
+                    settled++;
+                    double du = q.dist[u];
+                    if (du + finish.distance(u) < best) {
+                        best = du + finish.distance(u);
+                        exitEntry = u;
+                    }
+                    for (int e = overlay.offsets[u], end = overlay.offsets[u + 1]; e < end; e++, relaxed++) {
+                        int v = overlay.targets[e];
+                        double newDist = du + overlay.weights[e];
+                        if (newDist < q.distance(v)) {
+                            q.label(v, newDist, u);
+                            heap.insertOrDecrease(v, newDist + scale * Math.hypot(overlay.xs[v] - targetX, overlay.ys[v] - targetY));
+                            pushes++;
+                        }
+                    }
+                }
+                if (RouteMetrics.ENABLED) METRICS.record(settled, relaxed, pushes, settled, 0);
+                if (Double.isInfinite(best)) return new DijkstraResult(null, Double.POSITIVE_INFINITY, settled);
+
+                if (exitEntry < 0) {
+                    legFrom.add(source);
+                    legTo.add(target);
+                } else {
+                    IntList chain = new IntList();
+                    for (int u = exitEntry; u != -1; u = q.pred[u]) chain.add(boundary[u]);
+                    legFrom.add(source);
+                    legTo.add(chain.get(chain.size() - 1));
+                    for (int i = chain.size() - 1; i > 0; i--) {
+                        legFrom.add(chain.get(i));
+                        legTo.add(chain.get(i - 1));
+                    }
+                    legFrom.add(chain.get(0));
+                    legTo.add(target);
+                }
+            }
+            int[][] legs = unpack(legFrom, legTo);
+            List<Node> path = new ArrayList<>();
+            for (int[] leg : legs) {
+                if (leg.length == 0) return new DijkstraResult(null, Double.POSITIVE_INFINITY, settled); // A service lost a path it reported
+                for (int i = path.isEmpty() ? 0 : 1; i < leg.length; i++) path.add(graph.node(leg[i]));
+            }
+            return new DijkstraResult(path, best, settled);
+        }
+
+        // One paths() call per service; legs whose ends lie in different cells are cut edges
+        private int[][] unpack(IntList legFrom, IntList legTo) {
+            int count = legFrom.size();
+            int[][] legs = new int[count][];
+            Map<CellService, IntList> byService = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                int cell = partition.cellOf(legFrom.get(i));
+                if (cell != partition.cellOf(legTo.get(i)) || legFrom.get(i) == legTo.get(i)) {
+                    legs[i] = (legFrom.get(i) == legTo.get(i)) ? new int[] {legFrom.get(i)} : new int[] {legFrom.get(i), legTo.get(i)};
+                } else {
+                    byService.computeIfAbsent(serviceOf[cell], s -> new IntList()).add(i);
+                }
+            }
+            for (Map.Entry<CellService, IntList> group : byService.entrySet()) {
+                IntList indices = group.getValue();
+                int[] from = new int[indices.size()], to = new int[indices.size()];
+                for (int j = 0; j < from.length; j++) {
+                    from[j] = legFrom.get(indices.get(j));
+                    to[j] = legTo.get(indices.get(j));
+                }
+                int[][] paths = group.getKey().paths(from, to);
+                for (int j = 0; j < from.length; j++) legs[indices.get(j)] = paths[j];
+            }
+            return legs;
+        }
+
+        private int overlayIndex(int node) { return Arrays.binarySearch(boundary, node); }
+
+        private double length(int a, int b) { return Math.hypot(overlay.xs[a] - overlay.xs[b], overlay.ys[a] - overlay.ys[b]); }
+    }
+
+    // --- Inner Class: Path Cache ---
+    // Thread-safe, size-bounded cache of point-to-point results keyed by (source, target,
+    // graph version), plus a small LRU of whole single-source trees. A new graph version
+    // simply stops matching old keys, which then age out. Cached results are shared and
+    // must be treated as read-only.
+    static final class PathCache {
+        enum Eviction { LRU, TINY_LFU }
+
+        private final BoundedMap<Key, DijkstraResult> results;
+        private final BoundedMap<Key, ShortestPathTree> trees;
+        private final LongAdder hits = new LongAdder(), treeHits = new LongAdder(), misses = new LongAdder();
+
+        PathCache(int maxResults, Eviction eviction) { this(maxResults, eviction, 16); }
+
+        PathCache(int maxResults, Eviction eviction, int maxTrees) {
+            this.results = (eviction == Eviction.LRU) ? new LruMap<>(maxResults) : new TinyLfuMap<>(maxResults);
+            this.trees = new LruMap<>(maxTrees); // Trees are O(V) each, so keep only a few
+        }
+
+        // Returns the cached result, answers from a cached tree of the source, or returns null
+        public DijkstraResult get(Node source, Node target, long version) {
+            DijkstraResult result;
+            ShortestPathTree tree;
+            synchronized (this) {
+                result = results.get(new Key(source.getId(), target.getId(), version));
+                tree = (result == null) ? trees.get(new Key(source.getId(), null, version)) : null;
+            }
+            if (result != null) {
+                hits.increment();
+                return result;
+            }
+            if (tree != null) {
+                treeHits.increment();
+                return tree.resultFor(target);
+            }
+            misses.increment();
+            return null;
+        }
+
+        public synchronized void put(Node source, Node target, long version, DijkstraResult result) {
+            results.put(new Key(source.getId(), target.getId(), version), result);
+        }
+
+        public synchronized void putTree(ShortestPathTree tree, long version) {
+            trees.put(new Key(tree.getSource().getId(), null, version), tree);
+        }
+
+        public synchronized void clear() {
+            results.clear();
+            trees.clear();
+        }
+
+        public long hitCount() { return hits.sum(); }
+        public long treeHitCount() { return treeHits.sum(); }
+        public long missCount() { return misses.sum(); }
+        public synchronized long evictionCount() { return results.evictions() + trees.evictions(); }
+        public synchronized int size() { return results.size(); }
+
+        @Override
+        public String toString() {
+            return String.format("PathCache{size=%d, hits=%d, treeHits=%d, misses=%d, evictions=%d}",
+                    size(), hitCount(), treeHitCount(), missCount(), evictionCount());
+        }
+
+        private static final class Key {
+            final String source, target; // target is null for a whole-tree entry
+            final long version;
+
+            Key(String source, String target, long version) {
+                this.source = source;
+                this.target = target;
+                this.version = version;
+            }
+
+            @Override public boolean equals(Object o) {
+                if (this == o) return true;
+                if (!(o instanceof Key)) return false;
+                Key k = (Key) o;
+                return version == k.version && source.equals(k.source) && Objects.equals(target, k.target);
+            }
+
+            @Override public int hashCode() { return Objects.hash(source, target, version); }
+        }
+
+        // Size-bounded map; callers hold the PathCache lock
+        private interface BoundedMap<K, V> {
+            V get(K key);
+            void put(K key, V value);
+            void clear();
+            int size();
+            long evictions();
+        }
+
+        // Evicts the least recently used entry
+        private static final class LruMap<K, V> implements BoundedMap<K, V> {
+            private final LinkedHashMap<K, V> map;
+            private long evictions;
+
+            LruMap(int capacity) {
+                this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                        if (size() <= capacity) return false;
+                        evictions++;
+                        return true;
+                    }
+                };
+            }
+
+            public V get(K key) { return map.get(key); }
+            public void put(K key, V value) { map.put(key, value); }
+            public void clear() { map.clear(); }
+            public int size() { return map.size(); }
+            public long evictions() { return evictions; }
+        }
+
+        // W-TinyLFU: new entries land in a small LRU window; when the window overflows its
+        // oldest entry only replaces the main area's LRU victim if it has been requested
+        // more often, as estimated by a count-min sketch. This keeps one-off queries from
+        // flushing the station-to-hydrant routes that dispatchers ask for all the time.
+        private static final class TinyLfuMap<K, V> implements BoundedMap<K, V> {
+            private final LinkedHashMap<K, V> window = new LinkedHashMap<>(16, 0.75f, true);
+            private final LinkedHashMap<K, V> main = new LinkedHashMap<>(16, 0.75f, true);
+            private final int windowCapacity, mainCapacity;
+            private final FrequencySketch sketch;
+            private long evictions;
+
+            TinyLfuMap(int capacity) {
+                this.windowCapacity = Math.max(1, capacity / 100);
+                this.mainCapacity = Math.max(1, capacity - windowCapacity);
+                this.sketch = new FrequencySketch(capacity);
+            }
+
+            public V get(K key) {
+                sketch.increment(key);
+                V value = window.get(key);
+                return (value != null) ? value : main.get(key);
+            }
+
+            // Not counted in the sketch: every put follows a get that already counted the request
+            public void put(K key, V value) {
+                if (window.containsKey(key)) { window.put(key, value); return; }
+                if (main.containsKey(key)) { main.put(key, value); return; }
+                window.put(key, value);
+                if (window.size() <= windowCapacity) return;
+
+                Map.Entry<K, V> candidate = removeEldest(window);
+                if (main.size() < mainCapacity) {
+                    main.put(candidate.getKey(), candidate.getValue());
+                    return;
+                }
+                K victim = main.keySet().iterator().next();
+                if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim)) {
+                    main.remove(victim);
+                    main.put(candidate.getKey(), candidate.getValue());
+                }
+                evictions++; // Either the victim or the candidate leaves the cache
+            }
+
+            private Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> map) {
+                Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+                Map.Entry<K, V> eldest = new AbstractMap.SimpleEntry<>(it.next());
+                it.remove();
+                return eldest;
+            }
+
+            public void clear() { window.clear(); main.clear(); }
+            public int size() { return window.size() + main.size(); }
+            public long evictions() { return evictions; }
+        }
+
+        // Count-min sketch with 4 rows of small saturating counters. All counters are halved
+        // every 10 * capacity increments so old popularity fades out.
+        private static final class FrequencySketch {
+            private static final int ROWS = 4, MAX_COUNT = 15;
+            private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+            private final byte[][] counters;
+            private final int mask;
+            private final int sampleSize;
+            private int additions;
+
+            FrequencySketch(int capacity) {
+                int width = Integer.highestOneBit(Math.max(capacity, 16) * 2 - 1);
+                this.counters = new byte[ROWS][width];
+                this.mask = width - 1;
+                this.sampleSize = 10 * Math.max(capacity, 16);
+            }
+
+            void increment(Object key) {
+                int hash = key.hashCode();
+                for (int row = 0; row < ROWS; row++) {
+                    int index = index(hash, row);
+                    if (counters[row][index] < MAX_COUNT) counters[row][index]++;
+                }
+                if (++additions >= sampleSize) {
+                    for (byte[] row : counters) {
+                        for (int i = 0; i < row.length; i++) row[i] >>= 1;
+                    }
+                    additions /= 2;
+                }
+            }
+
+            int frequency(Object key) {
+                int hash = key.hashCode(), min = MAX_COUNT;
+                for (int row = 0; row < ROWS; row++) min = Math.min(min, counters[row][index(hash, row)]);
+                return min;
+            }
+
+            private int index(int hash, int row) {
+                int h = hash * SEEDS[row];
+                return (h ^ (h >>> 16)) & mask;
+            }
+        }
+    }
+
+    // --- Inner Class: Caching Routing Engine ---
+    // Answers repeated queries from a PathCache and only falls through to the wrapped
+    // engine on a miss. In source-tree mode a miss runs one full search from the source
+    // instead, so every later query from that source is a cache hit. When the delegate
+    // reads a CsrGraph snapshot, it is only used while the snapshot is of the graph's
+    // current version. Once the graph has moved on, queries are answered from the live
+    // trees (if given) or by the classic Dijkstra on the Graph itself.
+    static final class CachingRoutingEngine implements RoutingEngine {
+        private final RoutingEngine delegate;
+        private final Graph graph;
+        private final PathCache cache;
+        private final CsrGraph snapshot; // What the delegate reads; null when it reads graph itself
+        private final LiveRouteTrees liveTrees; // May be null
+        private final boolean sourceTrees;
+
+        // The delegate searches graph itself
+        CachingRoutingEngine(RoutingEngine delegate, Graph graph, PathCache cache) {
+            this(delegate, graph, cache, null, null, false);
+        }
+
+        // The delegate searches snapshot, taken from graph
+        CachingRoutingEngine(RoutingEngine delegate, Graph graph, PathCache cache, CsrGraph snapshot, LiveRouteTrees liveTrees) {
+            this(delegate, graph, cache, snapshot, liveTrees, false);
+        }
+
+        private CachingRoutingEngine(RoutingEngine delegate, Graph graph, PathCache cache, CsrGraph snapshot,
+                                     LiveRouteTrees liveTrees, boolean sourceTrees) {
+            this.delegate = delegate;
+            this.graph = graph;
+            this.cache = cache;
+            this.snapshot = snapshot;
+            this.liveTrees = liveTrees;
+            this.sourceTrees = sourceTrees;
+        }
+
+        // Source-tree mode: a miss computes the whole ShortestPathTree from the source over snapshot
+        static CachingRoutingEngine withSourceTrees(RoutingEngine delegate, Graph graph, PathCache cache, CsrGraph snapshot,
+                                                    LiveRouteTrees liveTrees) {
+            return new CachingRoutingEngine(delegate, graph, cache, snapshot, liveTrees, true);
+        }
+
+        @Override
+        public DijkstraResult findShortestPath(Node startNode, Node endNode) {
+            long version = graph.getVersion();
+            DijkstraResult cached = cache.get(startNode, endNode, version);
+            if (RouteMetrics.ENABLED) RouteMetrics.add(cached != null ? RouteMetrics.CACHE_HITS : RouteMetrics.CACHE_MISSES, 1);
+            if (cached != null) return cached;
+
+            // A stale snapshot must not be cached under the graph's current version
+            if (snapshot != null && snapshot.version() != version) {
+                DijkstraResult live = (liveTrees == null) ? null : liveTrees.resultFor(startNode, endNode, version);
+                if (live == null) live = Dijkstra.findShortestPath(graph, startNode, endNode);
+                if (graph.getVersion() == version) cache.put(startNode, endNode, version, live);
+                return live;
+            }
+            if (sourceTrees && snapshot.indexOf(startNode) >= 0) {
+                ShortestPathTree tree = ShortestPathTree.compute(snapshot, startNode);
+                cache.putTree(tree, version);
+                return tree.resultFor(endNode);
+            }
+            DijkstraResult result = delegate.findShortestPath(startNode, endNode);
+            cache.put(startNode, endNode, version, result);
+            return result;
+        }
+    }
+
+    // --- Inner Class: Route Metrics ---
+    // Process-wide registry of lock-free counters (LongAdder) and log-linear histograms for
+    // the routing hot paths, readable as a text dump or over JMX once registerMBean() ran.
+    // Searches count their work in local ints and report once per query, so the inner loops
+    // never write shared memory. -Dfiretruck.metrics=false turns recording off: ENABLED is a
+    // static final constant, so the JIT drops every guarded call site along with the counting.
+    // Work done for one request can also be tallied on its own in a Job (see Job.call).
+    static final class RouteMetrics {
+        static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("firetruck.metrics"));
+        static final String MBEAN_NAME = "firetruck:type=RouteMetrics";
+
+        private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+        private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+
+        static final LongAdder SEGMENTS = counter("route.segments");
+        static final LongAdder SEGMENT_NANOS = counter("route.segment.nanos");
+        static final Histogram SEGMENT_LATENCY = histogram("route.segment.latency.nanos");
+        static final LongAdder CACHE_HITS = counter("cache.hits");
+        static final LongAdder CACHE_MISSES = counter("cache.misses");
+
+        private static boolean registered;
+
+        private RouteMetrics() { }
+
+        static LongAdder counter(String name) { return COUNTERS.computeIfAbsent(name, k -> new LongAdder()); }
+
+        static Histogram histogram(String name) { return HISTOGRAMS.computeIfAbsent(name, k -> new Histogram()); }
+
+        // Adds to a registry counter and to the current thread's Job, if any
+        static void add(LongAdder counter, long value) {
+            counter.add(value);
+            Job job = Job.CURRENT.get();
+            if (job != null) job.add(counter, value);
+        }
+
+        // Counters for one search algorithm, registered under "search.<name>.*"
+        static Search search(String name) { return new Search("search." + name + "."); }
+
+        // Wraps an engine so every call is recorded as one route segment
+        static RoutingEngine timed(RoutingEngine engine) {
+            return (start, end) -> {
+                long begin = System.nanoTime();
+                try {
+                    return engine.findShortestPath(start, end);
+                } finally {
+                    long nanos = System.nanoTime() - begin;
+                    add(SEGMENTS, 1);
+                    add(SEGMENT_NANOS, nanos);
+                    SEGMENT_LATENCY.record(nanos);
+                }
+            };
+        }
+
+        static Snapshot snapshot() {
+            Map<String, Long> values = new TreeMap<>();
+            COUNTERS.forEach((name, counter) -> values.put(name, counter.sum()));
+            return new Snapshot(values);
+        }
+
+        // Not atomic: updates racing with a reset may survive it
+        static void reset() {
+            COUNTERS.values().forEach(LongAdder::reset);
+            HISTOGRAMS.values().forEach(Histogram::reset);
+        }
+
+        // One line per counter, then one per histogram with its percentiles
+        static String dump() {
+            StringBuilder out = new StringBuilder();
+            if (!ENABLED) out.append("# metrics disabled (-Dfiretruck.metrics=false)\n");
+            COUNTERS.forEach((name, counter) -> out.append(name).append(' ').append(counter.sum()).append('\n'));
+            HISTOGRAMS.forEach((name, histogram) -> out.append(name).append(' ').append(histogram).append('\n'));
+            return out.toString();
+        }
+
+        // Publishes the registry on the platform MBean server; later calls do nothing
+        static synchronized void registerMBean() {
+            if (registered) return;
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBeanImpl(), new ObjectName(MBEAN_NAME));
+                registered = true;
+            } catch (JMException e) {
+                System.err.println("Route metrics not published over JMX: " + e);
+            }
+        }
+
+        private static final class MXBeanImpl implements RouteMetricsMXBean {
+            public boolean isEnabled() { return ENABLED; }
+            public Map<String, Long> getCounters() { return snapshot().values; }
+
+            public Map<String, Double> getPercentiles() {
+                Map<String, Double> percentiles = new TreeMap<>();
+                HISTOGRAMS.forEach((name, histogram) -> {
+                    percentiles.put(name + ".p50", (double) histogram.percentile(50));
+                    percentiles.put(name + ".p99", (double) histogram.percentile(99));
+                    percentiles.put(name + ".p999", (double) histogram.percentile(99.9));
+                    percentiles.put(name + ".max", (double) histogram.max());
+                });
+                return percentiles;
+            }
+
+            public String dump() { return RouteMetrics.dump(); }
+            public void reset() { RouteMetrics.reset(); }
+        }
+
+        // Work done by one search algorithm. "relaxed" counts scanned edges, "pushes" heap
+        // inserts and decrease-keys, and "stale" queue entries skipped because their node was
+        // already settled (only the classic Dijkstra has those; the others use decrease-key).
+        static final class Search {
+            private final LongAdder queries, settled, relaxed, pushes, pops, stale;
+            private final Histogram settledPerQuery;
+
+            private Search(String prefix) {
+                queries = counter(prefix + "queries");
+                settled = counter(prefix + "settled");
+                relaxed = counter(prefix + "relaxed");
+                pushes = counter(prefix + "pushes");
+                pops = counter(prefix + "pops");
+                stale = counter(prefix + "stale");
+                settledPerQuery = histogram(prefix + "settled.per.query");
+            }
+
+            void record(int settledNodes, int relaxedEdges, int heapPushes, int heapPops, int staleSkips) {
+                queries.increment();
+                settled.add(settledNodes);
+                relaxed.add(relaxedEdges);
+                pushes.add(heapPushes);
+                pops.add(heapPops);
+                stale.add(staleSkips);
+                settledPerQuery.record(settledNodes);
+                Job job = Job.CURRENT.get();
+                if (job != null) {
+                    job.add(queries, 1);
+                    job.add(settled, settledNodes);
+                    job.add(relaxed, relaxedEdges);
+                    job.add(pushes, heapPushes);
+                    job.add(pops, heapPops);
+                    job.add(stale, staleSkips);
+                }
+            }
+        }
+
+        // Counter totals for one unit of work (e.g. one route request in the simulator) however
+        // many threads it uses: everything a thread records inside call() is added here as well
+        // as to the registry, and wrap() carries the job over to the tasks of an executor.
+        // Unlike a delta of two registry snapshots, concurrent work for other jobs is not included.
+        static final class Job {
+            private static final ThreadLocal<Job> CURRENT = new ThreadLocal<>();
+            private final Map<LongAdder, LongAdder> counters = new ConcurrentHashMap<>(); // Registry counter -> this job's share
+
+            private void add(LongAdder counter, long value) {
+                counters.computeIfAbsent(counter, k -> new LongAdder()).add(value);
+            }
+
+            // Runs work with this job as the thread's current one, then restores the previous job
+            <T> T call(Supplier<T> work) {
+                Job outer = CURRENT.get();
+                CURRENT.set(this);
+                try {
+                    return work.get();
+                } finally {
+                    if (outer == null) CURRENT.remove(); else CURRENT.set(outer);
+                }
+            }
+
+            // An executor whose tasks record into this job; null stays null
+            Executor wrap(Executor executor) {
+                if (executor == null) return null;
+                return task -> executor.execute(() -> call(() -> {
+                    task.run();
+                    return null;
+                }));
+            }
+
+            // The job's counters under their registry names, 0 for those it never touched
+            Snapshot snapshot() {
+                Map<String, Long> values = new TreeMap<>();
+                COUNTERS.forEach((name, counter) -> {
+                    LongAdder mine = counters.get(counter);
+                    values.put(name, (mine == null) ? 0L : mine.sum());
+                });
+                return new Snapshot(values);
+            }
+        }
+
+        // HDR-style histogram of non-negative longs: 16 linear sub-buckets per power of two,
+        // so any recorded value is reported within 1/16 (6.25%) of its true size. Buckets are
+        // an AtomicLongArray, recording is wait-free and reading never blocks writers.
+        static final class Histogram {
+            private static final int SUB_BITS = 4, SUB_COUNT = 1 << SUB_BITS;
+            private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_COUNT);
+            private final LongAdder count = new LongAdder(), sum = new LongAdder();
+            private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+            void record(long value) {
+                if (value < 0) value = 0;
+                buckets.incrementAndGet(bucket(value));
+                count.increment();
+                sum.add(value);
+                max.accumulate(value);
+            }
+
+            // Values below SUB_COUNT get a bucket each; above, the bucket is (power of two, top SUB_BITS bits)
+            private static int bucket(long value) {
+                if (value < SUB_COUNT) return (int) value;
+                int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+                return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+            }
+
+            // Largest value that falls into the bucket
+            private static long highestIn(int bucket) {
+                if (bucket < SUB_COUNT) return bucket;
+                int shift = bucket / SUB_COUNT - 1;
+                long lowest = (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+                return lowest + (1L << shift) - 1;
+            }
+
+            long count() { return count.sum(); }
+            long max() { return max.get(); }
+            double mean() { long n = count.sum(); return (n == 0) ? 0.0 : (double) sum.sum() / n; }
+
+            // Upper bound of the bucket holding the given percentile (0..100), capped at max()
+            long percentile(double percentile) {
+                long total = count.sum();
+                if (total == 0) return 0;
+                long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0)), seen = 0;
+                for (int i = 0; i < buckets.length(); i++) {
+                    seen += buckets.get(i);
+                    if (seen >= rank) return Math.min(highestIn(i), max());
+                }
+                return max();
+            }
+
+            void reset() {
+                for (int i = 0; i < buckets.length(); i++) buckets.set(i, 0);
+                count.reset();
+                sum.reset();
+                max.reset();
+            }
+
+            @Override
+            public String toString() {
+                return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d p999=%d max=%d",
+                        count(), mean(), percentile(50), percentile(90), percentile(99), percentile(99.9), max());
+            }
+        }
+
+        // Counter values at one instant; since() gives the work done between two snapshots
+        static final class Snapshot {
+            private final Map<String, Long> values;
+
+            private Snapshot(Map<String, Long> values) { this.values = values; }
+
+            Snapshot since(Snapshot earlier) {
+                Map<String, Long> delta = new TreeMap<>();
+                values.forEach((name, value) -> delta.put(name, value - earlier.values.getOrDefault(name, 0L)));
+                return new Snapshot(delta);
+            }
+
+            long get(String name) { return values.getOrDefault(name, 0L); }
+
+            // Sum over every search algorithm, e.g. total("settled")
+            long total(String searchCounter) {
+                long total = 0;
+                for (Map.Entry<String, Long> entry : values.entrySet()) {
+                    if (entry.getKey().startsWith("search.") && entry.getKey().endsWith("." + searchCounter)) total += entry.getValue();
+                }
+                return total;
+            }
+
+            // The one-paragraph summary shown under a route in the simulator
+            String describeRoute() {
+                return String.format("Search work: %d segments in %.2f ms, %d nodes settled, %d edges relaxed,"
+                                + " %d heap pushes / %d pops, %d stale entries skipped, cache %d hits / %d misses",
+                        get("route.segments"), get("route.segment.nanos") / 1e6, total("settled"), total("relaxed"),
+                        total("pushes"), total("pops"), total("stale"), get("cache.hits"), get("cache.misses"));
+            }
+        }
+    }
+
+    // --- Interface: Route Metrics MXBean ---
+    // JMX view of RouteMetrics, registered as firetruck:type=RouteMetrics
+    public interface RouteMetricsMXBean {
+        boolean isEnabled();
+        Map<String, Long> getCounters();
+        Map<String, Double> getPercentiles(); // <histogram>.p50 / .p99 / .p999 / .max
+        String dump();
+        void reset();
+    }
+
+    // --- Inner Class: Dynamic Shortest Paths ---
+    // Keeps single-source shortest-path trees correct while edge weights change, without
+    // recomputing them (Ramalingam-Reps style repair). The node and edge set are those of
+    // the CSR snapshot; only weights change, through updateEdge or as an EdgeUpdateListener
+    // on the Graph (edges added to the Graph later need a new snapshot).
+    //  - A weight decrease that shortens the path to the edge's head re-settles only the
+    //    nodes that actually get closer.
+    //  - An increase on an edge outside the tree changes nothing. On a tree edge only the
+    //    subtree below it is cut loose, seeded from its best neighbours outside the subtree
+    //    and re-settled.
+    // Not synchronized: updates and queries must come from one thread (or be locked).
+    static final class DynamicShortestPaths implements EdgeUpdateListener {
+        private final CsrGraph csr;
+        private final double[] weights; // Current weights, indexed like csr.targets
+        private final int[] edgeSources; // Tail node of each edge
+        private final int[] inOffsets, inEdges; // Incoming edge ids per node
+        private final List<Tree> trees = new ArrayList<>();
+        private final IndexedMinHeap heap;
+        private final boolean[] affected; // Scratch for increase repairs; all false between calls
+        private final IntList subtree = new IntList();
+        private long repairSettled;
+
+        DynamicShortestPaths(CsrGraph csr) {
+            this.csr = csr;
+            int n = csr.nodeCount(), m = csr.edgeCount();
+            this.weights = csr.weights.clone();
+            this.edgeSources = new int[m];
+            this.inOffsets = new int[n + 1];
+            this.inEdges = new int[m];
+            for (int u = 0; u < n; u++) {
+                for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                    edgeSources[e] = u;
+                    inOffsets[csr.targets[e] + 1]++;
+                }
+            }
+            for (int v = 0; v < n; v++) inOffsets[v + 1] += inOffsets[v];
+            int[] fill = Arrays.copyOf(inOffsets, n);
+            for (int e = 0; e < m; e++) inEdges[fill[csr.targets[e]]++] = e;
+            this.heap = new IndexedMinHeap(n);
+            this.affected = new boolean[n];
+        }
+
+        // Runs one full search; the tree is then kept up to date by every later update
+        public Tree addTree(Node source) {
+            int s = csr.indexOf(source);
+            if (s < 0) throw new IllegalArgumentException("Node " + source + " is not in the graph");
+            Tree tree = new Tree(s);
+            trees.add(tree);
+            return tree;
+        }
+
+        public void removeTree(Tree tree) { trees.remove(tree); }
+
+        // Nodes re-settled by all updates so far, summed over all trees
+        public long repairSettledCount() { return repairSettled; }
+
+        public double weight(Node from, Node to) {
+            int e = edgeIndex(from, to);
+            return (e < 0) ? Double.NaN : weights[e];
+        }
+
+        @Override
+        public void edgeWeightChanged(Node from, Node to, double oldWeight, double newWeight) {
+            updateEdge(from, to, newWeight);
+        }
+
+        // Returns false if the snapshot has no such edge
+        public boolean updateEdge(Node from, Node to, double newWeight) {
+            int e = edgeIndex(from, to);
+            if (e < 0) return false;
+            double oldWeight = weights[e];
+            weights[e] = newWeight;
+            if (newWeight < oldWeight) {
+                for (Tree tree : trees) tree.edgeDecreased(e);
+            } else if (newWeight > oldWeight) {
+                for (Tree tree : trees) tree.edgeIncreased(e);
+            }
+            return true;
+        }
+
+        private int edgeIndex(Node from, Node to) {
+            int u = csr.indexOf(from), v = csr.indexOf(to);
+            if (u < 0 || v < 0) return -1;
+            for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                if (csr.targets[e] == v) return e;
+            }
+            return -1;
+        }
+
+        // --- Shortest-path tree from one source, owned by its DynamicShortestPaths ---
+        final class Tree {
+            private final int source;
+            private final double[] dist;
+            private final int[] predEdge; // Tree edge into each node; -1 for the source and unreached nodes
+
+            private Tree(int source) {
+                this.source = source;
+                int n = csr.nodeCount();
+                this.dist = new double[n];
+                this.predEdge = new int[n];
+                Arrays.fill(dist, Double.POSITIVE_INFINITY);
+                Arrays.fill(predEdge, -1);
+                dist[source] = 0.0;
+                heap.insertOrDecrease(source, 0.0);
+                settle();
+            }
+
+            public Node getSource() { return csr.node(source); }
+
+            public double distanceTo(Node target) {
+                int t = csr.indexOf(target);
+                return (t < 0) ? Double.POSITIVE_INFINITY : dist[t];
+            }
+
+            // Source first, target last; null when the target is unreachable
+            public List<Node> pathTo(Node target) {
+                int t = csr.indexOf(target);
+                if (t < 0 || Double.isInfinite(dist[t])) return null;
+                LinkedList<Node> path = new LinkedList<>();
+                for (int v = t; v != source; v = edgeSources[predEdge[v]]) path.addFirst(csr.node(v));
+                path.addFirst(csr.node(source));
+                return path;
+            }
+
+            public DijkstraResult resultFor(Node target) {
+                List<Node> path = pathTo(target);
+                return new DijkstraResult(path, (path == null) ? Double.POSITIVE_INFINITY : dist[csr.indexOf(target)]);
+            }
+
+            private void edgeDecreased(int e) {
+                int u = edgeSources[e], v = csr.targets[e];
+                double candidate = dist[u] + weights[e];
+                if (candidate < dist[v]) {
+                    dist[v] = candidate;
+                    predEdge[v] = e;
+                    heap.insertOrDecrease(v, candidate);
+                    settle();
+                }
+            }
+
+            private void edgeIncreased(int e) {
+                int v = csr.targets[e];
+                if (predEdge[v] != e) return; // Not a tree edge: no shortest path used it
+
+                // Cut loose the subtree hanging below e
+                subtree.clear();
+                subtree.add(v);
+                affected[v] = true;
+                for (int i = 0; i < subtree.size(); i++) {
+                    int x = subtree.get(i);
+                    for (int f = csr.offsets[x]; f < csr.offsets[x + 1]; f++) {
+                        int y = csr.targets[f];
+                        if (predEdge[y] == f && !affected[y]) {
+                            affected[y] = true;
+                            subtree.add(y);
+                        }
+                    }
+                }
+                for (int i = 0; i < subtree.size(); i++) {
+                    int y = subtree.get(i);
+                    dist[y] = Double.POSITIVE_INFINITY;
+                    predEdge[y] = -1;
+                }
+                // Best way into each cut node from the part of the tree that is still valid
+                for (int i = 0; i < subtree.size(); i++) {
+                    int y = subtree.get(i);
+                    for (int k = inOffsets[y]; k < inOffsets[y + 1]; k++) {
+                        int f = inEdges[k], x = edgeSources[f];
+                        if (affected[x]) continue;
+                        double candidate = dist[x] + weights[f];
+                        if (candidate < dist[y]) {
+                            dist[y] = candidate;
+                            predEdge[y] = f;
+                        }
+                    }
+                    if (dist[y] < Double.POSITIVE_INFINITY) heap.insertOrDecrease(y, dist[y]);
+                }
+                for (int i = 0; i < subtree.size(); i++) affected[subtree.get(i)] = false;
+                settle();
+            }
+
+            // Dijkstra from whatever is queued; only nodes whose distance improves get queued
+            private void settle() {
+                while (!heap.isEmpty()) {
+                    int u = heap.poll();
+                    repairSettled++;
+                    double du = dist[u];
+                    for (int f = csr.offsets[u], end = csr.offsets[u + 1]; f < end; f++) {
+                        int y = csr.targets[f];
+                        double newDist = du + weights[f];
+                        if (newDist < dist[y]) {
+                            dist[y] = newDist;
+                            predEdge[y] = f;
+                            heap.insertOrDecrease(y, newDist);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // --- Inner Class: Live Route Trees ---
+    // Routes on a Graph whose edge weights are being edited (closures, traffic), from
+    // DynamicShortestPaths trees that every edit repairs instead of the snapshot they were
+    // built on. One tree per recently used source; beyond maxTrees the least recently used
+    // is dropped. Registers itself as the graph's EdgeUpdateListener. Only weight edits are
+    // followed: once the graph changes any other way (addNode/addEdge) the trees no longer
+    // match it and resultFor declines from then on. Updates and queries share one lock.
+    static final class LiveRouteTrees implements EdgeUpdateListener {
+        private final Graph graph;
+        private final CsrGraph snapshot;
+        private final DynamicShortestPaths paths;
+        private final Map<Node, DynamicShortestPaths.Tree> trees;
+        private long syncedVersion; // Graph version the trees reflect; -1 once out of step
+
+        LiveRouteTrees(Graph graph, CsrGraph snapshot, int maxTrees) {
+            this.graph = graph;
+            this.snapshot = snapshot;
+            this.paths = new DynamicShortestPaths(snapshot);
+            this.trees = new LinkedHashMap<Node, DynamicShortestPaths.Tree>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Node, DynamicShortestPaths.Tree> eldest) {
+                    if (size() <= maxTrees) return false;
+                    paths.removeTree(eldest.getValue());
+                    return true;
+                }
+            };
+            this.syncedVersion = (snapshot.version() == graph.getVersion()) ? snapshot.version() : -1;
+            graph.addEdgeUpdateListener(this);
+        }
+
+        @Override
+        public synchronized void edgeWeightChanged(Node from, Node to, double oldWeight, double newWeight) {
+            if (syncedVersion < 0) return;
+            // The graph bumps its version once per directed edge before telling us; any
+            // other step in between was a change we cannot follow
+            if (graph.getVersion() == syncedVersion + 1 && paths.updateEdge(from, to, newWeight)) {
+                syncedVersion++;
+                return;
+            }
+            syncedVersion = -1;
+            for (DynamicShortestPaths.Tree tree : trees.values()) paths.removeTree(tree);
+            trees.clear();
+        }
+
+        // Null unless the trees reflect exactly this graph version and the start is in the snapshot
+        public synchronized DijkstraResult resultFor(Node start, Node end, long version) {
+            if (version != syncedVersion || snapshot.indexOf(start) < 0) return null;
+            DynamicShortestPaths.Tree tree = trees.get(start);
+            if (tree == null) {
+                tree = paths.addTree(start);
+                trees.put(start, tree);
+            }
+            return tree.resultFor(end);
+        }
+    }
+
+    // --- Inner Class: Graph Loader ---
+    // Streams large road networks from disk straight into a CsrGraph, without building a
+    // Graph or a String per edge. Files are read through a fixed-size NIO buffer, so apart
+    // from the graph itself (and its edge list before bucketing) memory use is constant.
+    // Bad lines are skipped and collected in the Result rather than printed one by one.
+    //  - DIMACS: .gr with "p sp <nodes> <arcs>" and "a <from> <to> <weight>" lines (arcs are
+    //    directed, node ids 1..n), optional .co with "v <id> <x> <y>" coordinates.
+    //  - CSV: a node file "id,x,y" and an edge file "from,to,weight"; a header line
+    //    (non-numeric coordinates or weight) is skipped.
+    // Run: java -cp . 'FiretruckSimulator$GraphLoader' file.gr [file.co]
+    //      java -cp . 'FiretruckSimulator$GraphLoader' nodes.csv edges.csv [--directed]
+    static final class GraphLoader {
+        private static final int BUFFER_SIZE = 1 << 16;
+        private static final int MAX_REPORTED_ERRORS = 100;
+
+        // Loaded graph plus what went wrong and how fast it went
+        static final class Result {
+            private final CsrGraph graph;
+            private final List<String> errors;
+            private final long errorCount, bytes, elapsedNanos;
+
+            Result(CsrGraph graph, List<String> errors, long errorCount, long bytes, long elapsedNanos) {
+                this.graph = graph;
+                this.errors = errors;
+                this.errorCount = errorCount;
+                this.bytes = bytes;
+                this.elapsedNanos = elapsedNanos;
+            }
+
+            public CsrGraph getGraph() { return graph; }
+            public List<String> getErrors() { return Collections.unmodifiableList(errors); } // First 100 only
+            public long getErrorCount() { return errorCount; }
+            public long getElapsedNanos() { return elapsedNanos; }
+            public double edgesPerSecond() { return graph.edgeCount() / Math.max(elapsedNanos / 1e9, 1e-9); }
+
+            @Override
+            public String toString() {
+                return String.format("%,d nodes, %,d edges, %,d errors in %.0f ms (%,.0f edges/s, %.1f MB/s)",
+                        graph.nodeCount(), graph.edgeCount(), errorCount, elapsedNanos / 1e6, edgesPerSecond(),
+                        bytes / 1e6 / Math.max(elapsedNanos / 1e9, 1e-9));
+            }
+        }
+
+        public static Result loadDimacs(Path grFile, Path coFile) throws IOException {
+            long start = System.nanoTime();
+            Errors errors = new Errors();
+            int nodeCount = -1;
+            int[] sources = null, targets = null;
+            double[] weights = null;
+            int edges = 0;
+            long bytes;
+            try (LineReader in = new LineReader(grFile, ' ')) {
+                while (in.nextLine()) {
+                    byte kind = in.lineStart();
+                    if (kind == 'c' || kind == 0) continue;
+                    try {
+                        in.skipToken(); // "a" or "p"
+                        if (kind == 'p') {
+                            in.skipToken(); // "sp"
+                            nodeCount = (int) in.nextLong();
+                            long arcs = in.nextLong();
+                            if (nodeCount < 0 || arcs < 0 || arcs > Integer.MAX_VALUE - 8) throw new LineException("bad problem line");
+                            sources = new int[(int) arcs];
+                            targets = new int[(int) arcs];
+                            weights = new double[(int) arcs];
+                        } else if (kind == 'a') {
+                            if (sources == null) throw new LineException("arc before the problem line");
+                            long from = in.nextLong(), to = in.nextLong();
+                            double weight = in.nextDouble();
+                            if (from < 1 || from > nodeCount || to < 1 || to > nodeCount) throw new LineException("node id out of range");
+                            if (!(weight >= 0)) throw new LineException("negative weight");
+                            if (edges == sources.length) throw new LineException("more arcs than declared");
+                            sources[edges] = (int) from - 1;
+                            targets[edges] = (int) to - 1;
+                            weights[edges] = weight;
+                            edges++;
+                        } else {
+                            throw new LineException("unknown line type '" + (char) kind + "'");
+                        }
+                    } catch (LineException e) {
+                        errors.add(grFile, in.lineNumber(), e.getMessage());
+                    }
+                }
+                bytes = in.bytesRead();
+            }
+            if (nodeCount < 0) throw new IOException(grFile + ": no problem line ('p sp <nodes> <arcs>')");
+
+            int[] xs = new int[nodeCount], ys = new int[nodeCount];
+            if (coFile != null) {
+                try (LineReader in = new LineReader(coFile, ' ')) {
+                    while (in.nextLine()) {
+                        if (in.lineStart() != 'v') continue; // Comments and the "p aux sp co" line
+                        try {
+                            in.skipToken();
+                            long id = in.nextLong();
+                            if (id < 1 || id > nodeCount) throw new LineException("node id out of range");
+                            xs[(int) id - 1] = (int) in.nextLong();
+                            ys[(int) id - 1] = (int) in.nextLong();
+                        } catch (LineException e) {
+                            errors.add(coFile, in.lineNumber(), e.getMessage());
+                        }
+                    }
+                    bytes += in.bytesRead();
+                }
+            }
+            CsrGraph graph = CsrGraph.fromEdges(NodeIds.numbered(nodeCount, 1), xs, ys, edges, sources, targets, weights);
+            return new Result(graph, errors.messages, errors.count, bytes, System.nanoTime() - start);
+        }
+
+        // Undirected edges are stored in both directions
+        public static Result loadCsv(Path nodeFile, Path edgeFile, boolean undirected) throws IOException {
+            long start = System.nanoTime();
+            Errors errors = new Errors();
+            Map<String, Integer> indexById = new HashMap<>();
+            List<String> idByIndex = new ArrayList<>();
+            IntList xs = new IntList(), ys = new IntList();
+            long bytes;
+            try (LineReader in = new LineReader(nodeFile, ',')) {
+                while (in.nextLine()) {
+                    if (in.lineStart() == 0) continue;
+                    try {
+                        String id = in.nextString();
+                        int x = (int) in.nextLong(), y = (int) in.nextLong();
+                        if (indexById.putIfAbsent(id, idByIndex.size()) != null) throw new LineException("duplicate node id '" + id + "'");
+                        idByIndex.add(id);
+                        xs.add(x);
+                        ys.add(y);
+                    } catch (LineException e) {
+                        if (in.lineNumber() > 1) errors.add(nodeFile, in.lineNumber(), e.getMessage()); // Line 1 may be a header
+                    }
+                }
+                bytes = in.bytesRead();
+            }
+
+            IntList sources = new IntList(), targets = new IntList();
+            DoubleList weights = new DoubleList();
+            try (LineReader in = new LineReader(edgeFile, ',')) {
+                while (in.nextLine()) {
+                    if (in.lineStart() == 0) continue;
+                    try {
+                        Integer from = indexById.get(in.nextString()), to = indexById.get(in.nextString());
+                        double weight = in.nextDouble();
+                        if (from == null || to == null) throw new LineException("unknown node id");
+                        if (!(weight >= 0)) throw new LineException("negative weight");
+                        sources.add(from);
+                        targets.add(to);
+                        weights.add(weight);
+                        if (undirected) {
+                            sources.add(to);
+                            targets.add(from);
+                            weights.add(weight);
+                        }
+                    } catch (LineException e) {
+                        if (in.lineNumber() > 1) errors.add(edgeFile, in.lineNumber(), e.getMessage());
+                    }
+                }
+                bytes += in.bytesRead();
+            }
+            NodeIds ids = NodeIds.of(idByIndex.toArray(new String[0]), indexById);
+            CsrGraph graph = CsrGraph.fromEdges(ids, xs.toArray(), ys.toArray(), sources.size(), sources.array(), targets.array(), weights.array());
+            return new Result(graph, errors.messages, errors.count, bytes, System.nanoTime() - start);
+        }
+
+        public static void main(String[] args) throws IOException {
+            if (args.length == 0) {
+                System.err.println("Usage: GraphLoader file.gr [file.co] | nodes.csv edges.csv [--directed]");
+                System.exit(2);
+            }
+            Result result = args[0].endsWith(".gr")
+                    ? loadDimacs(Paths.get(args[0]), (args.length > 1) ? Paths.get(args[1]) : null)
+                    : loadCsv(Paths.get(args[0]), Paths.get(args[1]), !(args.length > 2 && args[2].equals("--directed")));
+            System.out.println(result);
+            result.getErrors().forEach(error -> System.out.println("  " + error));
+            if (result.getErrorCount() > result.getErrors().size()) {
+                System.out.println("  ... and " + (result.getErrorCount() - result.getErrors().size()) + " more");
+            }
+        }
+
+        // Keeps the first few messages and counts the rest
+        private static final class Errors {
+            final List<String> messages = new ArrayList<>();
+            long count;
+
+            void add(Path file, long line, String message) {
+                if (count++ < MAX_REPORTED_ERRORS) messages.add(file.getFileName() + ":" + line + ": " + message);
+            }
+        }
+
+        // Malformed line; caught per line, never escapes the loader
+        private static final class LineException extends Exception {
+            private static final long serialVersionUID = 1L;
+            LineException(String message) { super(message, null, false, false); } // No stack trace: bad lines can be frequent
+        }
+
+        // Reads a file one line at a time into a reusable byte array and parses fields in
+        // place. Fields are separated by the delimiter (runs of it for ' ') and '\r' and
+        // surrounding spaces are ignored.
+        private static final class LineReader implements Closeable {
+            private final FileChannel channel;
+            private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            private final byte delimiter;
+            private byte[] line = new byte[256];
+            private int length, pos;
+            private long lineNumber, bytesRead;
+            private boolean eof;
+
+            LineReader(Path file, char delimiter) throws IOException {
+                this.channel = FileChannel.open(file, StandardOpenOption.READ);
+                this.delimiter = (byte) delimiter;
+                buffer.flip();
+            }
+
+            // False at end of file
+            boolean nextLine() throws IOException {
+                length = 0;
+                pos = 0;
+                while (true) {
+                    if (!buffer.hasRemaining()) {
+                        if (eof || !fill()) {
+                            if (length == 0) return false;
+                            break; // Last line without a trailing newline
+                        }
+                    }
+                    byte b = buffer.get();
+                    if (b == '\n') break;
+                    if (b == '\r') continue;
+                    if (length == line.length) line = Arrays.copyOf(line, length * 2);
+                    line[length++] = b;
+                }
+                lineNumber++;
+                skipSeparators(false);
+                return true;
+            }
+
+            private boolean fill() throws IOException {
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read <= 0) {
+                    eof = true;
+                    return false;
+                }
+                bytesRead += read;
+                return true;
+            }
+
+            long lineNumber() { return lineNumber; }
+            long bytesRead() { return bytesRead; }
+
+            // First non-blank byte of the line, or 0 for a blank line
+            byte lineStart() { return (pos < length) ? line[pos] : 0; }
+
+            void skipToken() throws LineException {
+                if (pos >= length) throw new LineException("missing field");
+                while (pos < length && line[pos] != delimiter && line[pos] != ' ') pos++;
+                skipSeparators(true);
+            }
+
+            String nextString() throws LineException {
+                int start = pos;
+                while (pos < length && line[pos] != delimiter) pos++;
+                int end = pos;
+                while (end > start && line[end - 1] == ' ') end--;
+                if (end == start) throw new LineException("missing field");
+                String value = new String(line, start, end - start, StandardCharsets.UTF_8);
+                skipSeparators(true);
+                return value;
+            }
+
+            long nextLong() throws LineException {
+                boolean negative = pos < length && line[pos] == '-';
+                if (negative || (pos < length && line[pos] == '+')) pos++;
+                int start = pos;
+                long value = 0;
+                while (pos < length && line[pos] >= '0' && line[pos] <= '9') {
+                    if (value > (Long.MAX_VALUE - 9) / 10) throw new LineException("number too large");
+                    value = value * 10 + (line[pos++] - '0');
+                }
+                if (pos == start) throw new LineException("expected a number");
+                endOfNumber();
+                return negative ? -value : value;
+            }
+
+            // Plain decimals are parsed in place; anything with an exponent goes to Double.parseDouble
+            double nextDouble() throws LineException {
+                int start = pos;
+                boolean negative = pos < length && line[pos] == '-';
+                if (negative || (pos < length && line[pos] == '+')) pos++;
+                long mantissa = 0;
+                int digits = 0, scale = 0;
+                boolean fraction = false;
+                while (pos < length) {
+                    byte b = line[pos];
+                    if (b >= '0' && b <= '9') {
+                        if (digits < 18) {
+                            mantissa = mantissa * 10 + (b - '0');
+                            digits += (mantissa > 0) ? 1 : 0;
+                            if (fraction) scale++;
+                        } else if (!fraction) {
+                            scale--; // Beyond long precision: drop the digit but keep the magnitude
+                        }
+                        pos++;
+                    } else if (b == '.' && !fraction) {
+                        fraction = true;
+                        pos++;
+                    } else {
+                        break;
+                    }
+                }
+                if (pos < length && (line[pos] == 'e' || line[pos] == 'E')) {
+                    while (pos < length && line[pos] != delimiter && line[pos] != ' ') pos++;
+                    try {
+                        double value = Double.parseDouble(new String(line, start, pos - start, StandardCharsets.US_ASCII));
+                        endOfNumber();
+                        return value;
+                    } catch (NumberFormatException e) {
+                        throw new LineException("expected a number");
+                    }
+                }
+                if (pos == start || (pos == start + 1 && (negative || fraction))) throw new LineException("expected a number");
+                endOfNumber();
+                double value = (scale >= 0) ? mantissa / Math.pow(10, scale) : mantissa * Math.pow(10, -scale);
+                return negative ? -value : value;
+            }
+
+            private void endOfNumber() throws LineException {
+                if (pos < length && line[pos] != delimiter && line[pos] != ' ') throw new LineException("expected a number");
+                skipSeparators(true);
+            }
+
+            // Skips spaces and, after a field, one delimiter (any run of them for ' ')
+            private void skipSeparators(boolean afterField) {
+                while (pos < length && line[pos] == ' ') pos++;
+                if (afterField && delimiter != ' ' && pos < length && line[pos] == delimiter) {
+                    pos++;
+                    while (pos < length && line[pos] == ' ') pos++;
+                }
+            }
+
+            @Override
+            public void close() throws IOException { channel.close(); }
+        }
+    }
+
+    // --- Inner Class: Memory-Mapped Graph ---
+    // Versioned binary snapshot of a CsrGraph that is mapped with FileChannel.map and
+    // queried in place: adjacency, weights, coordinates and ids stay off-heap and no
+    // per-node objects exist until a search hands a Node back. Opening only maps the
+    // sections, so startup is independent of graph size unless the checksum is verified.
+    //
+    // Layout (little-endian; every section starts on an 8-byte boundary):
+    //   header (64 bytes): magic "FTGRAPH\0", format version (int), node count (int),
+    //     edge count (long), graph version (long), id bytes (long), CRC32 of everything
+    //     after the header (long), reserved
+    //   offsets int[n + 1], targets int[m], weights double[m], xs int[n], ys int[n],
+    //   id offsets int[n + 1], node indices sorted by id int[n], ids (UTF-8)
+    // Safe to share between threads: all reads are absolute.
+    static final class MappedGraph implements GraphView {
+        private static final long MAGIC = 0x0048504152475446L; // "FTGRAPH\0" read little-endian
+        private static final int FORMAT_VERSION = 1;
+        private static final int HEADER_BYTES = 64;
+
+        private final int nodeCount, edgeCount;
+        private final long graphVersion;
+        private final IntBuffer offsets, targets, xs, ys, idOffsets, sortedById;
+        private final DoubleBuffer weights;
+        private final ByteBuffer ids;
+
+        private MappedGraph(int nodeCount, int edgeCount, long graphVersion, IntBuffer offsets, IntBuffer targets, DoubleBuffer weights,
+                            IntBuffer xs, IntBuffer ys, IntBuffer idOffsets, IntBuffer sortedById, ByteBuffer ids) {
+            this.nodeCount = nodeCount;
+            this.edgeCount = edgeCount;
+            this.graphVersion = graphVersion;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.weights = weights;
+            this.xs = xs;
+            this.ys = ys;
+            this.idOffsets = idOffsets;
+            this.sortedById = sortedById;
+            this.ids = ids;
+        }
+
+        // Converter from the in-memory Graph
+        public static void write(Graph graph, Path file) throws IOException { write(CsrGraph.of(graph), file); }
+
+        public static void write(CsrGraph csr, Path file) throws IOException {
+            int n = csr.nodeCount(), m = csr.edgeCount();
+            byte[][] idBytes = new byte[n][];
+            int[] idOffsets = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                idBytes[i] = csr.id(i).getBytes(StandardCharsets.UTF_8);
+                idOffsets[i + 1] = Math.addExact(idOffsets[i], idBytes[i].length);
+            }
+            Integer[] byId = new Integer[n];
+            for (int i = 0; i < n; i++) byId[i] = i;
+            Arrays.sort(byId, Comparator.comparing(csr::id));
+
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                SectionWriter out = new SectionWriter(channel, HEADER_BYTES);
+                for (int i = 0; i <= n; i++) out.putInt(csr.offsets[i]);
+                out.align();
+                for (int e = 0; e < m; e++) out.putInt(csr.targets[e]);
+                out.align();
+                for (int e = 0; e < m; e++) out.putDouble(csr.weights[e]);
+                for (int i = 0; i < n; i++) out.putInt(csr.xs[i]);
+                out.align();
+                for (int i = 0; i < n; i++) out.putInt(csr.ys[i]);
+                out.align();
+                for (int i = 0; i <= n; i++) out.putInt(idOffsets[i]);
+                out.align();
+                for (int i = 0; i < n; i++) out.putInt(byId[i]);
+                out.align();
+                for (byte[] id : idBytes) out.put(id);
+                out.flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putLong(MAGIC).putInt(FORMAT_VERSION).putInt(n).putLong(m).putLong(csr.version())
+                        .putLong(idOffsets[n]).putLong(out.checksum()).flip();
+                channel.write(header, 0);
+                channel.force(false);
+            }
+            // Readers never see a half-written file
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        public static MappedGraph open(Path file) throws IOException { return open(file, false); }
+
+        // verifyChecksum reads the whole file once; without it only the header is checked
+        public static MappedGraph open(Path file, boolean verifyChecksum) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                while (header.hasRemaining() && channel.read(header, header.position()) > 0) { /* read fully */ }
+                header.flip();
+                if (header.remaining() < HEADER_BYTES || header.getLong() != MAGIC) throw new IOException(file + ": not a graph snapshot");
+                int format = header.getInt();
+                if (format != FORMAT_VERSION) throw new IOException(file + ": unsupported snapshot format " + format);
+                int n = header.getInt();
+                long m = header.getLong(), graphVersion = header.getLong(), idBytes = header.getLong(), checksum = header.getLong();
+                if (n < 0 || m < 0 || m > Integer.MAX_VALUE || idBytes < 0) throw new IOException(file + ": corrupt header");
+
+                long position = HEADER_BYTES;
+                long[] starts = new long[8];
+                long[] sizes = {4L * (n + 1), 4L * m, 8L * m, 4L * n, 4L * n, 4L * (n + 1), 4L * n, idBytes};
+                for (int i = 0; i < sizes.length; i++) {
+                    starts[i] = position;
+                    position = align(position + sizes[i]);
+                }
+                long expectedSize = starts[7] + idBytes;
+                if (channel.size() != expectedSize) throw new IOException(file + ": truncated or corrupt (" + channel.size() + " bytes, expected " + expectedSize + ")");
+                if (verifyChecksum) {
+                    CRC32 crc = new CRC32();
+                    for (long start = HEADER_BYTES; start < expectedSize; start += Integer.MAX_VALUE) {
+                        crc.update(map(channel, start, Math.min(Integer.MAX_VALUE, expectedSize - start)));
+                    }
+                    if (crc.getValue() != checksum) throw new IOException(file + ": checksum mismatch");
+                }
+                return new MappedGraph(n, (int) m, graphVersion,
+                        map(channel, starts[0], sizes[0]).asIntBuffer(), map(channel, starts[1], sizes[1]).asIntBuffer(),
+                        map(channel, starts[2], sizes[2]).asDoubleBuffer(), map(channel, starts[3], sizes[3]).asIntBuffer(),
+                        map(channel, starts[4], sizes[4]).asIntBuffer(), map(channel, starts[5], sizes[5]).asIntBuffer(),
+                        map(channel, starts[6], sizes[6]).asIntBuffer(), map(channel, starts[7], sizes[7]));
+            }
+            // The mappings stay valid after the channel is closed
+        }
+
+        private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+            if (size > Integer.MAX_VALUE) throw new IOException("Snapshot section larger than 2 GB");
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private static long align(long position) { return (position + 7) & ~7L; }
+
+        public long version() { return graphVersion; }
+        public int nodeCount() { return nodeCount; }
+        public int edgeCount() { return edgeCount; }
+        public int firstEdge(int node) { return offsets.get(node); }
+        public int endEdge(int node) { return offsets.get(node + 1); }
+        public int target(int edge) { return targets.get(edge); }
+        public double weight(int edge) { return weights.get(edge); }
+        public int x(int node) { return xs.get(node); }
+        public int y(int node) { return ys.get(node); }
+
+        // A fresh Node every time; Nodes compare by id, so copies are interchangeable
+        public Node node(int index) { return new Node(id(index), x(index), y(index)); }
+
+        public String id(int index) {
+            int start = idOffsets.get(index), end = idOffsets.get(index + 1);
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) bytes[i] = ids.get(start + i);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public int indexOf(Node node) { return (node != null) ? indexOf(node.getId()) : -1; }
+
+        // Binary search over the id-sorted index section
+        public int indexOf(String id) {
+            int low = 0, high = nodeCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int index = sortedById.get(mid);
+                int cmp = id(index).compareTo(id);
+                if (cmp == 0) return index;
+                if (cmp < 0) low = mid + 1; else high = mid - 1;
+            }
+            return -1;
+        }
+
+        public static void main(String[] args) throws IOException {
+            if (args.length < 2) {
+                System.err.println("Usage: MappedGraph <graph.gr [graph.co] | nodes.csv edges.csv> <snapshot.fgr>");
+                System.exit(2);
+            }
+            Path snapshot = Paths.get(args[args.length - 1]);
+            GraphLoader.Result loaded = args[0].endsWith(".gr")
+                    ? GraphLoader.loadDimacs(Paths.get(args[0]), (args.length > 2) ? Paths.get(args[1]) : null)
+                    : GraphLoader.loadCsv(Paths.get(args[0]), Paths.get(args[1]), true);
+            System.out.printf("Parsed text: %s%n", loaded);
+            long start = System.nanoTime();
+            write(loaded.getGraph(), snapshot);
+            System.out.printf("Wrote %s (%,d bytes) in %.0f ms%n", snapshot, Files.size(snapshot), (System.nanoTime() - start) / 1e6);
+
+            start = System.nanoTime();
+            MappedGraph graph = open(snapshot);
+            System.out.printf("Opened snapshot in %.2f ms (%,d nodes, %,d edges)%n", (System.nanoTime() - start) / 1e6, graph.nodeCount(), graph.edgeCount());
+            start = System.nanoTime();
+            open(snapshot, true);
+            System.out.printf("Opened with checksum verification in %.0f ms%n", (System.nanoTime() - start) / 1e6);
+        }
+
+        // Buffers section data for the channel and keeps the running checksum and alignment
+        private static final class SectionWriter {
+            private final FileChannel channel;
+            private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            private final CRC32 crc = new CRC32();
+            private long position;
+
+            SectionWriter(FileChannel channel, long position) {
+                this.channel = channel;
+                this.position = position;
+            }
+
+            void putInt(int value) throws IOException { ensure(4); buffer.putInt(value); }
+            void putDouble(double value) throws IOException { ensure(8); buffer.putDouble(value); }
+
+            void put(byte[] bytes) throws IOException {
+                for (int i = 0; i < bytes.length; ) {
+                    ensure(1);
+                    int chunk = Math.min(buffer.remaining(), bytes.length - i);
+                    buffer.put(bytes, i, chunk);
+                    i += chunk;
+                }
+            }
+
+            void align() throws IOException {
+                while (((position + buffer.position()) & 7) != 0) { ensure(1); buffer.put((byte) 0); }
+            }
+
+            long checksum() { return crc.getValue(); }
+
+            private void ensure(int bytes) throws IOException {
+                if (buffer.remaining() < bytes) flush();
+            }
+
+            void flush() throws IOException {
+                buffer.flip();
+                ByteBuffer forCrc = buffer.duplicate();
+                crc.update(forCrc);
+                while (buffer.hasRemaining()) position += channel.write(buffer, position);
+                buffer.clear();
+            }
+        }
+    }
+
+    // --- Inner Class: Spatial Index ---
+    // Static 2-d tree over the node coordinates of a GraphView, for snapping a reported
+    // location to the graph and for finding the nodes inside a viewport. The tree is
+    // implicit: node indices and their coordinates sit in three parallel arrays where the
+    // median of every range splits it (alternating x and y), and ranges of at most
+    // LEAF_SIZE nodes are scanned linearly. Immutable after build, so one index can serve
+    // any number of threads; rebuild it when the node set changes.
+    static final class SpatialIndex {
+        private static final int LEAF_SIZE = 8;
+        private final GraphView graph;
+        private final int[] nodes; // Node indices in tree order
+        private final int[] xs, ys; // Their coordinates, same order
+
+        private SpatialIndex(GraphView graph, int[] nodes, int[] xs, int[] ys) {
+            this.graph = graph;
+            this.nodes = nodes;
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+        public static SpatialIndex build(GraphView graph) {
+            int n = graph.nodeCount();
+            int[] nodes = new int[n], xs = new int[n], ys = new int[n];
+            for (int i = 0; i < n; i++) {
+                nodes[i] = i;
+                xs[i] = graph.x(i);
+                ys[i] = graph.y(i);
+            }
+            SpatialIndex index = new SpatialIndex(graph, nodes, xs, ys);
+            index.split(0, n, 0);
+            return index;
+        }
+
+        public GraphView getGraph() { return graph; }
+        public int size() { return nodes.length; }
+
+        // Closest node to (x, y), -1 for an empty graph. Ties go to whichever is found first.
+        public int nearest(double x, double y) {
+            if (nodes.length == 0) return -1;
+            Neighbours best = new Neighbours(1);
+            nearest(0, nodes.length, 0, x, y, best);
+            return nodes[best.slots[0]];
+        }
+
+        public Node nearestNode(double x, double y) {
+            int index = nearest(x, y);
+            return (index < 0) ? null : graph.node(index);
+        }
+
+        // Up to k node indices, closest first
+        public int[] nearest(double x, double y, int k) {
+            if (k <= 0 || nodes.length == 0) return new int[0];
+            Neighbours best = new Neighbours(Math.min(k, nodes.length));
+            nearest(0, nodes.length, 0, x, y, best);
+            int[] result = new int[best.size];
+            for (int i = best.size - 1; i >= 0; i--) result[i] = nodes[best.poll()];
+            return result;
+        }
+
+        // Calls the visitor with every node index in [minX, maxX] x [minY, maxY] (inclusive), in no particular order
+        public void range(int minX, int minY, int maxX, int maxY, IntConsumer visitor) {
+            if (minX > maxX || minY > maxY) return;
+            range(0, nodes.length, 0, minX, minY, maxX, maxY, visitor);
+        }
+
+        public int countInRange(int minX, int minY, int maxX, int maxY) {
+            int[] count = {0};
+            range(minX, minY, maxX, maxY, node -> count[0]++);
+            return count[0];
+        }
+
+        private void split(int lo, int hi, int axis) {
+            while (hi - lo > LEAF_SIZE) {
+                int mid = (lo + hi) >>> 1;
+                select(lo, hi - 1, mid, axis == 0 ? xs : ys);
+                split(lo, mid, axis ^ 1);
+                lo = mid + 1; // Right half in the loop rather than another recursion
+                axis ^= 1;
+            }
+        }
+
+        // Quickselect: afterwards slot k holds the value it would have in sorted order, with
+        // no larger key before it and no smaller key after it
+        private void select(int lo, int hi, int k, int[] keys) {
+            while (lo < hi) {
+                int pivot = median(keys[lo], keys[(lo + hi) >>> 1], keys[hi]);
+                int i = lo, j = hi;
+                while (i <= j) {
+                    while (keys[i] < pivot) i++;
+                    while (keys[j] > pivot) j--;
+                    if (i <= j) swap(i++, j--);
+                }
+                if (k <= j) hi = j;
+                else if (k >= i) lo = i;
+                else return;
+            }
+        }
+
+        private static int median(int a, int b, int c) {
+            return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+        }
+
+        private void swap(int i, int j) {
+            int t = nodes[i]; nodes[i] = nodes[j]; nodes[j] = t;
+            t = xs[i]; xs[i] = xs[j]; xs[j] = t;
+            t = ys[i]; ys[i] = ys[j]; ys[j] = t;
+        }
+
+        private double distanceSq(int slot, double x, double y) {
+            double dx = xs[slot] - x, dy = ys[slot] - y;
+            return dx * dx + dy * dy;
+        }
+
+        // Visits the half containing the point first; the other half only if the splitting
+        // line is closer than the current k-th best
+        private void nearest(int lo, int hi, int axis, double x, double y, Neighbours best) {
+            if (hi - lo <= LEAF_SIZE) {
+                for (int i = lo; i < hi; i++) best.offer(i, distanceSq(i, x, y));
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            best.offer(mid, distanceSq(mid, x, y));
+            double delta = (axis == 0) ? x - xs[mid] : y - ys[mid];
+            if (delta < 0) {
+                nearest(lo, mid, axis ^ 1, x, y, best);
+                if (delta * delta < best.bound()) nearest(mid + 1, hi, axis ^ 1, x, y, best);
+            } else {
+                nearest(mid + 1, hi, axis ^ 1, x, y, best);
+                if (delta * delta < best.bound()) nearest(lo, mid, axis ^ 1, x, y, best);
+            }
+        }
+
+        private void range(int lo, int hi, int axis, int minX, int minY, int maxX, int maxY, IntConsumer visitor) {
+            if (hi - lo <= LEAF_SIZE) {
+                for (int i = lo; i < hi; i++) {
+                    if (xs[i] >= minX && xs[i] <= maxX && ys[i] >= minY && ys[i] <= maxY) visitor.accept(nodes[i]);
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            int split = (axis == 0) ? xs[mid] : ys[mid];
+            if (xs[mid] >= minX && xs[mid] <= maxX && ys[mid] >= minY && ys[mid] <= maxY) visitor.accept(nodes[mid]);
+            if (split >= ((axis == 0) ? minX : minY)) range(lo, mid, axis ^ 1, minX, minY, maxX, maxY, visitor);
+            if (split <= ((axis == 0) ? maxX : maxY)) range(mid + 1, hi, axis ^ 1, minX, minY, maxX, maxY, visitor);
+        }
+
+        // Bounded max-heap of the k closest slots seen so far
+        private static final class Neighbours {
+            final int[] slots;
+            final double[] distances;
+            int size;
+
+            Neighbours(int k) {
+                slots = new int[k];
+                distances = new double[k];
+            }
+
+            // Squared distance a candidate must beat to get in
+            double bound() { return (size < slots.length) ? Double.POSITIVE_INFINITY : distances[0]; }
+
+            void offer(int slot, double distance) {
+                if (size < slots.length) {
+                    int i = size++;
+                    while (i > 0 && distances[(i - 1) / 2] < distance) {
+                        slots[i] = slots[(i - 1) / 2];
+                        distances[i] = distances[(i - 1) / 2];
+                        i = (i - 1) / 2;
+                    }
+                    slots[i] = slot;
+                    distances[i] = distance;
+                } else if (distance < distances[0]) {
+                    siftDown(slot, distance);
+                }
+            }
+
+            // Removes and returns the farthest slot
+            int poll() {
+                int top = slots[0];
+                size--;
+                if (size > 0) siftDown(slots[size], distances[size]);
+                return top;
+            }
+
+            private void siftDown(int slot, double distance) {
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && distances[child + 1] > distances[child]) child++;
+                    if (distances[child] <= distance) break;
+                    slots[i] = slots[child];
+                    distances[i] = distances[child];
+                    i = child;
+                }
+                slots[i] = slot;
+                distances[i] = distance;
+            }
+        }
+    }
+
+    // --- Inner Class: Sample Graph (Using the complex one from previous step) ---
+    // Kept apart from the Swing frame so headless code can build it without loading AWT.
+    static final class SampleGraph {
+        static final List<String> STATIONS = Collections.unmodifiableList(Arrays.asList("FS1", "FS2")); // Fire stations
+
+        static Graph create() {
+            Graph g = new Graph();
+            // Nodes
+            g.addNode("FS1", 80, 100); g.addNode("J1", 200, 80); g.addNode("J2", 150, 250);
+            g.addNode("Hosp", 300, 280); g.addNode("Mall", 450, 150); g.addNode("J3", 350, 50);
+            g.addNode("Schl", 600, 80); g.addNode("Park", 550, 300); g.addNode("J4", 400, 400);
+            g.addNode("FS2", 100, 500); g.addNode("J5", 280, 520); g.addNode("Res1", 450, 550);
+            g.addNode("Res2", 650, 450); g.addNode("Fac", 800, 500); g.addNode("J6", 750, 300);
+            g.addNode("Airp", 900, 150); g.addNode("J7", 700, 100);
+            // Edges
+            g.addEdge("FS1", "J1", 12); g.addEdge("FS1", "J2", 18); g.addEdge("J1", "J3", 15);
+            g.addEdge("J1", "Mall", 25); g.addEdge("J2", "Hosp", 10); g.addEdge("J2", "J4", 20);
+            g.addEdge("J2", "FS2", 28); g.addEdge("Hosp", "Mall", 16); g.addEdge("Hosp", "J4", 12);
+            g.addEdge("Mall", "J3", 10); g.addEdge("Mall", "Schl", 22); g.addEdge("Mall", "Park", 18);
+            g.addEdge("J3", "Schl", 25); g.addEdge("Schl", "J7", 8); g.addEdge("Schl", "Park", 15);
+            g.addEdge("Park", "J4", 14); g.addEdge("Park", "J6", 20); g.addEdge("Park", "Res2", 18);
+            g.addEdge("J4", "J5", 15); g.addEdge("J4", "Res1", 10); g.addEdge("FS2", "J5", 18);
+            g.addEdge("J5", "Res1", 16); g.addEdge("Res1", "Res2", 24); g.addEdge("Res1", "Fac", 35);
+            g.addEdge("Res2", "Fac", 15); g.addEdge("Res2", "J6", 10); g.addEdge("Fac", "J6", 12);
+            g.addEdge("J6", "Airp", 28); g.addEdge("J6", "J7", 20); g.addEdge("J7", "Airp", 18);
+            return g;
+        }
+
+        // Commuter traffic for a snapshot of create(): streets around the hospital, mall,
+        // school and park get the DOWNTOWN profile, every other road the ARTERIAL one
+        static TimeDependentGraph traffic(CsrGraph csr) {
+            Set<String> downtown = new HashSet<>(Arrays.asList("Hosp", "Mall", "Schl", "Park"));
+            TimeDependentGraph traffic = new TimeDependentGraph(csr, TravelTimeProfiles.commuterDay());
+            for (int u = 0; u < csr.nodeCount(); u++) {
+                for (int e = csr.firstEdge(u); e < csr.endEdge(u); e++) {
+                    boolean central = downtown.contains(csr.id(u)) || downtown.contains(csr.id(csr.target(e)));
+                    traffic.setProfile(e, central ? TravelTimeProfiles.DOWNTOWN : TravelTimeProfiles.ARTERIAL);
+                }
+            }
+            return traffic;
+        }
+    }
+
+    // --- Inner Class: Synthetic Graphs ---
+    // Generated road-like graphs for benchmarks; the layout is deterministic per seed.
+    static final class SyntheticGraphs {
+        // rows x cols street grid with 10 units between intersections and weights in [10, 20)
+        static Graph grid(int rows, int cols, long seed) {
+            Random random = new Random(seed);
+            Graph g = new Graph();
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) g.addNode(r + "_" + c, c * 10, r * 10);
+            }
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    if (c + 1 < cols) g.addEdge(r + "_" + c, r + "_" + (c + 1), 10 + random.nextInt(10));
+                    if (r + 1 < rows) g.addEdge(r + "_" + c, (r + 1) + "_" + c, 10 + random.nextInt(10));
+                }
+            }
+            return g;
+        }
+
+        // "grid", "geometric" or "scalefree" with about the given number of nodes
+        static EdgeList ofType(String type, int nodes, long seed) {
+            switch (type) {
+                case "grid": {
+                    int side = Math.max(2, (int) Math.round(Math.sqrt(nodes)));
+                    return gridEdges(side, side, seed);
+                }
+                case "geometric": return randomGeometric(nodes, 6.0, seed);
+                case "scalefree": return scaleFree(nodes, 2, seed);
+                default: throw new IllegalArgumentException("Unknown graph type '" + type + "' (grid, geometric or scalefree)");
+            }
+        }
+
+        // Same streets and weights as grid(), as an edge list with numbered nodes
+        static EdgeList gridEdges(int rows, int cols, long seed) {
+            Random random = new Random(seed);
+            EdgeList edges = new EdgeList(rows * cols);
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) edges.setPosition(r * cols + c, c * 10, r * 10);
+            }
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    if (c + 1 < cols) edges.add(r * cols + c, r * cols + c + 1, 10 + random.nextInt(10));
+                    if (r + 1 < rows) edges.add(r * cols + c, (r + 1) * cols + c, 10 + random.nextInt(10));
+                }
+            }
+            return edges;
+        }
+
+        // Random geometric graph: nodes scattered uniformly (about one per 100 x 100 units),
+        // each linked to every node within the radius that gives averageDegree neighbours on
+        // average. Weights are the rounded straight-line distance, like short local roads.
+        static EdgeList randomGeometric(int nodes, double averageDegree, long seed) {
+            Random random = new Random(seed);
+            int side = (int) Math.ceil(Math.sqrt((double) nodes) * 100);
+            double radius = 100 * Math.sqrt(averageDegree / Math.PI);
+            EdgeList edges = new EdgeList(nodes);
+            for (int i = 0; i < nodes; i++) edges.setPosition(i, random.nextInt(side), random.nextInt(side));
+
+            // Bucket nodes into radius-sized cells so only the 3 x 3 neighbouring cells are compared
+            int cellsPerSide = Math.max(1, (int) (side / radius));
+            double cellSize = (double) side / cellsPerSide;
+            int[] cellOf = new int[nodes], cellStart = new int[cellsPerSide * cellsPerSide + 1], byCell = new int[nodes];
+            for (int i = 0; i < nodes; i++) {
+                int cx = Math.min((int) (edges.xs[i] / cellSize), cellsPerSide - 1), cy = Math.min((int) (edges.ys[i] / cellSize), cellsPerSide - 1);
+                cellOf[i] = cy * cellsPerSide + cx;
+                cellStart[cellOf[i] + 1]++;
+            }
+            for (int c = 0; c < cellsPerSide * cellsPerSide; c++) cellStart[c + 1] += cellStart[c];
+            int[] next = Arrays.copyOf(cellStart, cellsPerSide * cellsPerSide);
+            for (int i = 0; i < nodes; i++) byCell[next[cellOf[i]]++] = i;
+
+            double radiusSquared = radius * radius;
+            for (int i = 0; i < nodes; i++) {
+                int cx = cellOf[i] % cellsPerSide, cy = cellOf[i] / cellsPerSide;
+                for (int ny = Math.max(cy - 1, 0); ny <= Math.min(cy + 1, cellsPerSide - 1); ny++) {
+                    for (int nx = Math.max(cx - 1, 0); nx <= Math.min(cx + 1, cellsPerSide - 1); nx++) {
+                        int cell = ny * cellsPerSide + nx;
+                        for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                            int j = byCell[k];
+                            if (j <= i) continue; // Each pair once
+                            double dx = edges.xs[i] - edges.xs[j], dy = edges.ys[i] - edges.ys[j];
+                            double squared = dx * dx + dy * dy;
+                            if (squared <= radiusSquared) edges.add(i, j, Math.max(1, Math.round(Math.sqrt(squared))));
+                        }
+                    }
+                }
+            }
+            return edges;
+        }
+
+        // Barabasi-Albert preferential attachment: each new node links to edgesPerNode existing
+        // nodes chosen with probability proportional to their degree, giving a few huge hubs.
+        // Positions are random and weights are the rounded straight-line distance.
+        static EdgeList scaleFree(int nodes, int edgesPerNode, long seed) {
+            Random random = new Random(seed);
+            int side = (int) Math.ceil(Math.sqrt((double) nodes) * 100);
+            EdgeList edges = new EdgeList(nodes);
+            for (int i = 0; i < nodes; i++) edges.setPosition(i, random.nextInt(side), random.nextInt(side));
+
+            // Every edge endpoint once, so a uniform pick from it is a degree-proportional pick
+            IntList endpoints = new IntList(2 * nodes * edgesPerNode);
+            int core = Math.min(edgesPerNode + 1, nodes);
+            for (int i = 0; i < core; i++) {
+                for (int j = i + 1; j < core; j++) {
+                    edges.add(i, j, edges.distance(i, j));
+                    endpoints.add(i);
+                    endpoints.add(j);
+                }
+            }
+            int[] chosen = new int[edgesPerNode];
+            for (int v = core; v < nodes; v++) {
+                int count = 0;
+                while (count < edgesPerNode) {
+                    int u = endpoints.get(random.nextInt(endpoints.size()));
+                    boolean duplicate = false;
+                    for (int k = 0; k < count; k++) duplicate |= chosen[k] == u;
+                    if (!duplicate) chosen[count++] = u;
+                }
+                for (int k = 0; k < count; k++) {
+                    edges.add(v, chosen[k], edges.distance(v, chosen[k]));
+                    endpoints.add(v);
+                    endpoints.add(chosen[k]);
+                }
+            }
+            return edges;
+        }
+
+        // Undirected edges between numbered nodes ("0" .. "n-1") with coordinates; turns into
+        // a Graph through addNode/addEdge or straight into a CsrGraph
+        static final class EdgeList {
+            final int nodeCount;
+            final int[] xs, ys;
+            private final IntList from = new IntList(), to = new IntList();
+            private final DoubleList weights = new DoubleList();
+
+            EdgeList(int nodeCount) {
+                this.nodeCount = nodeCount;
+                this.xs = new int[nodeCount];
+                this.ys = new int[nodeCount];
+            }
+
+            void setPosition(int node, int x, int y) {
+                xs[node] = x;
+                ys[node] = y;
+            }
+
+            void add(int u, int v, double weight) {
+                from.add(u);
+                to.add(v);
+                weights.add(weight);
+            }
+
+            double distance(int u, int v) {
+                double dx = xs[u] - xs[v], dy = ys[u] - ys[v];
+                return Math.max(1, Math.round(Math.sqrt(dx * dx + dy * dy)));
+            }
+
+            int edgeCount() { return from.size(); } // Undirected edges
+
+            Graph toGraph() {
+                Graph g = new Graph();
+                for (int i = 0; i < nodeCount; i++) g.addNode(Integer.toString(i), xs[i], ys[i]);
+                for (int e = 0; e < from.size(); e++) g.addEdge(Integer.toString(from.get(e)), Integer.toString(to.get(e)), weights.get(e));
+                return g;
+            }
+
+            CsrGraph toCsr() {
+                int m = from.size();
+                int[] sources = new int[2 * m], targets = new int[2 * m];
+                double[] both = new double[2 * m];
+                for (int e = 0; e < m; e++) {
+                    sources[2 * e] = from.get(e);
+                    targets[2 * e] = to.get(e);
+                    sources[2 * e + 1] = to.get(e);
+                    targets[2 * e + 1] = from.get(e);
+                    both[2 * e] = both[2 * e + 1] = weights.get(e);
+                }
+                return CsrGraph.fromEdges(NodeIds.numbered(nodeCount, 0), xs, ys, 2 * m, sources, targets, both);
+            }
+        }
+    }
+
+    // --- Interface: A* Heuristic ---
+    // Lower bound on the remaining cost from node to target (both CSR indices). It must
+    // be consistent (h(u) <= w(u, v) + h(v)) so A* can settle every node only once.
+    interface Heuristic {
+        double estimate(int node, int target);
+
+        // Always 0: A* degenerates to plain Dijkstra
+        static Heuristic zero() { return (node, target) -> 0.0; }
+
+        static Heuristic euclidean(GraphView graph) { return new EuclideanHeuristic(graph); }
+    }
+
+    // --- Inner Class: Euclidean Heuristic ---
+    // Straight-line distance between the node coordinates, scaled by the smallest
+    // weight-per-unit-length of any edge so it never overestimates the real cost.
+    static final class EuclideanHeuristic implements Heuristic {
+        private final GraphView graph;
+        private final double scale;
+
+        EuclideanHeuristic(GraphView graph) {
+            this.graph = graph;
+            double minCostPerUnit = Double.POSITIVE_INFINITY;
+            for (int u = 0; u < graph.nodeCount(); u++) {
+                for (int e = graph.firstEdge(u); e < graph.endEdge(u); e++) {
+                    double length = length(u, graph.target(e));
+                    if (length > 0) minCostPerUnit = Math.min(minCostPerUnit, graph.weight(e) / length);
+                }
+            }
+            // No edge with a length (or all weights infinite) gives no usable bound: fall back to 0.
+            // The tiny shave keeps rounding in length() from making the estimate inconsistent.
+            this.scale = Double.isFinite(minCostPerUnit) ? minCostPerUnit * (1 - 1e-9) : 0.0;
+        }
+
+        public double scale() { return scale; }
+
+        @Override
+        public double estimate(int node, int target) {
+            return scale * length(node, target);
+        }
+
+        private double length(int a, int b) {
+            double dx = graph.x(a) - graph.x(b), dy = graph.y(a) - graph.y(b);
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+    }
+
+    // --- Inner Class: A* Search ---
+    // Point-to-point search over a CSR snapshot guided by a Heuristic. With a
+    // consistent heuristic the result equals CsrDijkstra's, but far fewer nodes are
+    // settled when the heuristic points towards the target.
+    static final class AStar {
+        private static final RouteMetrics.Search METRICS = RouteMetrics.search("astar");
+
+        public static DijkstraResult findShortestPath(GraphView csr, Node startNode, Node endNode, Heuristic heuristic) {
+            int source = csr.indexOf(startNode);
+            int target = csr.indexOf(endNode);
+            if (source < 0 || target < 0) return new DijkstraResult(null, Double.POSITIVE_INFINITY);
+
+            try (QueryContext context = QueryContext.acquire(csr.nodeCount())) {
+                QueryContext.Side q = context.forward;
+                IndexedMinHeap heap = q.heap; // Keyed by dist + estimate
+                int settled = 0, relaxed = 0, pushes = 1;
+                q.label(source, 0.0, -1);
+                heap.insertOrDecrease(source, heuristic.estimate(source, target));
+                while (!heap.isEmpty()) {
+                    int u = heap.poll();
+                    settled++;
+                    if (u == target) break;
+                    double du = q.dist[u];
+                    for (int e = csr.firstEdge(u), end = csr.endEdge(u); e < end; e++, relaxed++) {
+                        int v = csr.target(e);
+                        double newDist = du + csr.weight(e);
+                        if (newDist < q.distance(v)) {
+                            q.label(v, newDist, u);
+                            heap.insertOrDecrease(v, newDist + heuristic.estimate(v, target));
+                            pushes++;
+                        }
+                    }
+                }
+                if (RouteMetrics.ENABLED) METRICS.record(settled, relaxed, pushes, settled, 0);
+
+                if (!q.isLabelled(target)) return new DijkstraResult(null, Double.POSITIVE_INFINITY, settled);
+                return new DijkstraResult(csr.buildPath(q.pred, target), q.dist[target], settled);
+            }
+        }
+    }
+
+    // --- Inner Class: Travel Time Profiles ---
+    // Shared table of piecewise-linear travel-time profiles over a repeating period (a day
+    // of 1440 minutes by default). A profile is a list of (time, factor) breakpoints; an
+    // edge entered at time t takes weight * factor(t mod period), interpolated linearly and
+    // wrapping from the last breakpoint round to the first. Edges only store the int id of
+    // their profile (see TimeDependentGraph), so a few dozen traffic patterns serve any
+    // number of edges. Profile FREE_FLOW (factor 1 all day) always exists.
+    static final class TravelTimeProfiles {
+        static final int FREE_FLOW = 0;
+        static final int ARTERIAL = 1, DOWNTOWN = 2; // Only in commuterDay()
+        static final double DAY = 24 * 60;
+
+        private final double period;
+        private final DoubleList times = new DoubleList(), factors = new DoubleList();
+        private final IntList starts = new IntList(); // Profile p owns breakpoints [starts[p], starts[p + 1])
+        private final DoubleList steepestDrop = new DoubleList(); // Largest factor decrease per time unit
+        private double minFactor = 1.0;
+
+        TravelTimeProfiles() { this(DAY); }
+
+        TravelTimeProfiles(double period) {
+            if (!(period > 0 && period < Double.POSITIVE_INFINITY)) throw new IllegalArgumentException("Invalid period " + period);
+            this.period = period;
+            starts.add(0);
+            add(new double[]{0.0}, new double[]{1.0});
+        }
+
+        // Free flow plus two commuter patterns on a 24 h clock: ARTERIAL roads slow to about
+        // 2.2x at the 8:00 peak and 2x around 17:30; DOWNTOWN streets are busier all day
+        static TravelTimeProfiles commuterDay() {
+            TravelTimeProfiles profiles = new TravelTimeProfiles();
+            profiles.add(new double[]{0, 390, 480, 600, 990, 1050, 1170},
+                         new double[]{1.0, 1.0, 2.2, 1.2, 1.3, 2.0, 1.0});
+            profiles.add(new double[]{0, 360, 480, 600, 720, 1020, 1200},
+                         new double[]{1.0, 1.1, 1.6, 1.4, 1.5, 1.7, 1.2});
+            return profiles;
+        }
+
+        // times must be strictly increasing within [0, period) and factors positive; returns the new profile's id
+        int add(double[] breakpointTimes, double[] breakpointFactors) {
+            int count = breakpointTimes.length;
+            if (count == 0 || count != breakpointFactors.length) throw new IllegalArgumentException("Need one factor per breakpoint");
+            for (int i = 0; i < count; i++) {
+                double t = breakpointTimes[i], f = breakpointFactors[i];
+                if (!(t >= 0 && t < period) || (i > 0 && t <= breakpointTimes[i - 1])) {
+                    throw new IllegalArgumentException("Breakpoint times must increase within [0, " + period + "): " + t);
+                }
+                if (!(f > 0 && f < Double.POSITIVE_INFINITY)) throw new IllegalArgumentException("Invalid factor " + f);
+            }
+            double drop = 0.0;
+            for (int i = 0; i < count; i++) {
+                int next = (i + 1) % count;
+                double span = (next > i) ? breakpointTimes[next] - breakpointTimes[i] : breakpointTimes[0] + period - breakpointTimes[i];
+                drop = Math.max(drop, (breakpointFactors[i] - breakpointFactors[next]) / span);
+                times.add(breakpointTimes[i]);
+                factors.add(breakpointFactors[i]);
+                minFactor = Math.min(minFactor, breakpointFactors[i]);
+            }
+            starts.add(times.size());
+            steepestDrop.add(drop);
+            return starts.size() - 2;
+        }
+
+        int count() { return starts.size() - 1; }
+        double period() { return period; }
+        double minFactor() { return minFactor; } // Over all profiles, for lower bounds
+        double steepestDrop(int profile) { return steepestDrop.get(profile); }
+
+        double factor(int profile, double time) {
+            int first = starts.get(profile), last = starts.get(profile + 1) - 1;
+            if (first == last) return factors.get(first);
+            double t = time % period;
+            if (t < 0) t += period;
+            double t0, t1, f0, f1;
+            if (t < times.get(first) || t >= times.get(last)) { // Wraps from the last breakpoint to the first
+                t0 = times.get(last);
+                t1 = times.get(first) + period;
+                if (t < t0) t += period;
+                f0 = factors.get(last);
+                f1 = factors.get(first);
+            } else {
+                int lo = first, hi = last; // times[lo] <= t < times[hi]
+                while (hi - lo > 1) {
+                    int mid = (lo + hi) >>> 1;
+                    if (times.get(mid) <= t) lo = mid; else hi = mid;
+                }
+                t0 = times.get(lo);
+                t1 = times.get(hi);
+                f0 = factors.get(lo);
+                f1 = factors.get(hi);
+            }
+            return f0 + (f1 - f0) * (t - t0) / (t1 - t0);
+        }
+    }
+
+    // --- Inner Class: Time-Dependent Graph ---
+    // A GraphView plus one profile id per edge (indexed by the view's edge ids, FREE_FLOW
+    // by default). An edge's profile may only be set if leaving later can never mean
+    // arriving earlier (FIFO): weight * steepestDrop <= 1. Profiles are set up front;
+    // queries only read.
+    static final class TimeDependentGraph {
+        private final GraphView graph;
+        private final TravelTimeProfiles profiles;
+        private final int[] profileOf;
+
+        TimeDependentGraph(GraphView graph, TravelTimeProfiles profiles) {
+            this.graph = graph;
+            this.profiles = profiles;
+            this.profileOf = new int[graph.edgeCount()];
+        }
+
+        void setProfile(int edge, int profile) {
+            if (profile < 0 || profile >= profiles.count()) throw new IllegalArgumentException("Unknown profile " + profile);
+            double weight = graph.weight(edge);
+            if (Double.isFinite(weight) && weight * profiles.steepestDrop(profile) > 1) {
+                throw new IllegalArgumentException("Profile " + profile + " drops too fast for edge " + edge
+                        + " of weight " + weight + ": leaving later would arrive earlier");
+            }
+            profileOf[edge] = profile;
+        }
+
+        int profileOf(int edge) { return profileOf[edge]; }
+        GraphView getGraph() { return graph; }
+        TravelTimeProfiles getProfiles() { return profiles; }
+
+        double travelTime(int edge, double departure) {
+            int profile = profileOf[edge];
+            double weight = graph.weight(edge);
+            return (profile == TravelTimeProfiles.FREE_FLOW) ? weight : weight * profiles.factor(profile, departure);
+        }
+
+        // The static Euclidean bound scaled by the smallest factor of any profile, so it stays
+        // a consistent lower bound at every departure time
+        Heuristic euclideanLowerBound() {
+            EuclideanHeuristic euclidean = new EuclideanHeuristic(graph);
+            double minFactor = profiles.minFactor();
+            return (node, target) -> minFactor * euclidean.estimate(node, target);
+        }
+    }
+
+    // --- Interface: Timed Routing Engine ---
+    // A point-to-point search whose cost depends on when the trip starts. The result's
+    // distance is the travel time.
+    interface TimedRoutingEngine {
+        DijkstraResult findShortestPath(Node startNode, Node endNode, double departure);
+    }
+
+    // --- Inner Class: Time-Dependent Search ---
+    // Earliest-arrival Dijkstra / A* over a TimeDependentGraph. Labels are arrival times:
+    // an edge is priced at the time the search reaches its tail. With FIFO edges and a
+    // consistent lower bound every node is still settled once, so a query does the same
+    // work as the static search plus a profile lookup per relaxed edge.
+    // Search state comes from a pooled QueryContext, so a query allocates only its path.
+    static final class TimeDependentSearch {
+        private static final RouteMetrics.Search METRICS = RouteMetrics.search("time-dependent");
+
+        static TimedRoutingEngine engine(TimeDependentGraph graph, Heuristic heuristic) {
+            return (start, end, departure) -> findEarliestArrival(graph, start, end, departure, heuristic);
+        }
+
+        public static DijkstraResult findEarliestArrival(TimeDependentGraph graph, Node startNode, Node endNode, double departure) {
+            return findEarliestArrival(graph, startNode, endNode, departure, Heuristic.zero());
+        }
+
+        public static DijkstraResult findEarliestArrival(TimeDependentGraph tdGraph, Node startNode, Node endNode,
+                                                         double departure, Heuristic heuristic) {
+            GraphView csr = tdGraph.getGraph();
+            int source = csr.indexOf(startNode);
+            int target = csr.indexOf(endNode);
+            if (source < 0 || target < 0) return new DijkstraResult(null, Double.POSITIVE_INFINITY);
+
+            try (QueryContext context = QueryContext.acquire(csr.nodeCount())) {
+                QueryContext.Side q = context.forward; // dist holds arrival times
+                IndexedMinHeap heap = q.heap; // Keyed by arrival + estimate
+                int settled = 0, relaxed = 0, pushes = 1;
+                q.label(source, departure, -1);
+                heap.insertOrDecrease(source, departure + heuristic.estimate(source, target));
+                while (!heap.isEmpty()) {
+                    int u = heap.poll();
+                    settled++;
+                    if (u == target) break;
+                    double au = q.dist[u];
+                    for (int e = csr.firstEdge(u), end = csr.endEdge(u); e < end; e++, relaxed++) {
+                        int v = csr.target(e);
+                        double newArrival = au + tdGraph.travelTime(e, au);
+                        if (newArrival < q.distance(v)) {
+                            q.label(v, newArrival, u);
+                            heap.insertOrDecrease(v, newArrival + heuristic.estimate(v, target));
+                            pushes++;
+                        }
+                    }
+                }
+                if (RouteMetrics.ENABLED) METRICS.record(settled, relaxed, pushes, settled, 0);
+
+                if (!q.isLabelled(target)) return new DijkstraResult(null, Double.POSITIVE_INFINITY, settled);
+                return new DijkstraResult(csr.buildPath(q.pred, target), q.dist[target] - departure, settled);
+            }
+        }
+    }
+
     // --- Main Method ---
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
@@ -679,5 +6810,6 @@ public class FiretruckSimulator extends JFrame {
             }
             new FiretruckSimulator().setVisible(true);
         });
+        RouteMetrics.registerMBean();
     }
 }
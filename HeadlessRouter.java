@@ -0,0 +1,344 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Headless batch router for dispatch servers. Reads route requests from a file or stdin,
+// routes them on a bounded worker pool and streams one result line per request as soon as
+// it is done (so results may come out of input order). Only the routing core nested in
+// FiretruckSimulator is used, never the Swing frame, so no AWT class gets loaded.
+//
+// Request line: whitespace-separated node ids "start [stop ...] end". A waypoint may also be
+// a reported location "@x,y", which is snapped to the nearest node. Blank lines and lines
+// starting with '#' are skipped.
+// Result line (tab-separated): request number (1-based, counting request lines only),
+// OK | UNREACHABLE | ERROR, total distance, path as "A>B>C", and the search time of each
+// segment in microseconds (comma-separated). UNREACHABLE lines give the first segment that
+// cannot be driven instead of the path; ERROR lines carry the message instead.
+//
+// Usage: java HeadlessRouter [options] [requests.txt | -]
+//   --graph sample | road.gr [road.co] | road.fgr | nodes.csv edges.csv   (default: sample)
+//   --engine dijkstra | astar | bidirectional | ch | partitioned          (default: astar)
+//   --cell-size N   nodes per cell for partitioned (default: 4096)
+//   --shards host:port,...   CellServer processes that own the cells (same --graph and
+//                 --cell-size); without it partitioned keeps every cell in this process
+//   --threads N   worker threads (default: available processors)
+//   --queue N     requests read ahead of the workers; reading blocks beyond it (default: 4 x threads)
+//   --out file    result file (default: stdout); the summary always goes to stderr
+//   --metrics     also print the search metrics (FiretruckSimulator.RouteMetrics) after the summary
+public class HeadlessRouter {
+
+    private static final String END_OF_RESULTS = "";
+    static final int DEFAULT_CELL_SIZE = 4096;
+
+    private final FiretruckSimulator.GraphView graph;
+    private final FiretruckSimulator.RoutingEngine engine;
+    private final int threads, queueSize;
+    private volatile FiretruckSimulator.SpatialIndex spatialIndex; // Built on the first "@x,y" waypoint
+
+    // Counters and latencies for the summary; fixed-size histograms, however many requests run
+    private final AtomicLong ok = new AtomicLong(), unreachable = new AtomicLong(), errors = new AtomicLong();
+    private final FiretruckSimulator.RouteMetrics.Histogram routeLatency = new FiretruckSimulator.RouteMetrics.Histogram();
+    private final FiretruckSimulator.RouteMetrics.Histogram endToEndLatency = new FiretruckSimulator.RouteMetrics.Histogram();
+
+    HeadlessRouter(FiretruckSimulator.GraphView graph, FiretruckSimulator.RoutingEngine engine, int threads, int queueSize) {
+        this.graph = graph;
+        this.engine = engine;
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> graphArgs = Arrays.asList("sample");
+        String engineName = "astar", input = "-", output = null;
+        int threads = Runtime.getRuntime().availableProcessors(), queueSize = -1, cellSize = DEFAULT_CELL_SIZE;
+        List<String> shards = new ArrayList<>();
+        boolean printMetrics = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--graph":
+                    graphArgs = new ArrayList<>();
+                    graphArgs.add(args[++i]);
+                    // A second file belongs to the graph when it is the .co or edge file of the first
+                    if (i + 1 < args.length && (args[i + 1].endsWith(".co") || (args[i].endsWith(".csv") && args[i + 1].endsWith(".csv")))) {
+                        graphArgs.add(args[++i]);
+                    }
+                    break;
+                case "--engine": engineName = args[++i]; break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--queue": queueSize = Integer.parseInt(args[++i]); break;
+                case "--cell-size": cellSize = Integer.parseInt(args[++i]); break;
+                case "--shards": shards = Arrays.asList(args[++i].split(",")); break;
+                case "--out": output = args[++i]; break;
+                case "--metrics": printMetrics = true; break;
+                default:
+                    if (args[i].startsWith("--")) usage("Unknown option " + args[i]);
+                    input = args[i];
+            }
+        }
+        if (threads < 1) usage("--threads must be at least 1");
+        if (cellSize < 1) usage("--cell-size must be at least 1");
+        if (!shards.isEmpty() && !engineName.equals("partitioned")) usage("--shards needs --engine partitioned");
+
+        long loadStart = System.nanoTime();
+        FiretruckSimulator.GraphView graph = loadGraph(graphArgs);
+        FiretruckSimulator.RoutingEngine engine = engineName.equals("partitioned")
+                ? createPartitioned(graph, cellSize, shards)
+                : createEngine(engineName, graph);
+        System.err.printf("Graph: %,d nodes, %,d edges, engine %s, ready in %.0f ms%n",
+                graph.nodeCount(), graph.edgeCount(), engineName, (System.nanoTime() - loadStart) / 1e6);
+
+        FiretruckSimulator.RouteMetrics.registerMBean();
+        HeadlessRouter router = new HeadlessRouter(graph, engine, threads, (queueSize < 0) ? 4 * threads : queueSize);
+        try (BufferedReader in = input.equals("-")
+                     ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                     : Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8);
+             Writer out = (output == null)
+                     ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                     : Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+            router.run(in, out);
+        }
+        if (printMetrics) System.err.print(FiretruckSimulator.RouteMetrics.dump());
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: java HeadlessRouter [--graph sample|road.gr [road.co]|road.fgr|nodes.csv edges.csv]"
+                + " [--engine dijkstra|astar|bidirectional|ch|partitioned] [--cell-size N] [--shards host:port,...]"
+                + " [--threads N] [--queue N] [--out file] [--metrics] [requests.txt|-]");
+        System.exit(2);
+    }
+
+    static FiretruckSimulator.GraphView loadGraph(List<String> files) throws IOException {
+        String first = files.get(0);
+        if (first.equals("sample")) return FiretruckSimulator.CsrGraph.of(FiretruckSimulator.SampleGraph.create());
+        if (first.endsWith(".fgr")) return FiretruckSimulator.MappedGraph.open(Paths.get(first));
+        FiretruckSimulator.GraphLoader.Result loaded = first.endsWith(".gr")
+                ? FiretruckSimulator.GraphLoader.loadDimacs(Paths.get(first), (files.size() > 1) ? Paths.get(files.get(1)) : null)
+                : FiretruckSimulator.GraphLoader.loadCsv(Paths.get(first), Paths.get(files.get(1)), true);
+        System.err.println("Loaded " + loaded);
+        return loaded.getGraph();
+    }
+
+    // bidirectional and ch need the heap snapshot (they build a transposed or contracted copy)
+    static FiretruckSimulator.RoutingEngine createEngine(String name, FiretruckSimulator.GraphView graph) {
+        switch (name) {
+            case "dijkstra":
+                return (start, end) -> FiretruckSimulator.CsrDijkstra.findShortestPath(graph, start, end);
+            case "astar": {
+                FiretruckSimulator.Heuristic heuristic = FiretruckSimulator.Heuristic.euclidean(graph);
+                return (start, end) -> FiretruckSimulator.AStar.findShortestPath(graph, start, end, heuristic);
+            }
+            case "bidirectional":
+                return new FiretruckSimulator.BidirectionalDijkstra(heapGraph(graph, name));
+            case "ch":
+                return FiretruckSimulator.ContractionHierarchy.build(heapGraph(graph, name));
+            case "partitioned":
+                return createPartitioned(graph, DEFAULT_CELL_SIZE, List.of());
+            default:
+                throw new IllegalArgumentException("Unknown engine '" + name + "' (dijkstra, astar, bidirectional, ch or partitioned)");
+        }
+    }
+
+    // Coordinator over CellServer shards ("host:port"), or over one in-process service for every cell
+    static FiretruckSimulator.PartitionedRouter createPartitioned(FiretruckSimulator.GraphView graph, int cellSize, List<String> shards) {
+        FiretruckSimulator.GraphPartition partition = FiretruckSimulator.GraphPartition.bisect(graph, cellSize);
+        List<FiretruckSimulator.CellService> services = new ArrayList<>();
+        if (shards.isEmpty()) {
+            services.add(new FiretruckSimulator.LocalCellService(graph, partition, CellServer.shardCells(partition.cellCount(), 1, 0)));
+        } else {
+            for (String shard : shards) {
+                try {
+                    services.add(CellServer.Client.connect(shard.trim(), partition));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot reach shard " + shard + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        FiretruckSimulator.PartitionedRouter router = new FiretruckSimulator.PartitionedRouter(graph, partition, services);
+        System.err.printf("Partition: %s; overlay %,d nodes, %,d edges over %d service(s)%n",
+                partition, router.overlayNodeCount(), router.overlayEdgeCount(), services.size());
+        return router;
+    }
+
+    private static FiretruckSimulator.CsrGraph heapGraph(FiretruckSimulator.GraphView graph, String engine) {
+        if (!(graph instanceof FiretruckSimulator.CsrGraph)) {
+            throw new IllegalArgumentException("Engine '" + engine + "' needs a text graph; mapped snapshots support dijkstra and astar");
+        }
+        return (FiretruckSimulator.CsrGraph) graph;
+    }
+
+    // Nearest node to a "@x,y" waypoint
+    private int snap(String location) {
+        int comma = location.indexOf(',');
+        if (comma < 0) throw new IllegalArgumentException("location '" + location + "' is not @x,y");
+        double x, y;
+        try {
+            x = Double.parseDouble(location.substring(1, comma));
+            y = Double.parseDouble(location.substring(comma + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("location '" + location + "' is not @x,y");
+        }
+        FiretruckSimulator.SpatialIndex index = spatialIndex;
+        if (index == null) {
+            synchronized (this) {
+                if (spatialIndex == null) spatialIndex = FiretruckSimulator.SpatialIndex.build(graph);
+                index = spatialIndex;
+            }
+        }
+        return index.nearest(x, y);
+    }
+
+    // Reads requests until end of input. At most threads + queueSize requests are in flight
+    // (read but not yet written); beyond that the reader blocks, so a fast producer cannot
+    // pile up unbounded work or results.
+    void run(BufferedReader in, Writer out) throws IOException, InterruptedException {
+        Semaphore inFlight = new Semaphore(threads + queueSize);
+        BlockingQueue<String> results = new LinkedBlockingQueue<>();
+        ResultWriter writer = new ResultWriter(results, out, inFlight);
+        writer.start();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "route-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.nanoTime(), requests = 0;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                long number = ++requests, readAt;
+                String request = line;
+                inFlight.acquire();
+                readAt = System.nanoTime();
+                workers.execute(() -> results.add(route(number, request, readAt)));
+            }
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            results.add(END_OF_RESULTS);
+            writer.join();
+        }
+        if (writer.failure != null) throw writer.failure;
+        printSummary(requests, System.nanoTime() - start);
+    }
+
+    // Never throws: every request produces exactly one result line
+    private String route(long number, String request, long readAt) {
+        try {
+            String[] ids = request.split("\\s+");
+            if (ids.length < 2) throw new IllegalArgumentException("need at least a start and an end node");
+            List<FiretruckSimulator.Node> waypoints = new ArrayList<>(ids.length);
+            for (String id : ids) {
+                int index = id.startsWith("@") ? snap(id) : graph.indexOf(id);
+                if (index < 0) throw new IllegalArgumentException("unknown node '" + id + "'");
+                waypoints.add(graph.node(index));
+            }
+
+            // Segments run one after another on this worker; the pool parallelises across requests
+            long[] segmentNanos = new long[ids.length - 1];
+            int[] segment = {0};
+            long routeStart = System.nanoTime();
+            FiretruckSimulator.MultiStopResult result = new FiretruckSimulator.MultiStopRouter((from, to) -> {
+                long segmentStart = System.nanoTime();
+                FiretruckSimulator.DijkstraResult segmentResult = engine.findShortestPath(from, to);
+                segmentNanos[segment[0]++] = System.nanoTime() - segmentStart;
+                return segmentResult;
+            }).route(waypoints);
+            long finished = System.nanoTime();
+            routeLatency.record(finished - routeStart);
+            endToEndLatency.record(finished - readAt);
+
+            StringBuilder line = new StringBuilder().append(number).append('\t');
+            if (!result.isPossible()) {
+                unreachable.incrementAndGet();
+                line.append("UNREACHABLE\tInfinity\t").append(result.getFailedFrom().getId()).append('>').append(result.getFailedTo().getId());
+            } else {
+                ok.incrementAndGet();
+                line.append("OK\t").append(result.getDistance()).append('\t');
+                List<FiretruckSimulator.Node> path = result.getPath();
+                for (int i = 0; i < path.size(); i++) line.append(i > 0 ? ">" : "").append(path.get(i).getId());
+            }
+            line.append('\t');
+            for (int i = 0; i < segment[0]; i++) line.append(i > 0 ? "," : "").append(segmentNanos[i] / 1000);
+            return line.toString();
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            return number + "\tERROR\t" + e.getMessage();
+        }
+    }
+
+    private void printSummary(long requests, long elapsedNanos) {
+        System.err.printf("Routed %,d requests (%,d ok, %,d unreachable, %,d errors) in %.0f ms: %,.0f requests/s%n",
+                requests, ok.get(), unreachable.get(), errors.get(), elapsedNanos / 1e6, requests / Math.max(elapsedNanos / 1e9, 1e-9));
+        System.err.println("Route time (us):  " + latencySummary(routeLatency));
+        System.err.println("End to end (us):  " + latencySummary(endToEndLatency));
+    }
+
+    // Percentiles are bucket upper bounds, at most 1/16 above the exact value
+    private static String latencySummary(FiretruckSimulator.RouteMetrics.Histogram nanos) {
+        if (nanos.count() == 0) return "no samples";
+        return String.format("p50 %,d  p90 %,d  p99 %,d  p99.9 %,d  max %,d", nanos.percentile(50) / 1000,
+                nanos.percentile(90) / 1000, nanos.percentile(99) / 1000, nanos.percentile(99.9) / 1000, nanos.max() / 1000);
+    }
+
+    // --- Result writer ---
+    // Single thread that owns the output. It flushes whenever it has caught up with the
+    // workers, so results stream out promptly without a flush per line under load.
+    private static final class ResultWriter extends Thread {
+        private final BlockingQueue<String> results;
+        private final Writer out;
+        private final Semaphore inFlight;
+        volatile IOException failure;
+
+        ResultWriter(BlockingQueue<String> results, Writer out, Semaphore inFlight) {
+            super("route-results");
+            this.results = results;
+            this.out = out;
+            this.inFlight = inFlight;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    String result = results.take();
+                    if (result.equals(END_OF_RESULTS)) break; // Result lines are never empty
+                    if (failure == null) {
+                        try {
+                            out.write(result);
+                            out.write('\n');
+                            if (results.isEmpty()) out.flush();
+                        } catch (IOException e) {
+                            failure = e; // Keep draining so the reader never blocks forever
+                        }
+                    }
+                    inFlight.release();
+                }
+                if (failure == null) out.flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,324 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Long-lived local routing service on the JDK's built-in HTTP server, bound to the loopback
+// interface only. The graph is loaded once and shared read-only. Every request runs on its
+// own virtual thread (JDK 21+; a cached thread pool otherwise), and route segments that
+// share a source are micro-batched into one search by BatchingRoutingEngine.
+//
+//   GET /route?start=FS1&stops=Hosp,Mall&end=Airp    stops are optional and visited in order
+//       -> the same text the simulator prints; add &format=json for
+//          {"possible":true,"distance":92.0,"path":["FS1",...]}
+//   GET /dispatch?incident=J4&stations=FS1,FS2[&delays=0,3][&k=2]    stations that reach the
+//       incident first, one search for all of them; delays are readiness times per station
+//       -> one line per station, earliest arrival first; &format=json for
+//          {"candidates":[{"station":"FS1","arrival":44.0,"delay":0.0,"path":[...]},...]}
+//   GET /alternatives?start=FS1&end=Fac[&k=3][&method=yen|penalty][&maxOverlap=0.6]    the route
+//       plus up to k - 1 detours sharing at most maxOverlap of its length (AlternativeRoutes)
+//       -> one line per route, primary first; &format=json for
+//          {"routes":[{"distance":83.0,"overlap":1.0,"path":["FS1",...]},...]}
+//   GET /nearest?x=412&y=230[&k=3]    nodes closest to a reported location, closest first
+//       -> one "id<TAB>x<TAB>y<TAB>distance" line per node
+//   GET /stats    query, search and request counters
+//   GET /metrics  search metrics (FiretruckSimulator.RouteMetrics) as text; also over JMX
+//
+// Usage: java RouteServer [--port 8080] [--graph sample | road.gr [road.co] | road.fgr | nodes.csv edges.csv]
+//                         [--batch-window-ms 2]
+public class RouteServer {
+
+    private final FiretruckSimulator.GraphView graph;
+    private final FiretruckSimulator.BatchingRoutingEngine engine;
+    private final FiretruckSimulator.SpatialIndex spatialIndex;
+    private final FiretruckSimulator.CsrGraph reverse; // For backward dispatch searches; null for mapped graphs
+    private final FiretruckSimulator.AlternativeRoutes alternatives; // Shares reverse; null for mapped graphs
+    private final ExecutorService executor;
+    private final HttpServer server;
+
+    RouteServer(FiretruckSimulator.GraphView graph, long batchWindowNanos, int port) throws IOException {
+        this.graph = graph;
+        this.engine = new FiretruckSimulator.BatchingRoutingEngine(graph, batchWindowNanos);
+        this.spatialIndex = FiretruckSimulator.SpatialIndex.build(graph);
+        this.reverse = (graph instanceof FiretruckSimulator.CsrGraph) ? ((FiretruckSimulator.CsrGraph) graph).transpose() : null;
+        this.alternatives = (reverse != null) ? new FiretruckSimulator.AlternativeRoutes(graph, reverse) : null;
+        this.executor = requestExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/route", this::handleRoute);
+        server.createContext("/dispatch", this::handleDispatch);
+        server.createContext("/alternatives", this::handleAlternatives);
+        server.createContext("/nearest", this::handleNearest);
+        server.createContext("/stats", this::handleStats);
+        server.createContext("/metrics", exchange -> send(exchange, 200, "text/plain", FiretruckSimulator.RouteMetrics.dump()));
+        server.setExecutor(executor);
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> graphArgs = Arrays.asList("sample");
+        int port = 8080;
+        double windowMillis = 2;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--batch-window-ms": windowMillis = Double.parseDouble(args[++i]); break;
+                case "--graph":
+                    graphArgs = new ArrayList<>();
+                    graphArgs.add(args[++i]);
+                    if (i + 1 < args.length && (args[i + 1].endsWith(".co") || (args[i].endsWith(".csv") && args[i + 1].endsWith(".csv")))) {
+                        graphArgs.add(args[++i]);
+                    }
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.err.println("Usage: java RouteServer [--port 8080] [--graph sample|road.gr [road.co]|road.fgr|nodes.csv edges.csv] [--batch-window-ms 2]");
+                    System.exit(2);
+            }
+        }
+
+        RouteServer routeServer = new RouteServer(HeadlessRouter.loadGraph(graphArgs), (long) (windowMillis * 1e6), port);
+        Runtime.getRuntime().addShutdownHook(new Thread(routeServer::stop));
+        FiretruckSimulator.RouteMetrics.registerMBean();
+        routeServer.start();
+        System.err.println("Routing service listening on http://localhost:" + routeServer.port() + "/route");
+    }
+
+    void start() { server.start(); }
+
+    int port() { return server.getAddress().getPort(); }
+
+    void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // One virtual thread per request where available; looked up reflectively so the service
+    // still compiles and runs on JDK 11-20
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handleRoute(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, 405, "text/plain", "Only GET is supported\n");
+                return;
+            }
+            Map<String, String> params = queryParameters(exchange.getRequestURI().getRawQuery());
+            List<FiretruckSimulator.Node> waypoints = new ArrayList<>();
+            waypoints.add(node(params.get("start"), "start"));
+            String stops = params.getOrDefault("stops", "");
+            for (String stop : stops.split(",")) {
+                if (!stop.trim().isEmpty()) waypoints.add(node(stop.trim(), "stop"));
+            }
+            waypoints.add(node(params.get("end"), "end"));
+
+            // Segments run concurrently so each waits out its batch window in parallel
+            FiretruckSimulator.MultiStopResult route = new FiretruckSimulator.MultiStopRouter(engine, executor).route(waypoints);
+            if ("json".equals(params.get("format"))) {
+                send(exchange, 200, "application/json", json(route));
+            } else {
+                send(exchange, 200, "text/plain", route.describe(waypoints) + "\n");
+            }
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, "text/plain", e.getMessage() + "\n");
+        } catch (RuntimeException e) {
+            send(exchange, 500, "text/plain", "Routing failed: " + e + "\n");
+        }
+    }
+
+    private void handleDispatch(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> params = queryParameters(exchange.getRequestURI().getRawQuery());
+            FiretruckSimulator.Node incident = node(params.get("incident"), "incident");
+            List<FiretruckSimulator.Node> stations = new ArrayList<>();
+            for (String station : params.getOrDefault("stations", "").split(",")) {
+                if (!station.trim().isEmpty()) stations.add(node(station.trim(), "station"));
+            }
+            if (stations.isEmpty()) throw new IllegalArgumentException("Missing 'stations' parameter");
+            double[] delays = null;
+            if (params.containsKey("delays")) {
+                String[] parts = params.get("delays").split(",");
+                if (parts.length != stations.size()) throw new IllegalArgumentException("'delays' needs one value per station");
+                delays = new double[parts.length];
+                for (int i = 0; i < parts.length; i++) {
+                    try {
+                        delays[i] = Double.parseDouble(parts[i].trim());
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("'delays' has a value that is not a number: " + parts[i]);
+                    }
+                }
+            }
+            int k = params.containsKey("k") ? (int) number(params, "k") : 1;
+            if (k < 1 || k > stations.size()) throw new IllegalArgumentException("'k' must be between 1 and the number of stations");
+
+            FiretruckSimulator.StationDispatch.Result result = (reverse != null)
+                    ? FiretruckSimulator.StationDispatch.fromIncident(reverse, stations, delays, incident, k)
+                    : FiretruckSimulator.StationDispatch.fromStations(graph, stations, delays, incident, k);
+            if ("json".equals(params.get("format"))) {
+                StringBuilder out = new StringBuilder("{\"candidates\":[");
+                for (FiretruckSimulator.StationDispatch.Candidate c : result.getCandidates()) {
+                    if (out.charAt(out.length() - 1) != '[') out.append(',');
+                    quote(out.append("{\"station\":"), c.getStation().getId());
+                    out.append(",\"arrival\":").append(c.getArrival()).append(",\"delay\":").append(c.getDelay()).append(",\"path\":[");
+                    for (int i = 0; i < c.getPath().size(); i++) quote(out.append(i > 0 ? "," : ""), c.getPath().get(i).getId());
+                    out.append("]}");
+                }
+                send(exchange, 200, "application/json", out.append("]}\n").toString());
+            } else {
+                send(exchange, 200, "text/plain", result.describe() + (result.hasWinner() ? "" : "\n"));
+            }
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, "text/plain", e.getMessage() + "\n");
+        } catch (RuntimeException e) {
+            send(exchange, 500, "text/plain", "Dispatch failed: " + e + "\n");
+        }
+    }
+
+    private void handleAlternatives(HttpExchange exchange) throws IOException {
+        if (alternatives == null) {
+            send(exchange, 501, "text/plain", "Alternative routes need an in-memory graph, not a memory-mapped one\n");
+            return;
+        }
+        try {
+            Map<String, String> params = queryParameters(exchange.getRequestURI().getRawQuery());
+            FiretruckSimulator.Node start = node(params.get("start"), "start");
+            FiretruckSimulator.Node end = node(params.get("end"), "end");
+            int k = params.containsKey("k") ? (int) number(params, "k") : 3;
+            if (k < 1 || k > 10) throw new IllegalArgumentException("'k' must be between 1 and 10");
+            double maxOverlap = params.containsKey("maxOverlap") ? number(params, "maxOverlap") : 0.6;
+            String method = params.getOrDefault("method", "yen");
+
+            FiretruckSimulator.AlternativeRoutes.Result result;
+            if (method.equals("yen")) result = alternatives.kShortest(start, end, k, maxOverlap);
+            else if (method.equals("penalty")) result = alternatives.penalized(start, end, k, maxOverlap);
+            else throw new IllegalArgumentException("'method' must be yen or penalty");
+            if ("json".equals(params.get("format"))) {
+                StringBuilder out = new StringBuilder("{\"routes\":[");
+                for (FiretruckSimulator.AlternativeRoutes.Route route : result.getRoutes()) {
+                    if (out.charAt(out.length() - 1) != '[') out.append(',');
+                    out.append("{\"distance\":").append(route.getDistance()).append(",\"overlap\":").append(route.getOverlap()).append(",\"path\":[");
+                    List<FiretruckSimulator.Node> path = route.getPath();
+                    for (int i = 0; i < path.size(); i++) quote(out.append(i > 0 ? "," : ""), path.get(i).getId());
+                    out.append("]}");
+                }
+                send(exchange, 200, "application/json", out.append("]}\n").toString());
+            } else {
+                send(exchange, 200, "text/plain", result.describe() + (result.hasPath() ? "" : "\n"));
+            }
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, "text/plain", e.getMessage() + "\n");
+        } catch (RuntimeException e) {
+            send(exchange, 500, "text/plain", "Alternative routing failed: " + e + "\n");
+        }
+    }
+
+    private void handleNearest(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> params = queryParameters(exchange.getRequestURI().getRawQuery());
+            double x = number(params, "x"), y = number(params, "y");
+            int k = params.containsKey("k") ? (int) number(params, "k") : 1;
+            if (k < 1 || k > 1000) throw new IllegalArgumentException("'k' must be between 1 and 1000");
+            StringBuilder out = new StringBuilder();
+            for (int index : spatialIndex.nearest(x, y, k)) {
+                int nodeX = graph.x(index), nodeY = graph.y(index);
+                out.append(graph.node(index).getId()).append('\t').append(nodeX).append('\t').append(nodeY)
+                        .append('\t').append(String.format("%.1f", Math.hypot(nodeX - x, nodeY - y))).append('\n');
+            }
+            send(exchange, 200, "text/plain", out.toString());
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, "text/plain", e.getMessage() + "\n");
+        } catch (RuntimeException e) {
+            send(exchange, 500, "text/plain", "Nearest-node lookup failed: " + e + "\n");
+        }
+    }
+
+    private static double number(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) throw new IllegalArgumentException("Missing '" + name + "' parameter");
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("'" + name + "' is not a number: " + value);
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        long queries = engine.queryCount(), searches = engine.searchCount();
+        send(exchange, 200, "text/plain", String.format("nodes %d%nedges %d%nsegment queries %d%nsearches %d%nqueries per search %.2f%n",
+                graph.nodeCount(), graph.edgeCount(), queries, searches, (searches == 0) ? 0.0 : (double) queries / searches));
+    }
+
+    private FiretruckSimulator.Node node(String id, String role) {
+        if (id == null || id.isEmpty()) throw new IllegalArgumentException("Missing '" + role + "' parameter");
+        int index = graph.indexOf(id);
+        if (index < 0) throw new IllegalArgumentException("Unknown " + role + " node '" + id + "'");
+        return graph.node(index);
+    }
+
+    private static Map<String, String> queryParameters(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) return params;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String json(FiretruckSimulator.MultiStopResult route) {
+        StringBuilder out = new StringBuilder("{\"possible\":").append(route.isPossible());
+        if (route.isPossible()) {
+            out.append(",\"distance\":").append(route.getDistance()).append(",\"path\":[");
+            List<FiretruckSimulator.Node> path = route.getPath();
+            for (int i = 0; i < path.size(); i++) quote(out.append(i > 0 ? "," : ""), path.get(i).getId());
+            out.append(']');
+        } else {
+            quote(out.append(",\"failedFrom\":"), route.getFailedFrom().getId());
+            quote(out.append(",\"failedTo\":"), route.getFailedTo().getId());
+        }
+        return out.append("}\n").toString();
+    }
+
+    private static StringBuilder quote(StringBuilder out, String value) {
+        out.append('"');
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') out.append('\\').append(c);
+            else if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+            else out.append(c);
+        }
+        return out.append('"');
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import firetruck.bench.Workload;
+
+// Default-package side of firetruck.bench.Workloads: builds the workload a benchmark names
+// from its @Param values. Every benchmark has "graph" and "nodes"; the rest are listed per
+// workload below. Graphs, stations and queries all come from one fixed seed.
+public final class BenchWorkloads {
+    private static final long SEED = 42;
+
+    private BenchWorkloads() { }
+
+    public static Workload create(String name, BenchmarkParams params) {
+        FiretruckSimulator.SyntheticGraphs.EdgeList edges =
+                FiretruckSimulator.SyntheticGraphs.ofType(params.getParam("graph"), Integer.parseInt(params.getParam("nodes")), SEED);
+        switch (name) {
+            case "single-pair": return singlePair(edges, params.getParam("engine"));
+            case "multi-stop": return multiStop(edges, params.getParam("engine"), params.getParam("segmentExecutor"), intParam(params, "waypoints"));
+            case "graph-build": return graphBuild(edges, params.getParam("build"));
+            case "spatial": return spatial(edges.toCsr(), params.getParam("lookup"));
+            case "dispatch": return dispatch(edges.toCsr(), intParam(params, "stations"), params.getParam("search"));
+            case "coverage":
+                return coverage(edges.toCsr(), intParam(params, "stations"), intParam(params, "threads"), Double.parseDouble(params.getParam("bound")));
+            case "alternatives": return alternatives(edges.toCsr(), params.getParam("method"), Double.parseDouble(params.getParam("maxOverlap")));
+            case "partitioned": return partitioned(edges.toCsr(), params.getParam("router"), intParam(params, "cellSize"));
+            case "contraction": {
+                FiretruckSimulator.CsrGraph csr = edges.toCsr();
+                return query -> FiretruckSimulator.ContractionHierarchy.build(csr).shortcutCount();
+            }
+            case "dynamic": return dynamic(edges.toGraph(), params.getParam("update"));
+            default: throw new IllegalArgumentException("Unknown workload '" + name + "'");
+        }
+    }
+
+    // --- Routing: one engine under test ("engine"), single-pair and multi-stop queries ---
+    private static Workload singlePair(FiretruckSimulator.SyntheticGraphs.EdgeList edges, String engineName) {
+        Engine engine = new Engine(edges, engineName);
+        Random random = new Random(SEED);
+        FiretruckSimulator.Node[] sources = engine.randomNodes(random), targets = engine.randomNodes(random);
+        return query -> engine.search.findShortestPath(sources[query], targets[query]).getDistance();
+    }
+
+    // "segmentExecutor" runs the segments of each route through "waypoints" stops
+    private static Workload multiStop(FiretruckSimulator.SyntheticGraphs.EdgeList edges, String engineName, String segmentExecutor, int waypoints) {
+        Engine engine = new Engine(edges, engineName);
+        FiretruckSimulator.MultiStopRouter router =
+                new FiretruckSimulator.MultiStopRouter(engine.search, FiretruckSimulator.SegmentExecutors.fromName(segmentExecutor));
+        Random random = new Random(SEED);
+        List<List<FiretruckSimulator.Node>> routes = new ArrayList<>(Workload.QUERIES);
+        for (int i = 0; i < Workload.QUERIES; i++) {
+            List<FiretruckSimulator.Node> route = new ArrayList<>(waypoints);
+            for (int k = 0; k < waypoints; k++) route.add(engine.node.apply(random.nextInt(engine.nodeCount)));
+            routes.add(route);
+        }
+        return query -> router.route(routes.get(query)).getDistance();
+    }
+
+    private static final class Engine {
+        final FiretruckSimulator.RoutingEngine search;
+        final IntFunction<FiretruckSimulator.Node> node; // Query nodes by index, as the engine expects them
+        final int nodeCount;
+
+        Engine(FiretruckSimulator.SyntheticGraphs.EdgeList edges, String name) {
+            FiretruckSimulator.CsrGraph csr = edges.toCsr();
+            nodeCount = csr.nodeCount();
+            if (name.equals("dijkstra-classic")) {
+                // The classic search walks Node adjacency maps, so queries must use the Graph's own Nodes
+                FiretruckSimulator.Graph graph = edges.toGraph();
+                node = index -> graph.getNode(Integer.toString(index));
+                search = (start, end) -> FiretruckSimulator.Dijkstra.findShortestPath(graph, start, end);
+                return;
+            }
+            node = csr::node;
+            switch (name) {
+                case "dijkstra":
+                    search = (start, end) -> FiretruckSimulator.CsrDijkstra.findShortestPath(csr, start, end);
+                    break;
+                case "astar": {
+                    FiretruckSimulator.Heuristic heuristic = FiretruckSimulator.Heuristic.euclidean(csr);
+                    search = (start, end) -> FiretruckSimulator.AStar.findShortestPath(csr, start, end, heuristic);
+                    break;
+                }
+                case "td-dijkstra":
+                case "td-astar": {
+                    // Departs in the morning peak so most edges are priced off their free-flow weight
+                    FiretruckSimulator.TimeDependentGraph traffic = withTraffic(csr);
+                    FiretruckSimulator.Heuristic heuristic = name.equals("td-astar")
+                            ? traffic.euclideanLowerBound() : FiretruckSimulator.Heuristic.zero();
+                    search = (start, end) -> FiretruckSimulator.TimeDependentSearch.findEarliestArrival(traffic, start, end, 480, heuristic);
+                    break;
+                }
+                case "bidirectional":
+                    search = new FiretruckSimulator.BidirectionalDijkstra(csr);
+                    break;
+                case "ch":
+                    search = FiretruckSimulator.ContractionHierarchy.build(csr);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown engine '" + name + "'");
+            }
+        }
+
+        FiretruckSimulator.Node[] randomNodes(Random random) {
+            FiretruckSimulator.Node[] nodes = new FiretruckSimulator.Node[Workload.QUERIES];
+            for (int i = 0; i < nodes.length; i++) nodes[i] = node.apply(random.nextInt(nodeCount));
+            return nodes;
+        }
+    }
+
+    // Every edge gets a random commuter profile, or stays free flow where the profile would break FIFO
+    private static FiretruckSimulator.TimeDependentGraph withTraffic(FiretruckSimulator.CsrGraph csr) {
+        FiretruckSimulator.TravelTimeProfiles profiles = FiretruckSimulator.TravelTimeProfiles.commuterDay();
+        FiretruckSimulator.TimeDependentGraph traffic = new FiretruckSimulator.TimeDependentGraph(csr, profiles);
+        Random random = new Random(SEED);
+        for (int e = 0; e < csr.edgeCount(); e++) {
+            int profile = random.nextInt(profiles.count());
+            if (csr.weight(e) * profiles.steepestDrop(profile) <= 1) traffic.setProfile(e, profile);
+        }
+        return traffic;
+    }
+
+    // --- Graph construction from one generated edge list ("build") ---
+    private static Workload graphBuild(FiretruckSimulator.SyntheticGraphs.EdgeList edges, String build) {
+        switch (build) {
+            case "addEdge":
+                return query -> edges.toGraph().getNodes().size();
+            case "csrSnapshot": {
+                FiretruckSimulator.Graph graph = edges.toGraph();
+                return query -> FiretruckSimulator.CsrGraph.of(graph).edgeCount();
+            }
+            case "csrFromEdges":
+                return query -> edges.toCsr().edgeCount();
+            default:
+                throw new IllegalArgumentException("Unknown build '" + build + "'");
+        }
+    }
+
+    // --- Spatial index "lookup" around random points inside the graph's bounds ---
+    private static Workload spatial(FiretruckSimulator.CsrGraph csr, String lookup) {
+        FiretruckSimulator.SpatialIndex index = FiretruckSimulator.SpatialIndex.build(csr);
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < csr.nodeCount(); i++) {
+            minX = Math.min(minX, csr.x(i));
+            minY = Math.min(minY, csr.y(i));
+            maxX = Math.max(maxX, csr.x(i));
+            maxY = Math.max(maxY, csr.y(i));
+        }
+        Random random = new Random(SEED);
+        double[] xs = new double[Workload.QUERIES], ys = new double[Workload.QUERIES];
+        for (int i = 0; i < Workload.QUERIES; i++) {
+            xs[i] = minX + random.nextDouble() * (maxX - minX);
+            ys[i] = minY + random.nextDouble() * (maxY - minY);
+        }
+        switch (lookup) {
+            case "nearest":
+                return query -> index.nearest(xs[query], ys[query]);
+            case "nearest8":
+                return query -> {
+                    int[] nearest = index.nearest(xs[query], ys[query], 8);
+                    return nearest[nearest.length - 1];
+                };
+            case "viewport": {
+                // A square that holds about 1000 nodes on average
+                double area = (double) (maxX - minX + 1) * (maxY - minY + 1);
+                int half = (int) Math.ceil(Math.sqrt(area * 1000 / csr.nodeCount()) / 2);
+                return query -> {
+                    int x = (int) xs[query], y = (int) ys[query];
+                    return index.countInRange(x - half, y - half, x + half, y + half);
+                };
+            }
+            default:
+                throw new IllegalArgumentException("Unknown lookup '" + lookup + "'");
+        }
+    }
+
+    // --- Nearest-station dispatch ("search"): random stations with readiness delays of up to a minute's travel ---
+    private static Workload dispatch(FiretruckSimulator.CsrGraph csr, int stationCount, String search) {
+        Random random = new Random(SEED);
+        List<FiretruckSimulator.Node> stations = new ArrayList<>(stationCount);
+        double[] delays = new double[stationCount];
+        for (int i = 0; i < stationCount; i++) {
+            stations.add(csr.node(random.nextInt(csr.nodeCount())));
+            delays[i] = random.nextInt(60);
+        }
+        FiretruckSimulator.Node[] incidents = randomNodes(csr, random);
+        switch (search) {
+            case "perStation":
+                return query -> {
+                    double best = Double.POSITIVE_INFINITY;
+                    for (int i = 0; i < stationCount; i++) {
+                        double travel = FiretruckSimulator.CsrDijkstra.findShortestPath(csr, stations.get(i), incidents[query]).getDistance();
+                        best = Math.min(best, delays[i] + travel);
+                    }
+                    return best;
+                };
+            case "multiSource":
+                return query -> last(FiretruckSimulator.StationDispatch.fromStations(csr, stations, delays, incidents[query], 1));
+            case "multiSourceTop3":
+                return query -> last(FiretruckSimulator.StationDispatch.fromStations(csr, stations, delays, incidents[query], 3));
+            case "reverseTop3": {
+                FiretruckSimulator.CsrGraph reverse = csr.transpose();
+                return query -> last(FiretruckSimulator.StationDispatch.fromIncident(reverse, stations, delays, incidents[query], 3));
+            }
+            default:
+                throw new IllegalArgumentException("Unknown search '" + search + "'");
+        }
+    }
+
+    // Arrival of the last of the k earliest stations
+    private static double last(FiretruckSimulator.StationDispatch.Result result) {
+        List<FiretruckSimulator.StationDispatch.Candidate> candidates = result.getCandidates();
+        return candidates.isEmpty() ? Double.POSITIVE_INFINITY : candidates.get(candidates.size() - 1).getArrival();
+    }
+
+    // --- Station coverage within "bound" on a pool of "threads" workers; stations are random nodes ---
+    private static Workload coverage(FiretruckSimulator.CsrGraph csr, int stationCount, int threads, double bound) {
+        Random random = new Random(SEED);
+        List<FiretruckSimulator.Node> stations = new ArrayList<>(stationCount);
+        for (int i = 0; i < stationCount; i++) stations.add(csr.node(random.nextInt(csr.nodeCount())));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        return new Workload() {
+            @Override
+            public double run(int query) {
+                FiretruckSimulator.Coverage coverage = FiretruckSimulator.Isochrones.compute(csr, stations, bound, pool);
+                return coverage.countByBand(new double[]{bound})[0];
+            }
+
+            @Override
+            public void tearDown() { pool.shutdown(); }
+        };
+    }
+
+    // --- Alternative routes ("method") between random pairs, with one plain Dijkstra as the baseline ---
+    private static Workload alternatives(FiretruckSimulator.CsrGraph csr, String method, double maxOverlap) {
+        FiretruckSimulator.AlternativeRoutes alternatives = new FiretruckSimulator.AlternativeRoutes(csr);
+        Random random = new Random(SEED);
+        FiretruckSimulator.Node[] starts = randomNodes(csr, random), ends = randomNodes(csr, random);
+        switch (method) {
+            case "shortestPath":
+                return query -> FiretruckSimulator.CsrDijkstra.findShortestPath(csr, starts[query], ends[query]).getDistance();
+            case "kShortest3":
+                return query -> alternatives.kShortest(starts[query], ends[query], 3, 1.0).getRoutes().size();
+            case "kShortest3Capped":
+                return query -> alternatives.kShortest(starts[query], ends[query], 3, maxOverlap).getRoutes().size();
+            case "penalized3":
+                return query -> alternatives.penalized(starts[query], ends[query], 3, maxOverlap).getRoutes().size();
+            default:
+                throw new IllegalArgumentException("Unknown method '" + method + "'");
+        }
+    }
+
+    // --- Partitioned routing ("router") with every cell served in-process, against Dijkstra over the whole graph ---
+    private static Workload partitioned(FiretruckSimulator.CsrGraph csr, String routerName, int cellSize) {
+        Random random = new Random(SEED);
+        FiretruckSimulator.Node[] starts = randomNodes(csr, random), ends = randomNodes(csr, random);
+        switch (routerName) {
+            case "shortestPath":
+                return query -> FiretruckSimulator.CsrDijkstra.findShortestPath(csr, starts[query], ends[query]).getDistance();
+            case "partitioned": {
+                FiretruckSimulator.GraphPartition partition = FiretruckSimulator.GraphPartition.bisect(csr, cellSize);
+                FiretruckSimulator.PartitionedRouter router = new FiretruckSimulator.PartitionedRouter(csr, partition,
+                        List.of(new FiretruckSimulator.LocalCellService(csr, partition, CellServer.shardCells(partition.cellCount(), 1, 0))));
+                return query -> router.findShortestPath(starts[query], ends[query]).getDistance();
+            }
+            default:
+                throw new IllegalArgumentException("Unknown router '" + routerName + "'");
+        }
+    }
+
+    // --- One station's tree kept up to date by "update": closing and reopening roads on it, or recomputing it ---
+    private static Workload dynamic(FiretruckSimulator.Graph graph, String update) {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+        Random random = new Random(SEED);
+        // A station on the main component, so the closures below are found quickly
+        FiretruckSimulator.Node candidate;
+        do {
+            candidate = csr.node(random.nextInt(csr.nodeCount()));
+        } while (FiretruckSimulator.ShortestPathTree.compute(csr, candidate).reachableCount() < csr.nodeCount() / 2);
+        FiretruckSimulator.Node station = candidate;
+        if (update.equals("recompute")) return query -> FiretruckSimulator.ShortestPathTree.compute(csr, station).reachableCount();
+        if (!update.equals("closeAndReopen")) throw new IllegalArgumentException("Unknown update '" + update + "'");
+
+        FiretruckSimulator.DynamicShortestPaths dynamic = new FiretruckSimulator.DynamicShortestPaths(csr);
+        graph.addEdgeUpdateListener(dynamic);
+        FiretruckSimulator.DynamicShortestPaths.Tree tree = dynamic.addTree(station);
+        // The last road on the path to a random node; reopening it restores the tree, so every closure stays on it
+        String[] froms = new String[Workload.QUERIES], tos = new String[Workload.QUERIES];
+        FiretruckSimulator.Node[] heads = new FiretruckSimulator.Node[Workload.QUERIES];
+        for (int i = 0; i < Workload.QUERIES; ) {
+            List<FiretruckSimulator.Node> path = tree.pathTo(csr.node(random.nextInt(csr.nodeCount())));
+            if (path == null || path.size() < 2) continue;
+            froms[i] = path.get(path.size() - 2).getId();
+            tos[i] = path.get(path.size() - 1).getId();
+            heads[i++] = path.get(path.size() - 1);
+        }
+        // Two repairs; returns the distance to the road's far end while it was closed
+        return query -> {
+            graph.closeEdge(froms[query], tos[query]);
+            double detour = tree.distanceTo(heads[query]);
+            graph.reopenEdge(froms[query], tos[query]);
+            return detour;
+        };
+    }
+
+    private static FiretruckSimulator.Node[] randomNodes(FiretruckSimulator.CsrGraph csr, Random random) {
+        FiretruckSimulator.Node[] nodes = new FiretruckSimulator.Node[Workload.QUERIES];
+        for (int i = 0; i < nodes.length; i++) nodes[i] = csr.node(random.nextInt(csr.nodeCount()));
+        return nodes;
+    }
+
+    private static int intParam(BenchmarkParams params, String key) { return Integer.parseInt(params.getParam(key)); }
+}
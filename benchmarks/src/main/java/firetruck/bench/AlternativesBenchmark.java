@@ -0,0 +1,51 @@
+package firetruck.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+
+// Three routes per query (the primary and two alternatives) from Yen's algorithm, with and
+// without an overlap cap, and from the penalty method, against one plain Dijkstra query.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlternativesBenchmark {
+
+    @Param({"grid", "geometric"})
+    public String graph;
+
+    @Param({"100000"})
+    public int nodes;
+
+    @Param({"0.6"})
+    public double maxOverlap;
+
+    @Param({"shortestPath", "kShortest3", "kShortest3Capped", "penalized3"})
+    public String method;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp(BenchmarkParams params) {
+        workload = Workloads.create("alternatives", params);
+    }
+
+    @Benchmark
+    public double query(QueryCursor cursor) {
+        return workload.run(cursor.next());
+    }
+}
@@ -0,0 +1,27 @@
+package firetruck.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+// Entry point of benchmarks.jar: the normal JMH command line, with the GC profiler always
+// on so every result also shows the allocation rate (gc.alloc.rate.norm = bytes per op).
+//   java -jar benchmarks/target/benchmarks.jar SinglePair -p nodes=1000
+public final class BenchmarkMain {
+    private BenchmarkMain() { }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+                || commandLine.shouldListResultFormats() || commandLine.shouldListWithParams()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,55 @@
+package firetruck.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+
+// Contraction hierarchy preprocessing: time per build, in single shots, with the number
+// of shortcuts added reported next to it as build:shortcuts. Query latency on the
+// hierarchy is in SinglePairBenchmark (-p engine=ch,dijkstra).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ContractionBenchmark {
+
+    @Param({"grid", "geometric"})
+    public String graph;
+
+    @Param({"10000", "40000"})
+    public int nodes;
+
+    private Workload workload;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Shortcuts {
+        public long shortcuts;
+    }
+
+    @Setup
+    public void setUp(BenchmarkParams params) {
+        workload = Workloads.create("contraction", params);
+    }
+
+    @Benchmark
+    public double build(Shortcuts counters) {
+        double added = workload.run(0);
+        counters.shortcuts = (long) added;
+        return added;
+    }
+}
@@ -0,0 +1,58 @@
+package firetruck.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+
+// Station coverage: the whole city labelled with its nearest station, and the area
+// within a response bound, on worker pools of 1 .. 8 threads to show the scaling.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CoverageBenchmark {
+
+    @Param({"grid", "geometric"})
+    public String graph;
+
+    @Param({"1000000"})
+    public int nodes;
+
+    @Param({"256"})
+    public int stations;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"Infinity", "300"})
+    public double bound;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp(BenchmarkParams params) {
+        workload = Workloads.create("coverage", params);
+    }
+
+    @TearDown
+    public void tearDown() { workload.tearDown(); }
+
+    @Benchmark
+    public double sweep() {
+        return workload.run(0);
+    }
+}
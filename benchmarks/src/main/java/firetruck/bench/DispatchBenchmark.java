@@ -0,0 +1,51 @@
+package firetruck.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+
+// Nearest-station dispatch: one Dijkstra per station against the single multi-source
+// search (winner only and top 3) and the backward search over the reversed graph.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark {
+
+    @Param({"grid", "geometric"})
+    public String graph;
+
+    @Param({"100000"})
+    public int nodes;
+
+    @Param({"16"})
+    public int stations;
+
+    @Param({"perStation", "multiSource", "multiSourceTop3", "reverseTop3"})
+    public String search;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp(BenchmarkParams params) {
+        workload = Workloads.create("dispatch", params);
+    }
+
+    @Benchmark
+    public double query(QueryCursor cursor) {
+        return workload.run(cursor.next());
+    }
+}
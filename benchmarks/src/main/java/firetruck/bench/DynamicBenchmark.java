@@ -0,0 +1,49 @@
+package firetruck.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+
+// One station's shortest-path tree kept up to date while single roads on it close and
+// reopen, against recomputing the tree from scratch. Each closeAndReopen operation is
+// two repairs. The graph is edited in place, so run it with one thread (the default).
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DynamicBenchmark {
+
+    @Param({"grid", "geometric"})
+    public String graph;
+
+    @Param({"10000", "100000"})
+    public int nodes;
+
+    @Param({"closeAndReopen", "recompute"})
+    public String update;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp(BenchmarkParams params) {
+        workload = Workloads.create("dynamic", params);
+    }
+
+    @Benchmark
+    public double query(QueryCursor cursor) {
+        return workload.run(cursor.next());
+    }
+}
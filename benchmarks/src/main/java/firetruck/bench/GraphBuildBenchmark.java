@@ -0,0 +1,49 @@
+package firetruck.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+
+// Graph construction: the object Graph through addEdge, its CSR snapshot, and a CSR
+// built straight from an edge list. Run with the GC profiler (the default in
+// BenchmarkMain) to compare allocation per build.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBuildBenchmark {
+
+    @Param({"grid", "geometric", "scalefree"})
+    public String graph;
+
+    @Param({"1000", "100000", "1000000"})
+    public int nodes;
+
+    @Param({"addEdge", "csrSnapshot", "csrFromEdges"})
+    public String build;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp(BenchmarkParams params) {
+        workload = Workloads.create("graph-build", params);
+    }
+
+    @Benchmark
+    public double build() {
+        return workload.run(0);
+    }
+}
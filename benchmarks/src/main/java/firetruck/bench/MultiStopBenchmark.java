@@ -0,0 +1,54 @@
+package firetruck.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+
+// Whole multi-stop routes (start, stops, end) as the simulator's Find Multi-Stop Route
+// computes them: one search per segment, then the segment paths are stitched.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiStopBenchmark {
+
+    @Param({"grid", "geometric"})
+    public String graph;
+
+    @Param({"100000"})
+    public int nodes;
+
+    @Param({"dijkstra", "astar", "bidirectional"})
+    public String engine;
+
+    @Param({"serial", "forkjoin"})
+    public String segmentExecutor;
+
+    @Param({"6"})
+    public int waypoints;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp(BenchmarkParams params) {
+        workload = Workloads.create("multi-stop", params);
+    }
+
+    @Benchmark
+    public double query(QueryCursor cursor) {
+        return workload.run(cursor.next());
+    }
+}
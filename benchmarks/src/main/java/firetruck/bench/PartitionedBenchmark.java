@@ -0,0 +1,53 @@
+package firetruck.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+
+// Random point-to-point queries over a graph split into cells, answered from the two end
+// cells plus the boundary overlay, against one Dijkstra over the whole graph (which
+// ignores cellSize). The cell services run in-process here, so the numbers leave out the
+// socket hop to CellServer.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PartitionedBenchmark {
+
+    @Param({"grid", "geometric"})
+    public String graph;
+
+    @Param({"100000"})
+    public int nodes;
+
+    @Param({"1024", "4096"})
+    public int cellSize;
+
+    @Param({"shortestPath", "partitioned"})
+    public String router;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp(BenchmarkParams params) {
+        workload = Workloads.create("partitioned", params);
+    }
+
+    @Benchmark
+    public double query(QueryCursor cursor) {
+        return workload.run(cursor.next());
+    }
+}
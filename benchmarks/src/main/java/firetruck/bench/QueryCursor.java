@@ -0,0 +1,18 @@
+package firetruck.bench;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// Each benchmark thread's position in a workload's prepared queries. Every thread cycles
+// through all Workload.QUERIES of them, so each variant of a benchmark answers the same ones.
+@State(Scope.Thread)
+public class QueryCursor {
+    private int next;
+
+    // The next query number, wrapping round after the last
+    int next() {
+        int query = next;
+        next = (query + 1 == Workload.QUERIES) ? 0 : query + 1;
+        return query;
+    }
+}
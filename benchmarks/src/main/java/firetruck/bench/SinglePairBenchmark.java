@@ -0,0 +1,51 @@
+package firetruck.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+
+// Point-to-point query latency per engine. SampleTime reports the average and p99,
+// Throughput reports queries/s. Contraction hierarchies are left out of the defaults
+// because preprocessing large graphs takes minutes; add them with -p engine=ch. The
+// time-dependent engines (td-dijkstra, td-astar) price edges by commuter profiles at 8:00.
+// Graphs of 10M nodes: -p nodes=10000000 (needs a large -Xmx, e.g. -jvmArgs -Xmx16g).
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SinglePairBenchmark {
+
+    @Param({"grid", "geometric", "scalefree"})
+    public String graph;
+
+    @Param({"1000", "100000", "1000000"})
+    public int nodes;
+
+    @Param({"dijkstra-classic", "dijkstra", "astar", "bidirectional", "td-dijkstra", "td-astar"})
+    public String engine;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp(BenchmarkParams params) {
+        workload = Workloads.create("single-pair", params);
+    }
+
+    @Benchmark
+    public double query(QueryCursor cursor) {
+        return workload.run(cursor.next());
+    }
+}
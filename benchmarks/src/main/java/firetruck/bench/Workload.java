@@ -0,0 +1,15 @@
+package firetruck.bench;
+
+// One benchmarked operation over a synthetic graph. Every workload draws QUERIES random
+// queries from a fixed seed when it is built, so each variant of a benchmark answers the
+// same ones; whole-graph operations (builds, sweeps) ignore the query number.
+@FunctionalInterface
+public interface Workload {
+    int QUERIES = 1024;
+
+    // Runs query 0 .. QUERIES - 1; the result is returned so JMH cannot drop the work
+    double run(int query);
+
+    // Releases threads or other resources the workload holds
+    default void tearDown() { }
+}
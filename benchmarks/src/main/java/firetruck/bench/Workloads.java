@@ -0,0 +1,37 @@
+package firetruck.bench;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+// Bridge to the routing code. The simulator lives in the default package, which named
+// packages cannot import and JMH cannot host benchmarks in, so the workloads are built by
+// the default-package BenchWorkloads.create, looked up by name once.
+final class Workloads {
+    private static final Method CREATE = lookUp();
+
+    private Workloads() { }
+
+    // The named workload, configured from the benchmark's @Param values
+    static Workload create(String name, BenchmarkParams params) {
+        try {
+            return (Workload) CREATE.invoke(null, name, params);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException("Cannot create workload " + name, cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot create workload " + name, e);
+        }
+    }
+
+    private static Method lookUp() {
+        try {
+            return Class.forName("BenchWorkloads").getMethod("create", String.class, BenchmarkParams.class);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot find the benchmark workloads", e);
+        }
+    }
+}
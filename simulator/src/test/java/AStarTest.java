@@ -0,0 +1,36 @@
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AStarTest {
+    @Test
+    void euclideanMatchesDijkstra() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            FiretruckSimulator.Heuristic euclidean = FiretruckSimulator.Heuristic.euclidean(csr);
+            TestGraphs.assertMatchesDijkstra(csr, (s, t) -> FiretruckSimulator.AStar.findShortestPath(csr, s, t, euclidean));
+        }
+    }
+
+    @Test
+    void zeroHeuristicMatchesDijkstra() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            TestGraphs.assertMatchesDijkstra(csr, (s, t) -> FiretruckSimulator.AStar.findShortestPath(csr, s, t, FiretruckSimulator.Heuristic.zero()));
+        }
+    }
+
+    // Consistency (h(u) <= w(u, v) + h(v)) is what lets A* settle every node once
+    @Test
+    void euclideanHeuristicIsConsistent() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            FiretruckSimulator.Heuristic euclidean = FiretruckSimulator.Heuristic.euclidean(csr);
+            for (int target = 0; target < csr.nodeCount(); target += 7) {
+                for (int u = 0; u < csr.nodeCount(); u++) {
+                    for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                        double slack = csr.weights[e] + euclidean.estimate(csr.targets[e], target) - euclidean.estimate(u, target);
+                        assertTrue(slack >= -TestGraphs.EPS, "inconsistent at edge " + e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class AlternativeRoutesTest {
+    private static final int K = 4;
+
+    @Test
+    void primaryMatchesDijkstra() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            FiretruckSimulator.AlternativeRoutes alternatives = new FiretruckSimulator.AlternativeRoutes(csr);
+            TestGraphs.assertMatchesDijkstra(csr, (s, t) -> {
+                FiretruckSimulator.AlternativeRoutes.Route primary = alternatives.kShortest(s, t, K, 0.8).getPrimary();
+                return (primary == null) ? new FiretruckSimulator.DijkstraResult(null, Double.POSITIVE_INFINITY)
+                        : new FiretruckSimulator.DijkstraResult(primary.getPath(), primary.getDistance());
+            });
+        }
+    }
+
+    // Without an overlap cap Yen's routes are exactly the k shortest loopless ones
+    @Test
+    void uncappedYenMatchesEnumeratingEverySimplePath() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(4, 5, 23));
+        FiretruckSimulator.AlternativeRoutes alternatives = new FiretruckSimulator.AlternativeRoutes(csr);
+        Random random = new Random(23);
+        for (int q = 0; q < 30; q++) {
+            int s = random.nextInt(csr.nodeCount()), t = random.nextInt(csr.nodeCount());
+            if (s == t) continue;
+            FiretruckSimulator.AlternativeRoutes.Result result = alternatives.kShortest(csr.node(s), csr.node(t), K, 1.0);
+            double primary = FiretruckSimulator.CsrDijkstra.findShortestPath(csr, csr.node(s), csr.node(t)).getDistance();
+            List<Double> expected = simplePathLengths(csr, s, t, FiretruckSimulator.AlternativeRoutes.MAX_STRETCH * primary);
+            assertEquals(Math.min(K, expected.size()), result.getRoutes().size());
+            for (int i = 0; i < result.getRoutes().size(); i++) {
+                assertEquals(expected.get(i), result.getRoutes().get(i).getDistance(), TestGraphs.EPS, "route " + i);
+            }
+            assertWellFormed(csr, result, s, t, 1.0);
+        }
+    }
+
+    @Test
+    void cappedRoutesStayWithinTheOverlapAndStretch() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(10, 10, 23));
+        FiretruckSimulator.AlternativeRoutes alternatives = new FiretruckSimulator.AlternativeRoutes(csr);
+        Random random = new Random(32);
+        int withAlternative = 0;
+        for (int q = 0; q < 30; q++) {
+            int s = random.nextInt(csr.nodeCount()), t = random.nextInt(csr.nodeCount());
+            for (FiretruckSimulator.AlternativeRoutes.Result result : List.of(
+                    alternatives.kShortest(csr.node(s), csr.node(t), K, 0.6), alternatives.penalized(csr.node(s), csr.node(t), K, 0.6))) {
+                assertWellFormed(csr, result, s, t, 0.6);
+                if (result.getAlternatives().size() > 0) withAlternative++;
+            }
+        }
+        assertTrue(withAlternative > 30, "A grid has plenty of detours, found " + withAlternative);
+    }
+
+    @Test
+    void unreachableTargetHasNoRoutes() {
+        FiretruckSimulator.Graph graph = TestGraphs.grid(3, 3, 23);
+        graph.addNode("island", 500, 500);
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+        FiretruckSimulator.AlternativeRoutes.Result result =
+                new FiretruckSimulator.AlternativeRoutes(csr).penalized(csr.node(0), graph.getNode("island"), K, 0.5);
+        assertFalse(result.hasPath());
+        assertNull(result.getPrimary());
+        assertTrue(result.getAlternatives().isEmpty());
+    }
+
+    private static void assertWellFormed(FiretruckSimulator.CsrGraph csr, FiretruckSimulator.AlternativeRoutes.Result result,
+                                         int s, int t, double maxOverlap) {
+        if (!result.hasPath()) return;
+        FiretruckSimulator.AlternativeRoutes.Route primary = result.getPrimary();
+        assertEquals(FiretruckSimulator.CsrDijkstra.findShortestPath(csr, csr.node(s), csr.node(t)).getDistance(), primary.getDistance(), TestGraphs.EPS);
+        Set<List<FiretruckSimulator.Node>> distinct = new HashSet<>();
+        double previous = primary.getDistance();
+        for (FiretruckSimulator.AlternativeRoutes.Route route : result.getRoutes()) {
+            List<FiretruckSimulator.Node> path = route.getPath();
+            assertTrue(distinct.add(path), "Route listed twice");
+            assertEquals(path.size(), new HashSet<>(path).size(), "Route has a loop");
+            assertEquals(csr.node(s), path.get(0));
+            assertEquals(csr.node(t), path.get(path.size() - 1));
+            assertEquals(route.getDistance(), TestGraphs.pathWeight(csr, path), TestGraphs.EPS);
+            assertTrue(route.getDistance() >= previous - TestGraphs.EPS, "Alternatives come shortest first");
+            assertTrue(route.getDistance() <= FiretruckSimulator.AlternativeRoutes.MAX_STRETCH * primary.getDistance() + TestGraphs.EPS);
+            if (route != primary) assertTrue(route.getOverlap() <= maxOverlap + TestGraphs.EPS, "overlap " + route.getOverlap());
+            previous = route.getDistance();
+        }
+    }
+
+    // Lengths of every simple s-t path no longer than limit, shortest first
+    private static List<Double> simplePathLengths(FiretruckSimulator.CsrGraph csr, int s, int t, double limit) {
+        List<Double> lengths = new ArrayList<>();
+        extend(csr, s, t, 0, limit, new boolean[csr.nodeCount()], lengths);
+        lengths.sort(null);
+        return lengths;
+    }
+
+    private static void extend(FiretruckSimulator.CsrGraph csr, int u, int t, double length, double limit, boolean[] onPath, List<Double> lengths) {
+        if (u == t) {
+            lengths.add(length);
+            return;
+        }
+        onPath[u] = true;
+        for (int e = csr.firstEdge(u); e < csr.endEdge(u); e++) {
+            int v = csr.target(e);
+            if (!onPath[v] && length + csr.weight(e) <= limit + TestGraphs.EPS) extend(csr, v, t, length + csr.weight(e), limit, onPath, lengths);
+        }
+        onPath[u] = false;
+    }
+}
@@ -0,0 +1,37 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class BidirectionalDijkstraTest {
+    @Test
+    void matchesDijkstra() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            TestGraphs.assertMatchesDijkstra(csr, new FiretruckSimulator.BidirectionalDijkstra(csr)::findShortestPath);
+        }
+    }
+
+    @Test
+    void startEqualsEnd() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(3, 3, 1));
+        FiretruckSimulator.DijkstraResult result = new FiretruckSimulator.BidirectionalDijkstra(csr).findShortestPath(csr.node(4), csr.node(4));
+        assertEquals(0.0, result.getDistance());
+        assertEquals(List.of(csr.node(4)), result.getPath());
+    }
+
+    // The backward search runs on the transpose, so v -> u there must cost what u -> v costs here
+    @Test
+    void transposeReversesOneWayStreets() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.directed(150, 500, 3));
+        FiretruckSimulator.CsrGraph reversed = csr.transpose();
+        assertEquals(csr.edgeCount(), reversed.edgeCount());
+        Random random = new Random(3);
+        for (int i = 0; i < 100; i++) {
+            FiretruckSimulator.Node s = csr.node(random.nextInt(csr.nodeCount())), t = csr.node(random.nextInt(csr.nodeCount()));
+            assertEquals(FiretruckSimulator.CsrDijkstra.findShortestPath(csr, s, t).getDistance(),
+                    FiretruckSimulator.CsrDijkstra.findShortestPath(reversed, t, s).getDistance(), TestGraphs.EPS);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CellServerTest {
+    private static final FiretruckSimulator.CsrGraph CSR = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(12, 12, 24));
+    private static final FiretruckSimulator.GraphPartition PARTITION = FiretruckSimulator.GraphPartition.bisect(CSR, 16);
+
+    @Test
+    void routesOverTwoShards() throws IOException {
+        List<FiretruckSimulator.CellService> shards = List.of(
+                CellServer.Client.connect("127.0.0.1:" + start(PARTITION, 0), PARTITION),
+                CellServer.Client.connect("127.0.0.1:" + start(PARTITION, 1), PARTITION));
+        TestGraphs.assertMatchesDijkstra(CSR, new FiretruckSimulator.PartitionedRouter(CSR, PARTITION, shards)::findShortestPath);
+    }
+
+    @Test
+    void rejectedRequestKeepsTheConnectionUsable() throws IOException {
+        CellServer.Client shard = CellServer.Client.connect("127.0.0.1:" + start(PARTITION, 0), PARTITION);
+        assertThrows(IllegalArgumentException.class, () -> shard.distancesFrom(CSR.nodeCount(), new int[] {0}));
+        int cell = shard.cells()[0];
+        int node = PARTITION.nodesOf(cell)[0];
+        assertEquals(0.0, shard.distancesFrom(node, new int[] {node})[0]);
+    }
+
+    @Test
+    void differentPartitionFailsTheHandshake() throws IOException {
+        int port = start(PARTITION, 0);
+        FiretruckSimulator.GraphPartition coarser = FiretruckSimulator.GraphPartition.bisect(CSR, 32);
+        IOException mismatch = assertThrows(IOException.class, () -> CellServer.Client.connect("127.0.0.1:" + port, coarser));
+        assertTrue(mismatch.getMessage().startsWith("Partition mismatch"), mismatch.getMessage());
+    }
+
+    // Same coordinates, so the same cells, but other weights: the shard would answer for different roads
+    @Test
+    void differentWeightsFailTheHandshake() throws IOException {
+        int port = start(PARTITION, 0);
+        FiretruckSimulator.CsrGraph reweighted = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(12, 12, 25));
+        FiretruckSimulator.GraphPartition other = FiretruckSimulator.GraphPartition.bisect(reweighted, 16);
+        for (int u = 0; u < CSR.nodeCount(); u++) assertEquals(PARTITION.cellOf(u), other.cellOf(u));
+        IOException mismatch = assertThrows(IOException.class, () -> CellServer.Client.connect("127.0.0.1:" + port, other));
+        assertTrue(mismatch.getMessage().startsWith("Partition mismatch"), mismatch.getMessage());
+    }
+
+    // Serves shard i of 2 on a free port until the test JVM exits
+    private static int start(FiretruckSimulator.GraphPartition partition, int shard) throws IOException {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        CellServer server = new CellServer(CSR, partition, CellServer.shardCells(partition.cellCount(), 2, shard), port);
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        }, "cell-server-" + shard);
+        thread.setDaemon(true);
+        thread.start();
+        return port;
+    }
+}
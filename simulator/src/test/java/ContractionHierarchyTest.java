@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ContractionHierarchyTest {
+    @Test
+    void matchesDijkstra() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            TestGraphs.assertMatchesDijkstra(csr, FiretruckSimulator.ContractionHierarchy.build(csr)::findShortestPath);
+        }
+    }
+
+    // Straight-line weights make every direct edge its own witness, so no shortcut is needed
+    @Test
+    void metricCompleteGraphNeedsNoShortcuts() {
+        Random random = new Random(2);
+        FiretruckSimulator.Graph graph = new FiretruckSimulator.Graph();
+        for (int i = 0; i < 12; i++) graph.addNode("n" + i, random.nextInt(1000), random.nextInt(1000));
+        for (FiretruckSimulator.Node u : graph.getNodes().values()) {
+            for (FiretruckSimulator.Node v : graph.getNodes().values()) {
+                if (u != v) graph.addEdge(u.getId(), v.getId(), Math.hypot(u.getX() - v.getX(), u.getY() - v.getY()), false);
+            }
+        }
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+        FiretruckSimulator.ContractionHierarchy ch = FiretruckSimulator.ContractionHierarchy.build(csr);
+        assertEquals(0, ch.shortcutCount());
+        TestGraphs.assertMatchesDijkstra(csr, ch::findShortestPath);
+    }
+
+    // These graphs each have a contraction whose shortcut only lowers an existing edge; that
+    // adds nothing to the hierarchy, so it is not a shortcut
+    @Test
+    void shortcutCountIsTheNumberOfEdgesAdded() {
+        for (int seed : new int[] {3, 9, 39}) {
+            FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.directed(60 + seed, 300, seed));
+            int original = 0;
+            for (int u = 0; u < csr.nodeCount(); u++) {
+                for (int e = csr.firstEdge(u); e < csr.endEdge(u); e++) if (csr.target(e) != u) original++;
+            }
+            FiretruckSimulator.ContractionHierarchy ch = FiretruckSimulator.ContractionHierarchy.build(csr);
+            assertEquals(original + ch.shortcutCount(), ch.edgeCount(), "seed " + seed);
+            TestGraphs.assertMatchesDijkstra(csr, ch::findShortestPath);
+        }
+    }
+}
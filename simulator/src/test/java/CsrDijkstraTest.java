@@ -0,0 +1,73 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class CsrDijkstraTest {
+    @Test
+    void matchesClassicDijkstra() {
+        for (FiretruckSimulator.Graph graph : new FiretruckSimulator.Graph[] {
+                TestGraphs.grid(12, 12, 1), TestGraphs.directed(150, 500, 3), TestGraphs.directed(200, 150, 4)}) {
+            FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+            Random random = new Random(csr.nodeCount());
+            for (int i = 0; i < 150; i++) {
+                FiretruckSimulator.Node s = csr.node(random.nextInt(csr.nodeCount())), t = csr.node(random.nextInt(csr.nodeCount()));
+                FiretruckSimulator.DijkstraResult expected = FiretruckSimulator.Dijkstra.findShortestPath(graph, s, t);
+                FiretruckSimulator.DijkstraResult actual = FiretruckSimulator.CsrDijkstra.findShortestPath(csr, s, t);
+                assertEquals(expected.hasPath(), actual.hasPath());
+                assertEquals(expected.getDistance(), actual.getDistance(), TestGraphs.EPS);
+                if (actual.hasPath()) assertEquals(actual.getDistance(), TestGraphs.pathWeight(csr, actual.getPath()), TestGraphs.EPS);
+            }
+        }
+    }
+
+    @Test
+    void snapshotKeepsEveryEdge() {
+        FiretruckSimulator.Graph graph = TestGraphs.directed(100, 300, 5);
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+        assertEquals(graph.getNodes().size(), csr.nodeCount());
+        int edges = 0;
+        for (FiretruckSimulator.Node node : graph.getNodes().values()) {
+            int u = csr.indexOf(node);
+            assertEquals(node, csr.node(u));
+            assertEquals(node.getAdjacencies().size(), csr.offsets[u + 1] - csr.offsets[u]);
+            for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                assertEquals(node.getAdjacencies().get(csr.node(csr.targets[e])), csr.weights[e]);
+            }
+            edges += node.getAdjacencies().size();
+        }
+        assertEquals(edges, csr.edgeCount());
+        assertEquals(-1, csr.indexOf(new FiretruckSimulator.Node("missing", 0, 0)));
+    }
+
+    @Test
+    void unknownNodeHasNoPath() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(3, 3, 1));
+        FiretruckSimulator.DijkstraResult result = FiretruckSimulator.CsrDijkstra.findShortestPath(csr, csr.node(0), new FiretruckSimulator.Node("missing", 0, 0));
+        assertFalse(result.hasPath());
+    }
+
+    @Test
+    void heapPollsInKeyOrderAfterDecreases() {
+        Random random = new Random(6);
+        FiretruckSimulator.IndexedMinHeap heap = new FiretruckSimulator.IndexedMinHeap(500);
+        double[] keys = new double[500];
+        for (int i = 0; i < 500; i++) heap.insertOrDecrease(i, keys[i] = 1000 + random.nextInt(1000));
+        for (int i = 0; i < 300; i++) {
+            int item = random.nextInt(500);
+            double key = random.nextInt(2000);
+            heap.insertOrDecrease(item, key);
+            keys[item] = Math.min(keys[item], key); // Larger keys are ignored
+        }
+        double last = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < 500; i++) {
+            int item = heap.poll();
+            assertTrue(keys[item] >= last, "item " + item);
+            last = keys[item];
+        }
+        assertEquals(0, heap.size());
+    }
+}
@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// Trees repaired after road edits against a fresh search on a new snapshot
+class DynamicShortestPathsTest {
+    @Test
+    void repairedTreesMatchAFreshSearch() {
+        FiretruckSimulator.Graph graph = TestGraphs.grid(10, 10, 7);
+        FiretruckSimulator.CsrGraph initial = FiretruckSimulator.CsrGraph.of(graph);
+        FiretruckSimulator.DynamicShortestPaths dynamic = new FiretruckSimulator.DynamicShortestPaths(initial);
+        graph.addEdgeUpdateListener(dynamic);
+        List<FiretruckSimulator.DynamicShortestPaths.Tree> trees = new ArrayList<>();
+        for (String source : new String[] {"0_0", "5_5", "9_3"}) trees.add(dynamic.addTree(graph.getNode(source)));
+
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            editRandomEdge(graph, random);
+            FiretruckSimulator.CsrGraph fresh = FiretruckSimulator.CsrGraph.of(graph);
+            for (FiretruckSimulator.DynamicShortestPaths.Tree tree : trees) {
+                FiretruckSimulator.Node target = fresh.node(random.nextInt(fresh.nodeCount()));
+                FiretruckSimulator.DijkstraResult expected = FiretruckSimulator.CsrDijkstra.findShortestPath(fresh, tree.getSource(), target);
+                assertEquals(expected.getDistance(), tree.distanceTo(target), TestGraphs.EPS);
+                if (expected.hasPath()) {
+                    assertEquals(expected.getDistance(), TestGraphs.pathWeight(fresh, tree.pathTo(target)), TestGraphs.EPS);
+                }
+            }
+        }
+    }
+
+    @Test
+    void closingTheOnlyRoadCutsOffItsTarget() {
+        FiretruckSimulator.Graph graph = TestGraphs.grid(1, 5, 8);
+        FiretruckSimulator.DynamicShortestPaths dynamic = new FiretruckSimulator.DynamicShortestPaths(FiretruckSimulator.CsrGraph.of(graph));
+        graph.addEdgeUpdateListener(dynamic);
+        FiretruckSimulator.DynamicShortestPaths.Tree tree = dynamic.addTree(graph.getNode("0_0"));
+        FiretruckSimulator.Node end = graph.getNode("0_4");
+        double open = tree.distanceTo(end);
+
+        assertTrue(graph.closeEdge("0_2", "0_3"));
+        assertFalse(tree.resultFor(end).hasPath());
+        assertTrue(graph.reopenEdge("0_2", "0_3"));
+        assertEquals(open, tree.distanceTo(end), TestGraphs.EPS);
+        double old = graph.getNode("0_2").getAdjacencies().get(graph.getNode("0_3"));
+        assertTrue(graph.setEdgeWeight("0_2", "0_3", 100));
+        assertEquals(open - old + 100, tree.distanceTo(end), TestGraphs.EPS);
+    }
+
+    // Closes, reopens or reweights a random grid street (both directions)
+    static void editRandomEdge(FiretruckSimulator.Graph graph, Random random) {
+        List<FiretruckSimulator.Node> nodes = new ArrayList<>(graph.getNodes().values());
+        nodes.sort((p, q) -> p.getId().compareTo(q.getId()));
+        FiretruckSimulator.Node u = nodes.get(random.nextInt(nodes.size()));
+        List<FiretruckSimulator.Node> neighbours = new ArrayList<>(u.getAdjacencies().keySet());
+        neighbours.sort((p, q) -> p.getId().compareTo(q.getId()));
+        FiretruckSimulator.Node v = neighbours.get(random.nextInt(neighbours.size()));
+        switch (random.nextInt(3)) {
+            case 0: graph.closeEdge(u.getId(), v.getId()); break;
+            case 1: graph.reopenEdge(u.getId(), v.getId()); break;
+            default: graph.setEdgeWeight(u.getId(), v.getId(), 1 + random.nextInt(30));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Rectangle;
+
+import org.junit.jupiter.api.Test;
+
+class GraphLayerTest {
+    // Longitudes west of Greenwich and latitudes south of the equator are all negative
+    @Test
+    void worldBoundsOfNegativeCoordinates() {
+        FiretruckSimulator.Graph graph = new FiretruckSimulator.Graph();
+        graph.addNode("a", -74_010_000, -40_700_000);
+        graph.addNode("b", -73_950_000, -40_800_000);
+        graph.addNode("c", -73_990_000, -40_750_000);
+        graph.addEdge("a", "b", 5);
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+        FiretruckSimulator.GraphLayer layer = new FiretruckSimulator.GraphLayer(csr, FiretruckSimulator.SpatialIndex.build(csr));
+        assertEquals(new Rectangle(-74_010_000, -40_800_000, 60_000, 100_000), layer.worldBounds());
+    }
+
+    @Test
+    void worldBoundsOfMixedCoordinates() {
+        FiretruckSimulator.Graph graph = new FiretruckSimulator.Graph();
+        graph.addNode("a", -30, 20);
+        graph.addNode("b", 50, -10);
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+        FiretruckSimulator.GraphLayer layer = new FiretruckSimulator.GraphLayer(csr, FiretruckSimulator.SpatialIndex.build(csr));
+        assertEquals(new Rectangle(-30, -10, 80, 30), layer.worldBounds());
+    }
+}
@@ -0,0 +1,95 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// DIMACS and CSV files written from a known graph load back with the same nodes,
+// coordinates and edges; bad lines are skipped and counted.
+class GraphLoaderTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void dimacsRoundTrip() throws IOException {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.directed(200, 700, 12));
+        Path gr = dir.resolve("graph.gr"), co = dir.resolve("graph.co");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(gr, StandardCharsets.US_ASCII))) {
+            out.println("c written by GraphLoaderTest");
+            out.println("p sp " + csr.nodeCount() + " " + csr.edgeCount());
+            for (int u = 0; u < csr.nodeCount(); u++) {
+                for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                    out.println("a " + (u + 1) + " " + (csr.targets[e] + 1) + " " + csr.weights[e]);
+                }
+            }
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(co, StandardCharsets.US_ASCII))) {
+            out.println("p aux sp co " + csr.nodeCount());
+            for (int u = 0; u < csr.nodeCount(); u++) out.println("v " + (u + 1) + " " + csr.xs[u] + " " + csr.ys[u]);
+        }
+
+        FiretruckSimulator.GraphLoader.Result loaded = FiretruckSimulator.GraphLoader.loadDimacs(gr, co);
+        assertEquals(0, loaded.getErrorCount(), String.valueOf(loaded.getErrors()));
+        assertSameGraph(csr, loaded.getGraph());
+        assertEquals("1", loaded.getGraph().node(0).getId());
+    }
+
+    @Test
+    void csvRoundTrip() throws IOException {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(6, 7, 12));
+        Path nodes = dir.resolve("nodes.csv"), edges = dir.resolve("edges.csv");
+        List<String> nodeLines = new ArrayList<>(), edgeLines = new ArrayList<>();
+        nodeLines.add("id,x,y");
+        edgeLines.add("from,to,weight");
+        for (int u = 0; u < csr.nodeCount(); u++) {
+            String id = csr.node(u).getId();
+            nodeLines.add(id + "," + csr.xs[u] + "," + csr.ys[u]);
+            for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) edgeLines.add(id + "," + csr.node(csr.targets[e]).getId() + "," + csr.weights[e]);
+        }
+        Files.write(nodes, nodeLines, StandardCharsets.UTF_8);
+        Files.write(edges, edgeLines, StandardCharsets.UTF_8);
+
+        FiretruckSimulator.GraphLoader.Result loaded = FiretruckSimulator.GraphLoader.loadCsv(nodes, edges, false);
+        assertEquals(0, loaded.getErrorCount(), String.valueOf(loaded.getErrors()));
+        assertSameGraph(csr, loaded.getGraph());
+        for (int u = 0; u < csr.nodeCount(); u++) assertEquals(u, loaded.getGraph().indexOf(csr.node(u).getId()));
+    }
+
+    @Test
+    void malformedLinesAreSkippedAndReported() throws IOException {
+        Path gr = dir.resolve("bad.gr");
+        Files.write(gr, List.of("p sp 3 3", "a 1 2 5", "a 2 9 1", "a 2 3 -4", "x", "a 2 3 7"), StandardCharsets.US_ASCII);
+        FiretruckSimulator.GraphLoader.Result loaded = FiretruckSimulator.GraphLoader.loadDimacs(gr, null);
+        assertEquals(3, loaded.getErrorCount());
+        assertEquals(2, loaded.getGraph().edgeCount());
+        FiretruckSimulator.CsrGraph graph = loaded.getGraph();
+        assertEquals(12.0, FiretruckSimulator.CsrDijkstra.findShortestPath(graph, graph.node(0), graph.node(2)).getDistance(), TestGraphs.EPS);
+    }
+
+    // Same node count and coordinates by index, and the same out-edges (in any order) per node
+    static void assertSameGraph(FiretruckSimulator.CsrGraph expected, FiretruckSimulator.CsrGraph actual) {
+        assertEquals(expected.nodeCount(), actual.nodeCount());
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        for (int u = 0; u < expected.nodeCount(); u++) {
+            assertEquals(expected.xs[u], actual.xs[u]);
+            assertEquals(expected.ys[u], actual.ys[u]);
+            assertArrayEquals(outEdges(expected, u), outEdges(actual, u), "edges of node " + u);
+        }
+    }
+
+    private static String[] outEdges(FiretruckSimulator.CsrGraph graph, int u) {
+        String[] edges = new String[graph.offsets[u + 1] - graph.offsets[u]];
+        for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) edges[e - graph.offsets[u]] = graph.targets[e] + ":" + graph.weights[e];
+        Arrays.sort(edges);
+        return edges;
+    }
+}
@@ -0,0 +1,68 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+class HeadlessRouterTest {
+    @Test
+    void everyRequestGetsOneResultLine() throws Exception {
+        FiretruckSimulator.Graph graph = TestGraphs.grid(6, 6, 14);
+        graph.addNode("island", 500, 500);
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+        Map<Long, String[]> results = run(new HeadlessRouter(csr, HeadlessRouter.createEngine("astar", csr), 3, 2),
+                "# comment\n0_0 5_5\n\n0_0 2_3 5_5 1_4\n0_0 island\nnowhere 5_5\n0_0\n");
+
+        assertEquals(5, results.size());
+        String[] direct = results.get(1L);
+        assertEquals("OK", direct[1]);
+        assertEquals(FiretruckSimulator.Dijkstra.findShortestPath(graph, graph.getNode("0_0"), graph.getNode("5_5")).getDistance(),
+                Double.parseDouble(direct[2]), TestGraphs.EPS);
+        assertTrue(direct[3].startsWith("0_0>") && direct[3].endsWith(">5_5"), direct[3]);
+
+        String[] multiStop = results.get(2L);
+        assertEquals("OK", multiStop[1]);
+        assertEquals(3, multiStop[4].split(",").length); // One search time per segment
+        assertEquals(csrDistance(csr, "0_0", "2_3") + csrDistance(csr, "2_3", "5_5") + csrDistance(csr, "5_5", "1_4"),
+                Double.parseDouble(multiStop[2]), TestGraphs.EPS);
+
+        assertEquals("UNREACHABLE", results.get(3L)[1]);
+        assertEquals("0_0>island", results.get(3L)[3]);
+        assertEquals("ERROR", results.get(4L)[1]);
+        assertTrue(results.get(4L)[2].contains("nowhere"));
+        assertEquals("ERROR", results.get(5L)[1]);
+    }
+
+    @Test
+    void everyEngineRoutesTheSampleGraph() throws Exception {
+        FiretruckSimulator.GraphView graph = HeadlessRouter.loadGraph(List.of("sample"));
+        FiretruckSimulator.CsrGraph csr = (FiretruckSimulator.CsrGraph) graph;
+        for (String engine : new String[] {"dijkstra", "astar", "bidirectional", "ch"}) {
+            TestGraphs.assertMatchesDijkstra(graph, HeadlessRouter.createEngine(engine, graph)::findShortestPath);
+        }
+        assertThrows(IllegalArgumentException.class, () -> HeadlessRouter.createEngine("teleport", csr));
+    }
+
+    private static double csrDistance(FiretruckSimulator.CsrGraph csr, String from, String to) {
+        return FiretruckSimulator.CsrDijkstra.findShortestPath(csr, csr.node(csr.indexOf(from)), csr.node(csr.indexOf(to))).getDistance();
+    }
+
+    // Result lines by request number; they may arrive in any order
+    private static Map<Long, String[]> run(HeadlessRouter router, String requests) throws Exception {
+        StringWriter out = new StringWriter();
+        router.run(new BufferedReader(new StringReader(requests)), out);
+        Map<Long, String[]> results = new TreeMap<>();
+        for (String line : out.toString().split("\n")) {
+            String[] fields = line.split("\t");
+            assertEquals(null, results.put(Long.parseLong(fields[0]), fields), line);
+        }
+        return results;
+    }
+}
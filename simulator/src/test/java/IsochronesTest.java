@@ -0,0 +1,86 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+class IsochronesTest {
+    // Each node goes to the station that reaches it first, as long as that is within the bound
+    @Test
+    void parallelSweepMatchesOneSearchPerStation() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+                Random random = new Random(csr.nodeCount());
+                for (int round = 0; round < 5; round++) {
+                    List<FiretruckSimulator.Node> stations = new ArrayList<>();
+                    for (int i = 1 + random.nextInt(6); i > 0; i--) stations.add(csr.node(random.nextInt(csr.nodeCount())));
+                    double bound = 20 + random.nextInt(300);
+                    double[][] dist = new double[stations.size()][];
+                    for (int i = 0; i < stations.size(); i++) dist[i] = distancesFrom(csr, stations.get(i));
+
+                    FiretruckSimulator.Coverage coverage = FiretruckSimulator.Isochrones.compute(csr, stations, bound, pool);
+                    for (int u = 0; u < csr.nodeCount(); u++) {
+                        double best = Double.POSITIVE_INFINITY;
+                        for (double[] d : dist) best = Math.min(best, d[u]);
+                        String node = csr.id(u);
+                        if (best > bound) {
+                            assertFalse(coverage.isCovered(u), node);
+                            assertEquals(Double.POSITIVE_INFINITY, coverage.timeTo(u), node);
+                            assertNull(coverage.nearestStation(u), node);
+                            continue;
+                        }
+                        assertTrue(coverage.isCovered(u), node);
+                        assertEquals((float) best, coverage.timeTo(u), 0.0, node); // Times are kept as floats
+                        assertEquals((float) best, (float) dist[coverage.stationOf(u)][u], 0.0, node);
+                        assertEquals(stations.get(coverage.stationOf(u)), coverage.nearestStation(u), node);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void singleStationIsochroneIsItsBoundedSearch() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(15, 15, 22));
+        FiretruckSimulator.Node station = csr.node(112);
+        double[] dist = distancesFrom(csr, station);
+        FiretruckSimulator.Coverage coverage = FiretruckSimulator.Isochrones.of(csr, station, 60);
+        for (int u = 0; u < csr.nodeCount(); u++) assertEquals(dist[u] <= 60, coverage.isCovered(u), csr.id(u));
+        assertEquals(0.0, coverage.timeTo(112));
+        assertEquals(0, coverage.stationOf(112));
+    }
+
+    @Test
+    void bandsCountEveryNodeOnce() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(15, 15, 22));
+        FiretruckSimulator.Coverage coverage = FiretruckSimulator.Isochrones.compute(csr, List.of(csr.node(0), csr.node(224)), 100);
+        double[] bands = {25, 50, 100};
+        int[] expected = new int[bands.length + 1];
+        for (int u = 0; u < csr.nodeCount(); u++) {
+            double t = coverage.timeTo(u);
+            expected[(t <= 25) ? 0 : (t <= 50) ? 1 : (t <= 100) ? 2 : 3]++;
+        }
+        assertArrayEquals(expected, coverage.countByBand(bands));
+        assertEquals(csr.nodeCount(), java.util.Arrays.stream(expected).sum());
+        assertTrue(expected[3] > 0, "The bound should leave the middle of the grid uncovered");
+
+        assertThrows(IllegalArgumentException.class, () -> FiretruckSimulator.Isochrones.compute(csr, List.of(csr.node(0)), -1));
+    }
+
+    private static double[] distancesFrom(FiretruckSimulator.CsrGraph csr, FiretruckSimulator.Node source) {
+        double[] dist = new double[csr.nodeCount()];
+        for (int u = 0; u < dist.length; u++) dist[u] = FiretruckSimulator.CsrDijkstra.findShortestPath(csr, source, csr.node(u)).getDistance();
+        return dist;
+    }
+}
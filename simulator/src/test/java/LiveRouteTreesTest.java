@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// Routes after the Graph has been edited: the LiveRouteTrees that feed repaired trees to
+// CachingRoutingEngine, and the engine's version checks
+class LiveRouteTreesTest {
+    @Test
+    void cachedSnapshotEnginesFollowEdits() {
+        FiretruckSimulator.Graph graph = TestGraphs.grid(10, 10, 8);
+        FiretruckSimulator.CsrGraph snapshot = FiretruckSimulator.CsrGraph.of(graph);
+        FiretruckSimulator.LiveRouteTrees live = new FiretruckSimulator.LiveRouteTrees(graph, snapshot, 2);
+        FiretruckSimulator.Heuristic euclidean = FiretruckSimulator.Heuristic.euclidean(snapshot);
+        FiretruckSimulator.RoutingEngine astar = new FiretruckSimulator.CachingRoutingEngine(
+                (s, t) -> FiretruckSimulator.AStar.findShortestPath(snapshot, s, t, euclidean), graph,
+                new FiretruckSimulator.PathCache(64, FiretruckSimulator.PathCache.Eviction.LRU), snapshot, live);
+        FiretruckSimulator.RoutingEngine trees = FiretruckSimulator.CachingRoutingEngine.withSourceTrees(
+                (s, t) -> FiretruckSimulator.CsrDijkstra.findShortestPath(snapshot, s, t), graph,
+                new FiretruckSimulator.PathCache(64, FiretruckSimulator.PathCache.Eviction.TINY_LFU), snapshot, live);
+
+        Random random = new Random(8);
+        List<FiretruckSimulator.Node> sources = new ArrayList<>();
+        for (int i = 0; i < 4; i++) sources.add(graph.getNode(random.nextInt(10) + "_" + random.nextInt(10)));
+        for (int round = 0; round < 120; round++) {
+            // Query before and after each edit, so stale cache entries would be hit
+            for (int pass = 0; pass < 2; pass++) {
+                for (FiretruckSimulator.Node s : sources) {
+                    FiretruckSimulator.Node t = graph.getNode(random.nextInt(10) + "_" + random.nextInt(10));
+                    double expected = FiretruckSimulator.Dijkstra.findShortestPath(graph, s, t).getDistance();
+                    assertEquals(expected, astar.findShortestPath(s, t).getDistance(), TestGraphs.EPS);
+                    assertEquals(expected, astar.findShortestPath(s, t).getDistance(), TestGraphs.EPS);
+                    assertEquals(expected, trees.findShortestPath(s, t).getDistance(), TestGraphs.EPS);
+                }
+                if (pass == 0) DynamicShortestPathsTest.editRandomEdge(graph, random);
+            }
+            if (round == 100) graph.addEdge("0_0", "9_9", 1.0); // Not a weight edit: live trees give up
+        }
+    }
+
+    @Test
+    void closedRoadIsAvoided() {
+        FiretruckSimulator.Graph graph = FiretruckSimulator.SampleGraph.create();
+        FiretruckSimulator.CsrGraph snapshot = FiretruckSimulator.CsrGraph.of(graph);
+        FiretruckSimulator.LiveRouteTrees live = new FiretruckSimulator.LiveRouteTrees(graph, snapshot, 4);
+        FiretruckSimulator.RoutingEngine engine = new FiretruckSimulator.CachingRoutingEngine(
+                new FiretruckSimulator.BidirectionalDijkstra(snapshot), graph,
+                new FiretruckSimulator.PathCache(16, FiretruckSimulator.PathCache.Eviction.LRU), snapshot, live);
+        FiretruckSimulator.Node s = graph.getNode("FS1"), t = graph.getNode("Airp");
+        List<FiretruckSimulator.Node> before = engine.findShortestPath(s, t).getPath();
+        FiretruckSimulator.Node a = before.get(1), b = before.get(2);
+        graph.closeEdge(a.getId(), b.getId());
+
+        FiretruckSimulator.DijkstraResult after = engine.findShortestPath(s, t);
+        assertEquals(FiretruckSimulator.Dijkstra.findShortestPath(graph, s, t).getDistance(), after.getDistance(), TestGraphs.EPS);
+        List<FiretruckSimulator.Node> path = after.getPath();
+        for (int i = 0; i + 1 < path.size(); i++) {
+            assertFalse(path.get(i).equals(a) && path.get(i + 1).equals(b), "route still uses the closed road");
+        }
+    }
+
+    @Test
+    void liveTreesDeclineAfterStructuralChange() {
+        FiretruckSimulator.Graph graph = TestGraphs.grid(4, 4, 9);
+        FiretruckSimulator.LiveRouteTrees live = new FiretruckSimulator.LiveRouteTrees(graph, FiretruckSimulator.CsrGraph.of(graph), 2);
+        FiretruckSimulator.Node s = graph.getNode("0_0"), t = graph.getNode("3_3");
+        graph.setEdgeWeight("0_0", "0_1", 100);
+        assertEquals(FiretruckSimulator.Dijkstra.findShortestPath(graph, s, t).getDistance(),
+                live.resultFor(s, t, graph.getVersion()).getDistance(), TestGraphs.EPS);
+        graph.addNode("extra", 0, 0);
+        assertNull(live.resultFor(s, t, graph.getVersion()));
+    }
+}
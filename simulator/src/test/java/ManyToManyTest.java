@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// Both matrix builders against one CsrDijkstra query per ordered stop pair
+class ManyToManyTest {
+    @Test
+    void matrixMatchesPairwiseDijkstra() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            List<FiretruckSimulator.Node> stops = stops(csr, 8);
+            assertMatchesPairwise(csr, FiretruckSimulator.ManyToMany.compute(csr, stops, true));
+        }
+    }
+
+    @Test
+    void hierarchyMatrixMatchesPairwiseDijkstra() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            List<FiretruckSimulator.Node> stops = stops(csr, 8);
+            assertMatchesPairwise(csr, FiretruckSimulator.ContractionHierarchy.build(csr).distanceMatrix(stops, true));
+        }
+    }
+
+    @Test
+    void repeatedStopsShareOneRow() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(6, 6, 3));
+        FiretruckSimulator.Node a = csr.node(0), b = csr.node(20), c = csr.node(35);
+        FiretruckSimulator.DistanceMatrix matrix = FiretruckSimulator.ManyToMany.compute(csr, List.of(a, b, a, c, b), false);
+        assertEquals(List.of(a, b, c), matrix.getStops());
+        assertEquals(0.0, matrix.distance(a, a));
+        assertEquals(FiretruckSimulator.CsrDijkstra.findShortestPath(csr, c, a).getDistance(), matrix.distance(c, a), TestGraphs.EPS);
+        assertNull(matrix.path(a, c)); // Paths were not requested
+    }
+
+    private static List<FiretruckSimulator.Node> stops(FiretruckSimulator.CsrGraph csr, int count) {
+        Random random = new Random(csr.nodeCount());
+        List<FiretruckSimulator.Node> stops = new ArrayList<>();
+        for (int i = 0; i < count; i++) stops.add(csr.node(random.nextInt(csr.nodeCount())));
+        return stops;
+    }
+
+    private static void assertMatchesPairwise(FiretruckSimulator.CsrGraph csr, FiretruckSimulator.DistanceMatrix matrix) {
+        for (FiretruckSimulator.Node s : matrix.getStops()) {
+            for (FiretruckSimulator.Node t : matrix.getStops()) {
+                FiretruckSimulator.DijkstraResult expected = FiretruckSimulator.CsrDijkstra.findShortestPath(csr, s, t);
+                assertEquals(expected.getDistance(), matrix.distance(s, t), TestGraphs.EPS, s.getId() + " -> " + t.getId());
+                if (!expected.hasPath()) continue;
+                List<FiretruckSimulator.Node> path = matrix.path(s, t);
+                assertEquals(s, path.get(0));
+                assertEquals(t, path.get(path.size() - 1));
+                assertEquals(expected.getDistance(), TestGraphs.pathWeight(csr, path), TestGraphs.EPS);
+            }
+        }
+    }
+}
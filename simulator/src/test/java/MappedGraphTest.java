@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedGraphTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void snapshotRoundTrip() throws IOException {
+        FiretruckSimulator.Graph graph = TestGraphs.directed(120, 400, 11);
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+        Path file = dir.resolve("graph.fgr");
+        FiretruckSimulator.MappedGraph.write(graph, file);
+
+        FiretruckSimulator.MappedGraph mapped = FiretruckSimulator.MappedGraph.open(file, true);
+        assertEquals(csr.version(), mapped.version());
+        assertEquals(csr.nodeCount(), mapped.nodeCount());
+        assertEquals(csr.edgeCount(), mapped.edgeCount());
+        for (int u = 0; u < csr.nodeCount(); u++) {
+            assertEquals(csr.id(u), mapped.id(u));
+            assertEquals(u, mapped.indexOf(csr.id(u)));
+            assertEquals(csr.x(u), mapped.x(u));
+            assertEquals(csr.y(u), mapped.y(u));
+            assertArrayEquals(outEdges(csr, u), outEdges(mapped, u));
+        }
+        assertEquals(-1, mapped.indexOf("missing"));
+        TestGraphs.assertMatchesDijkstra(mapped, (s, t) -> FiretruckSimulator.CsrDijkstra.findShortestPath(csr, s, t));
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected() throws IOException {
+        Path file = dir.resolve("graph.fgr");
+        FiretruckSimulator.MappedGraph.write(TestGraphs.grid(5, 5, 11), file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 8));
+        assertThrows(IOException.class, () -> FiretruckSimulator.MappedGraph.open(file));
+    }
+
+    // A flipped byte keeps the size, so only the checksum notices it
+    @Test
+    void corruptedSnapshotFailsTheChecksum() throws IOException {
+        Path file = dir.resolve("graph.fgr");
+        FiretruckSimulator.MappedGraph.write(TestGraphs.grid(5, 5, 11), file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        FiretruckSimulator.MappedGraph.open(file, false);
+        assertThrows(IOException.class, () -> FiretruckSimulator.MappedGraph.open(file, true));
+    }
+
+    private static String[] outEdges(FiretruckSimulator.GraphView graph, int u) {
+        String[] edges = new String[graph.endEdge(u) - graph.firstEdge(u)];
+        for (int e = graph.firstEdge(u); e < graph.endEdge(u); e++) edges[e - graph.firstEdge(u)] = graph.target(e) + ":" + graph.weight(e);
+        Arrays.sort(edges);
+        return edges;
+    }
+}
@@ -0,0 +1,161 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class MultiStopRouterTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final FiretruckSimulator.Graph graph = graph();
+
+    // 8 x 8 grid plus an intersection no road reaches
+    private static FiretruckSimulator.Graph graph() {
+        FiretruckSimulator.Graph graph = TestGraphs.grid(8, 8, 7);
+        graph.addNode("island", 500, 500);
+        return graph;
+    }
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentRouteMatchesSerialRoute() {
+        FiretruckSimulator.RoutingEngine engine = new FiretruckSimulator.BidirectionalDijkstra(FiretruckSimulator.CsrGraph.of(graph));
+        // Repeated stops give a zero-length segment
+        List<FiretruckSimulator.Node> waypoints = nodes("0_0", "7_7", "0_0", "3_5", "3_5", "6_1");
+        FiretruckSimulator.MultiStopResult serial = new FiretruckSimulator.MultiStopRouter(engine).route(waypoints);
+        FiretruckSimulator.MultiStopResult concurrent = new FiretruckSimulator.MultiStopRouter(engine, executor).route(waypoints);
+        assertTrue(serial.isPossible());
+        assertEquals(serial.getDistance(), concurrent.getDistance(), TestGraphs.EPS);
+        assertEquals(serial.getPath(), concurrent.getPath());
+
+        double expected = 0;
+        for (int i = 0; i + 1 < waypoints.size(); i++) expected += FiretruckSimulator.Dijkstra.findShortestPath(graph, waypoints.get(i), waypoints.get(i + 1)).getDistance();
+        assertEquals(expected, serial.getDistance(), TestGraphs.EPS);
+    }
+
+    // 0_0 starts three segments: they share one tree instead of three engine calls
+    @Test
+    void repeatedSourceSharesOneTree() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+        FiretruckSimulator.RoutingEngine bidirectional = new FiretruckSimulator.BidirectionalDijkstra(csr);
+        AtomicInteger calls = new AtomicInteger();
+        FiretruckSimulator.RoutingEngine counting = (s, t) -> {
+            calls.incrementAndGet();
+            return bidirectional.findShortestPath(s, t);
+        };
+        List<FiretruckSimulator.Node> waypoints = nodes("0_0", "7_7", "0_0", "3_5", "0_0", "6_1");
+        FiretruckSimulator.MultiStopResult expected = new FiretruckSimulator.MultiStopRouter(bidirectional).route(waypoints);
+        for (FiretruckSimulator.MultiStopRouter router : Arrays.asList(
+                new FiretruckSimulator.MultiStopRouter(counting, null, csr), new FiretruckSimulator.MultiStopRouter(counting, executor, csr))) {
+            calls.set(0);
+            FiretruckSimulator.MultiStopResult shared = router.route(waypoints);
+            assertEquals(expected.getDistance(), shared.getDistance(), TestGraphs.EPS);
+            assertEquals(TestGraphs.pathWeight(csr, expected.getPath()), TestGraphs.pathWeight(csr, shared.getPath()), TestGraphs.EPS);
+            assertEquals(2, calls.get()); // 7_7 -> 0_0 and 3_5 -> 0_0
+        }
+    }
+
+    @Test
+    void firstUnreachableSegmentIsReported() {
+        FiretruckSimulator.RoutingEngine engine = new FiretruckSimulator.BidirectionalDijkstra(FiretruckSimulator.CsrGraph.of(graph));
+        List<FiretruckSimulator.Node> waypoints = nodes("0_0", "2_2", "island", "4_4", "island");
+        for (FiretruckSimulator.MultiStopRouter router : Arrays.asList(
+                new FiretruckSimulator.MultiStopRouter(engine), new FiretruckSimulator.MultiStopRouter(engine, executor))) {
+            FiretruckSimulator.MultiStopResult result = router.route(waypoints);
+            assertFalse(result.isPossible());
+            assertEquals(graph.getNode("2_2"), result.getFailedFrom());
+            assertEquals(graph.getNode("island"), result.getFailedTo());
+        }
+    }
+
+    // The callback of the unreachable first segment is held up after get() has returned its
+    // result. The router must report the route as impossible rather than wait on the second
+    // segment, which that callback cancels once it runs.
+    @Test
+    void unreachableSegmentIsReportedWhileItsCallbackIsDelayed() {
+        FiretruckSimulator.Node unreachableFrom = graph.getNode("0_0");
+        FiretruckSimulator.RoutingEngine engine = (start, end) -> {
+            if (start.equals(unreachableFrom)) return new FiretruckSimulator.DijkstraResult(null, Double.POSITIVE_INFINITY);
+            pause(200);
+            return new FiretruckSimulator.DijkstraResult(Arrays.asList(start, end), 1.0);
+        };
+        Thread caller = Thread.currentThread();
+        FiretruckSimulator.RouteProgress slowCallbacks = new FiretruckSimulator.RouteProgress() {
+            @Override
+            public void segmentDone(int done, int total) {
+                if (Thread.currentThread() != caller) pause(50);
+            }
+
+            @Override
+            public boolean isCancelled() { return false; }
+        };
+
+        FiretruckSimulator.MultiStopRouter router = new FiretruckSimulator.MultiStopRouter(engine, executor);
+        for (int i = 0; i < 5; i++) {
+            FiretruckSimulator.MultiStopResult result = router.route(nodes("0_0", "1_1", "2_2", "3_3"), slowCallbacks);
+            assertFalse(result.isPossible());
+            assertEquals(unreachableFrom, result.getFailedFrom());
+        }
+    }
+
+    @Test
+    void everySegmentReportsProgress() throws InterruptedException {
+        FiretruckSimulator.RoutingEngine engine = new FiretruckSimulator.BidirectionalDijkstra(FiretruckSimulator.CsrGraph.of(graph));
+        CountDownLatch done = new CountDownLatch(4);
+        FiretruckSimulator.RouteProgress counting = new FiretruckSimulator.RouteProgress() {
+            @Override
+            public void segmentDone(int finished, int total) {
+                assertEquals(4, total);
+                done.countDown();
+            }
+
+            @Override
+            public boolean isCancelled() { return false; }
+        };
+        assertTrue(new FiretruckSimulator.MultiStopRouter(engine, executor).route(nodes("0_0", "7_7", "1_1", "1_1", "5_2"), counting).isPossible());
+        // Callbacks run on the worker threads and may trail the result slightly
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancelledJobThrows() {
+        FiretruckSimulator.RoutingEngine engine = new FiretruckSimulator.BidirectionalDijkstra(FiretruckSimulator.CsrGraph.of(graph));
+        FiretruckSimulator.RouteProgress cancelled = new FiretruckSimulator.RouteProgress() {
+            @Override
+            public void segmentDone(int done, int total) { }
+
+            @Override
+            public boolean isCancelled() { return true; }
+        };
+        for (FiretruckSimulator.MultiStopRouter router : Arrays.asList(
+                new FiretruckSimulator.MultiStopRouter(engine), new FiretruckSimulator.MultiStopRouter(engine, executor))) {
+            assertThrows(CancellationException.class, () -> router.route(nodes("0_0", "3_3", "7_7"), cancelled));
+        }
+    }
+
+    List<FiretruckSimulator.Node> nodes(String... ids) {
+        return Arrays.stream(ids).map(graph::getNode).collect(java.util.stream.Collectors.toList());
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
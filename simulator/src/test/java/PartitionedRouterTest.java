@@ -0,0 +1,76 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class PartitionedRouterTest {
+    @Test
+    void bisectionCoversEveryNodeOnce() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            FiretruckSimulator.GraphPartition partition = FiretruckSimulator.GraphPartition.bisect(csr, 16);
+            int[] seen = new int[csr.nodeCount()];
+            for (int c = 0; c < partition.cellCount(); c++) {
+                int[] nodes = partition.nodesOf(c);
+                assertTrue(nodes.length >= 1 && nodes.length <= 16, "cell " + c + " has " + nodes.length + " nodes");
+                for (int u : nodes) {
+                    seen[u]++;
+                    assertEquals(c, partition.cellOf(u));
+                }
+            }
+            for (int count : seen) assertEquals(1, count);
+
+            long cut = 0;
+            for (int u = 0; u < csr.nodeCount(); u++) {
+                for (int e = csr.firstEdge(u); e < csr.endEdge(u); e++) {
+                    int v = csr.target(e);
+                    if (partition.cellOf(u) == partition.cellOf(v)) continue;
+                    cut++;
+                    assertTrue(Arrays.binarySearch(partition.exits(partition.cellOf(u)), u) >= 0, "exit " + csr.id(u));
+                    assertTrue(Arrays.binarySearch(partition.entries(partition.cellOf(v)), v) >= 0, "entry " + csr.id(v));
+                }
+            }
+            assertEquals(cut, partition.cutEdgeCount());
+            assertEquals(partition.fingerprint(), FiretruckSimulator.GraphPartition.bisect(csr, 16).fingerprint());
+        }
+    }
+
+    @Test
+    void partitionedRouterMatchesDijkstra() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            FiretruckSimulator.GraphPartition partition = FiretruckSimulator.GraphPartition.bisect(csr, 16);
+            // Two services, so cross-service paths are unpacked as well
+            List<FiretruckSimulator.CellService> services = List.of(
+                    new FiretruckSimulator.LocalCellService(csr, partition, CellServer.shardCells(partition.cellCount(), 2, 0)),
+                    new FiretruckSimulator.LocalCellService(csr, partition, CellServer.shardCells(partition.cellCount(), 2, 1)));
+            TestGraphs.assertMatchesDijkstra(csr, new FiretruckSimulator.PartitionedRouter(csr, partition, services)::findShortestPath);
+        }
+    }
+
+    @Test
+    void everyCellNeedsExactlyOneService() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(8, 8, 24));
+        FiretruckSimulator.GraphPartition partition = FiretruckSimulator.GraphPartition.bisect(csr, 8);
+        int cells = partition.cellCount();
+        FiretruckSimulator.LocalCellService all = new FiretruckSimulator.LocalCellService(csr, partition, CellServer.shardCells(cells, 1, 0));
+        FiretruckSimulator.LocalCellService first = new FiretruckSimulator.LocalCellService(csr, partition, CellServer.shardCells(cells, 2, 0));
+        assertThrows(IllegalArgumentException.class, () -> new FiretruckSimulator.PartitionedRouter(csr, partition, List.of(first)));
+        assertThrows(IllegalArgumentException.class, () -> new FiretruckSimulator.PartitionedRouter(csr, partition, List.of(all, first)));
+    }
+
+    @Test
+    void shardsSplitTheCellsIntoContiguousRanges() {
+        int[] joined = new int[0];
+        for (int shard = 0; shard < 3; shard++) {
+            int[] cells = CellServer.shardCells(10, 3, shard);
+            int[] grown = Arrays.copyOf(joined, joined.length + cells.length);
+            System.arraycopy(cells, 0, grown, joined.length, cells.length);
+            joined = grown;
+        }
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, joined);
+    }
+}
@@ -0,0 +1,176 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class PathCacheTest {
+    private final FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(20, 20, 9));
+
+    @Test
+    void lruEvictsTheLeastRecentlyUsedResult() {
+        FiretruckSimulator.PathCache cache = new FiretruckSimulator.PathCache(3, FiretruckSimulator.PathCache.Eviction.LRU);
+        FiretruckSimulator.Node s = csr.node(0);
+        FiretruckSimulator.DijkstraResult[] results = new FiretruckSimulator.DijkstraResult[4];
+        for (int i = 0; i < 3; i++) cache.put(s, csr.node(i + 1), 0, results[i] = result(i));
+        assertSame(results[0], cache.get(s, csr.node(1), 0)); // Node 2 is now the oldest
+        cache.put(s, csr.node(4), 0, results[3] = result(3));
+
+        assertNull(cache.get(s, csr.node(2), 0));
+        assertSame(results[0], cache.get(s, csr.node(1), 0));
+        assertSame(results[2], cache.get(s, csr.node(3), 0));
+        assertSame(results[3], cache.get(s, csr.node(4), 0));
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertEquals(4, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    void entriesAreKeyedByGraphVersion() {
+        FiretruckSimulator.PathCache cache = new FiretruckSimulator.PathCache(8, FiretruckSimulator.PathCache.Eviction.TINY_LFU);
+        cache.put(csr.node(0), csr.node(1), 5, result(1));
+        assertNull(cache.get(csr.node(0), csr.node(1), 6));
+        assertNull(cache.get(csr.node(1), csr.node(0), 5)); // Direction matters
+        assertNotNull(cache.get(csr.node(0), csr.node(1), 5));
+        assertEquals(2, cache.missCount());
+    }
+
+    @Test
+    void cachedTreeAnswersEveryTargetOfItsSource() {
+        FiretruckSimulator.PathCache cache = new FiretruckSimulator.PathCache(8, FiretruckSimulator.PathCache.Eviction.LRU);
+        FiretruckSimulator.Node s = csr.node(17);
+        cache.putTree(FiretruckSimulator.ShortestPathTree.compute(csr, s), 0);
+        for (int t = 0; t < csr.nodeCount(); t += 13) {
+            FiretruckSimulator.DijkstraResult cached = cache.get(s, csr.node(t), 0);
+            assertEquals(FiretruckSimulator.CsrDijkstra.findShortestPath(csr, s, csr.node(t)).getDistance(), cached.getDistance(), TestGraphs.EPS);
+        }
+        assertEquals(0, cache.hitCount());
+        assertEquals(31, cache.treeHitCount());
+        assertNull(cache.get(s, csr.node(0), 1));
+    }
+
+    // A scan of one-off queries must not flush routes that are asked for again and again
+    @Test
+    void tinyLfuKeepsFrequentRoutesThroughAScan() {
+        FiretruckSimulator.PathCache cache = new FiretruckSimulator.PathCache(100, FiretruckSimulator.PathCache.Eviction.TINY_LFU);
+        FiretruckSimulator.Node s = csr.node(0);
+        for (int round = 0; round < 4; round++) {
+            for (int t = 1; t <= 90; t++) query(cache, s, csr.node(t));
+        }
+        for (int t = 100; t < 400; t++) query(cache, csr.node(1), csr.node(t)); // Asked once each
+
+        int kept = 0;
+        for (int t = 1; t <= 90; t++) if (cache.get(s, csr.node(t), 0) != null) kept++;
+        assertTrue(kept >= 60, "kept " + kept); // LRU keeps none of them
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    void lruLosesFrequentRoutesToTheSameScan() {
+        FiretruckSimulator.PathCache cache = new FiretruckSimulator.PathCache(100, FiretruckSimulator.PathCache.Eviction.LRU);
+        FiretruckSimulator.Node s = csr.node(0);
+        for (int round = 0; round < 4; round++) {
+            for (int t = 1; t <= 90; t++) query(cache, s, csr.node(t));
+        }
+        for (int t = 100; t < 400; t++) query(cache, csr.node(1), csr.node(t));
+        for (int t = 1; t <= 90; t++) assertNull(cache.get(s, csr.node(t), 0));
+    }
+
+    // A request counts once, whether it hits or misses and is then inserted. The resident route
+    // was asked for five times; the other one four times, each a miss that fails admission.
+    @Test
+    void tinyLfuCountsEachRequestOnce() {
+        FiretruckSimulator.PathCache cache = new FiretruckSimulator.PathCache(2, FiretruckSimulator.PathCache.Eviction.TINY_LFU);
+        FiretruckSimulator.Node s = csr.node(0), resident = csr.node(1), challenger = csr.node(2);
+        query(cache, s, resident);
+        query(cache, s, csr.node(100)); // Pushes the resident route from the window into the main space
+        for (int i = 0; i < 4; i++) assertNotNull(cache.get(s, resident, 0));
+        for (int round = 0; round < 4; round++) {
+            query(cache, s, challenger);
+            query(cache, s, csr.node(101 + round)); // Makes the challenger the admission candidate
+        }
+        assertNotNull(cache.get(s, resident, 0));
+        assertNull(cache.get(s, challenger, 0));
+    }
+
+    @Test
+    void cachingEngineMatchesDijkstraAndHitsOnRepeat() {
+        FiretruckSimulator.Graph graph = TestGraphs.grid(10, 10, 10);
+        FiretruckSimulator.PathCache cache = new FiretruckSimulator.PathCache(64, FiretruckSimulator.PathCache.Eviction.LRU);
+        FiretruckSimulator.RoutingEngine engine = new FiretruckSimulator.CachingRoutingEngine(
+                (s, t) -> FiretruckSimulator.Dijkstra.findShortestPath(graph, s, t), graph, cache);
+        Random random = new Random(10);
+        for (int i = 0; i < 20; i++) {
+            FiretruckSimulator.Node s = graph.getNode(random.nextInt(10) + "_" + random.nextInt(10));
+            FiretruckSimulator.Node t = graph.getNode(random.nextInt(10) + "_" + random.nextInt(10));
+            FiretruckSimulator.DijkstraResult first = engine.findShortestPath(s, t);
+            assertEquals(FiretruckSimulator.Dijkstra.findShortestPath(graph, s, t).getDistance(), first.getDistance(), TestGraphs.EPS);
+            assertSame(first, engine.findShortestPath(s, t));
+        }
+        assertEquals(20, cache.hitCount());
+        assertEquals(20, cache.missCount());
+    }
+
+    // Once the graph has been edited the snapshot is stale: without live trees the classic
+    // Dijkstra on the Graph answers, and that result is cached under the new version
+    @Test
+    void staleSnapshotIsNotSearched() {
+        FiretruckSimulator.Graph graph = TestGraphs.grid(10, 10, 27);
+        FiretruckSimulator.CsrGraph snapshot = FiretruckSimulator.CsrGraph.of(graph);
+        FiretruckSimulator.RoutingEngine search = new FiretruckSimulator.BidirectionalDijkstra(snapshot);
+        AtomicInteger calls = new AtomicInteger();
+        FiretruckSimulator.PathCache cache = new FiretruckSimulator.PathCache(64, FiretruckSimulator.PathCache.Eviction.LRU);
+        FiretruckSimulator.RoutingEngine engine = new FiretruckSimulator.CachingRoutingEngine((s, t) -> {
+            calls.incrementAndGet();
+            return search.findShortestPath(s, t);
+        }, graph, cache, snapshot, null);
+        FiretruckSimulator.Node s = graph.getNode("0_0"), t = graph.getNode("9_9");
+
+        engine.findShortestPath(s, t);
+        engine.findShortestPath(s, t);
+        assertEquals(1, calls.get());
+
+        assertTrue(graph.setEdgeWeight("0_0", "0_1", 1_000));
+        FiretruckSimulator.DijkstraResult edited = engine.findShortestPath(s, t);
+        assertEquals(FiretruckSimulator.Dijkstra.findShortestPath(graph, s, t).getDistance(), edited.getDistance(), TestGraphs.EPS);
+        assertSame(edited, engine.findShortestPath(s, t));
+        assertEquals(1, calls.get());
+    }
+
+    // Source-tree mode searches the snapshot once per source, and not at all once it is stale
+    @Test
+    void sourceTreesAnswerEveryTargetOfACurrentSnapshot() {
+        FiretruckSimulator.Graph graph = TestGraphs.grid(10, 10, 27);
+        FiretruckSimulator.CsrGraph snapshot = FiretruckSimulator.CsrGraph.of(graph);
+        AtomicInteger calls = new AtomicInteger();
+        FiretruckSimulator.RoutingEngine engine = FiretruckSimulator.CachingRoutingEngine.withSourceTrees((s, t) -> {
+            calls.incrementAndGet();
+            return FiretruckSimulator.CsrDijkstra.findShortestPath(snapshot, s, t);
+        }, graph, new FiretruckSimulator.PathCache(64, FiretruckSimulator.PathCache.Eviction.LRU), snapshot, null);
+        FiretruckSimulator.Node s = graph.getNode("0_0");
+        for (int t = 0; t < snapshot.nodeCount(); t++) {
+            assertEquals(FiretruckSimulator.CsrDijkstra.findShortestPath(snapshot, s, snapshot.node(t)).getDistance(),
+                    engine.findShortestPath(s, snapshot.node(t)).getDistance(), TestGraphs.EPS);
+        }
+        assertTrue(graph.closeEdge("0_0", "0_1"));
+        FiretruckSimulator.Node t = graph.getNode("0_1");
+        assertEquals(FiretruckSimulator.Dijkstra.findShortestPath(graph, s, t).getDistance(), engine.findShortestPath(s, t).getDistance(), TestGraphs.EPS);
+        assertEquals(0, calls.get());
+    }
+
+    // Miss, then insert, as CachingRoutingEngine does
+    private static void query(FiretruckSimulator.PathCache cache, FiretruckSimulator.Node s, FiretruckSimulator.Node t) {
+        if (cache.get(s, t, 0) == null) cache.put(s, t, 0, result(t.hashCode()));
+    }
+
+    private static FiretruckSimulator.DijkstraResult result(double distance) {
+        return new FiretruckSimulator.DijkstraResult(List.of(), distance);
+    }
+}
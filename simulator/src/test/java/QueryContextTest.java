@@ -0,0 +1,96 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class QueryContextTest {
+    @Test
+    void beginForgetsThePreviousQuery() {
+        try (FiretruckSimulator.QueryContext context = FiretruckSimulator.QueryContext.acquire(10)) {
+            assertTrue(context.capacity() >= 10);
+            context.forward.label(3, 7.5, 2);
+            assertTrue(context.forward.isLabelled(3));
+            assertEquals(7.5, context.forward.distance(3));
+            assertEquals(Double.POSITIVE_INFINITY, context.forward.distance(4));
+            context.backward().label(4, 1.0, -1);
+
+            context.begin();
+            assertFalse(context.forward.isLabelled(3));
+            assertEquals(Double.POSITIVE_INFINITY, context.forward.distance(3));
+            assertEquals(Double.POSITIVE_INFINITY, context.backward().distance(4));
+        }
+    }
+
+    @Test
+    void unlabelForgetsOneNodeOnOneSide() {
+        try (FiretruckSimulator.QueryContext context = FiretruckSimulator.QueryContext.acquire(10)) {
+            context.forward.label(3, 2.0, -1);
+            context.forward.label(5, 4.0, 3);
+            context.backward().label(3, 1.0, -1);
+            context.forward.unlabel(3);
+            assertFalse(context.forward.isLabelled(3));
+            assertEquals(4.0, context.forward.distance(5));
+            assertEquals(1.0, context.backward().distance(3));
+        }
+    }
+
+    @Test
+    void closedContextIsReusedOnlyWhenBigEnough() {
+        // Far bigger than any other test's graph, so no other pooled context qualifies
+        FiretruckSimulator.QueryContext first = FiretruckSimulator.QueryContext.acquire(100_000);
+        first.close();
+        try (FiretruckSimulator.QueryContext again = FiretruckSimulator.QueryContext.acquire(100_000)) {
+            assertSame(first, again);
+        }
+        try (FiretruckSimulator.QueryContext bigger = FiretruckSimulator.QueryContext.acquire(100_001)) {
+            assertTrue(bigger != first && bigger.capacity() >= 100_001);
+        }
+    }
+
+    // Pooled contexts move between graphs of different sizes and between threads; no label may leak
+    @Test
+    void pooledSearchesMatchDijkstraAcrossGraphsAndThreads() throws Exception {
+        List<FiretruckSimulator.Graph> graphs = List.of(TestGraphs.grid(12, 12, 1), TestGraphs.directed(150, 500, 3),
+                TestGraphs.directed(200, 150, 4), FiretruckSimulator.SampleGraph.create());
+        List<FiretruckSimulator.RoutingEngine> engines = new ArrayList<>();
+        for (FiretruckSimulator.Graph graph : graphs) {
+            FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+            FiretruckSimulator.Heuristic euclidean = FiretruckSimulator.Heuristic.euclidean(csr);
+            engines.add((s, t) -> FiretruckSimulator.CsrDijkstra.findShortestPath(csr, s, t));
+            engines.add((s, t) -> FiretruckSimulator.AStar.findShortestPath(csr, s, t, euclidean));
+            engines.add(new FiretruckSimulator.BidirectionalDijkstra(csr));
+            engines.add(FiretruckSimulator.ContractionHierarchy.build(csr));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int worker = 0; worker < 8; worker++) {
+                Random random = new Random(worker);
+                runs.add(pool.submit(() -> {
+                    for (int q = 0; q < 400; q++) {
+                        int g = random.nextInt(graphs.size());
+                        // The original Dijkstra keeps its own maps, so it is the reference here
+                        List<FiretruckSimulator.Node> nodes = new ArrayList<>(graphs.get(g).getNodes().values());
+                        FiretruckSimulator.Node s = nodes.get(random.nextInt(nodes.size())), t = nodes.get(random.nextInt(nodes.size()));
+                        double expected = FiretruckSimulator.Dijkstra.findShortestPath(graphs.get(g), s, t).getDistance();
+                        for (int e = 4 * g; e < 4 * g + 4; e++) {
+                            assertEquals(expected, engines.get(e).findShortestPath(s, t).getDistance(), TestGraphs.EPS);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> run : runs) run.get();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class RouteMetricsTest {
+    // Every percentile is the top of its bucket: at most 1/16 above the exact rank value
+    @Test
+    void histogramPercentilesAreWithinOneSubBucket() {
+        FiretruckSimulator.RouteMetrics.Histogram histogram = new FiretruckSimulator.RouteMetrics.Histogram();
+        long[] values = new long[20_000];
+        Random random = new Random(17);
+        for (int i = 0; i < values.length; i++) histogram.record(values[i] = (long) Math.exp(random.nextDouble() * 20));
+        java.util.Arrays.sort(values);
+
+        assertEquals(values.length, histogram.count());
+        assertEquals(values[values.length - 1], histogram.max());
+        for (double percentile : new double[] {1, 10, 50, 90, 99, 99.9, 100}) {
+            long exact = values[(int) Math.ceil(values.length * percentile / 100.0) - 1];
+            long reported = histogram.percentile(percentile);
+            assertTrue(reported >= exact && reported <= exact + exact / 16 + 1, percentile + ": " + reported + " vs " + exact);
+        }
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        FiretruckSimulator.RouteMetrics.Histogram histogram = new FiretruckSimulator.RouteMetrics.Histogram();
+        assertEquals(0, histogram.percentile(50));
+        for (int value = 0; value < 16; value++) histogram.record(value);
+        histogram.record(-5); // Counted as 0
+        assertEquals(0, histogram.percentile(10));
+        assertEquals(7, histogram.percentile(50));
+        assertEquals(15, histogram.percentile(100));
+        assertEquals(120 / 17.0, histogram.mean(), 1e-9);
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+    }
+
+    @Test
+    void searchesRecordTheirWork() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(10, 10, 17));
+        FiretruckSimulator.RouteMetrics.Snapshot before = FiretruckSimulator.RouteMetrics.snapshot();
+        FiretruckSimulator.DijkstraResult result = FiretruckSimulator.CsrDijkstra.findShortestPath(csr, csr.node(0), csr.node(99));
+        FiretruckSimulator.RouteMetrics.Snapshot work = FiretruckSimulator.RouteMetrics.snapshot().since(before);
+
+        assertEquals(1, work.get("search.dijkstra.queries"));
+        assertEquals(result.getSettledNodes(), work.get("search.dijkstra.settled"));
+        assertTrue(work.get("search.dijkstra.relaxed") >= result.getSettledNodes());
+        assertEquals(work.get("search.dijkstra.settled"), work.total("settled"));
+        assertTrue(FiretruckSimulator.RouteMetrics.dump().contains("search.dijkstra.settled "));
+    }
+
+    @Test
+    void timedEngineCountsSegments() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(5, 5, 17));
+        FiretruckSimulator.RoutingEngine timed = FiretruckSimulator.RouteMetrics.timed(new FiretruckSimulator.BidirectionalDijkstra(csr));
+        FiretruckSimulator.RouteMetrics.Snapshot before = FiretruckSimulator.RouteMetrics.snapshot();
+        for (int i = 0; i < 3; i++) timed.findShortestPath(csr.node(i), csr.node(24 - i));
+        FiretruckSimulator.RouteMetrics.Snapshot work = FiretruckSimulator.RouteMetrics.snapshot().since(before);
+        assertEquals(3, work.get("route.segments"));
+        assertEquals(3, work.get("search.bidirectional.queries"));
+        assertTrue(work.describeRoute().startsWith("Search work: 3 segments"));
+    }
+
+    // Segments on pool threads count for the job; searches outside it, even concurrent ones, do not
+    @Test
+    void jobCountsOnlyItsOwnWork() throws Exception {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(10, 10, 17));
+        FiretruckSimulator.RoutingEngine engine = new FiretruckSimulator.BidirectionalDijkstra(csr);
+        FiretruckSimulator.RouteMetrics.Job job = new FiretruckSimulator.RouteMetrics.Job();
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> noise = pool.submit(() -> {
+                for (int i = 0; i < 200; i++) FiretruckSimulator.CsrDijkstra.findShortestPath(csr, csr.node(i % 100), csr.node(99));
+            });
+            FiretruckSimulator.MultiStopResult route = job.call(() -> new FiretruckSimulator.MultiStopRouter(engine, job.wrap(pool))
+                    .route(List.of(csr.node(0), csr.node(55), csr.node(9), csr.node(90))));
+            FiretruckSimulator.CsrDijkstra.findShortestPath(csr, csr.node(0), csr.node(99)); // After the job
+            noise.get();
+
+            assertTrue(route.isPossible());
+            FiretruckSimulator.RouteMetrics.Snapshot work = job.snapshot();
+            assertEquals(3, work.get("route.segments"));
+            assertEquals(3, work.get("search.bidirectional.queries"));
+            assertEquals(0, work.get("search.dijkstra.queries"));
+            assertEquals(work.get("search.bidirectional.settled"), work.total("settled"));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
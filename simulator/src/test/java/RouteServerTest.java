@@ -0,0 +1,136 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RouteServerTest {
+    private final FiretruckSimulator.Graph graph = FiretruckSimulator.SampleGraph.create();
+    private RouteServer server;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new RouteServer(FiretruckSimulator.CsrGraph.of(graph), 1_000_000, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    @Test
+    void routeMatchesTheSegmentDistances() throws IOException {
+        HttpURLConnection connection = get("/route?start=FS1&stops=Hosp,Mall&end=Airp&format=json");
+        assertEquals(200, connection.getResponseCode());
+        String body = read(connection.getInputStream());
+        double expected = distance("FS1", "Hosp") + distance("Hosp", "Mall") + distance("Mall", "Airp");
+        assertTrue(body.startsWith("{\"possible\":true,\"distance\":" + expected + ",\"path\":[\"FS1\","), body);
+        assertTrue(body.endsWith("\"Airp\"]}\n"), body);
+
+        HttpURLConnection text = get("/route?start=FS1&end=Airp");
+        assertEquals(200, text.getResponseCode());
+        assertTrue(read(text.getInputStream()).contains("FS1"));
+    }
+
+    @Test
+    void badRequestsAreRejected() throws IOException {
+        HttpURLConnection unknown = get("/route?start=FS1&end=Nowhere");
+        assertEquals(400, unknown.getResponseCode());
+        assertTrue(read(unknown.getErrorStream()).contains("Nowhere"));
+        assertEquals(400, get("/route?end=Airp").getResponseCode());
+
+        HttpURLConnection post = (HttpURLConnection) new URL("http://127.0.0.1:" + server.port() + "/route?start=FS1&end=Airp").openConnection();
+        post.setRequestMethod("POST");
+        assertEquals(405, post.getResponseCode());
+    }
+
+    @Test
+    void statsCountQueries() throws IOException {
+        assertEquals(200, get("/route?start=FS1&stops=J1&end=FS2").getResponseCode());
+        HttpURLConnection stats = get("/stats");
+        assertEquals(200, stats.getResponseCode());
+        assertTrue(read(stats.getInputStream()).contains("segment queries 2"));
+    }
+
+    // However the callers are scheduled, each gets its own answer and no query needs more than one search
+    @Test
+    void batchingEngineAnswersConcurrentQueriesFromOneSource() throws Exception {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+        FiretruckSimulator.BatchingRoutingEngine engine = new FiretruckSimulator.BatchingRoutingEngine(csr, 5_000_000);
+        Thread[] threads = new Thread[csr.nodeCount()];
+        double[] distances = new double[threads.length];
+        CyclicBarrier start = new CyclicBarrier(threads.length);
+        FiretruckSimulator.Node source = graph.getNode("FS1");
+        for (int t = 0; t < threads.length; t++) {
+            int target = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    throw new IllegalStateException(e);
+                }
+                distances[target] = engine.findShortestPath(source, csr.node(target)).getDistance();
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        for (int t = 0; t < threads.length; t++) {
+            assertEquals(FiretruckSimulator.CsrDijkstra.findShortestPath(csr, source, csr.node(t)).getDistance(), distances[t], TestGraphs.EPS);
+        }
+        assertEquals(threads.length, engine.queryCount());
+        assertTrue(engine.searchCount() >= 1 && engine.searchCount() <= engine.queryCount(), engine.searchCount() + " searches");
+    }
+
+    // Every target that joins before the batch closes is answered by its one search; later ones must open a new batch
+    @Test
+    void batchTakesTargetsUntilClosed() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+        FiretruckSimulator.BatchingRoutingEngine.Batch batch = new FiretruckSimulator.BatchingRoutingEngine.Batch(csr.indexOf(graph.getNode("FS1")));
+        CompletableFuture<FiretruckSimulator.DijkstraResult> first = batch.join(3), second = batch.join(5), repeat = batch.join(3);
+        assertNotNull(first);
+        assertTrue(first != second && first != repeat, "each caller waits on its own result");
+        assertEquals(3, batch.targets.size());
+        assertEquals(5, batch.targets.get(1));
+        batch.close();
+        assertNull(batch.join(7));
+        assertEquals(3, batch.targets.size());
+    }
+
+    // A batch closes when its window ends, so a query from the same source after that runs its own search
+    @Test
+    void queriesAfterTheWindowStartANewBatch() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+        FiretruckSimulator.BatchingRoutingEngine engine = new FiretruckSimulator.BatchingRoutingEngine(csr, 0);
+        FiretruckSimulator.Node source = graph.getNode("FS1");
+        engine.findShortestPath(source, graph.getNode("Hosp"));
+        engine.findShortestPath(source, graph.getNode("Airp"));
+        assertEquals(2, engine.searchCount());
+    }
+
+    private double distance(String from, String to) {
+        return FiretruckSimulator.Dijkstra.findShortestPath(graph, graph.getNode(from), graph.getNode(to)).getDistance();
+    }
+
+    private HttpURLConnection get(String path) throws IOException {
+        return (HttpURLConnection) new URL("http://127.0.0.1:" + server.port() + path).openConnection();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
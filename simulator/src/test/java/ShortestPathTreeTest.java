@@ -0,0 +1,45 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class ShortestPathTreeTest {
+    @Test
+    void matchesDijkstra() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            TestGraphs.assertMatchesDijkstra(csr, (s, t) -> FiretruckSimulator.ShortestPathTree.compute(csr, s).resultFor(t));
+        }
+    }
+
+    @Test
+    void oneTreeAnswersEveryTarget() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            FiretruckSimulator.Node source = csr.node(csr.nodeCount() / 2);
+            FiretruckSimulator.ShortestPathTree tree = FiretruckSimulator.ShortestPathTree.compute(csr, source);
+            int reachable = 0;
+            for (int t = 0; t < csr.nodeCount(); t++) {
+                FiretruckSimulator.Node target = csr.node(t);
+                FiretruckSimulator.DijkstraResult expected = FiretruckSimulator.CsrDijkstra.findShortestPath(csr, source, target);
+                assertEquals(expected.getDistance(), tree.distanceTo(target), TestGraphs.EPS);
+                assertEquals(expected.hasPath(), tree.hasPathTo(target));
+                if (!expected.hasPath()) {
+                    assertNull(tree.pathTo(target));
+                    continue;
+                }
+                reachable++;
+                assertEquals(expected.getDistance(), TestGraphs.pathWeight(csr, tree.pathTo(target)), TestGraphs.EPS);
+            }
+            assertEquals(reachable, tree.reachableCount());
+        }
+    }
+
+    @Test
+    void nodeOutsideTheSnapshotIsUnreachable() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(3, 3, 1));
+        FiretruckSimulator.ShortestPathTree tree = FiretruckSimulator.ShortestPathTree.compute(csr, csr.node(0));
+        FiretruckSimulator.Node missing = new FiretruckSimulator.Node("missing", 0, 0);
+        assertFalse(tree.hasPathTo(missing));
+        assertFalse(tree.resultFor(missing).hasPath());
+    }
+}
@@ -0,0 +1,73 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SpatialIndexTest {
+    private static final FiretruckSimulator.CsrGraph CSR = FiretruckSimulator.CsrGraph.of(TestGraphs.directed(2_000, 0, 18));
+    private static final FiretruckSimulator.SpatialIndex INDEX = FiretruckSimulator.SpatialIndex.build(CSR);
+
+    @Test
+    void nearestMatchesALinearScan() {
+        Random random = new Random(18);
+        for (int q = 0; q < 500; q++) {
+            double x = random.nextDouble() * 1100 - 50, y = random.nextDouble() * 1100 - 50;
+            int[] expected = closest(x, y, 10);
+            assertEquals(distanceSq(expected[0], x, y), distanceSq(INDEX.nearest(x, y), x, y), 0.0);
+
+            // Coincident points make the order of equal distances arbitrary, so compare distances
+            int[] found = INDEX.nearest(x, y, 10);
+            assertEquals(10, found.length);
+            for (int i = 0; i < found.length; i++) assertEquals(distanceSq(expected[i], x, y), distanceSq(found[i], x, y), 0.0);
+        }
+    }
+
+    @Test
+    void rangeVisitsExactlyTheNodesInsideTheBox() {
+        Random random = new Random(81);
+        for (int q = 0; q < 200; q++) {
+            int minX = random.nextInt(1000), minY = random.nextInt(1000);
+            int maxX = minX + random.nextInt(300), maxY = minY + random.nextInt(300);
+            List<Integer> expected = new ArrayList<>(), found = new ArrayList<>();
+            for (int i = 0; i < CSR.nodeCount(); i++) {
+                if (CSR.x(i) >= minX && CSR.x(i) <= maxX && CSR.y(i) >= minY && CSR.y(i) <= maxY) expected.add(i);
+            }
+            INDEX.range(minX, minY, maxX, maxY, found::add);
+            Collections.sort(found);
+            assertEquals(expected, found);
+            assertEquals(expected.size(), INDEX.countInRange(minX, minY, maxX, maxY));
+        }
+        assertEquals(0, INDEX.countInRange(10, 10, 5, 5));
+    }
+
+    @Test
+    void edgeCases() {
+        assertEquals(CSR.nodeCount(), INDEX.nearest(500, 500, CSR.nodeCount() + 5).length);
+        assertArrayEquals(new int[0], INDEX.nearest(500, 500, 0));
+
+        FiretruckSimulator.SpatialIndex empty = FiretruckSimulator.SpatialIndex.build(FiretruckSimulator.CsrGraph.of(new FiretruckSimulator.Graph()));
+        assertEquals(-1, empty.nearest(0, 0));
+        assertNull(empty.nearestNode(0, 0));
+        assertArrayEquals(new int[0], empty.nearest(0, 0, 3));
+    }
+
+    private static int[] closest(double x, double y, int k) {
+        Integer[] order = new Integer[CSR.nodeCount()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        java.util.Arrays.sort(order, (a, b) -> Double.compare(distanceSq(a, x, y), distanceSq(b, x, y)));
+        int[] result = new int[k];
+        for (int i = 0; i < k; i++) result[i] = order[i];
+        return result;
+    }
+
+    private static double distanceSq(int node, double x, double y) {
+        double dx = CSR.x(node) - x, dy = CSR.y(node) - y;
+        return dx * dx + dy * dy;
+    }
+}
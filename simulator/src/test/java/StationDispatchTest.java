@@ -0,0 +1,148 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class StationDispatchTest {
+    private static final int STATIONS = 6, K = 3;
+
+    // Every query has to agree with one Dijkstra run per station, on one-way streets too
+    @Test
+    void matchesOneSearchPerStation() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            FiretruckSimulator.CsrGraph reverse = csr.transpose();
+            Random random = new Random(csr.nodeCount());
+            for (int q = 0; q < 40; q++) {
+                List<FiretruckSimulator.Node> stations = new ArrayList<>();
+                double[] delays = new double[STATIONS];
+                for (int i = 0; i < STATIONS; i++) {
+                    stations.add(csr.node(random.nextInt(csr.nodeCount())));
+                    delays[i] = random.nextInt(4) * 5;
+                }
+                FiretruckSimulator.Node incident = csr.node(random.nextInt(csr.nodeCount()));
+                double[] expected = bestArrivals(csr, stations, delays, incident);
+
+                FiretruckSimulator.StationDispatch.Result nearest =
+                        FiretruckSimulator.StationDispatch.fromStations(csr, stations, delays, incident, 1);
+                assertEquals(expected.length == 0 ? Double.POSITIVE_INFINITY : expected[0], nearest.getDistance(), TestGraphs.EPS);
+                assertCandidates(csr, stations, delays, incident, expected, nearest, 1);
+                assertCandidates(csr, stations, delays, incident, expected,
+                        FiretruckSimulator.StationDispatch.fromStations(csr, stations, delays, incident, K), K);
+                assertCandidates(csr, stations, delays, incident, expected,
+                        FiretruckSimulator.StationDispatch.fromIncident(reverse, stations, delays, incident, K), K);
+            }
+        }
+    }
+
+    @Test
+    void readinessDelayCanOutweighDistance() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(1, 10, 20));
+        List<FiretruckSimulator.Node> stations = List.of(csr.node(0), csr.node(8));
+        FiretruckSimulator.Node incident = csr.node(9);
+
+        assertSame(csr.node(8), FiretruckSimulator.StationDispatch.fromStations(csr, stations, incident).getWinner().getStation());
+        FiretruckSimulator.StationDispatch.Result delayed =
+                FiretruckSimulator.StationDispatch.fromStations(csr, stations, new double[] {0, 1_000}, incident, 1);
+        assertSame(csr.node(0), delayed.getWinner().getStation());
+        assertEquals(0.0, delayed.getWinner().getDelay());
+        assertEquals(delayed.getDistance(), delayed.getWinner().getTravelTime(), 0.0);
+    }
+
+    // Contexts are pooled: a station of the previous query must not linger in the next one
+    @Test
+    void stationsDoNotCarryOverBetweenQueries() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(1, 10, 20));
+        FiretruckSimulator.CsrGraph reverse = csr.transpose();
+        FiretruckSimulator.Node incident = csr.node(9);
+        assertSame(csr.node(8), FiretruckSimulator.StationDispatch.fromStations(csr, List.of(csr.node(8)), incident).getWinner().getStation());
+        for (int k = 1; k <= 2; k++) {
+            List<FiretruckSimulator.StationDispatch.Candidate> far =
+                    FiretruckSimulator.StationDispatch.fromStations(csr, List.of(csr.node(0)), null, incident, k).getCandidates();
+            assertEquals(1, far.size());
+            assertSame(csr.node(0), far.get(0).getStation());
+        }
+        List<FiretruckSimulator.StationDispatch.Candidate> far =
+                FiretruckSimulator.StationDispatch.fromIncident(reverse, List.of(csr.node(0)), null, incident, 2).getCandidates();
+        assertEquals(1, far.size());
+        assertSame(csr.node(0), far.get(0).getStation());
+    }
+
+    @Test
+    void unreachableIncidentHasNoWinner() {
+        FiretruckSimulator.Graph graph = TestGraphs.grid(3, 3, 20);
+        graph.addNode("island", 500, 500);
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(graph);
+        FiretruckSimulator.Node island = csr.node(csr.nodeCount() - 1);
+
+        FiretruckSimulator.StationDispatch.Result result =
+                FiretruckSimulator.StationDispatch.fromStations(csr, List.of(csr.node(0), csr.node(4)), null, island, 2);
+        assertFalse(result.hasWinner());
+        assertNull(result.getPath());
+        assertEquals(Double.POSITIVE_INFINITY, result.getDistance());
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(3, 3, 20));
+        List<FiretruckSimulator.Node> stations = List.of(csr.node(0));
+        assertThrows(IllegalArgumentException.class,
+                () -> FiretruckSimulator.StationDispatch.fromStations(csr, stations, null, csr.node(4), 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> FiretruckSimulator.StationDispatch.fromStations(csr, stations, new double[] {-1}, csr.node(4), 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> FiretruckSimulator.StationDispatch.fromStations(csr, stations, new double[] {1, 2}, csr.node(4), 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> FiretruckSimulator.StationDispatch.fromStations(csr, stations, null, new FiretruckSimulator.Node("x", 0, 0), 1));
+    }
+
+    // Arrivals of the distinct stations that can reach the incident, earliest first
+    private static double[] bestArrivals(FiretruckSimulator.CsrGraph csr, List<FiretruckSimulator.Node> stations,
+                                         double[] delays, FiretruckSimulator.Node incident) {
+        List<FiretruckSimulator.Node> seen = new ArrayList<>();
+        double[] best = new double[stations.size()];
+        for (int i = 0; i < stations.size(); i++) {
+            double arrival = delays[i] + FiretruckSimulator.CsrDijkstra.findShortestPath(csr, stations.get(i), incident).getDistance();
+            int at = seen.indexOf(stations.get(i));
+            if (at < 0) {
+                at = seen.size();
+                seen.add(stations.get(i));
+                best[at] = arrival;
+            } else {
+                best[at] = Math.min(best[at], arrival);
+            }
+        }
+        return Arrays.stream(best, 0, seen.size()).filter(a -> a < Double.POSITIVE_INFINITY).sorted().toArray();
+    }
+
+    private static void assertCandidates(FiretruckSimulator.CsrGraph csr, List<FiretruckSimulator.Node> stations, double[] delays,
+                                         FiretruckSimulator.Node incident, double[] expected,
+                                         FiretruckSimulator.StationDispatch.Result result, int k) {
+        List<FiretruckSimulator.StationDispatch.Candidate> candidates = result.getCandidates();
+        assertEquals(Math.min(k, expected.length), candidates.size());
+        List<FiretruckSimulator.Node> used = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            FiretruckSimulator.StationDispatch.Candidate candidate = candidates.get(i);
+            assertEquals(expected[i], candidate.getArrival(), TestGraphs.EPS);
+            assertFalse(used.contains(candidate.getStation()), "Station offered twice");
+            used.add(candidate.getStation());
+
+            List<FiretruckSimulator.Node> path = candidate.getPath();
+            assertSame(candidate.getStation(), path.get(0));
+            assertSame(incident, path.get(path.size() - 1));
+            assertEquals(candidate.getTravelTime(), TestGraphs.pathWeight(csr, path), TestGraphs.EPS);
+            double smallestDelay = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < stations.size(); j++) {
+                if (stations.get(j) == candidate.getStation()) smallestDelay = Math.min(smallestDelay, delays[j]);
+            }
+            assertEquals(smallestDelay, candidate.getDelay(), 0.0);
+        }
+    }
+}
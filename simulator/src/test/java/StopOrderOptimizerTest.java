@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class StopOrderOptimizerTest {
+    private final FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(15, 15, 6));
+
+    @Test
+    void exactOrderMatchesBruteForce() {
+        Random random = new Random(6);
+        for (int round = 0; round < 5; round++) {
+            FiretruckSimulator.Node start = randomNode(random), end = randomNode(random);
+            List<FiretruckSimulator.Node> stops = distinctNodes(random, 6, start, end);
+            FiretruckSimulator.DistanceMatrix matrix = matrix(start, stops, end);
+
+            FiretruckSimulator.StopOrderOptimizer.Result result = FiretruckSimulator.StopOrderOptimizer.optimize(matrix, start, stops, end, 100);
+            assertTrue(result.isExact());
+            assertEquals(bruteForce(matrix, start, new ArrayList<>(), stops, end), result.getDistance(), TestGraphs.EPS);
+            assertIsOrderOf(stops, result.getOrder());
+            assertEquals(result.getDistance(), FiretruckSimulator.StopOrderOptimizer.routeDistance(matrix, start, result.getOrder(), end), TestGraphs.EPS);
+        }
+    }
+
+    @Test
+    void heuristicOrderIsNoWorseThanTheEnteredOrder() {
+        Random random = new Random(7);
+        FiretruckSimulator.Node start = randomNode(random), end = randomNode(random);
+        List<FiretruckSimulator.Node> stops = distinctNodes(random, FiretruckSimulator.StopOrderOptimizer.EXACT_LIMIT + 10, start, end);
+        FiretruckSimulator.DistanceMatrix matrix = matrix(start, stops, end);
+
+        FiretruckSimulator.StopOrderOptimizer.Result result = FiretruckSimulator.StopOrderOptimizer.optimize(matrix, start, stops, end, 200);
+        assertFalse(result.isExact());
+        assertIsOrderOf(stops, result.getOrder());
+        assertEquals(result.getDistance(), FiretruckSimulator.StopOrderOptimizer.routeDistance(matrix, start, result.getOrder(), end), TestGraphs.EPS);
+        assertTrue(result.getDistance() <= FiretruckSimulator.StopOrderOptimizer.routeDistance(matrix, start, stops, end) + TestGraphs.EPS);
+    }
+
+    private FiretruckSimulator.DistanceMatrix matrix(FiretruckSimulator.Node start, List<FiretruckSimulator.Node> stops, FiretruckSimulator.Node end) {
+        List<FiretruckSimulator.Node> waypoints = new ArrayList<>(stops);
+        waypoints.add(start);
+        waypoints.add(end);
+        return FiretruckSimulator.ManyToMany.compute(csr, waypoints, false);
+    }
+
+    private static double bruteForce(FiretruckSimulator.DistanceMatrix matrix, FiretruckSimulator.Node start, List<FiretruckSimulator.Node> prefix,
+                                     List<FiretruckSimulator.Node> rest, FiretruckSimulator.Node end) {
+        if (rest.isEmpty()) return FiretruckSimulator.StopOrderOptimizer.routeDistance(matrix, start, prefix, end);
+        double best = Double.POSITIVE_INFINITY;
+        for (FiretruckSimulator.Node next : rest) {
+            List<FiretruckSimulator.Node> longer = new ArrayList<>(prefix), shorter = new ArrayList<>(rest);
+            longer.add(next);
+            shorter.remove(next);
+            best = Math.min(best, bruteForce(matrix, start, longer, shorter, end));
+        }
+        return best;
+    }
+
+    private static void assertIsOrderOf(List<FiretruckSimulator.Node> stops, List<FiretruckSimulator.Node> order) {
+        assertEquals(stops.size(), order.size());
+        assertEquals(new HashSet<>(stops), new HashSet<>(order));
+    }
+
+    private FiretruckSimulator.Node randomNode(Random random) {
+        return csr.node(random.nextInt(csr.nodeCount()));
+    }
+
+    private List<FiretruckSimulator.Node> distinctNodes(Random random, int count, FiretruckSimulator.Node start, FiretruckSimulator.Node end) {
+        List<FiretruckSimulator.Node> nodes = new ArrayList<>();
+        while (nodes.size() < count) {
+            FiretruckSimulator.Node node = randomNode(random);
+            if (!nodes.contains(node) && !node.equals(start) && !node.equals(end)) nodes.add(node);
+        }
+        return nodes;
+    }
+}
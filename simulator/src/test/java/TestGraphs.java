@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+// Small graphs shared by the engine tests, and the check every engine is held to: the same
+// distance as CsrDijkstra for every sampled pair, and a returned path that really has that length.
+final class TestGraphs {
+    static final double EPS = 1e-9;
+    private static final int PAIRS = 150;
+
+    private TestGraphs() { }
+
+    static List<FiretruckSimulator.CsrGraph> graphs() {
+        List<FiretruckSimulator.CsrGraph> graphs = new ArrayList<>();
+        graphs.add(FiretruckSimulator.CsrGraph.of(grid(12, 12, 1)));
+        graphs.add(FiretruckSimulator.CsrGraph.of(directed(150, 500, 3)));
+        graphs.add(FiretruckSimulator.CsrGraph.of(directed(200, 150, 4))); // Mostly unreachable pairs
+        graphs.add(FiretruckSimulator.CsrGraph.of(FiretruckSimulator.SampleGraph.create()));
+        return graphs;
+    }
+
+    // rows x cols street grid with ids "row_col", 10 units between intersections and weights in [10, 20)
+    static FiretruckSimulator.Graph grid(int rows, int cols, long seed) {
+        Random random = new Random(seed);
+        FiretruckSimulator.Graph graph = new FiretruckSimulator.Graph();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) graph.addNode(r + "_" + c, c * 10, r * 10);
+        }
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (c + 1 < cols) graph.addEdge(r + "_" + c, r + "_" + (c + 1), 10 + random.nextInt(10));
+                if (r + 1 < rows) graph.addEdge(r + "_" + c, (r + 1) + "_" + c, 10 + random.nextInt(10));
+            }
+        }
+        return graph;
+    }
+
+    // One-way streets between random points; weights at least the straight-line distance
+    static FiretruckSimulator.Graph directed(int nodes, int arcs, long seed) {
+        Random random = new Random(seed);
+        FiretruckSimulator.Graph graph = new FiretruckSimulator.Graph();
+        for (int i = 0; i < nodes; i++) graph.addNode("n" + i, random.nextInt(1000), random.nextInt(1000));
+        for (int i = 0; i < arcs; i++) {
+            FiretruckSimulator.Node u = graph.getNode("n" + random.nextInt(nodes)), v = graph.getNode("n" + random.nextInt(nodes));
+            if (u == v) continue;
+            double length = Math.hypot(u.getX() - v.getX(), u.getY() - v.getY());
+            graph.addEdge(u.getId(), v.getId(), Math.ceil(length) + random.nextInt(20), false);
+        }
+        return graph;
+    }
+
+    static void assertMatchesDijkstra(FiretruckSimulator.GraphView csr,
+                                      BiFunction<FiretruckSimulator.Node, FiretruckSimulator.Node, FiretruckSimulator.DijkstraResult> engine) {
+        Random random = new Random(csr.nodeCount());
+        for (int i = 0; i < PAIRS; i++) {
+            FiretruckSimulator.Node s = csr.node(random.nextInt(csr.nodeCount())), t = csr.node(random.nextInt(csr.nodeCount()));
+            FiretruckSimulator.DijkstraResult expected = FiretruckSimulator.CsrDijkstra.findShortestPath(csr, s, t);
+            FiretruckSimulator.DijkstraResult actual = engine.apply(s, t);
+            String pair = s.getId() + " -> " + t.getId();
+            assertEquals(expected.hasPath(), actual.hasPath(), pair);
+            if (!expected.hasPath()) continue;
+            assertEquals(expected.getDistance(), actual.getDistance(), EPS, pair);
+            List<FiretruckSimulator.Node> path = actual.getPath();
+            assertEquals(s, path.get(0), pair);
+            assertEquals(t, path.get(path.size() - 1), pair);
+            assertEquals(actual.getDistance(), pathWeight(csr, path), EPS, pair);
+        }
+    }
+
+    // Sum of the cheapest edge between consecutive nodes; fails if a step has no edge
+    static double pathWeight(FiretruckSimulator.GraphView csr, List<FiretruckSimulator.Node> path) {
+        assertNotNull(path);
+        assertFalse(path.isEmpty());
+        double total = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            int u = csr.indexOf(path.get(i)), v = csr.indexOf(path.get(i + 1));
+            double step = Double.POSITIVE_INFINITY;
+            for (int e = csr.firstEdge(u); e < csr.endEdge(u); e++) {
+                if (csr.target(e) == v) step = Math.min(step, csr.weight(e));
+            }
+            assertTrue(step < Double.POSITIVE_INFINITY, "no edge " + path.get(i).getId() + " -> " + path.get(i + 1).getId());
+            total += step;
+        }
+        return total;
+    }
+}
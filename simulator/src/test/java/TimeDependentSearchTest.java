@@ -0,0 +1,139 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TimeDependentSearchTest {
+    @Test
+    void freeFlowMatchesDijkstra() {
+        for (FiretruckSimulator.CsrGraph csr : TestGraphs.graphs()) {
+            FiretruckSimulator.TimeDependentGraph freeFlow =
+                    new FiretruckSimulator.TimeDependentGraph(csr, new FiretruckSimulator.TravelTimeProfiles());
+            FiretruckSimulator.TimedRoutingEngine engine = FiretruckSimulator.TimeDependentSearch.engine(freeFlow, freeFlow.euclideanLowerBound());
+            TestGraphs.assertMatchesDijkstra(csr, (s, t) -> engine.findShortestPath(s, t, 480));
+        }
+    }
+
+    // Against a plain O(n^2) label-setting search, and driving the returned path edge by edge
+    @Test
+    void rushHourMatchesAReferenceSearch() {
+        FiretruckSimulator.CsrGraph grid = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(8, 8, 21));
+        FiretruckSimulator.TimeDependentGraph commuter =
+                new FiretruckSimulator.TimeDependentGraph(grid, FiretruckSimulator.TravelTimeProfiles.commuterDay());
+        Random random = new Random(21);
+        for (int e = 0; e < grid.edgeCount(); e++) commuter.setProfile(e, random.nextInt(3));
+
+        FiretruckSimulator.CsrGraph sample = FiretruckSimulator.CsrGraph.of(FiretruckSimulator.SampleGraph.create());
+        for (FiretruckSimulator.TimeDependentGraph traffic : List.of(commuter, FiretruckSimulator.SampleGraph.traffic(sample))) {
+            FiretruckSimulator.GraphView graph = traffic.getGraph();
+            FiretruckSimulator.Heuristic bound = traffic.euclideanLowerBound();
+            for (double departure = 0; departure < 1440; departure += 75) {
+                for (int s = 0; s < graph.nodeCount(); s += 3) {
+                    double[] arrival = referenceArrivals(traffic, s, departure);
+                    for (int t = 0; t < graph.nodeCount(); t++) {
+                        FiretruckSimulator.DijkstraResult plain =
+                                FiretruckSimulator.TimeDependentSearch.findEarliestArrival(traffic, graph.node(s), graph.node(t), departure);
+                        FiretruckSimulator.DijkstraResult guided =
+                                FiretruckSimulator.TimeDependentSearch.findEarliestArrival(traffic, graph.node(s), graph.node(t), departure, bound);
+                        assertEquals(arrival[t] - departure, plain.getDistance(), TestGraphs.EPS);
+                        assertEquals(arrival[t] - departure, guided.getDistance(), TestGraphs.EPS);
+                        if (plain.hasPath()) assertEquals(plain.getDistance(), drive(traffic, plain.getPath(), departure) - departure, TestGraphs.EPS);
+                    }
+                }
+            }
+        }
+    }
+
+    // Each segment departs when the previous one arrives, so later legs are priced later in the peak
+    @Test
+    void multiStopCarriesTheClockFromSegmentToSegment() {
+        FiretruckSimulator.Graph grid = TestGraphs.grid(8, 8, 22);
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(grid);
+        FiretruckSimulator.TimeDependentGraph commuter =
+                new FiretruckSimulator.TimeDependentGraph(csr, FiretruckSimulator.TravelTimeProfiles.commuterDay());
+        Random random = new Random(22);
+        for (int e = 0; e < csr.edgeCount(); e++) commuter.setProfile(e, random.nextInt(3));
+        List<FiretruckSimulator.Node> waypoints = Arrays.asList(
+                grid.getNode("0_0"), grid.getNode("7_7"), grid.getNode("0_7"), grid.getNode("7_0"));
+        double departure = 420; // 07:00, as the morning peak builds
+
+        FiretruckSimulator.MultiStopResult route = FiretruckSimulator.MultiStopRouter.routeDepartingAt(
+                FiretruckSimulator.TimeDependentSearch.engine(commuter, commuter.euclideanLowerBound()),
+                waypoints, departure, FiretruckSimulator.RouteProgress.NONE);
+
+        double clock = departure, fixedClock = 0;
+        for (int i = 0; i + 1 < waypoints.size(); i++) {
+            clock += FiretruckSimulator.TimeDependentSearch.findEarliestArrival(commuter, waypoints.get(i), waypoints.get(i + 1), clock).getDistance();
+            fixedClock += FiretruckSimulator.TimeDependentSearch.findEarliestArrival(commuter, waypoints.get(i), waypoints.get(i + 1), departure).getDistance();
+        }
+        assertTrue(route.isPossible());
+        assertEquals(clock - departure, route.getDistance(), TestGraphs.EPS);
+        assertEquals(route.getDistance(), drive(commuter, route.getPath(), departure) - departure, TestGraphs.EPS);
+        assertTrue(Math.abs(fixedClock - route.getDistance()) > 1, "every segment priced at 07:00 gives the same total");
+    }
+
+    @Test
+    void profilesInterpolateAndWrapAroundMidnight() {
+        FiretruckSimulator.TravelTimeProfiles profiles = new FiretruckSimulator.TravelTimeProfiles();
+        int peak = profiles.add(new double[] {60, 120}, new double[] {1.0, 3.0});
+        assertEquals(1.0, profiles.factor(FiretruckSimulator.TravelTimeProfiles.FREE_FLOW, 500), 0.0);
+        assertEquals(2.0, profiles.factor(peak, 90), 1e-12);
+        assertEquals(3.0, profiles.factor(peak, 120), 1e-12);
+        // From 3.0 at 02:00 back down to 1.0 at 01:00 the next day
+        assertEquals(2.0, profiles.factor(peak, 120 + 1380 / 2.0), 1e-12);
+        assertEquals(profiles.factor(peak, 90), profiles.factor(peak, 90 + 1440), 1e-12);
+        assertEquals(profiles.factor(peak, 90), profiles.factor(peak, 90 - 1440), 1e-12);
+
+        assertThrows(IllegalArgumentException.class, () -> profiles.add(new double[] {10, 5}, new double[] {1, 1}));
+        assertThrows(IllegalArgumentException.class, () -> profiles.add(new double[] {10}, new double[] {0}));
+    }
+
+    // A factor that falls faster than the edge takes to drive would let a later departure overtake
+    @Test
+    void profilesThatBreakFifoAreRejected() {
+        FiretruckSimulator.TravelTimeProfiles profiles = new FiretruckSimulator.TravelTimeProfiles();
+        int cliff = profiles.add(new double[] {0, 100, 101}, new double[] {1.0, 5.0, 1.0});
+        FiretruckSimulator.CsrGraph csr = FiretruckSimulator.CsrGraph.of(TestGraphs.grid(2, 2, 21));
+        FiretruckSimulator.TimeDependentGraph traffic = new FiretruckSimulator.TimeDependentGraph(csr, profiles);
+        assertThrows(IllegalArgumentException.class, () -> traffic.setProfile(0, cliff));
+        assertThrows(IllegalArgumentException.class, () -> traffic.setProfile(0, 7));
+    }
+
+    private static double[] referenceArrivals(FiretruckSimulator.TimeDependentGraph traffic, int source, double departure) {
+        FiretruckSimulator.GraphView graph = traffic.getGraph();
+        int n = graph.nodeCount();
+        double[] arrival = new double[n];
+        boolean[] done = new boolean[n];
+        Arrays.fill(arrival, Double.POSITIVE_INFINITY);
+        arrival[source] = departure;
+        while (true) {
+            int u = -1;
+            for (int v = 0; v < n; v++) if (!done[v] && arrival[v] < Double.POSITIVE_INFINITY && (u < 0 || arrival[v] < arrival[u])) u = v;
+            if (u < 0) return arrival;
+            done[u] = true;
+            for (int e = graph.firstEdge(u); e < graph.endEdge(u); e++) {
+                arrival[graph.target(e)] = Math.min(arrival[graph.target(e)], arrival[u] + traffic.travelTime(e, arrival[u]));
+            }
+        }
+    }
+
+    // Clock time at the end of the path, taking the quickest parallel edge at each step
+    private static double drive(FiretruckSimulator.TimeDependentGraph traffic, List<FiretruckSimulator.Node> path, double departure) {
+        FiretruckSimulator.GraphView graph = traffic.getGraph();
+        double clock = departure;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            int u = graph.indexOf(path.get(i)), v = graph.indexOf(path.get(i + 1));
+            double best = Double.POSITIVE_INFINITY;
+            for (int e = graph.firstEdge(u); e < graph.endEdge(u); e++) {
+                if (graph.target(e) == v) best = Math.min(best, traffic.travelTime(e, clock));
+            }
+            clock += best;
+        }
+        return clock;
+    }
+}